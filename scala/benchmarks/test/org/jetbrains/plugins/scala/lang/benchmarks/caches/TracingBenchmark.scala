@@ -0,0 +1,68 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.caches
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.PsiManager
+import com.intellij.psi.impl.PsiModificationTrackerImpl
+import org.jetbrains.plugins.scala.caches.stats.Tracer
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.psi.api.expr.ScExpression
+import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
+import org.jetbrains.plugins.scala.lang.typeInference.TypeInferenceTestBase
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Overhead of the cache tracing ([[Tracer]]) on the type inference with empty caches,
+ * where most of the cached calculations are traced. The difference between `tracing = true` and `false`
+ * is expected to stay within 2%.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 3, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class TracingBenchmark extends TypeInferenceTestBase {
+
+  @Param(Array("false", "true"))
+  var tracing: Boolean = _
+
+  @Param(Array("ShapelessLike", "Flatten"))
+  var testName: String = _
+
+  private var expr: ScExpression = _
+  private var scalaPsiManager: ScalaPsiManager = _
+  private var psiModTracker: PsiModificationTrackerImpl = _
+
+  override protected def folderPath: String = "testdata/typeInference/"
+
+  override def getName = s"test$testName"
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    Tracer.clearAll()
+    Tracer.setEnabled(tracing)
+
+    val file = configureFromFileText(testName + ".scala", None)
+    expr = findExpression(file)
+    scalaPsiManager = ScalaPsiManager.instance(getProjectAdapter)
+    psiModTracker = PsiManager.getInstance(getProjectAdapter).getModificationTracker.asInstanceOf[PsiModificationTrackerImpl]
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    Tracer.setEnabled(false)
+    Tracer.clearAll()
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  @Benchmark
+  def exprTypeUncached(bh: Blackhole): Unit = syncInEdt {
+    bh.consume(expr.`type`())
+    scalaPsiManager.clearAllCaches()
+    psiModTracker.incCounter()
+  }
+}
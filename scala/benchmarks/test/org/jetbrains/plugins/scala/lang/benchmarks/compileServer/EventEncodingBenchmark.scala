@@ -0,0 +1,97 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.compileServer
+
+import java.io.File
+import java.util.Base64
+import java.util.concurrent.TimeUnit
+
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.Client.PosInfo
+import org.jetbrains.jps.incremental.scala.remote._
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Compares the legacy (Java serialization + Base64) and the binary compile server event encodings.
+ *
+ * `bytesPerEvent` secondary metric shows the size of the encoded event.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Thread)
+class EventEncodingBenchmark {
+
+  @Param(Array("generated", "message", "unit"))
+  var eventKind: String = _
+
+  private var events: Array[Event] = _
+  private var index = 0
+
+  @Setup(Level.Trial)
+  def setup(): Unit = {
+    val sourceRoot = "/home/user/projects/monorepo/modules/core/src/main/scala/com/example/core"
+    val outputRoot = "/home/user/projects/monorepo/modules/core/target/scala-2.13/classes/com/example/core"
+    events = Array.tabulate(1024) { i =>
+      val source = new File(s"$sourceRoot/package${i % 16}/Source${i % 64}.scala")
+      eventKind match {
+        case "generated" =>
+          GeneratedEvent(source, new File(s"$outputRoot/package${i % 16}/Source${i % 64}$$Inner$i.class"), s"com.example.core.Source${i % 64}$$Inner$i")
+        case "message" =>
+          val pos = PosInfo(Some(i.toLong), Some(12L), Some(i * 40L))
+          MessageEvent(Kind.WARNING, s"Unused import at line $i", Some(source), pos, pos)
+        case "unit" =>
+          CompilationUnitEvent(source.getPath)
+      }
+    }
+  }
+
+  private def nextEvent(): Event = {
+    index = (index + 1) & (events.length - 1)
+    events(index)
+  }
+
+  @Benchmark
+  def javaSerializationBase64(counters: EventEncodingBenchmark.Counters, bh: Blackhole): Unit = {
+    val bytes = Base64.getEncoder.encode(nextEvent().toBytes)
+    counters.record(bytes.length)
+    bh.consume(bytes)
+  }
+
+  /** The writer lives for the whole trial, the same as for a long compilation with many events */
+  @Benchmark
+  def binary(writer: EventEncodingBenchmark.BinaryWriter, counters: EventEncodingBenchmark.Counters, bh: Blackhole): Unit = {
+    val bytes = writer.writer.write(nextEvent())
+    counters.record(bytes.length)
+    bh.consume(bytes)
+  }
+}
+
+object EventEncodingBenchmark {
+
+  @State(Scope.Thread)
+  class BinaryWriter {
+    val writer = new BinaryEventCodec.Writer
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  class Counters {
+    private var bytes = 0L
+    private var events = 0L
+
+    @Setup(Level.Iteration)
+    def reset(): Unit = {
+      bytes = 0
+      events = 0
+    }
+
+    def record(size: Int): Unit = {
+      bytes += size
+      events += 1
+    }
+
+    def bytesPerEvent: Double = if (events == 0) 0 else bytes.toDouble / events
+  }
+}
@@ -2,11 +2,12 @@ package org.jetbrains.plugins.scala.lang.benchmarks.conformance
 
 import java.util.concurrent.TimeUnit
 
+import com.intellij.openapi.util.registry.Registry
 import com.intellij.psi.PsiManager
 import com.intellij.psi.impl.PsiModificationTrackerImpl
 import org.jetbrains.plugins.scala.lang.benchmarks._
 import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
-import org.jetbrains.plugins.scala.lang.psi.types.{ScType, ScTypeExt}
+import org.jetbrains.plugins.scala.lang.psi.types.{ScType, ScTypeExt, ScTypeInterner}
 import org.jetbrains.plugins.scala.lang.typeConformance.TypeConformanceTestBase
 import org.openjdk.jmh.annotations.{Measurement, OutputTimeUnit, Warmup, _}
 import org.openjdk.jmh.infra.Blackhole
@@ -19,6 +20,10 @@ import org.openjdk.jmh.infra.Blackhole
 @Fork(1)
 @State(Scope.Benchmark)
 abstract class TypeConformanceBenchmarkBase(testName: String) extends TypeConformanceTestBase {
+  // run with `-prof gc` to compare the allocation rate
+  @Param(Array("false", "true"))
+  var interning: Boolean = _
+
   var lType: ScType = _
   var rType: ScType = _
   var scalaPsiManager: ScalaPsiManager = _
@@ -42,11 +47,13 @@ abstract class TypeConformanceBenchmarkBase(testName: String) extends TypeConfor
   @Setup(Level.Trial)
   def trialSetup(): Unit = syncInEdt {
     setUp()
+    Registry.get(ScTypeInterner.RegistryKey).setValue(interning)
     setupData()
   }
 
   @TearDown(Level.Trial)
   def trialTearDown(): Unit = syncInEdt {
+    Registry.get(ScTypeInterner.RegistryKey).resetToDefault()
     tearDown()
     scheduleShutdown(200L)
   }
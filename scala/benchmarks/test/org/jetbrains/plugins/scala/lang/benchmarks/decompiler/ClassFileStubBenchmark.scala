@@ -0,0 +1,95 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.decompiler
+
+import java.io.File
+import java.util.concurrent.TimeUnit
+import java.util.zip.ZipFile
+
+import com.intellij.psi.PsiFileFactory
+import org.jetbrains.plugins.scala.ScalaLanguage
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.decompiler.Decompiler
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.parser.ScalaParserDefinition
+import org.jetbrains.plugins.scala.lang.psi.compiled.ScalaSigStubBuilder
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Stubs of the top-level Scala class files of a library jar,
+ * built from the decompiled text (the old way) and right from the signatures.
+ *
+ * The signature benchmark falls back to the text for the files the signature builder doesn't support,
+ * the same as `ScClsStubBuilder` does.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 5, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class ClassFileStubBenchmark extends SimpleTestCase {
+
+  @Param(Array("scala-library", "scala-reflect"))
+  var jar: String = _
+
+  private var classFiles: Array[(String, Array[Byte])] = _
+
+  private def jarFile: File = {
+    val aClass = jar match {
+      case "scala-library" => classOf[scala.Option[_]]
+      case "scala-reflect" => classOf[scala.reflect.api.Universe]
+    }
+    new File(aClass.getProtectionDomain.getCodeSource.getLocation.toURI)
+  }
+
+  private def topLevelClassFiles(file: File): Array[(String, Array[Byte])] = {
+    val zipFile = new ZipFile(file)
+    try {
+      zipFile.entries.asScala
+        .filter(entry => entry.getName.endsWith(".class") && !entry.getName.contains('$'))
+        .map { entry =>
+          val name = entry.getName.substring(entry.getName.lastIndexOf('/') + 1)
+          val stream = zipFile.getInputStream(entry)
+          try (name, stream.readAllBytes())
+          finally stream.close()
+        }
+        .filter { case (name, bytes) => Decompiler.sourceNameAndSignature(name, bytes).isDefined }
+        .toArray
+    } finally zipFile.close()
+  }
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    classFiles = topLevelClassFiles(jarFile)
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  private def textStub(name: String, bytes: Array[Byte]): AnyRef =
+    Decompiler.sourceNameAndText(name, bytes).map {
+      case (sourceName, text) =>
+        val file = PsiFileFactory.getInstance(fixture.getProject).createFileFromText(sourceName, ScalaLanguage.INSTANCE, text)
+        ScalaParserDefinition.FileNodeType.getBuilder.buildStubTree(file)
+    }.orNull
+
+  @Benchmark
+  def fromDecompiledText(bh: Blackhole): Unit = syncInEdt {
+    classFiles.foreach {
+      case (name, bytes) => bh.consume(textStub(name, bytes))
+    }
+  }
+
+  @Benchmark
+  def fromSignature(bh: Blackhole): Unit = syncInEdt {
+    classFiles.foreach {
+      case (name, bytes) => bh.consume(ScalaSigStubBuilder.buildFileStub(name, bytes).getOrElse(textStub(name, bytes)))
+    }
+  }
+}
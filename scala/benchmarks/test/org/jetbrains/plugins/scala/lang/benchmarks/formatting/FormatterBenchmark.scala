@@ -0,0 +1,98 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.formatting
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.openapi.project.Project
+import com.intellij.psi.codeStyle.CodeStyleManager
+import org.jetbrains.plugins.scala.ScalaFileType
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.extensions.inWriteCommandAction
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Formatting of a large file with the IntelliJ formatter.
+ *
+ * `reformatFile` formats the whole file, `reformatRange` formats a single method in the middle of the file,
+ * `enterIndent` calculates the indent of an empty line in that method, which is what the Enter handler does.
+ * The file is generated formatted, so the formatter doesn't change it and all iterations do the same work.
+ * Run with `-prof gc` to compare the allocation rate.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class FormatterBenchmark extends ScalaLightCodeInsightFixtureTestAdapter {
+
+  @Param(Array("100", "500"))
+  var methods: Int = _
+
+  private implicit def project: Project = getProject
+
+  private var rangeStart: Int = _
+  private var rangeEnd: Int = _
+  private var emptyLineOffset: Int = _
+
+  override def getName = "testFormatter"
+
+  private def codeStyleManager = CodeStyleManager.getInstance(project)
+
+  private def fileText: String = {
+    val builder = new StringBuilder("package bench\n\nclass Large {\n")
+    for (i <- 0 until methods) {
+      val emptyLine = if (i == methods / 2) "\n" else ""
+      builder ++= s"  def method$i(x: Int, y: String): Option[String] = {\n"
+      builder ++= s"    val z = x + $i\n$emptyLine"
+      builder ++= s"    if (z > 10) Some(y * z)\n"
+      builder ++= s"    else None\n"
+      builder ++= s"  }\n\n"
+      builder ++= s"  val value$i: List[Int] = List(1, 2, 3).map(_ * $i).filter { v =>\n"
+      builder ++= s"    v % 2 == 0\n"
+      builder ++= s"  }\n\n"
+    }
+    builder ++= "  def last(): Unit = ()\n}\n"
+    builder.result()
+  }
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    val text = fileText
+    configureFromFileText(text, ScalaFileType.INSTANCE)
+
+    val middle = methods / 2
+    rangeStart = text.indexOf(s"  def method$middle(")
+    rangeEnd = text.indexOf(s"  val value$middle:")
+    emptyLineOffset = text.indexOf("\n\n", rangeStart) + 1
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  @Benchmark
+  def reformatFile(): Unit = syncInEdt {
+    inWriteCommandAction {
+      codeStyleManager.reformat(getFile)
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  def reformatRange(): Unit = syncInEdt {
+    inWriteCommandAction {
+      codeStyleManager.reformatText(getFile, rangeStart, rangeEnd)
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  def enterIndent(bh: Blackhole): Unit = syncInEdt {
+    bh.consume(codeStyleManager.getLineIndent(getFile, emptyLineOffset))
+  }
+}
@@ -0,0 +1,100 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.lexer
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.lexer.LexerPosition
+import com.intellij.openapi.project.Project
+import org.jetbrains.plugins.scala.ScalaFileType
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.extensions.inWriteCommandAction
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.lexer.ScalaLexer
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Re-highlighting of a line in the middle of a large multiline interpolated string.
+ *
+ * `rehighlight` types and deletes a character in the editor, so the editor highlighter relexes the change.
+ * `relexFromStart` and `relexFromCheckpoint` relex the line with [[ScalaLexer]] from the start of the file
+ * and from the position of the first token of the line, respectively.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class LexerRestartBenchmark extends ScalaLightCodeInsightFixtureTestAdapter {
+
+  @Param(Array("1000", "10000"))
+  var lines: Int = _
+
+  private var text: String = _
+  private var offset: Int = _
+  private var lineEnd: Int = _
+  private var checkpoint: LexerPosition = _
+
+  private val lexer = new ScalaLexer(false, null)
+
+  private implicit def project: Project = getProject
+
+  override def getName = "testLexerRestart"
+
+  private def fileText: String = {
+    val builder = new StringBuilder("object Report {\n  val report = s\"\"\"\n")
+    for (i <- 0 until lines) {
+      builder ++= s"""    |line $i: $$x, $${values($i)} and $${s"nested $${x * $i} $$y"}\n"""
+    }
+    builder ++= "    |\"\"\".stripMargin\n}\n"
+    builder.result()
+  }
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    text = fileText
+
+    val lineStart = text.indexOf(s"|line ${lines / 2}:")
+    offset = text.indexOf("nested", lineStart)
+    lineEnd = text.indexOf('\n', lineStart)
+
+    lexer.start(text)
+    while (lexer.getTokenStart < lineStart) lexer.advance()
+    checkpoint = lexer.getCurrentPosition
+
+    configureFromFileText(text, ScalaFileType.INSTANCE)
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  private def relexLine(bh: Blackhole): Unit =
+    while (lexer.getTokenStart < lineEnd) {
+      bh.consume(lexer.getTokenType)
+      lexer.advance()
+    }
+
+  @Benchmark
+  def relexFromStart(bh: Blackhole): Unit = {
+    lexer.start(text)
+    relexLine(bh)
+  }
+
+  @Benchmark
+  def relexFromCheckpoint(bh: Blackhole): Unit = {
+    lexer.start(text, text.length, checkpoint)
+    relexLine(bh)
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  def rehighlight(): Unit = syncInEdt {
+    val document = getEditor.getDocument
+    inWriteCommandAction(document.insertString(offset, "a"))
+    inWriteCommandAction(document.deleteString(offset, offset + 1))
+  }
+}
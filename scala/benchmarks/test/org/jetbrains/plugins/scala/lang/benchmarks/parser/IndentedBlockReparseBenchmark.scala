@@ -0,0 +1,89 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.parser
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.openapi.project.Project
+import com.intellij.psi.{PsiManager, PsiTreeChangeAdapter, PsiTreeChangeEvent}
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.editor.DocumentExt
+import org.jetbrains.plugins.scala.extensions.inWriteCommandAction
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.{LatestScalaVersions, ScalaVersion}
+import org.openjdk.jmh.annotations._
+
+/**
+ * Typing of a single character inside an indentation-based method body of a large Scala 3 file,
+ * measured together with the commit of the document, which reparses the changed part of the file.
+ *
+ * The average length of the reparsed nodes is printed on tear down.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class IndentedBlockReparseBenchmark extends ScalaLightCodeInsightFixtureTestAdapter {
+
+  @Param(Array("100", "1000"))
+  var methods: Int = _
+
+  private implicit def project: Project = getProject
+
+  private var offset: Int = _
+  private var fileLength: Int = _
+
+  private var reparsedLength = 0L
+  private var reparseCount = 0L
+
+  override def getName = "testIndentedBlockReparse"
+
+  override protected def defaultVersionOverride: Option[ScalaVersion] = Some(LatestScalaVersions.Scala_3_0)
+
+  private def fileText: String = {
+    val builder = new StringBuilder("class Large:\n")
+    for (i <- 0 until methods) {
+      builder ++= s"  def method$i(x: Int) =\n"
+      builder ++= s"    val y = x + $i\n"
+      builder ++= s"    val z = y * 2\n"
+      builder ++= s"    y + z\n\n"
+    }
+    builder.result()
+  }
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    val file = configureFromFileText(fileText)
+    fileLength = file.getTextLength
+    offset = file.getText.indexOf("y * 2", file.getText.indexOf(s"def method${methods / 2}("))
+
+    PsiManager.getInstance(project).addPsiTreeChangeListener(new PsiTreeChangeAdapter {
+      override def childReplaced(event: PsiTreeChangeEvent): Unit = {
+        reparsedLength += event.getNewChild.getTextLength
+        reparseCount += 1
+      }
+    }, getTestRootDisposable)
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    if (reparseCount > 0)
+      println(s"Reparsed ${reparsedLength / reparseCount} characters on average of $fileLength")
+
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  private def edit(body: => Unit): Unit = inWriteCommandAction {
+    body
+    getEditor.getDocument.commit(project)
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(2)
+  def typeAndDelete(): Unit = syncInEdt {
+    edit(getEditor.getDocument.insertString(offset, "a"))
+    edit(getEditor.getDocument.deleteString(offset, offset + 1))
+  }
+}
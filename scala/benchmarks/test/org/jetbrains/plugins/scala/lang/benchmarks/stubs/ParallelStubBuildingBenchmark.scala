@@ -0,0 +1,84 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.stubs
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Path, Paths}
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.PsiFileFactory
+import org.jetbrains.plugins.scala.ScalaLanguage
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.stubs.elements.ParallelStubBuildingTest
+import org.jetbrains.plugins.scala.util.TestUtils
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Lexing, parsing and building of stubs of a corpus of files on a number of threads, as on the first indexing.
+ *
+ * The corpus is the sources of `testdata/localProjects`, repeated to make it large.
+ * The throughput in files per second is printed on tear down.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class ParallelStubBuildingBenchmark extends SimpleTestCase {
+
+  @Param(Array("1", "2", "4", "8"))
+  var threads: Int = _
+
+  @Param(Array("20"))
+  var copies: Int = _
+
+  private var texts: Seq[String] = _
+  private var files: Seq[ScalaFile] = _
+
+  private var builtFiles = 0L
+  private var elapsedNanos = 0L
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+
+    val root = Paths.get(TestUtils.getTestDataPath, "localProjects")
+    val sources = Files.walk(root).iterator().asScala
+      .filter(_.toString.endsWith(".scala"))
+      .map((path: Path) => new String(Files.readAllBytes(path), StandardCharsets.UTF_8))
+      .toSeq
+
+    texts = Seq.fill(copies)(sources).flatten
+  }
+
+  // files are created anew, so they are parsed in the benchmark
+  @Setup(Level.Invocation)
+  def createFiles(): Unit = syncInEdt {
+    val factory = PsiFileFactory.getInstance(fixture.getProject)
+    files = texts.zipWithIndex.map {
+      case (text, index) =>
+        factory.createFileFromText(s"File$index.scala", ScalaLanguage.INSTANCE, text).asInstanceOf[ScalaFile]
+    }
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    if (elapsedNanos > 0)
+      println(s"${texts.size} files on $threads threads: ${builtFiles * 1000000000L / elapsedNanos} files/sec")
+
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  @Benchmark
+  def buildStubTrees(bh: Blackhole): Unit = {
+    val start = System.nanoTime()
+    bh.consume(ParallelStubBuildingTest.buildStubTrees(files, threads))
+    elapsedNanos += System.nanoTime() - start
+    builtFiles += files.size
+  }
+}
@@ -0,0 +1,77 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.stubs
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.util.concurrent.TimeUnit
+
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.stubs.{SerializationManagerEx, Stub}
+import org.jetbrains.plugins.scala.ScalaLanguage
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.parser.ScalaParserDefinition
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Serialization of the stub tree of a file with many members.
+ *
+ * The size of the serialized tree is printed on setup, to compare stub formats.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class StubSerializationBenchmark extends SimpleTestCase {
+
+  @Param(Array("100", "1000"))
+  var members: Int = _
+
+  private var stub: Stub = _
+  private var bytes: Array[Byte] = _
+
+  private def manager = SerializationManagerEx.getInstanceEx
+
+  private def fileText: String = {
+    val builder = new StringBuilder("package bench\n\nclass Members {\n")
+    for (i <- 0 until members) {
+      builder ++= s"  @deprecated def foo$i[T](t: T, xs: Int*)(implicit ev: T => String): Map[String, List[T]] = ???\n"
+      builder ++= s"  val bar$i: Option[(Int, String)] = None\n"
+      builder ++= s"  implicit class Rich$i(private val s: String) extends AnyVal\n"
+    }
+    builder ++= "}\n"
+    builder.result()
+  }
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+    val file = PsiFileFactory.getInstance(fixture.getProject)
+      .createFileFromText("Members.scala", ScalaLanguage.INSTANCE, fileText)
+
+    stub = ScalaParserDefinition.FileNodeType.getBuilder.buildStubTree(file)
+    bytes = serialized(stub)
+    println(s"Serialized stub tree of $members members: ${bytes.length} bytes")
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  private def serialized(stub: Stub): Array[Byte] = {
+    val stream = new ByteArrayOutputStream()
+    manager.serialize(stub, stream)
+    stream.toByteArray
+  }
+
+  @Benchmark
+  def serialize(bh: Blackhole): Unit =
+    bh.consume(serialized(stub))
+
+  @Benchmark
+  def deserialize(bh: Blackhole): Unit =
+    bh.consume(manager.deserialize(new ByteArrayInputStream(bytes)))
+}
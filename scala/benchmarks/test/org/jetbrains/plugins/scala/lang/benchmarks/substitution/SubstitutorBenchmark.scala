@@ -0,0 +1,96 @@
+package org.jetbrains.plugins.scala.lang.benchmarks.substitution
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.openapi.application.ReadAction
+import org.jetbrains.plugins.scala.ScalaFileType
+import org.jetbrains.plugins.scala.base.ScalaLightCodeInsightFixtureTestAdapter
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.benchmarks._
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScClass
+import org.jetbrains.plugins.scala.lang.psi.types.{ScType, api}
+import org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate.ScSubstitutor
+import org.jetbrains.plugins.scala.lang.psi.types.result._
+import org.jetbrains.plugins.scala.project.ProjectContext
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+/**
+ * Application of a substitutor of class type parameters to the types of its members.
+ *
+ * `affected` type mentions the substituted type parameters, `unaffected` doesn't.
+ * Run with `-prof gc` to compare the allocation rate.
+ */
+@BenchmarkMode(Array(Mode.AverageTime))
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+class SubstitutorBenchmark extends ScalaLightCodeInsightFixtureTestAdapter {
+
+  import SubstitutorBenchmark.BatchSize
+
+  @Param(Array("affected", "unaffected"))
+  var typeKind: String = _
+
+  var substitutor: ScSubstitutor = _
+  var followed: ScSubstitutor = _
+  var tpe: ScType = _
+
+  override def getName = "testSubstitution"
+
+  @Setup(Level.Trial)
+  def trialSetup(): Unit = syncInEdt {
+    setUp()
+
+    val file = configureFromFileText(
+      """class Outer[A, B, C] {
+        |  def affected[D](a: A, f: A => Map[B, List[C]]): Either[D, (A, B, Seq[C])] = ???
+        |  def unaffected(s: String, i: Int): Either[String, (Int, List[Option[String]])] = ???
+        |}
+        |""".stripMargin,
+      ScalaFileType.INSTANCE
+    )
+    implicit val projectContext: ProjectContext = getProject
+
+    val clazz = file.depthFirst().collectFirst { case c: ScClass => c }.get
+    val function = clazz.functions.find(_.name == typeKind).get
+
+    substitutor = ScSubstitutor.bind(clazz.typeParameters, Seq(api.Int, api.Boolean, api.Double))
+    followed = substitutor.followed(ScSubstitutor.bind(function.typeParameters, Seq(api.Long)))
+    tpe = function.`type`().get
+  }
+
+  @TearDown(Level.Trial)
+  def trialTearDown(): Unit = syncInEdt {
+    tearDown()
+    scheduleShutdown(200L)
+  }
+
+  //a batch per read action, so the read lock doesn't dominate
+  private def inReadAction(body: => Unit): Unit =
+    ReadAction.run[Throwable](() => {
+      var i = 0
+      while (i < BatchSize) {
+        body
+        i += 1
+      }
+    })
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def substitute(bh: Blackhole): Unit = inReadAction {
+    bh.consume(substitutor(tpe))
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BatchSize)
+  def substituteFollowed(bh: Blackhole): Unit = inReadAction {
+    bh.consume(followed(tpe))
+  }
+}
+
+object SubstitutorBenchmark {
+  final val BatchSize = 1000
+}
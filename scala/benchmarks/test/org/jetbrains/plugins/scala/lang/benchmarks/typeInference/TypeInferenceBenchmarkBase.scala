@@ -2,11 +2,13 @@ package org.jetbrains.plugins.scala.lang.benchmarks.typeInference
 
 import java.util.concurrent.TimeUnit
 
+import com.intellij.openapi.util.registry.Registry
 import com.intellij.psi.PsiManager
 import com.intellij.psi.impl.PsiModificationTrackerImpl
 import org.jetbrains.plugins.scala.lang.benchmarks._
 import org.jetbrains.plugins.scala.lang.psi.api.expr.ScExpression
 import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
+import org.jetbrains.plugins.scala.lang.psi.types.ScTypeInterner
 import org.jetbrains.plugins.scala.lang.typeInference.TypeInferenceTestBase
 import org.openjdk.jmh.annotations._
 import org.openjdk.jmh.infra.Blackhole
@@ -19,6 +21,10 @@ import org.openjdk.jmh.infra.Blackhole
 @Fork(1)
 @State(Scope.Benchmark)
 abstract class TypeInferenceBenchmarkBase(testName: String) extends TypeInferenceTestBase {
+  // run with `-prof gc` to compare the allocation rate
+  @Param(Array("false", "true"))
+  var interning: Boolean = _
+
   var expr: ScExpression = _
   var scalaPsiManager: ScalaPsiManager = _
   var psiModTracker: PsiModificationTrackerImpl = _
@@ -58,11 +64,13 @@ abstract class TypeInferenceBenchmarkBase(testName: String) extends TypeInferenc
   @Setup(Level.Trial)
   def trialSetup(): Unit = syncInEdt {
     setUp()
+    Registry.get(ScTypeInterner.RegistryKey).setValue(interning)
     setupData()
   }
 
   @TearDown(Level.Trial)
   def trialTearDown(): Unit = syncInEdt {
+    Registry.get(ScTypeInterner.RegistryKey).resetToDefault()
     tearDown()
     scheduleShutdown(200L)
   }
@@ -61,8 +61,10 @@ abstract class AbstractCompiler extends Compiler {
     override def startUnit(phase: String, unitPath: String): Unit = {
       if (phase != currentPhase) {
         client.compilationPhase(phase)
+        CompilationProfiler.phaseStarted(phase)
         currentPhase = phase
       }
+      CompilationProfiler.unitStarted()
       client.compilationUnit(unitPath)
     }
 
@@ -1,25 +1,125 @@
 package org.jetbrains.jps.incremental.scala
 package local
 
-import java.lang.ref.SoftReference
-import java.util
-import java.util.Map.Entry
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicLong, LongAdder}
+
+import org.jetbrains.jps.incremental.scala.remote.CacheMetrics
+
+import scala.jdk.CollectionConverters._
 
 /**
+ * Concurrent LRU cache.
+ *
+ *  - lookups of different keys don't block each other
+ *  - a value for a key is computed at most once at a time (other threads requesting the same key wait for it)
+ *  - values are held strongly and evicted when there are more than `capacity` entries
+ *    or the total weight exceeds `maxWeight` (least recently used entries go first)
+ *
+ * @param weigher estimated retained size of a value, re-evaluated on each access
+ *
  * @author Pavel Fatin
  */
-class Cache[K, V](capacity: Int) {
-  private val lock = new Object()
+class Cache[K, V](name: String,
+                  capacity: Int,
+                  maxWeight: Long = Long.MaxValue,
+                  weigher: (K, V) => Long = (_: K, _: V) => 0L) {
+
+  private class Entry {
+    @volatile var value: Option[V] = None
+    @volatile var weight = 0L
+    @volatile var lastAccess = 0L
+  }
+
+  private val map = new ConcurrentHashMap[K, Entry]()
+  private val clock = new AtomicLong(0)
+  private val totalWeight = new AtomicLong(0)
+  private val evictionLock = new Object()
+
+  private val hits = new LongAdder
+  private val misses = new LongAdder
+  private val loadTimeNanos = new LongAdder
+  private val evictions = new LongAdder
+
+  def getOrUpdate(key: K)(value: => V): V = {
+    val entry = map.computeIfAbsent(key, _ => new Entry)
+    entry.lastAccess = clock.incrementAndGet()
+
+    val result = entry.value match {
+      case Some(v) =>
+        hits.increment()
+        updateWeight(entry, weigher(key, v))
+        v
+      case None =>
+        entry.synchronized {
+          entry.value match {
+            case Some(v) =>
+              hits.increment()
+              v
+            case None =>
+              misses.increment()
+              val start = System.nanoTime()
+              val v = try value catch {
+                case e: Throwable =>
+                  map.remove(key, entry)
+                  throw e
+              }
+              loadTimeNanos.add(System.nanoTime() - start)
+              entry.value = Some(v)
+              updateWeight(entry, weigher(key, v))
+              v
+          }
+        }
+    }
 
-  private val map = new util.LinkedHashMap[K, SoftReference[V]](capacity, 0.75F, true) {
-    override def removeEldestEntry(eldest: Entry[K, SoftReference[V]]): Boolean = size > capacity
+    evictIfNeeded()
+    result
   }
 
-  def getOrUpdate(key: K)(value: => V): V = lock.synchronized {
-    Option(map.get(key)).flatMap(reference => Option(reference.get())).getOrElse {
-      val v = value
-      map.put(key, new SoftReference(v))
-      v
+  def invalidate(key: K): Unit = {
+    val entry = map.remove(key)
+    if (entry != null)
+      totalWeight.addAndGet(-entry.weight)
+  }
+
+  def metrics: CacheMetrics = CacheMetrics(
+    name = name,
+    size = map.size,
+    weight = totalWeight.get,
+    hits = hits.sum,
+    misses = misses.sum,
+    loadTimeMs = loadTimeNanos.sum / 1000000,
+    evictions = evictions.sum
+  )
+
+  private def updateWeight(entry: Entry, weight: Long): Unit = {
+    val previous = entry.weight
+    if (previous != weight) {
+      entry.weight = weight
+      totalWeight.addAndGet(weight - previous)
+    }
+  }
+
+  private def evictIfNeeded(): Unit =
+    if (isOverLimit) evictionLock.synchronized {
+      while (isOverLimit && evictEldest()) {}
+    }
+
+  private def isOverLimit: Boolean =
+    map.size > capacity || totalWeight.get > maxWeight
+
+  // the number of entries is small (hundreds at most), so a linear scan is cheaper than maintaining an access order
+  private def evictEldest(): Boolean = {
+    val loaded = map.entrySet.asScala.filter(_.getValue.value.isDefined)
+    if (loaded.size <= 1) false
+    else {
+      val eldest = loaded.minBy(_.getValue.lastAccess)
+      val removed = map.remove(eldest.getKey, eldest.getValue)
+      if (removed) {
+        totalWeight.addAndGet(-eldest.getValue.weight)
+        evictions.increment()
+      }
+      removed
     }
   }
 }
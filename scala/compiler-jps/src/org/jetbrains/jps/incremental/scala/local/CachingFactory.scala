@@ -3,6 +3,7 @@ package local
 
 import java.io.File
 
+import org.jetbrains.jps.incremental.scala.remote.CacheMetrics
 import org.jetbrains.plugins.scala.compiler.data.{CompilerData, CompilerJars, SbtData}
 import sbt.internal.inc.AnalyzingCompiler
 import xsbti.compile.AnalysisStore
@@ -11,11 +12,16 @@ import xsbti.compile.AnalysisStore
  * @author Pavel Fatin
  */
 class CachingFactory(delegate: CompilerFactory, compilersLimit: Int, analysisLimit: Int, scalacLimit: Int) extends CompilerFactory {
-  private val compilerCache = new Cache[CompilerData, Compiler](compilersLimit)
+  private val compilerCache = new Cache[CompilerData, Compiler]("compilers", compilersLimit)
 
-  private val analysisCache = new Cache[File, AnalysisStore](analysisLimit)
+  private val analysisCache = new Cache[File, AnalysisStore](
+    "analysis",
+    analysisLimit,
+    CachingFactory.AnalysisMaxWeight,
+    (file, _) => CachingFactory.estimatedAnalysisSize(file)
+  )
 
-  private val scalacCache = new Cache[(SbtData, Option[CompilerJars]), Option[AnalyzingCompiler]](scalacLimit)
+  private val scalacCache = new Cache[(SbtData, Option[CompilerJars]), Option[AnalyzingCompiler]]("scalac", scalacLimit)
 
   override def createCompiler(compilerData: CompilerData, client: Client, fileToStore: File => AnalysisStore): Compiler = {
     val cachingFileToStore = (file: File) => analysisCache.getOrUpdate(file)(fileToStore(file))
@@ -30,4 +36,21 @@ class CachingFactory(delegate: CompilerFactory, compilersLimit: Int, analysisLim
       delegate.getScalac(sbtData, compilerJars, client)
     }
   }
+
+  def cacheMetrics: Seq[CacheMetrics] =
+    Seq(compilerCache.metrics, analysisCache.metrics, scalacCache.metrics)
+}
+
+object CachingFactory {
+
+  /** Loaded analysis takes several times more memory than its (compressed) file */
+  private val AnalysisSizeFactor = 5
+
+  private val AnalysisMaxWeight: Long =
+    Option(System.getProperty("scala.compile.server.analysis.cache.max.mb"))
+      .map(_.toLong * 1024 * 1024)
+      .getOrElse(Runtime.getRuntime.maxMemory / 4)
+
+  private[local] def estimatedAnalysisSize(file: File): Long =
+    file.length * AnalysisSizeFactor
 }
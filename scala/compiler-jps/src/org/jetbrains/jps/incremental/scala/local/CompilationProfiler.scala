@@ -0,0 +1,132 @@
+package org.jetbrains.jps.incremental.scala.local
+
+import java.lang.management.ManagementFactory
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.LongAdder
+
+import org.jetbrains.jps.incremental.scala.remote.{CompilationMetrics, PhaseMetrics}
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Collects per-phase compilation statistics.
+ *
+ * A compilation is profiled on the thread that runs it: [[profile]] installs a thread-local recorder,
+ * and the compile progress callbacks ([[AbstractCompiler.ClientProgress]]) report the phase changes to it.
+ */
+object CompilationProfiler {
+
+  private class PhaseCounters {
+    val wallTimeNanos = new LongAdder
+    val cpuTimeNanos = new LongAdder
+    val allocatedBytes = new LongAdder
+    val units = new LongAdder
+  }
+
+  private val phases = new ConcurrentHashMap[String, PhaseCounters]()
+  private val compilations = new LongAdder
+  private val wallTimeNanos = new LongAdder
+  private val queueTimeNanos = new LongAdder
+  private val units = new LongAdder
+
+  private val threadBean = ManagementFactory.getThreadMXBean match {
+    case bean: com.sun.management.ThreadMXBean if bean.isThreadAllocatedMemorySupported => Some(bean)
+    case _ => None
+  }
+
+  private class Recorder {
+    private val threadId = Thread.currentThread.getId
+    private var phase: String = _
+    private var phaseStartNanos = 0L
+    private var phaseStartCpu = 0L
+    private var phaseStartAllocated = 0L
+    private var phaseUnits = 0L
+    // every phase visits each unit of the run, so the busiest phase gives the number of distinct units
+    var compilationUnits = 0L
+
+    def phaseStarted(name: String): Unit = {
+      finishPhase()
+      phase = name
+      phaseStartNanos = System.nanoTime()
+      phaseStartCpu = cpuTime
+      phaseStartAllocated = allocatedBytes
+      phaseUnits = 0
+    }
+
+    def unitStarted(): Unit =
+      phaseUnits += 1
+
+    def finishPhase(): Unit =
+      if (phase != null) {
+        val counters = phases.computeIfAbsent(phase, _ => new PhaseCounters)
+        counters.wallTimeNanos.add(System.nanoTime() - phaseStartNanos)
+        counters.cpuTimeNanos.add(cpuTime - phaseStartCpu)
+        counters.allocatedBytes.add(allocatedBytes - phaseStartAllocated)
+        counters.units.add(phaseUnits)
+        compilationUnits = compilationUnits max phaseUnits
+        phase = null
+      }
+
+    private def cpuTime: Long =
+      if (ManagementFactory.getThreadMXBean.isCurrentThreadCpuTimeSupported) ManagementFactory.getThreadMXBean.getCurrentThreadCpuTime
+      else 0L
+
+    private def allocatedBytes: Long =
+      threadBean.fold(0L)(_.getThreadAllocatedBytes(threadId))
+  }
+
+  private val currentRecorder = new ThreadLocal[Recorder]
+  private val commandReceivedNanos = new ThreadLocal[java.lang.Long]
+
+  /** Marks the moment the current thread received a compile command, see [[CompilationMetrics.queueTimeMs]] */
+  def commandReceived(): Unit =
+    commandReceivedNanos.set(System.nanoTime())
+
+  def profile[T](body: => T): T = {
+    val start = System.nanoTime()
+    Option(commandReceivedNanos.get).foreach { received =>
+      queueTimeNanos.add(start - received)
+      commandReceivedNanos.remove()
+    }
+
+    val recorder = new Recorder
+    currentRecorder.set(recorder)
+    try body
+    finally {
+      recorder.finishPhase()
+      currentRecorder.remove()
+      compilations.increment()
+      units.add(recorder.compilationUnits)
+      wallTimeNanos.add(System.nanoTime() - start)
+    }
+  }
+
+  def phaseStarted(name: String): Unit =
+    Option(currentRecorder.get).foreach(_.phaseStarted(name))
+
+  def unitStarted(): Unit =
+    Option(currentRecorder.get).foreach(_.unitStarted())
+
+  def metrics(parallelism: Int): CompilationMetrics = {
+    val gcBeans = ManagementFactory.getGarbageCollectorMXBeans.asScala
+    val phaseMetrics = phases.asScala.toSeq.map { case (name, counters) =>
+      PhaseMetrics(
+        name = name,
+        wallTimeMs = counters.wallTimeNanos.sum / 1000000,
+        cpuTimeMs = counters.cpuTimeNanos.sum / 1000000,
+        allocatedBytes = counters.allocatedBytes.sum,
+        units = counters.units.sum
+      )
+    }
+    CompilationMetrics(
+      compilations = compilations.sum,
+      parallelism = parallelism,
+      wallTimeMs = wallTimeNanos.sum / 1000000,
+      queueTimeMs = queueTimeNanos.sum / 1000000,
+      units = units.sum,
+      phases = phaseMetrics.sortBy(-_.wallTimeMs),
+      gcCount = gcBeans.map(_.getCollectionCount.max(0L)).sum,
+      gcTimeMs = gcBeans.map(_.getCollectionTime.max(0L)).sum
+    )
+  }
+}
@@ -2,6 +2,7 @@ package org.jetbrains.jps.incremental.scala
 package local
 
 import org.jetbrains.jps.incremental.scala.local.CompilerFactoryImpl._
+import org.jetbrains.jps.incremental.scala.remote.CacheMetrics
 import org.jetbrains.plugins.scala.compiler.IncrementalityType
 import org.jetbrains.plugins.scala.compiler.data.{CompilerData, CompilerJars, SbtData}
 import sbt.internal.inc._
@@ -13,6 +14,8 @@ import xsbti.compile.{ScalaInstance => _, _}
 
 import java.io.File
 import java.net.URLClassLoader
+import java.nio.file.{FileAlreadyExistsException, Files, StandardCopyOption}
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * @author Pavel Fatin
@@ -77,10 +80,12 @@ class CompilerFactoryImpl(sbtData: SbtData) extends CompilerFactory {
 
 object CompilerFactoryImpl {
 
-  private val scalaInstanceCache = new Cache[CompilerJars, ScalaInstance](3)
+  private val scalaInstanceCache = new Cache[CompilerJars, ScalaInstance]("scala instances", 3)
 
   private var classLoadersMap = Map[Seq[File], ClassLoader]()
 
+  def scalaInstanceCacheMetrics: CacheMetrics = scalaInstanceCache.metrics
+
   def getOrCreateScalaInstance(jars: CompilerJars): ScalaInstance =
     scalaInstanceCache.getOrUpdate(jars)(createScalaInstance(jars))
 
@@ -151,22 +156,53 @@ object CompilerFactoryImpl {
       val interfaceId = s"compiler-interface-$scalaVersion-$javaClassVersion"
       val targetJar = new File(home, interfaceId + ".jar")
 
-      if (!targetJar.exists) {
+      getOrCreateAtomically(targetJar) { tempJar =>
         client.foreach(_.progress(s"Compiling Scalac $scalaVersion interface"))
-        home.mkdirs()
         val raw = new RawCompiler(scalaInstance, ClasspathOptionsUtil.auto, NullLogger)
         AnalyzingCompiler.compileSources(
           Seq(sourceJar.toPath),
-          targetJar.toPath,
+          tempJar.toPath,
           interfaceJars.map(_.toPath),
           interfaceId,
           raw,
           NullLogger
         )
       }
+    }
+  }
 
-      targetJar
+  private val targetLocks = new ConcurrentHashMap[File, AnyRef]
+
+  /**
+   * Compilations with different compiler jars can request the same target at the same time,
+   * so the target is created once under a lock per target. It's created in a temporary file in the same directory
+   * and moved to its place only when it's complete, so it's never seen partially written,
+   * by this or by another process.
+   */
+  private[local] def getOrCreateAtomically(target: File)(create: File => Unit): File = {
+    if (target.exists)
+      return target
+
+    val lock = targetLocks.computeIfAbsent(target.getAbsoluteFile, _ => new Object)
+    lock.synchronized {
+      if (!target.exists) {
+        val directory = target.getAbsoluteFile.getParentFile
+        directory.mkdirs()
+        val temp = Files.createTempFile(directory.toPath, target.getName, ".tmp")
+        try {
+          Files.delete(temp)
+          create(temp.toFile)
+          try Files.move(temp, target.toPath, StandardCopyOption.ATOMIC_MOVE)
+          catch {
+            // created by another process in the meantime
+            case _: FileAlreadyExistsException =>
+          }
+        } finally {
+          Files.deleteIfExists(temp)
+        }
+      }
     }
+    target
   }
 
   private def isBefore_2_11(version: String): Boolean = version.startsWith("2.10") || !version.startsWith("2.1")
@@ -1,27 +1,172 @@
 package org.jetbrains.jps.incremental.scala.local
 
-import java.util.concurrent.ConcurrentHashMap
+import java.io._
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.{Files, Path, StandardCopyOption}
+import java.util.zip.ZipFile
 
+import org.jetbrains.jps.incremental.Utils
+import org.jetbrains.jps.incremental.scala.local.zinc.{Utils => ZincUtils}
+import org.jetbrains.jps.incremental.scala.remote.CacheMetrics
 import sbt.internal.inc.Locate
 import xsbti.VirtualFile
 import xsbti.compile.DefinesClass
 
+import scala.util.Using
+
+/**
+ * Caches class names defined in classpath jars.
+ *
+ * Entries are keyed by the jar path and validated against the jar timestamp and size,
+ * so only the changed jars are re-scanned. The validation is done at most once per compilation
+ * (see [[invalidateCacheIfRequired]]). The cache is bounded by the estimated size of the class name sets.
+ *
+ * Class names of large library jars can optionally be persisted between the compile server restarts
+ * (`scala.compile.server.defines.class.persist=true`).
+ *
+ * Directories are not cached, [[Locate.definesClass]] checks the file system on each lookup for them.
+ */
 object DefinesClassCache {
-  private var cacheStamp: Long = -1L
-  private val cache = new ConcurrentHashMap[VirtualFile, DefinesClass]()
 
-  def definesClassFor(file: VirtualFile): DefinesClass = {
-    Option(cache.get(file)).getOrElse {
-      val newDefines = Locate.definesClass(file)
-      cache.put(file, newDefines)
-      newDefines
+  private final case class JarStamp(lastModified: Long, size: Long)
+
+  private final class JarEntry(val stamp: JarStamp, val classNames: java.util.Set[String]) {
+    @volatile var validatedAt: Long = -1L
+
+    val definesClass: DefinesClass = classNames.contains(_)
+
+    lazy val estimatedSize: Long = {
+      var result = 64L
+      classNames.forEach(name => result += 48 + 2 * name.length)
+      result
     }
   }
 
-  def invalidateCacheIfRequired(stamp: Long): Unit = synchronized {
-    if (stamp != cacheStamp)
-      cache.clear()
+  private val MaxWeight: Long =
+    Option(System.getProperty("scala.compile.server.defines.class.cache.max.mb")).map(_.toLong).getOrElse(64L) * 1024 * 1024
+
+  private val PersistenceEnabled: Boolean =
+    java.lang.Boolean.getBoolean("scala.compile.server.defines.class.persist")
+
+  private val MinPersistedJarSize = 1024 * 1024
+
+  private val PersistedFormatVersion = 1
+
+  @volatile private var cacheStamp: Long = -1L
 
+  private val cache = new Cache[Path, JarEntry]("defines class", Int.MaxValue, MaxWeight, (_, entry) => entry.estimatedSize)
+
+  def definesClassFor(file: VirtualFile): DefinesClass = {
+    val path = ZincUtils.virtualFileConverter.toPath(file)
+    if (!isJar(path))
+      Locate.definesClass(file)
+    else {
+      val entry = cache.getOrUpdate(path)(loadJar(path, stampOf(path)))
+      if (entry.validatedAt == cacheStamp)
+        entry.definesClass
+      else {
+        val stamp = stampOf(path)
+        val validEntry =
+          if (entry.stamp == stamp) entry
+          else {
+            cache.invalidate(path)
+            cache.getOrUpdate(path)(loadJar(path, stamp))
+          }
+        validEntry.validatedAt = cacheStamp
+        validEntry.definesClass
+      }
+    }
+  }
+
+  def invalidateCacheIfRequired(stamp: Long): Unit =
     cacheStamp = stamp
+
+  def metrics: CacheMetrics = cache.metrics
+
+  private def isJar(path: Path): Boolean = {
+    val name = path.getFileName.toString
+    (name.endsWith(".jar") || name.endsWith(".zip")) && Files.isRegularFile(path)
+  }
+
+  private def stampOf(path: Path): JarStamp = {
+    val attributes = Files.readAttributes(path, classOf[BasicFileAttributes])
+    JarStamp(attributes.lastModifiedTime.toMillis, attributes.size)
+  }
+
+  private def loadJar(path: Path, stamp: JarStamp): JarEntry = {
+    val persisted = if (shouldPersist(stamp)) readPersisted(path, stamp) else None
+    val entry = persisted.getOrElse {
+      val scanned = new JarEntry(stamp, scanJar(path))
+      if (shouldPersist(stamp))
+        writePersisted(path, scanned)
+      scanned
+    }
+    entry.validatedAt = cacheStamp
+    entry
+  }
+
+  // the same class names as in sbt.internal.inc.Locate.definesClass, except that non-class entries are skipped
+  private def scanJar(path: Path): java.util.Set[String] = {
+    val classNames = new java.util.HashSet[String]()
+    Using.resource(new ZipFile(path.toFile)) { zip =>
+      val entries = zip.entries()
+      while (entries.hasMoreElements) {
+        val name = entries.nextElement().getName
+        if (name.endsWith(".class"))
+          classNames.add(name.stripSuffix(".class").replace('/', '.'))
+      }
+    }
+    classNames
+  }
+
+  private def shouldPersist(stamp: JarStamp): Boolean =
+    PersistenceEnabled && stamp.size >= MinPersistedJarSize
+
+  private def persistedFile(path: Path): File = {
+    val root = new File(Utils.getSystemRoot, "scala-defines-class")
+    val name = path.getFileName.toString + "-" + Integer.toHexString(path.toAbsolutePath.toString.hashCode)
+    new File(root, name)
+  }
+
+  private def readPersisted(path: Path, stamp: JarStamp): Option[JarEntry] = {
+    val file = persistedFile(path)
+    if (!file.exists) None
+    else try Using.resource(new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) { in =>
+      val valid =
+        in.readInt() == PersistedFormatVersion &&
+          in.readUTF() == path.toAbsolutePath.toString &&
+          JarStamp(in.readLong(), in.readLong()) == stamp
+      if (!valid) None
+      else {
+        val count = in.readInt()
+        val classNames = new java.util.HashSet[String](count * 4 / 3 + 1)
+        for (_ <- 0 until count)
+          classNames.add(in.readUTF())
+        Some(new JarEntry(stamp, classNames))
+      }
+    } catch {
+      case _: IOException => None
+    }
+  }
+
+  private def writePersisted(path: Path, entry: JarEntry): Unit = {
+    val file = persistedFile(path)
+    val temp = new File(file.getPath + ".tmp")
+    try {
+      file.getParentFile.mkdirs()
+      Using.resource(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) { out =>
+        out.writeInt(PersistedFormatVersion)
+        out.writeUTF(path.toAbsolutePath.toString)
+        out.writeLong(entry.stamp.lastModified)
+        out.writeLong(entry.stamp.size)
+        out.writeInt(entry.classNames.size)
+        entry.classNames.forEach(out.writeUTF(_))
+      }
+      Files.move(temp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    } catch {
+      // it's just a cache
+      case _: IOException =>
+        temp.delete()
+    }
   }
 }
@@ -140,7 +140,7 @@ class IdeClientIdea(compilerName: String,
       packageObjectsData.add(source, item.packObjectSrc)
     }
 
-    packageObjectsData.save(context)
+    packageObjectsData.save()
   }
 
   private case class PackageObjectBaseClass(packObjectSrc: File, packageName: String, baseClassName: String)
@@ -2,6 +2,7 @@ package org.jetbrains.jps.incremental.scala.local
 
 import com.intellij.openapi.diagnostic.{Logger => JpsLogger}
 import org.jetbrains.jps.incremental.ModuleLevelBuilder.ExitCode
+import org.jetbrains.jps.incremental.scala.remote.CacheMetrics
 import org.jetbrains.jps.incremental.scala.{Client, DelegateClient, Server}
 import org.jetbrains.plugins.scala.compiler.data.{CompilationData, CompilerData, SbtData}
 import sbt.internal.inc.FileAnalysisStore
@@ -18,7 +19,7 @@ final class LocalServer extends Server {
 
   import LocalServer._
 
-  private var cachedCompilerFactory: Option[CompilerFactory] = None
+  @volatile private var cachedCompilerFactory: Option[CompilerFactory] = None
   private val lock = new Object()
 
   override def compile(
@@ -36,8 +37,11 @@ final class LocalServer extends Server {
     client: Client
   ): ExitCode = {
     val collectingSourcesClient = new DelegateClient(client) with CollectingSourcesClient
-    val compiler = try lock.synchronized {
-      val compilerFactory = compilerFactoryFrom(sbtData, compilerData, client)
+    compilerData.compilerJars.foreach(WarmStart.compilerUsed)
+    WarmStart.analysisUsed(compilationData.cacheFile)
+    val compiler = try {
+      // compiler factory caches are concurrent, so only the factory instantiation is guarded
+      val compilerFactory = lock.synchronized(compilerFactoryFrom(sbtData, compilerData, client))
 
       collectingSourcesClient.progress("Instantiating compiler...")
       compilerFactory.createCompiler(compilerData, collectingSourcesClient, LocalServer.createAnalysisStore)
@@ -49,13 +53,23 @@ final class LocalServer extends Server {
 
     if (!collectingSourcesClient.isCanceled) {
       client.compilationStart()
-      compiler.compile(compilationData, collectingSourcesClient)
+      CompilationProfiler.profile {
+        compiler.compile(compilationData, collectingSourcesClient)
+      }
       client.compilationEnd(collectingSourcesClient.sources ++ compilationData.sources)
     }
 
     ExitCode.OK
   }
 
+  def cacheMetrics: Seq[CacheMetrics] = {
+    val factoryCaches = cachedCompilerFactory.toSeq.flatMap {
+      case caching: CachingFactory => caching.cacheMetrics
+      case _ => Seq.empty
+    }
+    factoryCaches :+ CompilerFactoryImpl.scalaInstanceCacheMetrics :+ DefinesClassCache.metrics
+  }
+
   // NOTE: `LocalServer` can be used both in JPS process (when can't connect to the scala compile server)
   // and in ScalaCompileServer process. We need to use client.internalInfo instead of just Log,
   // because when run in SCS `Log.info` doesn't do anything (it uses DefaultLogger, which is NoOp)
@@ -76,10 +90,11 @@ final class LocalServer extends Server {
 }
 
 object LocalServer {
-  private def createAnalysisStore(cacheFile: File): AnalysisStore = {
-    val store = FileAnalysisStore.binary(cacheFile)
-    AnalysisStore.getThreadSafeStore(AnalysisStore.getCachedStore(store))
-  }
+  private[local] def createAnalysisStore(cacheFile: File): AnalysisStore =
+    WarmStart.takePreloadedStore(cacheFile).getOrElse {
+      val store = FileAnalysisStore.binary(cacheFile)
+      AnalysisStore.getThreadSafeStore(AnalysisStore.getCachedStore(store))
+    }
 
   private trait CollectingSourcesClient extends Client {
 
@@ -2,53 +2,168 @@ package org.jetbrains.jps.incremental.scala
 package local
 
 import java.io._
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.attribute.BasicFileAttributes
+import java.nio.file.{Files, NoSuchFileException, StandardCopyOption, StandardOpenOption}
+import java.nio.{BufferUnderflowException, ByteBuffer}
+import java.util.concurrent.ConcurrentHashMap
 
 import org.jetbrains.jps.incremental.CompileContext
 import org.jetbrains.jps.incremental.messages.{BuildMessage, CompilerMessage}
 
 import scala.collection.mutable
+import scala.jdk.CollectionConverters._
 import scala.util.Using
 
 /**
+  * Dependencies between package objects and the sources of their base classes.
+  *
+  * The data is persisted as an append-only log of records (see [[PackageObjectsData.Record]]),
+  * paths are written once and then referenced by ids. On each [[save]] only the pairs added since
+  * the previous save are appended. The log is loaded lazily on the first access and
+  * is compacted when it contains too many stale records.
+  *
+  * All methods are thread-safe, the same instance is shared by the modules compiled in parallel.
+  * The log can also be written by another process (the build process and the compile server),
+  * so it's read and written under a file lock, and the records written by the other process since
+  * the previous save are read before appending, so that path ids are never reused.
+  *
   * @author Nikolay.Tropin
   */
-class PackageObjectsData extends Serializable {
+class PackageObjectsData private[local](logFile: File) {
 
-  private val baseSourceToPackageObjects = mutable.HashMap[File, Set[File]]()
-  private val packageObjectToBaseSources = mutable.HashMap[File, Set[File]]()
+  import PackageObjectsData._
 
-  def add(baseSource: File, packageObject: File): Unit = synchronized {
-    baseSourceToPackageObjects.update(baseSource, baseSourceToPackageObjects.getOrElse(baseSource, Set.empty) + packageObject)
-    packageObjectToBaseSources.update(packageObject, packageObjectToBaseSources.getOrElse(packageObject, Set.empty) + baseSource)
+  private val lock = new Object
+
+  private val lockFile = new File(logFile.getPath + ".lock")
+
+  private lazy val state: State = withFileLock {
+    val state = new State
+    if (logFile.exists)
+      load(logFile, state)
+    state.logVersion = versionOf(logFile)
+    state
   }
 
-  def invalidatedPackageObjects(sources: Seq[File]): Set[File] = synchronized {
-    sources.toSet.flatMap((f: File) => baseSourceToPackageObjects.getOrElse(f, Set.empty)) -- sources
+  // guarded by `lock`
+  private val pending = mutable.ArrayBuffer.empty[(File, File)]
+  private var cleared = false
+
+  def add(baseSource: File, packageObject: File): Unit = {
+    if (state.add(baseSource, packageObject)) lock.synchronized {
+      pending += ((baseSource, packageObject))
+    }
   }
 
-  def clear(): Unit = synchronized {
-    baseSourceToPackageObjects.clear()
-    packageObjectToBaseSources.clear()
+  def invalidatedPackageObjects(sources: Seq[File]): Set[File] = {
+    val sourceSet = sources.toSet
+    sourceSet.flatMap(state.packageObjectsOf) -- sourceSet
   }
 
-  def save(context: CompileContext): Unit = {
-    val file = PackageObjectsData.storageFile(context)
-    PackageObjectsData.synchronized {
-      Using.resource(new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) { stream =>
-        stream.writeObject(this)
-        stream.flush()
+  def clear(): Unit = lock.synchronized {
+    state.clear()
+    pending.clear()
+    cleared = true
+  }
+
+  def save(): Unit =
+    lock.synchronized {
+      val state = this.state // loaded under its own file lock, which can't be nested
+      withFileLock {
+        if (!cleared && versionOf(logFile) != state.logVersion)
+          reloadWrittenByOthers()
+
+        if (cleared || !logFile.exists || state.needsCompaction)
+          writeSnapshot(logFile)
+        else if (pending.nonEmpty)
+          append(logFile, pending.toSeq)
+        state.logVersion = versionOf(logFile)
       }
+      pending.clear()
+      cleared = false
+    }
+
+  private def reloadWrittenByOthers(): Unit = {
+    val written = new State
+    if (logFile.exists)
+      load(logFile, written)
+    state.mergeWritten(written)
+  }
+
+  private def withFileLock[T](body: => T): T = {
+    lockFile.getParentFile.mkdirs()
+    Using.resource(FileChannel.open(lockFile.toPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) { channel =>
+      val fileLock = channel.lock()
+      try body
+      finally fileLock.release()
     }
   }
+
+  private def append(file: File, pairs: Seq[(File, File)]): Unit =
+    Using.resource(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) { out =>
+      pairs.foreach { case (baseSource, packageObject) =>
+        writePair(out, state, baseSource, packageObject)
+      }
+    }
+
+  private def writeSnapshot(file: File): Unit = {
+    val temp = new File(file.getPath + ".tmp")
+    val snapshot = new State
+    Using.resource(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) { out =>
+      out.writeInt(Magic)
+      out.writeInt(FormatVersion)
+      state.pairs.foreach { case (baseSource, packageObject) =>
+        snapshot.add(baseSource, packageObject)
+        writePair(out, snapshot, baseSource, packageObject)
+      }
+    }
+    Files.move(temp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+    state.resetIds(snapshot)
+  }
+
+  private def writePair(out: DataOutputStream, ids: State, baseSource: File, packageObject: File): Unit = {
+    val baseId = writePathIfNew(out, ids, baseSource)
+    val packageObjectId = writePathIfNew(out, ids, packageObject)
+    out.writeByte(Record.Pair)
+    out.writeInt(baseId)
+    out.writeInt(packageObjectId)
+    ids.recordWritten()
+  }
+
+  private def writePathIfNew(out: DataOutputStream, ids: State, file: File): Int =
+    ids.pathId(file) match {
+      case Some(id) => id
+      case None =>
+        val id = ids.newPathId(file)
+        val bytes = file.getPath.getBytes(StandardCharsets.UTF_8)
+        out.writeByte(Record.Path)
+        out.writeInt(id)
+        out.writeInt(bytes.length)
+        out.write(bytes)
+        id
+    }
 }
 
 object PackageObjectsData {
 
   val packageObjectClassName: String = "package$"
 
-  private val fileName = "packageObjects.dat"
+  private val fileName = "packageObjects.log"
+
+  /** Storage of the previous versions (a serialized object graph), is removed on the first access */
+  private val legacyFileName = "packageObjects.dat"
+
+  private val Magic = 0x504F4244 // "POBD"
+  private val FormatVersion = 1
 
-  private val instances = mutable.HashMap[File, PackageObjectsData]()
+  private object Record {
+    final val Path = 1
+    final val Pair = 2
+  }
+
+  private val instances = new ConcurrentHashMap[File, PackageObjectsData]()
 
   private def storageFile(context: CompileContext): File = {
     val storageRoot = context.getProjectDescriptor.dataManager.getDataPaths.getDataStorageRoot
@@ -56,27 +171,122 @@ object PackageObjectsData {
   }
 
   def getFor(context: CompileContext): PackageObjectsData = {
-    def warning(message: String): Unit = {
-      context.processMessage(new CompilerMessage("scala", BuildMessage.Kind.WARNING, message))
+    val file = storageFile(context)
+    instances.computeIfAbsent(file, { _ =>
+      val legacyFile = new File(file.getParentFile, legacyFileName)
+      if (legacyFile.exists) {
+        context.processMessage(new CompilerMessage("scala", BuildMessage.Kind.INFO, "Package objects dependencies storage format has changed, the old data is discarded"))
+        legacyFile.delete()
+      }
+      new PackageObjectsData(file)
+    })
+  }
+
+  private def load(file: File, state: State): Unit = {
+    try {
+      // not memory-mapped: on Windows a mapped file can't be replaced by the compacted log until it's unmapped by GC
+      val buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath))
+      if (buffer.getInt() != Magic || buffer.getInt() != FormatVersion)
+        throw new IOException("unknown format")
+
+      val paths = mutable.HashMap.empty[Int, File]
+      while (buffer.hasRemaining) {
+        buffer.get().toInt match {
+          case Record.Path =>
+            val id = buffer.getInt()
+            paths.update(id, new File(readString(buffer)))
+          case Record.Pair =>
+            val baseSource = paths(buffer.getInt())
+            val packageObject = paths(buffer.getInt())
+            state.add(baseSource, packageObject)
+            state.recordWritten()
+          case record =>
+            throw new IOException(s"unknown record: $record")
+        }
+      }
+      paths.foreach { case (id, path) => state.restorePathId(path, id) }
+    } catch {
+      // a truncated tail (e.g. the process was killed during the append) or a corrupted file:
+      // keep what was read, the next save rewrites the log
+      case _: IOException | _: BufferUnderflowException | _: NoSuchElementException =>
+        state.invalidateLog()
+    }
+  }
+
+  /** Changes when the log is appended or replaced by a compacted one */
+  private def versionOf(file: File): Option[(Long, Long, AnyRef)] =
+    try {
+      val attributes = Files.readAttributes(file.toPath, classOf[BasicFileAttributes])
+      Some((attributes.size, attributes.lastModifiedTime.toMillis, attributes.fileKey))
+    } catch {
+      case _: NoSuchFileException => None
     }
 
-    def tryToReadData(file: File): PackageObjectsData =
-      synchronized {
-        Using(new ObjectInputStream(new BufferedInputStream(new FileInputStream(file)))) { stream =>
-          stream.readObject().asInstanceOf[PackageObjectsData]
-        }.recover {
-          case e: Exception =>
-            warning(s"Could not read data about package objects dependencies: \n${e.getMessage}")
-            file.delete()
-            new PackageObjectsData()
-        }.get
+  private def readString(buffer: ByteBuffer): String = {
+    val bytes = new Array[Byte](buffer.getInt())
+    buffer.get(bytes)
+    new String(bytes, StandardCharsets.UTF_8)
+  }
+
+  private class State {
+    private val baseSourceToPackageObjects = new ConcurrentHashMap[File, java.util.Set[File]]()
+    private val pathIds = new ConcurrentHashMap[File, Integer]()
+
+    @volatile private var writtenRecords = 0
+    @volatile private var logInvalid = false
+
+    // the version of the log file, which this state is in sync with, guarded by the file lock
+    @volatile var logVersion: Option[(Long, Long, AnyRef)] = None
+
+    /** @return true if the pair is new */
+    def add(baseSource: File, packageObject: File): Boolean =
+      baseSourceToPackageObjects
+        .computeIfAbsent(baseSource, _ => ConcurrentHashMap.newKeySet[File]())
+        .add(packageObject)
+
+    def packageObjectsOf(baseSource: File): Set[File] =
+      Option(baseSourceToPackageObjects.get(baseSource)).fold(Set.empty[File])(_.asScala.toSet)
+
+    def pairs: Seq[(File, File)] =
+      baseSourceToPackageObjects.asScala.toSeq.flatMap { case (baseSource, packageObjects) =>
+        packageObjects.asScala.map(baseSource -> _)
       }
 
-    def getOrLoadInstance(file: File): PackageObjectsData =
-      instances.getOrElseUpdate(file, tryToReadData(file))
+    def clear(): Unit = {
+      baseSourceToPackageObjects.clear()
+      logInvalid = true
+    }
+
+    def pathId(file: File): Option[Int] = Option(pathIds.get(file)).map(_.intValue)
+
+    def newPathId(file: File): Int = {
+      val id = pathIds.size
+      pathIds.put(file, id)
+      id
+    }
+
+    def restorePathId(file: File, id: Int): Unit = pathIds.put(file, id)
+
+    def recordWritten(): Unit = writtenRecords += 1
 
-    Option(storageFile(context))
-      .filter(_.exists)
-      .fold(new PackageObjectsData())(getOrLoadInstance)
+    def invalidateLog(): Unit = logInvalid = true
+
+    def resetIds(snapshot: State): Unit = {
+      pathIds.clear()
+      pathIds.putAll(snapshot.pathIds)
+      writtenRecords = snapshot.writtenRecords
+      logInvalid = false
+    }
+
+    /** Takes the pairs and the path ids of the log, which was written by another process */
+    def mergeWritten(written: State): Unit = {
+      written.pairs.foreach { case (baseSource, packageObject) => add(baseSource, packageObject) }
+      resetIds(written)
+      logInvalid = written.logInvalid
+    }
+
+    /** the log contains records of removed pairs or unreadable data */
+    def needsCompaction: Boolean =
+      logInvalid || writtenRecords > 2 * baseSourceToPackageObjects.values.asScala.map(_.size).sum + 1000
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,185 @@
+package org.jetbrains.jps.incremental.scala
+package local
+
+import java.io._
+import java.lang.ref.SoftReference
+import java.nio.file.{Files, StandardCopyOption}
+
+import org.jetbrains.jps.incremental.Utils
+import org.jetbrains.plugins.scala.compiler.data.CompilerJars
+import org.jetbrains.plugins.scala.server.CompileServerProperties
+import xsbti.compile.AnalysisStore
+
+import scala.collection.mutable
+import scala.util.control.NonFatal
+import scala.util.{Try, Using}
+
+/**
+ * Warm start of the compile server (enabled by [[CompileServerProperties.WarmStart]]).
+ *
+ * The compilers and the analysis files used by the server are remembered and saved on the server shutdown.
+ * On the next start, the Scala instances of the remembered compilers are created and the most recently used
+ * analysis files are loaded in the background, before the first compile command arrives.
+ * A preloaded analysis is handed to [[LocalServer]] only if the file wasn't modified since it was loaded.
+ * Only a few analyses are kept, softly, and the ones whose files are modified or removed are dropped on each compilation.
+ */
+object WarmStart {
+
+  val Enabled: Boolean = java.lang.Boolean.getBoolean(CompileServerProperties.WarmStart)
+
+  private val MaxCompilers = 3
+  private val MaxAnalysisFiles = 20
+  private val MaxPreloadedStores = 5
+
+  private val FormatVersion = 1
+
+  // most recently used go last, guarded by `lock`
+  private val compilers = mutable.LinkedHashSet.empty[CompilerJars]
+  private val analysisFiles = mutable.LinkedHashSet.empty[File]
+  private val lock = new Object
+
+  private final class PreloadedStore(store: AnalysisStore, val lastModified: Long) {
+    private val reference = new SoftReference(store)
+
+    def get: Option[AnalysisStore] = Option(reference.get)
+
+    def isStale(file: File): Boolean = reference.get == null || file.lastModified != lastModified
+  }
+
+  // most recently loaded go last, guarded by `lock`
+  private val preloadedStores = mutable.LinkedHashMap.empty[File, PreloadedStore]
+
+  def compilerUsed(jars: CompilerJars): Unit =
+    if (Enabled) lock.synchronized {
+      touch(compilers, jars, MaxCompilers)
+    }
+
+  def analysisUsed(file: File): Unit =
+    if (Enabled && file.getPath.nonEmpty) lock.synchronized {
+      touch(analysisFiles, file, MaxAnalysisFiles)
+      preloadedStores.filterInPlace { case (file, preloaded) => !preloaded.isStale(file) }
+    }
+
+  /** @return the analysis store loaded on the server start, if it's still up to date */
+  def takePreloadedStore(file: File): Option[AnalysisStore] = lock.synchronized {
+    preloadedStores.remove(file)
+      .filter(_.lastModified == file.lastModified)
+      .flatMap(_.get)
+  }
+
+  private[local] def addPreloadedStore(file: File, store: AnalysisStore, lastModified: Long): Unit = lock.synchronized {
+    if (!preloadedStores.contains(file)) {
+      preloadedStores.update(file, new PreloadedStore(store, lastModified))
+      if (preloadedStores.size > MaxPreloadedStores)
+        preloadedStores -= preloadedStores.head._1
+    }
+  }
+
+  def preloadInBackground(): Unit =
+    if (Enabled) {
+      val thread = new Thread(() => preload(), "scala-compile-server-warm-start")
+      thread.setDaemon(true)
+      thread.setPriority(Thread.MIN_PRIORITY)
+      thread.start()
+    }
+
+  def save(): Unit =
+    if (Enabled) lock.synchronized {
+      val file = snapshotFile
+      val temp = new File(file.getPath + ".tmp")
+      try {
+        file.getParentFile.mkdirs()
+        Using.resource(new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) { out =>
+          out.writeInt(FormatVersion)
+          out.writeInt(compilers.size)
+          compilers.foreach { jars =>
+            writeFiles(out, jars.libraryJars)
+            writeFiles(out, jars.compilerJars)
+            out.writeUTF(jars.compilerJar.getPath)
+          }
+          writeFiles(out, analysisFiles.toSeq)
+        }
+        Files.move(temp.toPath, file.toPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE)
+      } catch {
+        case _: IOException =>
+          temp.delete()
+      }
+    }
+
+  private def preload(): Unit = {
+    val (savedCompilers, savedAnalysisFiles) = load()
+
+    // remember the saved entries as less recently used than the ones used since the start
+    lock.synchronized {
+      restore(compilers, savedCompilers, MaxCompilers)
+      restore(analysisFiles, savedAnalysisFiles, MaxAnalysisFiles)
+    }
+
+    savedCompilers.filter(_.allJars.forall(_.exists)).foreach { jars =>
+      try {
+        val instance = CompilerFactoryImpl.getOrCreateScalaInstance(jars)
+        val mainClass = if (jars.hasScala3) "dotty.tools.dotc.Compiler" else "scala.tools.nsc.Global"
+        Try(Class.forName(mainClass, true, instance.loader))
+      } catch {
+        case NonFatal(_) =>
+      }
+    }
+
+    // the most recently used first, until the preloaded analyses take a noticeable part of the heap
+    var budget = Runtime.getRuntime.maxMemory / 8
+    savedAnalysisFiles.reverse.filter(_.exists).foreach { file =>
+      val lastModified = file.lastModified
+      budget -= CachingFactory.estimatedAnalysisSize(file)
+      if (budget > 0) try {
+        val store = LocalServer.createAnalysisStore(file)
+        store.get()
+        addPreloadedStore(file, store, lastModified)
+      } catch {
+        case NonFatal(_) =>
+      }
+    }
+  }
+
+  private def load(): (Seq[CompilerJars], Seq[File]) = {
+    val file = snapshotFile
+    if (!file.exists) (Seq.empty, Seq.empty)
+    else try Using.resource(new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) { in =>
+      if (in.readInt() != FormatVersion) (Seq.empty, Seq.empty)
+      else {
+        val savedCompilers = (0 until in.readInt()).map { _ =>
+          CompilerJars(readFiles(in), readFiles(in), new File(in.readUTF()))
+        }
+        (savedCompilers, readFiles(in))
+      }
+    } catch {
+      case _: IOException => (Seq.empty, Seq.empty)
+    }
+  }
+
+  private def snapshotFile: File =
+    new File(new File(Utils.getSystemRoot, "scala-compile-server"), "warm-start.dat")
+
+  private def touch[T](recent: mutable.LinkedHashSet[T], value: T, limit: Int): Unit = {
+    recent -= value
+    recent += value
+    if (recent.size > limit)
+      recent -= recent.head
+  }
+
+  private def restore[T](recent: mutable.LinkedHashSet[T], saved: Seq[T], limit: Int): Unit = {
+    val current = recent.toSeq
+    recent.clear()
+    recent ++= saved
+    current.foreach(touch(recent, _, limit))
+    while (recent.size > limit)
+      recent -= recent.head
+  }
+
+  private def writeFiles(out: DataOutputStream, files: Seq[File]): Unit = {
+    out.writeInt(files.size)
+    files.foreach(file => out.writeUTF(file.getPath))
+  }
+
+  private def readFiles(in: DataInputStream): Seq[File] =
+    (0 until in.readInt()).map(_ => new File(in.readUTF()))
+}
@@ -1,17 +1,154 @@
 package org.jetbrains.jps.incremental.scala.remote
 
 import java.util.concurrent._
+import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.util.concurrent.locks.ReentrantLock
 
-class AsynchEventGenerator(writeEvent: Event => Unit) {
+import org.jetbrains.jps.incremental.scala.remote.AsynchEventGenerator._
 
-  private val executors = Executors.newFixedThreadPool(1)
+import scala.jdk.CollectionConverters._
+import scala.util.control.NonFatal
 
-  def listener(e: Event): Unit = executors.submit(new Runnable {
-    override def run(): Unit = writeEvent(e)
-  })
+/**
+ * Writes events in batches from a dedicated thread.
+ *
+ * Events are put into a bounded queue. The writer thread drains up to [[MaxBatchSize]] events,
+ * waiting at most [[MaxBatchDelayMs]] for a batch to fill, and hands the whole batch to `writeEvents`,
+ * so the output is flushed once per batch and not once per event.<br>
+ * When the queue is full (the IDE doesn't keep up with reading), the producer writes the pending events
+ * and its own event itself, which bounds the memory used by the pending events.
+ * Events published after [[complete]] are written directly as well, so they're neither lost nor blocked
+ * when the writer thread is already stopped. Events of a direct write are never written before the queued ones.
+ */
+class AsynchEventGenerator(writeEvents: Seq[Event] => Unit) {
+
+  private val queue = new ArrayBlockingQueue[Event](QueueCapacity)
+
+  // held while a batch is taken from the queue and written, so that batches are written in order,
+  // fair, so that a producer isn't starved by the writer thread, which takes it again and again
+  private val writeLock = new ReentrantLock(true)
+
+  @volatile private var completed = false
+  @volatile private var failed = false
+
+  private val writerThread = {
+    val thread = new Thread(() => writeLoop(), "scala-compile-server-event-writer")
+    thread.setDaemon(true)
+    thread.start()
+    thread
+  }
+
+  def listener(e: Event): Unit =
+    if (!failed) {
+      if (completed || !enqueue(e)) writeDirectly(Some(e))
+      // the writer thread could stop right before the event was queued
+      else if (completed) writeDirectly(None)
+    }
+
+  private def enqueue(e: Event): Boolean = {
+    val depth = TotalQueueDepth.incrementAndGet()
+    MaxObservedQueueDepth.accumulateAndGet(depth, math.max(_, _))
+    val added = queue.offer(e)
+    if (!added) TotalQueueDepth.decrementAndGet()
+    added
+  }
+
+  private def writeDirectly(e: Option[Event]): Unit = withWriteLock {
+    val batch = new java.util.ArrayList[Event](queue.size + 1)
+    queue.drainTo(batch)
+    TotalQueueDepth.addAndGet(-batch.size)
+    e.foreach(batch.add)
+    if (!batch.isEmpty) {
+      DirectWrites.incrementAndGet()
+      write(batch)
+    }
+  }
 
   def complete(timeout: Long, unit: TimeUnit): Unit = {
-    executors.shutdown()
-    executors.awaitTermination(timeout, unit)
+    completed = true
+    writerThread.join(unit.toMillis(timeout))
+  }
+
+  private def writeLoop(): Unit = {
+    val batch = new java.util.ArrayList[Event](MaxBatchSize)
+    try {
+      while (!completed || !queue.isEmpty) withWriteLock {
+        val first = queue.poll(MaxBatchDelayMs, TimeUnit.MILLISECONDS)
+        if (first != null) {
+          batch.add(first)
+          fillBatch(batch)
+          TotalQueueDepth.addAndGet(-batch.size)
+          Batches.incrementAndGet()
+          BatchedEvents.addAndGet(batch.size)
+          MaxObservedBatchSize.accumulateAndGet(batch.size, math.max(_, _))
+
+          write(batch)
+          batch.clear()
+        }
+      }
+    } catch {
+      case _: InterruptedException =>
+        failed = true
+        TotalQueueDepth.addAndGet(-(batch.size + queue.size))
+        queue.clear()
+    }
+  }
+
+  private def withWriteLock(body: => Unit): Unit = {
+    writeLock.lock()
+    try body
+    finally writeLock.unlock()
+  }
+
+  private def write(batch: java.util.ArrayList[Event]): Unit =
+    try writeEvents(batch.asScala.toSeq)
+    catch {
+      // the same as with the previous executor-based implementation: a failed write doesn't stop the stream
+      case NonFatal(_) =>
+    }
+
+  private def fillBatch(batch: java.util.ArrayList[Event]): Unit = {
+    val deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(MaxBatchDelayMs)
+    queue.drainTo(batch, MaxBatchSize - batch.size)
+    var remaining = deadline - System.nanoTime()
+    while (batch.size < MaxBatchSize && remaining > 0 && !completed) {
+      val next = queue.poll(remaining, TimeUnit.NANOSECONDS)
+      if (next == null)
+        remaining = 0
+      else {
+        batch.add(next)
+        queue.drainTo(batch, MaxBatchSize - batch.size)
+        remaining = deadline - System.nanoTime()
+      }
+    }
+  }
+}
+
+object AsynchEventGenerator {
+
+  private[remote] val QueueCapacity = Integer.getInteger("scala.compile.server.event.queue.capacity", 8192).intValue
+  private val MaxBatchSize = Integer.getInteger("scala.compile.server.event.batch.size", 256).intValue
+  private val MaxBatchDelayMs = Integer.getInteger("scala.compile.server.event.batch.delay.ms", 10).intValue.toLong
+
+  // aggregated over all the commands that are currently running
+  private val TotalQueueDepth = new AtomicInteger(0)
+  private val MaxObservedQueueDepth = new AtomicInteger(0)
+  private val Batches = new AtomicLong(0)
+  private val BatchedEvents = new AtomicLong(0)
+  private val MaxObservedBatchSize = new AtomicInteger(0)
+  private val DirectWrites = new AtomicLong(0)
+
+  /** The number of times the events were written by the producers, because the queue was full or completed */
+  def directWrites: Long = DirectWrites.get
+
+  def metrics: EventStreamingMetrics = {
+    val batches = Batches.get
+    EventStreamingMetrics(
+      queueDepth = TotalQueueDepth.get,
+      maxQueueDepth = MaxObservedQueueDepth.get,
+      batches = batches,
+      averageBatchSize = if (batches == 0) 0 else BatchedEvents.get.toDouble / batches,
+      maxBatchSize = MaxObservedBatchSize.get
+    )
   }
-}
\ No newline at end of file
+}
@@ -0,0 +1,130 @@
+package org.jetbrains.jps.incremental.scala.remote
+
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+
+import org.jetbrains.jps.incremental.scala.Client
+
+import scala.collection.mutable
+
+/**
+ * Limits the number of compile commands running in the compile server at the same time.
+ *
+ * The limit is based on the number of cores and the heap size (see [[CompileScheduler.maxConcurrency]]).
+ * In addition, a build compilation isn't started while the heap is almost full and other compilations are running.
+ * Excess commands wait in a queue, [[CompileScheduler.Priority.Interactive]] commands (e.g. compiler-based highlighting
+ * of a document) go before builds and may exceed the limit by one, so they are not stuck behind a long build.
+ */
+object CompileScheduler {
+
+  sealed abstract class Priority(val value: Int)
+
+  object Priority {
+    case object Interactive extends Priority(0)
+    case object Build extends Priority(1)
+  }
+
+  private final case class Ticket(priority: Priority, sequence: Long)
+
+  private implicit val TicketOrdering: Ordering[Ticket] =
+    Ordering.by((ticket: Ticket) => (ticket.priority.value, ticket.sequence)).reverse
+
+  /** Estimated heap needed by one compilation */
+  private val HeapPerCompilation: Long =
+    Option(System.getProperty("scala.compile.server.heap.per.compilation.mb")).map(_.toLong).getOrElse(512L) * 1024 * 1024
+
+  private val MaxHeapUsage = 0.85
+
+  private val PollIntervalMs = 100L
+
+  val maxConcurrency: Int =
+    Option(Integer.getInteger("scala.compile.server.max.parallelism")).map(_.intValue).getOrElse {
+      val runtime = Runtime.getRuntime
+      val byHeap = (runtime.maxMemory / HeapPerCompilation).toInt
+      math.max(1, math.min(runtime.availableProcessors, byHeap))
+    }
+
+  private val lock = new ReentrantLock()
+  private val changed = lock.newCondition()
+  private val queue = mutable.PriorityQueue.empty[Ticket]
+  private val sequence = new AtomicLong(0)
+  private var running = 0
+
+  /** @return `None` if the client has canceled the command while waiting */
+  def withPermit[T](priority: Priority, client: Client)(body: => T): Option[T] = {
+    val waitStart = System.nanoTime()
+    if (!acquire(priority, client))
+      return None
+
+    val waitedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - waitStart)
+    if (waitedMs > 0)
+      client.internalInfo(s"compile server queue wait time: $waitedMs ms")
+
+    try Some(body)
+    finally release()
+  }
+
+  def queueLength: Int = {
+    lock.lock()
+    try queue.size
+    finally lock.unlock()
+  }
+
+  private def acquire(priority: Priority, client: Client): Boolean = {
+    val ticket = Ticket(priority, sequence.incrementAndGet())
+    var reportedWaiting = false
+    lock.lock()
+    try {
+      queue.enqueue(ticket)
+      while (!(queue.head == ticket && canAdmit(priority))) {
+        if (client.isCanceled) {
+          remove(ticket)
+          return false
+        }
+        if (!reportedWaiting) {
+          client.progress("Waiting for other compilations to finish...")
+          reportedWaiting = true
+        }
+        // re-check periodically: the heap usage and the cancellation aren't signalled
+        changed.await(PollIntervalMs, TimeUnit.MILLISECONDS)
+      }
+      queue.dequeue()
+      running += 1
+      // the next ticket may be admittable as well
+      changed.signalAll()
+      true
+    } catch {
+      case e: InterruptedException =>
+        remove(ticket)
+        Thread.currentThread.interrupt()
+        throw e
+    } finally lock.unlock()
+  }
+
+  private def release(): Unit = {
+    lock.lock()
+    try {
+      running -= 1
+      changed.signalAll()
+    } finally lock.unlock()
+  }
+
+  private def remove(ticket: Ticket): Unit = {
+    val remaining = queue.filterNot(_ == ticket)
+    queue.clear()
+    queue ++= remaining
+    changed.signalAll()
+  }
+
+  private def canAdmit(priority: Priority): Boolean = priority match {
+    case Priority.Interactive => running < maxConcurrency + 1
+    case Priority.Build => running == 0 || (running < maxConcurrency && hasHeapHeadroom)
+  }
+
+  private def hasHeapHeadroom: Boolean = {
+    val runtime = Runtime.getRuntime
+    val used = runtime.totalMemory - runtime.freeMemory
+    used + HeapPerCompilation / 2 < runtime.maxMemory * MaxHeapUsage
+  }
+}
@@ -23,11 +23,34 @@ final class EncodingEventGeneratingClient(out: PrintStream, standalone: Boolean)
 
 object EncodingEventGeneratingClient {
 
-  private def eventHandler(out: PrintStream, standalone: Boolean): Event => Unit =
-    event => {
-      val encoded = Base64.getEncoder.encodeToString(event.toBytes)
-      val encodedNormalized = if (standalone && !encoded.endsWith("=")) encoded + "=" else encoded
-      val bytes = encodedNormalized.getBytes
-      out.write(bytes)
+  /**
+   * Set to `java` to fall back to Java serialization + Base64 event encoding
+   *
+   * @see [[BinaryEventCodec]]
+   */
+  final val EventEncodingProperty = "scala.compile.server.event.encoding"
+
+  private def useBinaryEncoding(standalone: Boolean): Boolean =
+    // standalone process output is read line by line as text, see NonServerRunner
+    !standalone && !Option(System.getProperty(EventEncodingProperty)).contains("java")
+
+  private def eventHandler(out: PrintStream, standalone: Boolean): Seq[Event] => Unit =
+    if (useBinaryEncoding(standalone)) {
+      val writer = new BinaryEventCodec.Writer
+      // binary frames are length-prefixed, so the whole batch is sent as a single chunk
+      events => {
+        out.write(writer.writeAll(events))
+        out.flush()
+      }
     }
-}
\ No newline at end of file
+    else
+      events => {
+        events.foreach { event =>
+          val encoded = Base64.getEncoder.encodeToString(event.toBytes)
+          val encodedNormalized = if (standalone && !encoded.endsWith("=")) encoded + "=" else encoded
+          val bytes = encodedNormalized.getBytes
+          out.write(bytes)
+        }
+        out.flush()
+      }
+}
@@ -10,9 +10,9 @@ import sbt.internal.inc.CompileFailed
  * @author Pavel Fatin
  * @see [[org.jetbrains.jps.incremental.scala.ClientEventProcessor]]
  */
-class EventGeneratingClient(writeEvent: Event => Unit, canceled: => Boolean) extends Client with AutoCloseable {
+class EventGeneratingClient(writeEvents: Seq[Event] => Unit, canceled: => Boolean) extends Client with AutoCloseable {
 
-  private val eventGenerator = new AsynchEventGenerator(writeEvent)
+  private val eventGenerator = new AsynchEventGenerator(writeEvents)
 
   private def publishEvent(event: Event): Unit =
     eventGenerator.listener(event)
@@ -7,7 +7,7 @@ import org.jetbrains.jps.incremental.fs.BuildFSState
 import org.jetbrains.jps.incremental.messages.{BuildMessage, CustomBuilderMessage, ProgressMessage}
 import org.jetbrains.jps.incremental.scala.Client
 import org.jetbrains.jps.incremental.scala.data.CompileServerCommandParser
-import org.jetbrains.jps.incremental.scala.local.LocalServer
+import org.jetbrains.jps.incremental.scala.local.{CompilationProfiler, LocalServer, WarmStart}
 import org.jetbrains.jps.incremental.scala.local.worksheet.WorksheetServer
 import org.jetbrains.jps.incremental.scala.remote.MeteringScheduler.ArgsParsed
 import org.jetbrains.jps.incremental.scala.utils.CompileServerSharedMessages
@@ -78,6 +78,7 @@ object Main {
     if (server != null) {
       // we need the server to shut down on timer even if no compilation was done (nailMain is not invoked)
       resetShutdownTimer(server)
+      WarmStart.preloadInBackground()
     }
   }
 
@@ -110,6 +111,7 @@ object Main {
   //noinspection ScalaUnusedSymbol
   def nailShutdown(server: NGServer): Unit = {
     import CompileServerSharedMessages._
+    WarmStart.save()
     val details = if (shutdownByTimout) s" ($ProcessWasIdleFor ${shutdownDelay.getOrElse("<unknown>")})" else ""
     originalStdOut.println(CompileServerShutdownPrefix + s"$details")
     originalStdOut.flush() // just in case, System.exit (used in NGServer.shutdown) can skip flushing the streams
@@ -126,6 +128,7 @@ object Main {
                           standalone: Boolean): Unit = {
     if (buildSystemDir == null)
       throw new IllegalStateException("the 'setup' method must be invoked before compile server usage")
+    CompilationProfiler.commandReceived()
     val client = new EncodingEventGeneratingClient(out, standalone)
     val oldOut = System.out
     // Suppress any stdout data, interpret such data as error
@@ -175,11 +178,13 @@ object Main {
   private def handleCommand(command: CompileServerCommand, client: EncodingEventGeneratingClient): Unit = {
     def decorated(action: => Unit): Unit =
       if (command.isCompileCommand)
-        try {
-          currentParallelism.incrementAndGet()
-          action
-        } finally {
-          currentParallelism.decrementAndGet()
+        CompileScheduler.withPermit(priorityOf(command), client) {
+          try {
+            currentParallelism.incrementAndGet()
+            action
+          } finally {
+            currentParallelism.decrementAndGet()
+          }
         }
       else
         action
@@ -200,6 +205,19 @@ object Main {
     }
   }
 
+  // document compiler and worksheet requests don't carry a JPS compilation stamp, see RemoteServerConnectorBase;
+  // CompileJps is only sent by compiler-based highlighting (see IncrementalCompiler), the Scala compilations of its
+  // in-process JPS build use the local server and don't go through the scheduler again
+  private def priorityOf(command: CompileServerCommand): CompileScheduler.Priority = command match {
+    case CompileServerCommand.Compile(arguments)
+      if arguments.worksheetArgs.isDefined || arguments.compilationData.zincData.compilationStartDate == 0 =>
+      CompileScheduler.Priority.Interactive
+    case _: CompileServerCommand.CompileJps =>
+      CompileScheduler.Priority.Interactive
+    case _ =>
+      CompileScheduler.Priority.Build
+  }
+
   private def compileLogic(args: Arguments, client: EncodingEventGeneratingClient): Unit = {
     val worksheetArgs = args.worksheetArgs
     val needToCompile = !worksheetArgs.exists(_.isInstanceOf[WorksheetArgs.RunRepl])
@@ -300,7 +318,10 @@ object Main {
     val runtime = Runtime.getRuntime
     val metrics = CompileServerMetrics(
       heapUsed = runtime.totalMemory() - runtime.freeMemory(),
-      maxHeapSize = maxHeapSize
+      maxHeapSize = maxHeapSize,
+      eventStreaming = AsynchEventGenerator.metrics,
+      caches = server.cacheMetrics,
+      compilation = CompilationProfiler.metrics(getCurrentParallelism)
     )
     client.metrics(metrics)
   }
@@ -386,12 +407,14 @@ object MeteringScheduler {
   private val lock = new Object
   @volatile private var executor: ScheduledExecutorService = _
   @volatile private var meteringInfo: CompileServerMeteringInfo = _
+  @volatile private var compilationAtStart: CompilationMetrics = _
 
   final case class ArgsParsed(token: String, command: CompileServerCommand)
 
   def start(meteringInterval: FiniteDuration): Unit = lock.synchronized {
     executor = Executors.newScheduledThreadPool(1)
     meteringInfo = CompileServerMeteringInfo(0, 0)
+    compilationAtStart = CompilationProfiler.metrics(Main.getCurrentParallelism)
     executor.scheduleWithFixedDelay({ () =>
       val currentParallelism = Main.getCurrentParallelism
       val newMaxParallelism = math.max(meteringInfo.maxParallelism, currentParallelism)
@@ -399,8 +422,6 @@ object MeteringScheduler {
       val currentHeapSizeMb = (Runtime.getRuntime.totalMemory / 1024 / 1024).toInt
       val newMaxHeapSizeMb = math.max(meteringInfo.maxHeapSizeMb, currentHeapSizeMb)
       
-      // TODO more useful metrics
-
       meteringInfo = meteringInfo.copy(
         maxParallelism = newMaxParallelism,
         maxHeapSizeMb = newMaxHeapSizeMb
@@ -410,7 +431,10 @@ object MeteringScheduler {
 
   def stop(): CompileServerMeteringInfo = lock.synchronized {
     Option(executor).foreach(_.awaitTermination(2, TimeUnit.SECONDS))
-    val result = Option(meteringInfo)
+    val result = Option(meteringInfo).map { info =>
+      val compilation = CompilationProfiler.metrics(Main.getCurrentParallelism).since(compilationAtStart)
+      info.copy(compilation = compilation)
+    }
     executor = null
     meteringInfo = null
     result.getOrElse(throw new IllegalStateException("MeteringScheduler wasn't started"))
@@ -0,0 +1,76 @@
+package org.jetbrains.jps.incremental.scala.local
+
+import java.io.File
+import java.nio.file.Files
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.{CountDownLatch, Executors, TimeUnit}
+
+import org.junit.Assert._
+import org.junit.Test
+
+class InterfaceJarCreationTest {
+
+  private val content = Array.fill[Byte](1 << 20)(42)
+
+  // writes the content in chunks, so that a concurrent reader could see a partially written file
+  private def slowCompile(compilations: AtomicInteger)(file: File): Unit = {
+    compilations.incrementAndGet()
+    val stream = Files.newOutputStream(file.toPath)
+    try content.grouped(64 * 1024).foreach { chunk =>
+      stream.write(chunk)
+      stream.flush()
+      Thread.sleep(5)
+    }
+    finally stream.close()
+  }
+
+  @Test
+  def concurrentCompilers(): Unit = {
+    val home = Files.createTempDirectory("interfaces").toFile
+    val target = new File(home, "compiler-interface-2.13.6-55.0.jar")
+    val compilations = new AtomicInteger()
+    val partialReads = new AtomicInteger()
+
+    val threads = 4
+    val start = new CountDownLatch(1)
+    val executor = Executors.newFixedThreadPool(threads + 1)
+    try {
+      val compilers = (1 to threads).map { _ =>
+        executor.submit[File] { () =>
+          start.await()
+          CompilerFactoryImpl.getOrCreateAtomically(target)(slowCompile(compilations))
+        }
+      }
+      val reader = executor.submit[Unit] { () =>
+        start.await()
+        while (!compilers.forall(_.isDone)) {
+          if (target.exists && target.length != content.length)
+            partialReads.incrementAndGet()
+        }
+      }
+      start.countDown()
+
+      compilers.foreach(compiler => assertEquals(target, compiler.get(1, TimeUnit.MINUTES)))
+      reader.get(1, TimeUnit.MINUTES)
+    } finally {
+      executor.shutdownNow()
+    }
+
+    assertEquals("the jar should be compiled once", 1, compilations.get)
+    assertEquals("the jar should never be seen partially written", 0, partialReads.get)
+    assertArrayEquals(content, Files.readAllBytes(target.toPath))
+    assertEquals("temporary files should be removed", Seq(target.getName), home.list().toSeq)
+  }
+
+  @Test
+  def existingJarIsNotCompiled(): Unit = {
+    val home = Files.createTempDirectory("interfaces").toFile
+    val target = new File(home, "compiler-interface-2.12.15-52.0.jar")
+    Files.write(target.toPath, content)
+    val compilations = new AtomicInteger()
+
+    CompilerFactoryImpl.getOrCreateAtomically(target)(slowCompile(compilations))
+
+    assertEquals(0, compilations.get)
+  }
+}
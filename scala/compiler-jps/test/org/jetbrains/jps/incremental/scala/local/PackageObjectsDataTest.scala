@@ -0,0 +1,46 @@
+package org.jetbrains.jps.incremental.scala.local
+
+import java.io.File
+import java.nio.file.Files
+
+import org.junit.Assert._
+import org.junit.Test
+
+class PackageObjectsDataTest {
+
+  private def logFile(): File =
+    new File(Files.createTempDirectory("packageObjects").toFile, "packageObjects.log")
+
+  @Test
+  def savedAndLoaded(): Unit = {
+    val file = logFile()
+    val data = new PackageObjectsData(file)
+    data.add(new File("Base.scala"), new File("package.scala"))
+    data.save()
+
+    val loaded = new PackageObjectsData(file)
+    assertEquals(Set(new File("package.scala")), loaded.invalidatedPackageObjects(Seq(new File("Base.scala"))))
+  }
+
+  // e.g. the build process and the compile server
+  @Test
+  def appendedByTwoWriters(): Unit = {
+    val file = logFile()
+    val first = new PackageObjectsData(file)
+    val second = new PackageObjectsData(file)
+    first.save()
+    second.invalidatedPackageObjects(Seq.empty)
+
+    first.add(new File("A.scala"), new File("a/package.scala"))
+    first.save()
+    second.add(new File("B.scala"), new File("b/package.scala"))
+    second.save()
+    first.add(new File("C.scala"), new File("c/package.scala"))
+    first.save()
+
+    val loaded = new PackageObjectsData(file)
+    assertEquals(Set(new File("a/package.scala")), loaded.invalidatedPackageObjects(Seq(new File("A.scala"))))
+    assertEquals(Set(new File("b/package.scala")), loaded.invalidatedPackageObjects(Seq(new File("B.scala"))))
+    assertEquals(Set(new File("c/package.scala")), loaded.invalidatedPackageObjects(Seq(new File("C.scala"))))
+  }
+}
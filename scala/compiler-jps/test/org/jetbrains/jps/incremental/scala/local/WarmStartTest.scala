@@ -0,0 +1,47 @@
+package org.jetbrains.jps.incremental.scala.local
+
+import java.io.File
+import java.nio.file.Files
+
+import org.junit.Assert._
+import org.junit.Test
+import sbt.internal.inc.FileAnalysisStore
+
+class WarmStartTest {
+
+  private def analysisFile(name: String): File = {
+    val file = Files.createTempFile(name, ".zip").toFile
+    file.deleteOnExit()
+    file
+  }
+
+  private def preload(file: File): Unit =
+    WarmStart.addPreloadedStore(file, FileAnalysisStore.binary(file), file.lastModified)
+
+  @Test
+  def preloadedStoreIsTakenOnce(): Unit = {
+    val file = analysisFile("once")
+    preload(file)
+
+    assertTrue(WarmStart.takePreloadedStore(file).isDefined)
+    assertTrue(WarmStart.takePreloadedStore(file).isEmpty)
+  }
+
+  @Test
+  def modifiedFile(): Unit = {
+    val file = analysisFile("modified")
+    preload(file)
+    assertTrue(file.setLastModified(file.lastModified + 10000))
+
+    assertTrue(WarmStart.takePreloadedStore(file).isEmpty)
+  }
+
+  @Test
+  def leastRecentlyLoadedStoresAreEvicted(): Unit = {
+    val files = (0 until 10).map(i => analysisFile(s"evicted$i"))
+    files.foreach(preload)
+
+    assertTrue(WarmStart.takePreloadedStore(files.head).isEmpty)
+    assertTrue(WarmStart.takePreloadedStore(files.last).isDefined)
+  }
+}
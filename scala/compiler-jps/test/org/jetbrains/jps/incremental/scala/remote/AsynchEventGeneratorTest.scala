@@ -0,0 +1,94 @@
+package org.jetbrains.jps.incremental.scala.remote
+
+import java.util.concurrent.{ConcurrentLinkedQueue, CountDownLatch, Executors, TimeUnit}
+
+import org.junit.Assert._
+import org.junit.Test
+
+import scala.jdk.CollectionConverters._
+
+class AsynchEventGeneratorTest {
+
+  private class Written {
+    val events = new ConcurrentLinkedQueue[Event]()
+    val threads = new ConcurrentLinkedQueue[Thread]()
+
+    def apply(batch: Seq[Event]): Unit = {
+      threads.add(Thread.currentThread)
+      batch.foreach(events.add)
+    }
+
+    def texts: Seq[String] = events.asScala.toSeq.collect { case InternalInfoEvent(text) => text }
+  }
+
+  private def event(i: Int): Event = InternalInfoEvent(i.toString)
+
+  @Test
+  def fullQueue(): Unit = {
+    val written = new Written
+    val writerBlocked = new CountDownLatch(1)
+    val release = new CountDownLatch(1)
+    val generator = new AsynchEventGenerator({ batch =>
+      writerBlocked.countDown()
+      release.await()
+      written(batch)
+    })
+
+    val count = AsynchEventGenerator.QueueCapacity * 2
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      generator.listener(event(0))
+      assertTrue(writerBlocked.await(1, TimeUnit.MINUTES))
+
+      val producer = executor.submit[Unit](() => (1 until count).foreach(i => generator.listener(event(i))))
+      Thread.sleep(100)
+      release.countDown()
+
+      producer.get(1, TimeUnit.MINUTES)
+      generator.complete(1, TimeUnit.MINUTES)
+    } finally {
+      release.countDown()
+      executor.shutdownNow()
+    }
+
+    assertEquals("all events should be written in order", (0 until count).map(_.toString), written.texts)
+    assertTrue("the producer should write the events when the queue is full", AsynchEventGenerator.directWrites > 0)
+  }
+
+  @Test
+  def afterComplete(): Unit = {
+    val written = new Written
+    val generator = new AsynchEventGenerator(written(_))
+
+    generator.listener(event(0))
+    generator.complete(1, TimeUnit.MINUTES)
+    generator.listener(event(1))
+
+    assertEquals(Seq("0", "1"), written.texts)
+    assertEquals("a late event should be written by the caller", Thread.currentThread, written.threads.asScala.last)
+  }
+
+  @Test
+  def afterCompleteTimedOut(): Unit = {
+    val written = new Written
+    val release = new CountDownLatch(1)
+    val generator = new AsynchEventGenerator({ batch =>
+      release.await()
+      written(batch)
+    })
+
+    generator.listener(event(0))
+    generator.complete(10, TimeUnit.MILLISECONDS)
+
+    val executor = Executors.newSingleThreadExecutor()
+    try {
+      val producer = executor.submit[Unit](() => generator.listener(event(1)))
+      release.countDown()
+      producer.get(1, TimeUnit.MINUTES)
+    } finally {
+      executor.shutdownNow()
+    }
+
+    assertEquals(Seq("0", "1"), written.texts)
+  }
+}
@@ -0,0 +1,365 @@
+package org.jetbrains.jps.incremental.scala
+package remote
+
+import java.io._
+import java.nio.charset.StandardCharsets
+
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.Client.PosInfo
+import org.jetbrains.plugins.scala.util.ObjectSerialization
+
+import scala.collection.mutable
+
+/**
+ * Compact binary encoding of [[Event]]s sent from the compile server to the IDE.
+ *
+ * Frame layout: `magic`, `version`, `length` (varint), `tag`, payload.<br>
+ * Strings which tend to repeat within one command (paths, message kinds, stack frames) are interned:
+ * the first occurrence is written inline and gets an id, subsequent occurrences are written as the id only.
+ * That's why both [[BinaryEventCodec.Writer]] and [[BinaryEventCodec.Reader]] are stateful and must process
+ * the events of one connection in the same order.
+ *
+ * Stack frames of a [[TraceEvent]] keep the class, method, file and line only: the class loader and module
+ * of a frame are dropped, as this module is compiled for Java 8, where [[StackTraceElement]] has no such fields.
+ *
+ * Java serialization + Base64 ([[Event.toBytes]]) is still supported as a fallback,
+ * frames are distinguished by the first byte (see [[BinaryEventCodec.isBinary]]).
+ */
+object BinaryEventCodec {
+
+  // not a Base64 character and not a start of a Java serialization stream
+  final val Magic: Byte = 0x1E
+  final val Version: Byte = 1
+
+  def isBinary(data: Array[Byte]): Boolean =
+    data.length > 0 && data(0) == Magic
+
+  private object Tags {
+    final val Message = 1
+    final val Progress = 2
+    final val InternalInfo = 3
+    final val InternalDebug = 4
+    final val InternalTrace = 5
+    final val Trace = 6
+    final val Generated = 7
+    final val Deleted = 8
+    final val CompilationStart = 9
+    final val CompilationPhase = 10
+    final val CompilationUnit = 11
+    final val CompilationEnd = 12
+    final val ProcessingEnd = 13
+    final val WorksheetOutput = 14
+    final val CompilationStartedInSbt = 15
+    final val MeteringInfo = 16
+    final val Metrics = 17
+  }
+
+  private final val NullRef = 0
+  private final val NewRef = 1
+  private final val FirstId = 2
+
+  /** Not thread-safe, expected to be used from a single event writing thread. */
+  final class Writer {
+
+    private val strings = new java.util.HashMap[String, Integer]
+    private val payload = new ByteArrayOutputStream(256)
+    private val out = new DataOutputStream(payload)
+    private val frames = new ByteArrayOutputStream(1024)
+
+    def write(event: Event): Array[Byte] =
+      writeAll(Seq(event))
+
+    /** Writes the events as consecutive frames into a single array */
+    def writeAll(events: Iterable[Event]): Array[Byte] = {
+      frames.reset()
+      events.foreach { event =>
+        payload.reset()
+        writeEvent(event)
+        out.flush()
+
+        frames.write(Magic)
+        frames.write(Version)
+        writeVarInt(frames, payload.size)
+        payload.writeTo(frames)
+      }
+      frames.toByteArray
+    }
+
+    private def writeEvent(event: Event): Unit = event match {
+      case MessageEvent(kind, text, source, from, to) =>
+        out.writeByte(Tags.Message)
+        writeInterned(kind.name)
+        writeText(text)
+        writeInterned(source.map(_.getPath).orNull)
+        writePosInfo(from)
+        writePosInfo(to)
+      case ProgressEvent(text, done) =>
+        out.writeByte(Tags.Progress)
+        writeText(text)
+        out.writeBoolean(done.isDefined)
+        done.foreach(out.writeFloat)
+      case InternalInfoEvent(text) =>
+        out.writeByte(Tags.InternalInfo)
+        writeText(text)
+      case InternalDebugEvent(text) =>
+        out.writeByte(Tags.InternalDebug)
+        writeText(text)
+      case InternalTraceEvent(text) =>
+        out.writeByte(Tags.InternalTrace)
+        writeText(text)
+      case TraceEvent(exceptionClassName, message, stackTrace) =>
+        out.writeByte(Tags.Trace)
+        writeInterned(exceptionClassName)
+        writeText(message)
+        val elements = if (stackTrace == null) Array.empty[StackTraceElement] else stackTrace
+        writeVarInt(out, elements.length)
+        elements.foreach { element =>
+          writeInterned(element.getClassName)
+          writeInterned(element.getMethodName)
+          writeInterned(element.getFileName)
+          writeVarInt(out, zigZag(element.getLineNumber))
+        }
+      case GeneratedEvent(source, module, name) =>
+        out.writeByte(Tags.Generated)
+        writeInterned(source.getPath)
+        writeInterned(module.getPath)
+        writeInterned(name)
+      case DeletedEvent(module) =>
+        out.writeByte(Tags.Deleted)
+        writeInterned(module.getPath)
+      case CompilationStartEvent() =>
+        out.writeByte(Tags.CompilationStart)
+      case CompilationPhaseEvent(name) =>
+        out.writeByte(Tags.CompilationPhase)
+        writeInterned(name)
+      case CompilationUnitEvent(path) =>
+        out.writeByte(Tags.CompilationUnit)
+        writeInterned(path)
+      case CompilationEndEvent(sources) =>
+        out.writeByte(Tags.CompilationEnd)
+        writeVarInt(out, sources.size)
+        sources.foreach(file => writeInterned(file.getPath))
+      case ProcessingEndEvent() =>
+        out.writeByte(Tags.ProcessingEnd)
+      case WorksheetOutputEvent(text) =>
+        out.writeByte(Tags.WorksheetOutput)
+        writeText(text)
+      case CompilationStartedInSbtEvent(path) =>
+        out.writeByte(Tags.CompilationStartedInSbt)
+        writeInterned(path)
+      // these are sent at most once per command, so there is no point in a dedicated layout
+      case MeteringInfoEvent(info) =>
+        out.writeByte(Tags.MeteringInfo)
+        writeBlob(ObjectSerialization.toBytes(info))
+      case MetricsEvent(metrics) =>
+        out.writeByte(Tags.Metrics)
+        writeBlob(ObjectSerialization.toBytes(metrics))
+    }
+
+    private def writeText(text: String): Unit =
+      if (text == null)
+        writeVarInt(out, 0)
+      else {
+        val bytes = text.getBytes(StandardCharsets.UTF_8)
+        writeVarInt(out, bytes.length + 1)
+        out.write(bytes)
+      }
+
+    private def writeInterned(string: String): Unit =
+      if (string == null)
+        writeVarInt(out, NullRef)
+      else strings.get(string) match {
+        case null =>
+          strings.put(string, Integer.valueOf(strings.size))
+          writeVarInt(out, NewRef)
+          writeText(string)
+        case id =>
+          writeVarInt(out, id.intValue + FirstId)
+      }
+
+    private def writePosInfo(pos: PosInfo): Unit = {
+      val PosInfo(line, column, offset) = pos
+      val flags = (if (line.isDefined) 1 else 0) | (if (column.isDefined) 2 else 0) | (if (offset.isDefined) 4 else 0)
+      out.writeByte(flags)
+      line.foreach(writeVarLong)
+      column.foreach(writeVarLong)
+      offset.foreach(writeVarLong)
+    }
+
+    private def writeBlob(bytes: Array[Byte]): Unit = {
+      writeVarInt(out, bytes.length)
+      out.write(bytes)
+    }
+
+    private def writeVarLong(value: Long): Unit = {
+      var v = (value << 1) ^ (value >> 63)
+      while ((v & ~0x7FL) != 0) {
+        out.writeByte(((v & 0x7F) | 0x80).toInt)
+        v >>>= 7
+      }
+      out.writeByte(v.toInt)
+    }
+  }
+
+  /** Not thread-safe, expected to be used from a single event reading thread. */
+  final class Reader {
+
+    private val strings = mutable.ArrayBuffer.empty[String]
+
+    def read(data: Array[Byte]): Event =
+      readAll(data) match {
+        case Seq(event) => event
+        case events => throw new IllegalArgumentException(s"Expected a single event frame, got ${events.size}")
+      }
+
+    /** Reads all frames, several frames can be written to a single chunk, see [[Writer.writeAll]] */
+    def readAll(data: Array[Byte]): Seq[Event] = {
+      val in = new DataInputStream(new ByteArrayInputStream(data))
+      val events = Seq.newBuilder[Event]
+      while (in.available > 0) {
+        val magic = in.readByte()
+        if (magic != Magic)
+          throw new IllegalArgumentException(s"Unexpected event frame magic: $magic")
+        val version = in.readByte()
+        if (version != Version)
+          throw new IllegalArgumentException(s"Unsupported event frame version: $version")
+        val length = readVarInt(in)
+        val remainingBefore = in.available
+        events += readEvent(in)
+        val actualLength = remainingBefore - in.available
+        if (length != actualLength)
+          throw new IllegalArgumentException(s"Event frame length mismatch: expected $length, actual $actualLength")
+      }
+      events.result()
+    }
+
+    private def readEvent(in: DataInputStream): Event = in.readUnsignedByte() match {
+      case Tags.Message =>
+        val kind = Kind.valueOf(readInterned(in))
+        val text = readText(in)
+        val source = Option(readInterned(in)).map(new File(_))
+        MessageEvent(kind, text, source, readPosInfo(in), readPosInfo(in))
+      case Tags.Progress =>
+        val text = readText(in)
+        val done = if (in.readBoolean()) Some(in.readFloat()) else None
+        ProgressEvent(text, done)
+      case Tags.InternalInfo =>
+        InternalInfoEvent(readText(in))
+      case Tags.InternalDebug =>
+        InternalDebugEvent(readText(in))
+      case Tags.InternalTrace =>
+        InternalTraceEvent(readText(in))
+      case Tags.Trace =>
+        val exceptionClassName = readInterned(in)
+        val message = readText(in)
+        val stackTrace = Array.fill(readVarInt(in)) {
+          val className = readInterned(in)
+          val methodName = readInterned(in)
+          val fileName = readInterned(in)
+          new StackTraceElement(className, methodName, fileName, unZigZag(readVarInt(in)))
+        }
+        TraceEvent(exceptionClassName, message, stackTrace)
+      case Tags.Generated =>
+        val source = new File(readInterned(in))
+        val module = new File(readInterned(in))
+        GeneratedEvent(source, module, readInterned(in))
+      case Tags.Deleted =>
+        DeletedEvent(new File(readInterned(in)))
+      case Tags.CompilationStart =>
+        CompilationStartEvent()
+      case Tags.CompilationPhase =>
+        CompilationPhaseEvent(readInterned(in))
+      case Tags.CompilationUnit =>
+        CompilationUnitEvent(readInterned(in))
+      case Tags.CompilationEnd =>
+        val count = readVarInt(in)
+        val sources = Set.newBuilder[File]
+        for (_ <- 0 until count)
+          sources += new File(readInterned(in))
+        CompilationEndEvent(sources.result())
+      case Tags.ProcessingEnd =>
+        ProcessingEndEvent()
+      case Tags.WorksheetOutput =>
+        WorksheetOutputEvent(readText(in))
+      case Tags.CompilationStartedInSbt =>
+        CompilationStartedInSbtEvent(readInterned(in))
+      case Tags.MeteringInfo =>
+        MeteringInfoEvent(ObjectSerialization.fromBytes[CompileServerMeteringInfo](readBlob(in)))
+      case Tags.Metrics =>
+        MetricsEvent(ObjectSerialization.fromBytes[CompileServerMetrics](readBlob(in)))
+      case tag =>
+        throw new IllegalArgumentException(s"Unknown event tag: $tag")
+    }
+
+    private def readText(in: DataInputStream): String =
+      readVarInt(in) match {
+        case 0 => null
+        case length =>
+          val bytes = new Array[Byte](length - 1)
+          in.readFully(bytes)
+          new String(bytes, StandardCharsets.UTF_8)
+      }
+
+    private def readInterned(in: DataInputStream): String =
+      readVarInt(in) match {
+        case NullRef => null
+        case NewRef =>
+          val string = readText(in)
+          strings += string
+          string
+        case ref =>
+          strings(ref - FirstId)
+      }
+
+    private def readPosInfo(in: DataInputStream): PosInfo = {
+      val flags = in.readUnsignedByte()
+      val line = if ((flags & 1) != 0) Some(readVarLong(in)) else None
+      val column = if ((flags & 2) != 0) Some(readVarLong(in)) else None
+      val offset = if ((flags & 4) != 0) Some(readVarLong(in)) else None
+      PosInfo(line, column, offset)
+    }
+
+    private def readBlob(in: DataInputStream): Array[Byte] = {
+      val bytes = new Array[Byte](readVarInt(in))
+      in.readFully(bytes)
+      bytes
+    }
+
+    private def readVarLong(in: DataInputStream): Long = {
+      var result = 0L
+      var shift = 0
+      var b = 0
+      do {
+        b = in.readUnsignedByte()
+        result |= (b & 0x7FL) << shift
+        shift += 7
+      } while ((b & 0x80) != 0)
+      (result >>> 1) ^ -(result & 1)
+    }
+  }
+
+  private def writeVarInt(out: OutputStream, value: Int): Unit = {
+    var v = value
+    while ((v & ~0x7F) != 0) {
+      out.write((v & 0x7F) | 0x80)
+      v >>>= 7
+    }
+    out.write(v)
+  }
+
+  private def readVarInt(in: DataInputStream): Int = {
+    var result = 0
+    var shift = 0
+    var b = 0
+    do {
+      b = in.readUnsignedByte()
+      result |= (b & 0x7F) << shift
+      shift += 7
+    } while ((b & 0x80) != 0)
+    result
+  }
+
+  private def zigZag(value: Int): Int = (value << 1) ^ (value >> 31)
+
+  private def unZigZag(value: Int): Int = (value >>> 1) ^ -(value & 1)
+}
@@ -0,0 +1,69 @@
+package org.jetbrains.jps.incremental.scala.remote
+
+/**
+ * Cumulative compilation statistics of the compile server.
+ *
+ * @param compilations       number of finished compilations
+ * @param parallelism        number of compile commands running at the moment of the measurement
+ * @param wallTimeMs         total wall time of the compilations
+ * @param queueTimeMs        total time between receiving a compile command and the start of the compilation
+ * @param units              number of compiled units (a unit is counted once per compilation)
+ * @param phases             per-phase statistics, measured on the compiling threads
+ * @param gcCount            number of garbage collections in the server process
+ * @param gcTimeMs           total garbage collection time in the server process
+ */
+final case class CompilationMetrics(compilations: Long,
+                                    parallelism: Int,
+                                    wallTimeMs: Long,
+                                    queueTimeMs: Long,
+                                    units: Long,
+                                    phases: Seq[PhaseMetrics],
+                                    gcCount: Long,
+                                    gcTimeMs: Long) {
+
+  def unitsPerSecond: Double =
+    if (wallTimeMs == 0) 0 else units * 1000.0 / wallTimeMs
+
+  /** Bytes allocated by the compiling threads per second of compilation */
+  def allocationRate: Double =
+    if (wallTimeMs == 0) 0 else phases.map(_.allocatedBytes).sum * 1000.0 / wallTimeMs
+
+  /** Statistics accumulated after the `earlier` measurement */
+  def since(earlier: CompilationMetrics): CompilationMetrics = {
+    val earlierPhases = earlier.phases.map(phase => phase.name -> phase).toMap
+    CompilationMetrics(
+      compilations = compilations - earlier.compilations,
+      parallelism = parallelism,
+      wallTimeMs = wallTimeMs - earlier.wallTimeMs,
+      queueTimeMs = queueTimeMs - earlier.queueTimeMs,
+      units = units - earlier.units,
+      phases = phases.map(phase => earlierPhases.get(phase.name).fold(phase)(phase.since)),
+      gcCount = gcCount - earlier.gcCount,
+      gcTimeMs = gcTimeMs - earlier.gcTimeMs
+    )
+  }
+}
+
+object CompilationMetrics {
+
+  final val Empty: CompilationMetrics = CompilationMetrics(0, 0, 0, 0, 0, Seq.empty, 0, 0)
+}
+
+/**
+ * @param cpuTimeMs      CPU time of the compiling threads spent in the phase
+ * @param allocatedBytes bytes allocated by the compiling threads in the phase
+ */
+final case class PhaseMetrics(name: String,
+                              wallTimeMs: Long,
+                              cpuTimeMs: Long,
+                              allocatedBytes: Long,
+                              units: Long) {
+
+  def since(earlier: PhaseMetrics): PhaseMetrics = PhaseMetrics(
+    name = name,
+    wallTimeMs = wallTimeMs - earlier.wallTimeMs,
+    cpuTimeMs = cpuTimeMs - earlier.cpuTimeMs,
+    allocatedBytes = allocatedBytes - earlier.allocatedBytes,
+    units = units - earlier.units
+  )
+}
@@ -1,4 +1,8 @@
 package org.jetbrains.jps.incremental.scala.remote
 
+/**
+ * @param compilation compilation statistics accumulated during the metering
+ */
 case class CompileServerMeteringInfo(maxParallelism: Int,
-                                     maxHeapSizeMb: Int) // TODO replace with CompileServerMetrics
+                                     maxHeapSizeMb: Int,
+                                     compilation: CompilationMetrics = CompilationMetrics.Empty) // TODO replace with CompileServerMetrics
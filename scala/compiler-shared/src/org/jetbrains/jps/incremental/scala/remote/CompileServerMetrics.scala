@@ -3,6 +3,43 @@ package org.jetbrains.jps.incremental.scala.remote
 /**
  * @param heapUsed used heap memory in bytes
  * @param maxHeapSize maximum heap size in bytes
+ * @param eventStreaming state of the event streaming from the server to the clients
+ * @param caches statistics of the compiler and analysis caches
+ * @param compilation cumulative compilation statistics since the server start
  */
 final case class CompileServerMetrics(heapUsed: Long,
-                                      maxHeapSize: Long)
\ No newline at end of file
+                                      maxHeapSize: Long,
+                                      eventStreaming: EventStreamingMetrics = EventStreamingMetrics.Empty,
+                                      caches: Seq[CacheMetrics] = Seq.empty,
+                                      compilation: CompilationMetrics = CompilationMetrics.Empty)
+
+/**
+ * @param queueDepth       number of events waiting to be sent, summed over all running commands
+ * @param maxQueueDepth    maximum observed `queueDepth` since the server start
+ * @param batches          number of event batches sent since the server start
+ * @param averageBatchSize average number of events in a batch
+ * @param maxBatchSize     maximum observed number of events in a batch
+ */
+final case class EventStreamingMetrics(queueDepth: Int,
+                                       maxQueueDepth: Int,
+                                       batches: Long,
+                                       averageBatchSize: Double,
+                                       maxBatchSize: Int)
+
+object EventStreamingMetrics {
+
+  final val Empty: EventStreamingMetrics = EventStreamingMetrics(0, 0, 0, 0, 0)
+}
+
+/**
+ * @param size       number of cached values
+ * @param weight     estimated retained size of the cached values in bytes (if the cache is weighted)
+ * @param loadTimeMs total time spent computing the values on misses
+ */
+final case class CacheMetrics(name: String,
+                              size: Int,
+                              weight: Long,
+                              hits: Long,
+                              misses: Long,
+                              loadTimeMs: Long,
+                              evictions: Long)
@@ -57,6 +57,7 @@ trait RemoteResourceOwner {
 
   protected def handle(input: DataInputStream, client: Client): Unit = {
     val processor = new ClientEventProcessor(client)
+    val eventReader = new BinaryEventCodec.Reader
 
     while (!client.isCanceled) {
       val chunk = Chunk.readFrom(input)
@@ -65,8 +66,10 @@ trait RemoteResourceOwner {
           return
         case Chunk(NGConstants.CHUNKTYPE_STDOUT, data) =>
           try {
-            val event = Event.fromBytes(Base64.getDecoder.decode(data))
-            processor.process(event)
+            if (BinaryEventCodec.isBinary(data))
+              eventReader.readAll(data).foreach(processor.process)
+            else
+              processor.process(Event.fromBytes(Base64.getDecoder.decode(data)))
           } catch {
             case e: Exception =>
               val chars = {
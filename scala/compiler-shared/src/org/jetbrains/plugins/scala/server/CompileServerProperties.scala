@@ -5,6 +5,9 @@ import scala.util.Try
 object CompileServerProperties {
 
   final val IsScalaCompileServer = "ij.scala.compile.server"
+
+  /** @see [[org.jetbrains.jps.incremental.scala.local.WarmStart]] */
+  final val WarmStart = "scala.compile.server.warm.start"
   
   def isMyselfScalaCompileServer: Boolean = {
     val optionResult = for {
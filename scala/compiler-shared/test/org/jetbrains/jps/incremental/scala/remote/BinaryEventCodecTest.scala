@@ -0,0 +1,90 @@
+package org.jetbrains.jps.incremental.scala.remote
+
+import java.io.File
+
+import org.jetbrains.jps.incremental.messages.BuildMessage.Kind
+import org.jetbrains.jps.incremental.scala.Client.PosInfo
+import org.junit.Assert._
+import org.junit.Test
+
+class BinaryEventCodecTest {
+
+  private val source = new File("/project/src/main/scala/Foo.scala")
+  private val module = new File("/project/target/classes/Foo.class")
+
+  @Test
+  def roundTrip(): Unit = {
+    val events = Seq(
+      MessageEvent(Kind.ERROR, "type mismatch", Some(source), PosInfo(Some(1L), Some(2L), None), PosInfo.Empty),
+      MessageEvent(Kind.INFO, null, None, PosInfo.Empty, PosInfo.Empty),
+      ProgressEvent("compiling", Some(0.5f)),
+      ProgressEvent("", None),
+      InternalInfoEvent("info"),
+      InternalDebugEvent("debug"),
+      InternalTraceEvent("trace ü"),
+      GeneratedEvent(source, module, "Foo"),
+      GeneratedEvent(source, module, "Foo$"),
+      DeletedEvent(module),
+      CompilationStartEvent(),
+      CompilationPhaseEvent("typer"),
+      CompilationUnitEvent(source.getPath),
+      CompilationEndEvent(Set(source, module)),
+      ProcessingEndEvent(),
+      WorksheetOutputEvent("res0: Int = 42"),
+      CompilationStartedInSbtEvent(source.getPath),
+      MeteringInfoEvent(CompileServerMeteringInfo(2, 512)),
+      MetricsEvent(CompileServerMetrics(1024L, 2048L))
+    )
+
+    val writer = new BinaryEventCodec.Writer
+    val reader = new BinaryEventCodec.Reader
+    events.foreach { event =>
+      val bytes = writer.write(event)
+      assertTrue(BinaryEventCodec.isBinary(bytes))
+      assertEquals(event, reader.read(bytes))
+    }
+  }
+
+  @Test
+  def traceEvent(): Unit = {
+    val stackTrace = new Exception().getStackTrace
+    val writer = new BinaryEventCodec.Writer
+    val reader = new BinaryEventCodec.Reader
+    val TraceEvent(className, message, actualStackTrace) =
+      reader.read(writer.write(TraceEvent("java.lang.Exception", "boom", stackTrace)))
+    assertEquals("java.lang.Exception", className)
+    assertEquals("boom", message)
+    // the module info isn't encoded, and StackTraceElement.equals compares it on JDK 9+
+    def frames(elements: Array[StackTraceElement]): Seq[(String, String, String, Int)] =
+      elements.toSeq.map(e => (e.getClassName, e.getMethodName, e.getFileName, e.getLineNumber))
+
+    assertEquals(frames(stackTrace), frames(actualStackTrace))
+  }
+
+  @Test
+  def repeatedPathsAreInterned(): Unit = {
+    val writer = new BinaryEventCodec.Writer
+    val first = writer.write(CompilationUnitEvent(source.getPath))
+    val second = writer.write(CompilationUnitEvent(source.getPath))
+    assertTrue(second.length < first.length)
+    assertTrue(second.length < source.getPath.length)
+  }
+
+  @Test
+  def severalFramesInOneChunk(): Unit = {
+    val events = Seq(
+      CompilationUnitEvent(source.getPath),
+      GeneratedEvent(source, module, "Foo"),
+      CompilationUnitEvent(source.getPath),
+      ProcessingEndEvent()
+    )
+    val writer = new BinaryEventCodec.Writer
+    val reader = new BinaryEventCodec.Reader
+    assertEquals(events, reader.readAll(writer.writeAll(events)))
+    assertEquals(events, reader.readAll(writer.writeAll(events)))
+  }
+
+  @Test
+  def legacyEncodingIsNotBinary(): Unit =
+    assertFalse(BinaryEventCodec.isBinary(java.util.Base64.getEncoder.encode(CompilationStartEvent().toBytes)))
+}
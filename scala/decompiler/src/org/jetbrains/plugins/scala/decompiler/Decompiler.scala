@@ -22,10 +22,20 @@ object Decompiler {
 
   private val ScalaSigBytes = "ScalaSig".getBytes(UTF_8)
 
-  def sourceNameAndText(fileName: String, bytes: Array[Byte]): Option[(String, String)] = {
+  def sourceNameAndText(fileName: String, bytes: Array[Byte]): Option[(String, String)] =
+    for {
+      (sourceName, scalaSig) <- sourceNameAndSignature(fileName, bytes)
+      text <- decompiledText(scalaSig, fileName, isPackageObject(fileName))
+    } yield (sourceName, StringUtil.convertLineSeparators(text))
+
+  /**
+   * The source file name and the signature of a class or `.sig` file,
+   * to be used without printing the decompiled text (see `ScalaSigStubBuilder`).
+   */
+  def sourceNameAndSignature(fileName: String, bytes: Array[Byte]): Option[(String, ScalaSig)] = {
 
     if (fileName.endsWith(".sig")) {
-      return tryDecompileSigFile(fileName, bytes)
+      return tryParseSigFile(fileName, bytes)
     }
 
     if (!containsMarker(bytes)) return None
@@ -39,20 +49,42 @@ object Decompiler {
       strings = simpleValues.map(valueBytes)
 
       bytes = decode(strings)
-      signature = Parser.parseScalaSig(bytes, fileName)
+    } yield (parsed.getSourceFileName, Parser.parseScalaSig(bytes, fileName))
+  }
+
+  def isPackageObject(fileName: String): Boolean =
+    fileName == "package.class" || fileName == "package.sig"
+
+  /** The name of the package the top-level symbols are printed in, if it isn't the empty one. */
+  def packageName(scalaSig: ScalaSig, isPackageObject: Boolean): Option[String] = {
+    def findPath(symbol: Symbol) = symbol.name match {
+      case "<empty>" => None
+      case _ =>
+        val path = symbol.path
+        if (isPackageObject) {
+          path.lastIndexOf(".") match {
+            case -1 | 0 => None
+            case index => Some(path.substring(0, index))
+          }
+        } else Some(path)
+    }
 
-      text <- decompiledText(signature, parsed.getClassName, fileName == "package.class")
-    } yield (parsed.getSourceFileName, StringUtil.convertLineSeparators(text))
+    for {
+      symbol <- topLevelSymbols(scalaSig).headOption
+      parent <- symbol.parent
+      path <- findPath(parent)
+    } yield ScalaSigPrinter.processName(path)
   }
 
-  private def tryDecompileSigFile(fileName: String, bytes: Array[Byte]): Option[(String, String)] = {
+  def topLevelSymbols(scalaSig: ScalaSig): Iterable[Symbol] =
+    scalaSig.topLevelClasses ++ scalaSig.topLevelObjects
+
+  private def tryParseSigFile(fileName: String, bytes: Array[Byte]): Option[(String, ScalaSig)] = {
     try {
       val scalaSig = Parser.parseScalaSig(bytes, fileName)
-      val isPackageObject = fileName == "package.sig"
       val sourceNameGuess = fileName.stripSuffix(".sig") + ".scala"
 
-      decompiledText(scalaSig, fileName, isPackageObject)
-        .map((sourceNameGuess, _))
+      Some((sourceNameGuess, scalaSig))
     } catch {
       case e: Exception =>
         //not every `.sig` file is a scala signature file
@@ -86,49 +118,30 @@ object Decompiler {
   }
 
   private def decompiledText(scalaSig: ScalaSig,
-                             className: String,
+                             fileName: String,
                              isPackageObject: Boolean) =
     try {
       val printer = new ScalaSigPrinter(new StringBuilder)
 
-      def findPath(symbol: Symbol) = symbol.name match {
-        case "<empty>" => None
-        case _ =>
-          val path = symbol.path
-          if (isPackageObject) {
-            path.lastIndexOf(".") match {
-              case -1 | 0 => None
-              case index => Some(path.substring(0, index))
-            }
-          } else Some(path)
-      }
-
-      val symbols = scalaSig.topLevelClasses ++ scalaSig.topLevelObjects
       // Print package with special treatment for package objects
-
-      for {
-        symbol <- symbols.headOption
-        parent <- symbol.parent
-        path <- findPath(parent)
-        packageName = ScalaSigPrinter.processName(path)
-      } {
+      for (name <- packageName(scalaSig, isPackageObject)) {
         printer.print("package ")
-        printer.print(packageName)
+        printer.print(name)
         printer.print("\n")
       }
 
       // Print classes
-      for (symbol <- symbols) {
+      for (symbol <- topLevelSymbols(scalaSig)) {
         printer.printSymbol(symbol)
       }
 
       Some(printer.result)
     } catch {
       case e: ScalaDecompilerException =>
-        Log.warn(s"Error decompiling class $className, ${e.getMessage}")
+        Log.warn(s"Error decompiling class $fileName, ${e.getMessage}")
         None
       case cause: Exception =>
-        Log.error(s"Error decompiling class $className", cause)
+        Log.error(s"Error decompiling class $fileName", cause)
         None
     }
 
@@ -1,5 +1,7 @@
 package org.jetbrains.plugins.scala.decompiler.scalasig
 
+import java.util
+
 import scala.collection.immutable.ArraySeq
 import scala.collection.mutable
 import scala.collection.mutable.ArrayBuffer
@@ -30,11 +32,19 @@ class ScalaSig(val entries: Array[Entry]) {
     classes.find(c => c.info.owner.get.eq(owner) && c.name == name)
   }
 
-  def children(symbol: ScalaSigSymbol): Iterable[Symbol] = {
-    parentToChildren.keysIterator.find(get(_) eq symbol) match {
-      case None => Iterable.empty
-      case Some(i) => parentToChildren(i)
+  def children(symbol: ScalaSigSymbol): Iterable[Symbol] =
+    childrenByParent.get(symbol) match {
+      case null => Iterable.empty
+      case children => children
+    }
+
+  // all children are added by the time the entries can be used, see `Ref.get`
+  private lazy val childrenByParent: util.IdentityHashMap[Entry, ArrayBuffer[Symbol]] = {
+    val result = new util.IdentityHashMap[Entry, ArrayBuffer[Symbol]](parentToChildren.size)
+    parentToChildren.foreachEntry { (index, children) =>
+      result.put(get(index), children)
     }
+    result
   }
 
   def attributes(symbol: ScalaSigSymbol): Iterable[SymAnnot] = {
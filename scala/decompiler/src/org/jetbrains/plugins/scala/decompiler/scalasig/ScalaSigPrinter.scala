@@ -29,7 +29,7 @@ class ScalaSigPrinter(builder: StringBuilder) {
 
   private val currentTypeParameters: mutable.HashMap[Symbol, String] = new mutable.HashMap[Symbol, String]()
 
-  private def addTypeParameter(t: Symbol): Unit = {
+  private[scala] def addTypeParameter(t: Symbol): Unit = {
     def checkName(name: String): Boolean = {
       currentTypeParameters.forall {
         case (_: Symbol, symbolName: String) => name != symbolName
@@ -49,7 +49,7 @@ class ScalaSigPrinter(builder: StringBuilder) {
     }
   }
 
-  private def removeTypeParameter(t: Symbol): Unit = {
+  private[scala] def removeTypeParameter(t: Symbol): Unit = {
     currentTypeParameters.remove(t)
   }
 
@@ -649,11 +649,13 @@ class ScalaSigPrinter(builder: StringBuilder) {
         case PolyType(typeRef, symbols) => PolyTypeWithCons(typeRef, symbols, "")
         case tp => tp
       }
-      val name: String = currentTypeParameters.getOrElse(symbol, symbol.name)
-      atrs + getVariance(symbol) + processName(name) + toString(symbolType)
+      atrs + getVariance(symbol) + typeParameterName(symbol) + toString(symbolType)
     case _ => symbol.toString
   }
 
+  private[scala] def typeParameterName(symbol: Symbol): String =
+    processName(currentTypeParameters.getOrElse(symbol, symbol.name))
+
   def typeArgString(typeArgs: Seq[Type], level: Int): String =
     if (typeArgs.isEmpty) ""
     else typeArgs.map(toString(_, level)).map(_.stripPrefix("=> ")).mkString("[", ", ", "]")
@@ -662,7 +664,7 @@ class ScalaSigPrinter(builder: StringBuilder) {
     if (params.isEmpty) ""
     else params.map(toString).mkString("[", ", ", "]")
 
-  private object isConstantType {
+  private[scala] object isConstantType {
     @tailrec
     def unapply(arg: Type): Option[Constant] = arg match {
       case ConstantType(Ref(c)) => Some(c)
@@ -671,7 +673,7 @@ class ScalaSigPrinter(builder: StringBuilder) {
     }
   }
 
-  private object Constants {
+  private[scala] object Constants {
     private def classTypeText(typeRef: TypeRefType): String = {
       val ref = typeRef.symbol.get.path
       val args = typeRef.typeArgs
@@ -760,7 +762,7 @@ object ScalaSigPrinter {
       .escapeNonIdentifiers
   }
 
-  private def isSetterFor(setterName: String, methodName: String) = {
+  private[scala] def isSetterFor(setterName: String, methodName: String) = {
     val correctLength = setterName.length == methodName.length + setterSuffix.length
     correctLength && setterName.startsWith(methodName) && setterName.endsWith(setterSuffix)
   }
@@ -771,7 +773,7 @@ object ScalaSigPrinter {
 
   private val defaultParamMarker = "$default$"
 
-  private implicit class StringFixes(private val str: String) extends AnyVal {
+  private[scala] implicit class StringFixes(private val str: String) extends AnyVal {
     def decode: String = NameTransformer.decode(str)
 
     //noinspection MutatorLikeMethodIsParameterless
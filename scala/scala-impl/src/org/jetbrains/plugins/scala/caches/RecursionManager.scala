@@ -3,6 +3,7 @@ package org.jetbrains.plugins.scala.caches
 import java.util
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
+import java.util.concurrent.atomic.AtomicInteger
 
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.util.RecursionGuard.StackStamp
@@ -46,6 +47,40 @@ object RecursionManager {
     ourStack.value.prohibitCaching()
   }
 
+  /**
+   * A copy of the calculations in progress on the current thread, to continue them on other threads.
+   * A calculation, which is in progress on the original thread, is cut off as a recursion on the other threads, too.
+   * The stack of the platform [[com.intellij.openapi.util.RecursionManager]] isn't copied.
+   */
+  final class StackSnapshot private[RecursionManager](private[RecursionManager] val stack: CalculationStack) {
+    private[RecursionManager] val minStackDepthInRecursion = new AtomicInteger(Int.MaxValue)
+    @volatile private[RecursionManager] var isDirty = false
+  }
+
+  def stackSnapshot(): StackSnapshot = new StackSnapshot(ourStack.value.copy())
+
+  /** Runs `body` on top of a copy of the snapshot, the recursion found by `body` is recorded in the snapshot */
+  def runWithStack[T](snapshot: StackSnapshot)(body: => T): T = {
+    val saved = ourStack.value
+    val stack = snapshot.stack.copy()
+    ourStack.value = stack
+    try body
+    finally {
+      ourStack.value = saved
+      snapshot.minStackDepthInRecursion.accumulateAndGet(stack.minStackDepthInRecursion, math.min(_, _))
+      if (stack.isDirty)
+        snapshot.isDirty = true
+    }
+  }
+
+  /** Marks the calculations of the current thread, which were reentered by [[runWithStack]], as recursive */
+  def mergeRecursion(snapshot: StackSnapshot): Unit = {
+    val stack = ourStack.value
+    stack.minStackDepthInRecursion = math.min(stack.minStackDepthInRecursion, snapshot.minStackDepthInRecursion.get)
+    if (snapshot.isDirty)
+      stack.prohibitCaching()
+  }
+
   class RecursionGuard[Data >: Null <: AnyRef, LocalCacheValue] private (id: String) {
 
     //see also org.jetbrains.plugins.scala.macroAnnotations.CachedMacroUtil.doPreventingRecursion
@@ -138,11 +173,11 @@ object RecursionManager {
     // the call that has an equal value can be cached because it is
     // the call that started the recursion
     var minStackDepthInRecursion: Int = Int.MaxValue
-    private[this] var depth: Int = 0
+    private var depth: Int = 0
     private[this] var enters: Int = 0
     private[this] var exits: Int = 0
 
-    private[this] var _isDirty: Boolean = false
+    private var _isDirty: Boolean = false
 
     // The local cache is an optimization and just prevents unnecessary recalculation.
     // It contains cached values that were created inside a recursion.
@@ -153,6 +188,16 @@ object RecursionManager {
     private[RecursionManager] var localCache: LocalCacheMap = Map.empty
     private[RecursionManager] val progressMap = new util.LinkedHashMap[MyKey[_], Integer]
 
+    private[RecursionManager] def copy(): CalculationStack = {
+      val result = new CalculationStack
+      result.minStackDepthInRecursion = minStackDepthInRecursion
+      result.depth = depth
+      result._isDirty = _isDirty
+      result.localCache = localCache
+      result.progressMap.putAll(progressMap)
+      result
+    }
+
     private[RecursionManager] def checkReentrancy(realKey: MyKey[_]): Boolean = {
       Option(progressMap.get(realKey)) match {
         case Some(stackDepthOfPrevEnter) =>
@@ -0,0 +1,102 @@
+package org.jetbrains.plugins.scala.caches
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.{AtomicBoolean, AtomicLong, LongAdder}
+
+import com.intellij.openapi.util.ModificationTracker
+import org.jetbrains.plugins.scala.caches.StampedCache._
+import org.jetbrains.plugins.scala.caches.stats.{CacheCapabilities, CacheStats}
+
+/**
+ * A concurrent cache with a bounded size, where every entry remembers the modification tracker it depends on.
+ *
+ * An entry is valid while the modification count of its tracker stays the same,
+ * so there is no need to clear the whole cache on every change: an out of date entry is dropped when it's read
+ * or when the cache is full. When the cache is still full after that,
+ * the least recently used entries are evicted down to 3/4 of the maximum size.
+ */
+final class StampedCache[K, V >: Null <: AnyRef](maxSize: Int) {
+
+  private val map = new ConcurrentHashMap[K, Entry[V]]()
+
+  private val clock = new AtomicLong()
+
+  private val evicting = new AtomicBoolean()
+
+  private val hits = new LongAdder
+  private val misses = new LongAdder
+  private val evictions = new LongAdder
+
+  /**
+   * @return the cached value or null, if there is no up-to-date one
+   */
+  def get(key: K): V = {
+    val entry = map.get(key)
+    if (entry == null) {
+      misses.increment()
+      null
+    } else if (entry.tracker.getModificationCount != entry.stamp) {
+      if (map.remove(key, entry))
+        evictions.increment()
+      misses.increment()
+      null
+    } else {
+      entry.lastAccess = clock.incrementAndGet()
+      hits.increment()
+      entry.value
+    }
+  }
+
+  /**
+   * Should be called in the same read action, in which the value was computed.
+   */
+  def put(key: K, value: V, tracker: ModificationTracker): Unit = {
+    map.put(key, new Entry(value, tracker, tracker.getModificationCount, clock.incrementAndGet()))
+
+    if (map.size > maxSize)
+      evict()
+  }
+
+  def size: Int = map.size
+
+  def clear(): Unit = map.clear()
+
+  def stats: CacheStats = CacheStats(hits.sum(), misses.sum(), evictions.sum())
+
+  private def evict(): Unit = if (evicting.compareAndSet(false, true)) {
+    try {
+      map.forEach { (key, entry) =>
+        if (entry.tracker.getModificationCount != entry.stamp && map.remove(key, entry))
+          evictions.increment()
+      }
+
+      if (map.size > maxSize) {
+        val accesses = map.values.stream.mapToLong(_.lastAccess).sorted.toArray
+        val excess = math.min(accesses.length - maxSize * 3 / 4, accesses.length)
+        val threshold = if (excess > 0) accesses(excess - 1) else Long.MinValue
+
+        map.forEach { (key, entry) =>
+          if (entry.lastAccess <= threshold && map.remove(key, entry))
+            evictions.increment()
+        }
+      }
+    } finally {
+      evicting.set(false)
+    }
+  }
+}
+
+object StampedCache {
+
+  private final class Entry[V](val value: V,
+                               val tracker: ModificationTracker,
+                               val stamp: Long,
+                               @volatile var lastAccess: Long)
+
+  implicit def StampedCacheCapabilities[K, V >: Null <: AnyRef]: CacheCapabilities[StampedCache[K, V]] =
+    new CacheCapabilities[StampedCache[K, V]] {
+      override def cachedEntitiesCount(cache: CacheType): Int = cache.size
+      override def clear(cache: CacheType): Unit = cache.clear()
+      override def stats(cache: CacheType): CacheStats = cache.stats
+    }
+}
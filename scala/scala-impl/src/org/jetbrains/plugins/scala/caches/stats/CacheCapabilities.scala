@@ -7,4 +7,5 @@ trait CacheCapabilities[T] {
 
   def cachedEntitiesCount(cache: CacheType): Int
   def clear(cache: CacheType): Unit
+  def stats(cache: CacheType): CacheStats = CacheStats.Empty
 }
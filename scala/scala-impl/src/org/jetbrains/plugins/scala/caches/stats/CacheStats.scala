@@ -0,0 +1,15 @@
+package org.jetbrains.plugins.scala.caches.stats
+
+/**
+ * Counters of a cache which knows whether a lookup was a hit.
+ *
+ * @param evictions entries removed because the cache is full or they became out of date
+ */
+case class CacheStats(hits: Long, misses: Long, evictions: Long) {
+  def +(other: CacheStats): CacheStats =
+    CacheStats(hits + other.hits, misses + other.misses, evictions + other.evictions)
+}
+
+object CacheStats {
+  val Empty: CacheStats = CacheStats(0, 0, 0)
+}
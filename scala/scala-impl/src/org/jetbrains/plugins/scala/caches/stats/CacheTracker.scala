@@ -24,6 +24,7 @@ object CacheTracker {
 
     override def tracked: collection.Seq[Cache] = trackedCaches.toStrongList.asScala
     override def cachedEntityCount: Int = tracked.foldLeft(0)(_ + capabilities.cachedEntitiesCount(_))
+    override def stats: CacheStats = tracked.foldLeft(CacheStats.Empty)(_ + capabilities.stats(_))
     override def clear(): Unit = tracked.foreach(capabilities.clear)
   }
 
@@ -51,6 +52,9 @@ object CacheTracker {
 
   def isCacheTypeRegistered(cacheTypeId: String): Boolean = trackedCacheTypes.containsKey(cacheTypeId)
 
+  def statsOfType(cacheTypeId: String): Option[CacheStats] =
+    Option(trackedCacheTypes.get(cacheTypeId)).map(_.stats)
+
   def clearCacheOfType(cacheTypeId: String): Unit = {
     trackedCacheTypes.get(cacheTypeId).nullSafe.foreach(_.clear())
   }
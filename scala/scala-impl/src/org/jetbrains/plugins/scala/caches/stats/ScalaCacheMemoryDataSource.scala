@@ -20,11 +20,15 @@ object ScalaCacheMemoryDataSource extends DataSource[MemoryData] {
       case (_, tracker) =>
         val tracked = tracker.tracked
         val capabilities = tracker.capabilities
+        val stats = tracked.foldLeft(CacheStats.Empty) { _ + capabilities.stats(_) }
         val data = MemoryData(
           tracker.id,
           tracker.name + tracker.alwaysTrack.fold(ifTrue = " (always tracked)", ifFalse = ""),
           tracked.length,
-          tracked.foldLeft(0) { _ + capabilities.cachedEntitiesCount(_)}
+          tracked.foldLeft(0) { _ + capabilities.cachedEntitiesCount(_)},
+          stats.hits,
+          stats.misses,
+          stats.evictions
         )
         arrayBuffer.add(data)
     }
@@ -1,155 +1,395 @@
 package org.jetbrains.plugins.scala.caches.stats
 
-import java.util.concurrent.atomic.{AtomicInteger, AtomicLong}
+import java.lang.ref.WeakReference
+import java.util.concurrent.{ConcurrentHashMap, ConcurrentLinkedQueue}
+import java.util.concurrent.atomic.AtomicInteger
 
 import com.intellij.openapi.application.ApplicationManager
-import org.jetbrains.plugins.scala.caches.stats.Tracer.{currentTracers, root, roundToMillis}
+import org.jetbrains.plugins.scala.caches.stats.Tracer.threadState
 import org.jetbrains.plugins.scala.util.UnloadableThreadLocal
 
-class Tracer private (val id: String, val name: String) {
+/**
+ * Tracers record the counters into primitive arrays of the current thread (see [[Tracer.ThreadState]]),
+ * so the calculation callbacks neither lock nor allocate (except when the arrays grow).
+ * The counters of all threads are aggregated on read.
+ *
+ * With `internal.profiler.tracing.sampling=N` the time is measured only for every N-th top-level calculation
+ * of a thread, the reported times are extrapolated. The counts are always exact.
+ */
+class Tracer private (val id: String, val name: String, private val index: Int) {
 
-  private val invocationCounter       = new AtomicInteger(0)
-  private val actualCounter           = new AtomicInteger(0)
-  private val maxCalculationTime      = new AtomicLong(0)
-  private val totalCalculationTime    = new AtomicLong(0)
-  private val ownCalculationTime      = new AtomicLong(0)
-  private val currentCalculationStart = ThreadLocal.withInitial[java.lang.Long](() => null)
-  private val lastUpdate              = ThreadLocal.withInitial[java.lang.Long](() => null)
-  private val recursionDepth          = ThreadLocal.withInitial[Int](() => 0)
+  def invocation(): Unit =
+    threadState.invocation(index)
 
-  private val parentCallCounters      = new MyConcurrentMap[Tracer, AtomicInteger]
+  def calculationStart(): Unit =
+    threadState.calculationStart(this)
 
-  def invocation(): Unit = {
-    invocationCounter.incrementAndGet()
-  }
+  def calculationEnd(): Unit =
+    threadState.calculationEnd(this)
 
-  def calculationStart(): Unit = {
-    val currentTime = System.nanoTime()
-    pushNested(currentTime)
+  def getCurrentData: TracerData =
+    Tracer.aggregate().dataOf(this)
+}
 
-    actualCounter.incrementAndGet()
-    if (recursionDepth.get == 1) {
-      currentCalculationStart.set(currentTime)
-      lastUpdate.set(currentTime)
-    }
-  }
+object Tracer {
 
-  def calculationEnd(): Unit = {
-    val currentTime  = System.nanoTime()
+  private object NoOp extends Tracer("NoOpTracer$$", "NoOpTracer", -1) {
+    override def calculationStart(): Unit = ()
+    override def calculationEnd(): Unit = ()
 
-    updateTotalTime(currentTime, isNested = false)
+    override def invocation(): Unit = ()
 
-    if (recursionDepth.get == 1) {
-      val duration = currentTime - currentCalculationStart.get()
-      maxCalculationTime.updateAndGet(_ max duration)
+    override def getCurrentData: Nothing = ???
+  }
 
-      currentCalculationStart.set(null)
-      lastUpdate.set(null)
-    }
+  private val tracingProperty = System.getProperty("internal.profiler.tracing") == "true"
 
-    popNested(currentTime)
+  final val BEFORE_CACHE_READ: Int = 0
+
+  val isAvailable: Boolean = {
+    tracingProperty || ApplicationManager.getApplication.isInternal
   }
 
-  private def pushNested(currentTime: Long): Unit = {
-    recursionDepth.set(recursionDepth.get + 1)
+  private var _enabled: Boolean = tracingProperty
 
-    val tracers = currentTracers.value
-    tracers match {
-      case previous :: _ =>
-        previous.updateTotalTime(currentTime, isNested = false)
-        callFrom(previous)
-      case _ =>
-        callFrom(root)
-    }
-    currentTracers.value = this :: tracers
+  def isEnabled: Boolean = _enabled
+
+  def setEnabled(v: Boolean): Unit = {
+    _enabled = v
   }
 
-  private def popNested(currentTime: Long): Unit = {
-    val tail = currentTracers.value.tail
-    currentTracers.value = tail
+  @volatile private var _samplingInterval: Int =
+    Integer.getInteger("internal.profiler.tracing.sampling", 1).intValue.max(1)
 
-    tail match {
-      case previous :: _ => previous.updateTotalTime(currentTime, isNested = true)
-      case _ =>
-    }
+  def samplingInterval: Int = _samplingInterval
 
-    recursionDepth.set(recursionDepth.get - 1)
+  def setSamplingInterval(interval: Int): Unit = {
+    _samplingInterval = interval.max(1)
   }
 
-  private def updateTotalTime(currentTime: Long, isNested: Boolean): Unit = {
-    if (recursionDepth.get == 1) {
-      val delta = currentTime - lastUpdate.get
+  private val tracersMap =
+    new MyConcurrentMap[String, Tracer]()
+
+  private val tracersByIndex =
+    new ConcurrentHashMap[Integer, Tracer]()
 
-      if (!isNested)
-        ownCalculationTime.addAndGet(delta)
+  private val nextIndex = new AtomicInteger(1)
 
-      totalCalculationTime.addAndGet(delta)
-      lastUpdate.set(currentTime)
+  private val root = new Tracer("root-tracer-id$$", "<root>", 0)
+
+  def apply(id: String, name: String): Tracer =
+    if (isEnabled) tracersMap.computeIfAbsent(id, newTracer(_, name))
+    else NoOp
+
+  private def newTracer(id: String, name: String): Tracer = {
+    val tracer = new Tracer(id, name, nextIndex.getAndIncrement())
+    tracersByIndex.put(tracer.index, tracer)
+    tracer
+  }
+
+  // the tracers are kept, so their indices in the thread states stay valid, only the counters are reset
+  def clearAll(): Unit = {
+    generation += 1
+    threadStates.removeIf(_.isObsolete)
+  }
+
+  def getCurrentData: java.util.List[TracerData] = {
+    val snapshot = aggregate()
+    val result = new java.util.ArrayList[TracerData]
+    tracersMap.values.forEach { tracer =>
+      if (snapshot.hasData(tracer))
+        result.add(snapshot.dataOf(tracer))
     }
+    result
   }
 
-  private def callFrom(other: Tracer): Unit = {
-    val intRef = parentCallCounters.computeIfAbsent(other, _ => new AtomicInteger(0))
-    intRef.addAndGet(1)
+  private def roundToMillis(nanos: Long): Int = Math.round(nanos.toDouble / (1000 * 1000)).toInt
+
+  /** Incremented on [[clearAll]], the thread states of the previous generations are reset lazily by their threads */
+  @volatile private var generation = 0L
+
+  private val threadStates = new ConcurrentLinkedQueue[ThreadState]()
+
+  private val currentThreadState: UnloadableThreadLocal[ThreadState] = UnloadableThreadLocal {
+    val state = new ThreadState(Thread.currentThread())
+    threadStates.add(state)
+    state
   }
 
-  private def fromCacheCount: Int = invocationCounter.get - actualCount
-  private def actualCount   : Int = actualCounter.get
-  private def maxTime       : Int = roundToMillis(maxCalculationTime.get)
-  private def ownTime       : Int = roundToMillis(ownCalculationTime.get)
-  private def totalTime     : Int = roundToMillis(totalCalculationTime.get)
+  private def threadState: ThreadState = currentThreadState.value
+
+  /**
+   * Counters of a single thread, indexed by the tracer index.
+   * Only the owner thread writes them, the arrays are replaced (never resized in place) when they grow,
+   * so a concurrent reader sees either the old or the new array.
+   */
+  private final class ThreadState(thread: Thread) {
+    private val threadRef = new WeakReference(thread)
+
+    @volatile private var stateGeneration = generation
+
+    @volatile var invocations   = new Array[Int](16)
+    @volatile var actualCounts  = new Array[Int](16)
+    @volatile var maxTimes      = new Array[Long](16)
+    @volatile var ownTimes      = new Array[Long](16)
+    @volatile var totalTimes    = new Array[Long](16)
+    @volatile var parentCalls   = new ParentCallsTable(64)
+
+    // not read by other threads
+    private var recursionDepths    = new Array[Int](16)
+    private var calculationStarts  = new Array[Long](16)
+    private var lastUpdates        = new Array[Long](16)
+    private var stack              = new Array[Tracer](16)
+    private var stackSize          = 0
+    private var topLevelCount      = 0L
+    private var sampled            = true
+
+    def generationIsCurrent: Boolean = stateGeneration == generation
+
+    def isObsolete: Boolean = !generationIsCurrent && threadRef.get == null
+
+    def invocation(index: Int): Unit = {
+      prepare(index)
+      invocations(index) += 1
+    }
 
-  private def parentCalls   : java.util.List[(String, Int)] =
-    parentCallCounters.map((tr, ref) => (tr.name, ref.get))
+    def calculationStart(tracer: Tracer): Unit = {
+      val index = tracer.index
+      prepare(index)
+
+      if (stackSize == 0) {
+        topLevelCount += 1
+        sampled = topLevelCount % samplingInterval == 0
+      }
+      val currentTime = if (sampled) System.nanoTime() else 0L
+
+      recursionDepths(index) += 1
+
+      val parent = if (stackSize > 0) stack(stackSize - 1) else root
+      if (stackSize > 0)
+        updateTotalTime(parent.index, currentTime, isNested = false)
+      parentCalls = parentCalls.increment(index, parent.index)
+      push(tracer)
+
+      actualCounts(index) += 1
+      if (recursionDepths(index) == 1) {
+        calculationStarts(index) = currentTime
+        lastUpdates(index) = currentTime
+      }
+    }
 
-  def getCurrentData: TracerData =
-    TracerData(id, name, fromCacheCount, actualCount, maxTime, ownTime, totalTime, parentCalls)
-}
+    def calculationEnd(tracer: Tracer): Unit = {
+      val index = tracer.index
+      val currentTime = if (sampled) System.nanoTime() else 0L
 
-object Tracer {
+      updateTotalTime(index, currentTime, isNested = false)
 
-  private object NoOp extends Tracer("NoOpTracer$$", "NoOpTracer") {
-    override def calculationStart(): Unit = ()
-    override def calculationEnd(): Unit = ()
+      if (recursionDepths(index) == 1 && sampled) {
+        val duration = currentTime - calculationStarts(index)
+        if (duration > maxTimes(index))
+          maxTimes(index) = duration
+      }
 
-    override def invocation(): Unit = ()
+      stackSize -= 1
+      stack(stackSize) = null
+      if (stackSize > 0)
+        updateTotalTime(stack(stackSize - 1).index, currentTime, isNested = true)
 
-    override def getCurrentData: Nothing = ???
-  }
+      recursionDepths(index) -= 1
+    }
 
-  private val tracingProperty = System.getProperty("internal.profiler.tracing") == "true"
+    private def updateTotalTime(index: Int, currentTime: Long, isNested: Boolean): Unit =
+      if (sampled && recursionDepths(index) == 1) {
+        val delta = currentTime - lastUpdates(index)
 
-  final val BEFORE_CACHE_READ: Int = 0
+        if (!isNested)
+          ownTimes(index) += delta
 
-  val isAvailable: Boolean = {
-    tracingProperty || ApplicationManager.getApplication.isInternal
-  }
+        totalTimes(index) += delta
+        lastUpdates(index) = currentTime
+      }
 
-  private var _enabled: Boolean = tracingProperty
+    private def push(tracer: Tracer): Unit = {
+      if (stackSize == stack.length)
+        stack = java.util.Arrays.copyOf(stack, stackSize * 2)
+      stack(stackSize) = tracer
+      stackSize += 1
+    }
 
-  def isEnabled: Boolean = _enabled
+    private def prepare(index: Int): Unit = {
+      if (!generationIsCurrent)
+        reset()
+      if (index >= invocations.length)
+        grow(index + 1)
+    }
 
-  def setEnabled(v: Boolean): Unit = {
-    _enabled = v
+    // the calculations in progress are kept, so that they are finished consistently
+    private def reset(): Unit = {
+      stateGeneration = generation
+      val length = invocations.length
+      invocations   = new Array[Int](length)
+      actualCounts  = new Array[Int](length)
+      maxTimes      = new Array[Long](length)
+      ownTimes      = new Array[Long](length)
+      totalTimes    = new Array[Long](length)
+      parentCalls   = new ParentCallsTable(64)
+    }
+
+    private def grow(minLength: Int): Unit = {
+      val length = Integer.highestOneBit(minLength) * 2
+      invocations       = java.util.Arrays.copyOf(invocations, length)
+      actualCounts      = java.util.Arrays.copyOf(actualCounts, length)
+      maxTimes          = java.util.Arrays.copyOf(maxTimes, length)
+      ownTimes          = java.util.Arrays.copyOf(ownTimes, length)
+      totalTimes        = java.util.Arrays.copyOf(totalTimes, length)
+      recursionDepths   = java.util.Arrays.copyOf(recursionDepths, length)
+      calculationStarts = java.util.Arrays.copyOf(calculationStarts, length)
+      lastUpdates       = java.util.Arrays.copyOf(lastUpdates, length)
+    }
   }
 
-  private val tracersMap =
-    new MyConcurrentMap[String, Tracer]()
+  /**
+   * Open addressing map from a (tracer, parent) pair to the number of calls.
+   * It's replaced by a larger copy when it's half full, so readers never see a partially rehashed table.
+   */
+  private final class ParentCallsTable(capacity: Int) {
+    val keys   = new Array[Long](capacity)
+    val counts = new Array[Int](capacity)
+    private var size = 0
+
+    /** @return this table or its larger copy */
+    def increment(index: Int, parentIndex: Int): ParentCallsTable = {
+      // +1 so that an empty slot (0) is never a valid key
+      val key = ((index.toLong + 1) << 32) | (parentIndex + 1)
+      var slot = slotOf(key)
+      while (keys(slot) != 0 && keys(slot) != key)
+        slot = (slot + 1) & (capacity - 1)
+
+      if (keys(slot) == key) {
+        counts(slot) += 1
+        this
+      } else if (2 * (size + 1) > capacity) {
+        val larger = copy(capacity * 2)
+        larger.increment(index, parentIndex)
+      } else {
+        counts(slot) = 1
+        keys(slot) = key
+        size += 1
+        this
+      }
+    }
 
-  def apply(id: String, name: String): Tracer =
-    if (isEnabled) tracersMap.computeIfAbsent(id, new Tracer(_, name))
-    else NoOp
+    def foreach(f: (Int, Int, Int) => Unit): Unit = {
+      var slot = 0
+      while (slot < capacity) {
+        val key = keys(slot)
+        if (key != 0)
+          f((key >>> 32).toInt - 1, key.toInt - 1, counts(slot))
+        slot += 1
+      }
+    }
 
-  def clearAll(): Unit =
-    tracersMap.clear()
+    private def slotOf(key: Long): Int =
+      (java.lang.Long.hashCode(key * 0x9E3779B97F4A7C15L)) & (capacity - 1)
 
-  def getCurrentData: java.util.List[TracerData] =
-    tracersMap.map((k, v) => v.getCurrentData)
+    private def copy(newCapacity: Int): ParentCallsTable = {
+      val result = new ParentCallsTable(newCapacity)
+      foreach { (index, parentIndex, count) =>
+        result.insert(index, parentIndex, count)
+      }
+      result
+    }
 
-  private val root = new Tracer("root-tracer-id$$", "<root>")
+    private def insert(index: Int, parentIndex: Int, count: Int): Unit = {
+      val key = ((index.toLong + 1) << 32) | (parentIndex + 1)
+      var slot = slotOf(key)
+      while (keys(slot) != 0)
+        slot = (slot + 1) & (capacity - 1)
+      counts(slot) = count
+      keys(slot) = key
+      size += 1
+    }
+  }
 
-  private def roundToMillis(nanos: Long): Int = Math.round(nanos.toDouble / (1000 * 1000)).toInt
+  private final class Snapshot(length: Int) {
+    val invocations  = new Array[Long](length)
+    val actualCounts = new Array[Long](length)
+    val maxTimes     = new Array[Long](length)
+    val ownTimes     = new Array[Long](length)
+    val totalTimes   = new Array[Long](length)
+    val parentCalls  = new java.util.HashMap[Integer, java.util.Map[Integer, Integer]]()
+
+    def hasData(tracer: Tracer): Boolean =
+      tracer.index < length && (invocations(tracer.index) > 0 || actualCounts(tracer.index) > 0)
+
+    def dataOf(tracer: Tracer): TracerData = {
+      val index = tracer.index
+      if (index >= length)
+        TracerData(tracer.id, tracer.name, 0, 0, 0, 0, 0, java.util.Collections.emptyList())
+      else {
+        val interval = samplingInterval
+        val actualCount = actualCounts(index).toInt
+        val parents = new java.util.ArrayList[(String, Int)]()
+        Option(parentCalls.get(index)).foreach {
+          _.forEach { (parentIndex, count) =>
+            Option(tracerOf(parentIndex)).foreach(parent => parents.add((parent.name, count.intValue)))
+          }
+        }
+        TracerData(
+          tracer.id,
+          tracer.name,
+          fromCacheCount = invocations(index).toInt - actualCount,
+          actualCount = actualCount,
+          maxTime = roundToMillis(maxTimes(index)),
+          ownTime = roundToMillis(ownTimes(index) * interval),
+          totalTime = roundToMillis(totalTimes(index) * interval),
+          parentCalls = parents
+        )
+      }
+    }
+  }
+
+  private def tracerOf(index: Int): Tracer =
+    if (index == root.index) root
+    else tracersByIndex.get(index)
+
+  private def aggregate(): Snapshot = {
+    val snapshot = new Snapshot(nextIndex.get)
+    threadStates.forEach { state =>
+      if (state.generationIsCurrent) {
+        add(snapshot.invocations, state.invocations)
+        add(snapshot.actualCounts, state.actualCounts)
+        add(snapshot.ownTimes, state.ownTimes)
+        add(snapshot.totalTimes, state.totalTimes)
+        val maxTimes = state.maxTimes
+        var i = 0
+        while (i < maxTimes.length && i < snapshot.maxTimes.length) {
+          snapshot.maxTimes(i) = snapshot.maxTimes(i) max maxTimes(i)
+          i += 1
+        }
+        state.parentCalls.foreach { (index, parentIndex, count) =>
+          snapshot.parentCalls
+            .computeIfAbsent(index, _ => new java.util.HashMap[Integer, Integer]())
+            .merge(parentIndex, count, (a, b) => Integer.valueOf(a.intValue + b.intValue))
+        }
+      }
+    }
+    snapshot
+  }
 
-  private val currentTracers: UnloadableThreadLocal[List[Tracer]] = UnloadableThreadLocal(Nil)
+  private def add(target: Array[Long], source: Array[Int]): Unit = {
+    var i = 0
+    while (i < source.length && i < target.length) {
+      target(i) += source(i)
+      i += 1
+    }
+  }
 
-}
\ No newline at end of file
+  private def add(target: Array[Long], source: Array[Long]): Unit = {
+    var i = 0
+    while (i < source.length && i < target.length) {
+      target(i) += source(i)
+      i += 1
+    }
+  }
+}
@@ -9,5 +9,6 @@ trait TrackedCacheType {
   def capabilities: CacheCapabilities[Cache]
   def tracked: collection.Seq[Cache]
   def cachedEntityCount: Int
+  def stats: CacheStats
   def clear(): Unit
 }
@@ -58,9 +58,12 @@ private final class CompilationChartsUpdater(project: Project)
   private def updateCompileServerMetricsState(currentTime: Timestamp): Unit = {
     val metrics = CompileServerClient.get(project).getMetrics()
     val state = CompileServerMetricsStateManager.get(project)
+    val compilationAtStart = state.compilationAtStart.getOrElse(metrics.compilation)
     val newState = state.copy(
       maxHeapSize = metrics.maxHeapSize,
-      heapUsed = state.heapUsed.updated(currentTime, metrics.heapUsed)
+      heapUsed = state.heapUsed.updated(currentTime, metrics.heapUsed),
+      compilationAtStart = Some(compilationAtStart),
+      compilation = metrics.compilation.since(compilationAtStart)
     )
     CompileServerMetricsStateManager.update(project, newState)
   }
@@ -1,8 +1,14 @@
 package org.jetbrains.plugins.scala.compilationCharts
 
+import org.jetbrains.jps.incremental.scala.remote.CompilationMetrics
+
 /**
  * @param maxHeapSize the maximum heap size in bytes
  * @param heapUsed used heap memory in a specific point of time
+ * @param compilationAtStart compile server statistics at the moment of the first measurement in the current build
+ * @param compilation compile server statistics accumulated during the current build
  */
 final case class CompileServerMemoryState(maxHeapSize: Memory,
-                                          heapUsed: Map[Timestamp, Memory])
+                                          heapUsed: Map[Timestamp, Memory],
+                                          compilationAtStart: Option[CompilationMetrics] = None,
+                                          compilation: CompilationMetrics = CompilationMetrics.Empty)
@@ -6,6 +6,7 @@ import com.intellij.openapi.project.Project
 import com.intellij.ui.components.{JBPanelWithEmptyText, JBScrollPane}
 import com.intellij.util.ui.StartupUiUtil
 import org.jetbrains.annotations.TestOnly
+import org.jetbrains.jps.incremental.scala.remote.PhaseMetrics
 import org.jetbrains.plugins.scala.compilationCharts.ui.Common._
 import org.jetbrains.plugins.scala.compilationCharts.{CompilationProgressStateManager, CompileServerMetricsStateManager, Memory}
 import org.jetbrains.plugins.scala.extensions.{ObjectExt, invokeLater}
@@ -78,7 +79,11 @@ class DiagramsComponent(chartsComponent: CompilationChartsComponent,
                |<td><pre style='margin: 0'> ($duration)</pre></td>
                |</tr>""".stripMargin
           }
-          htmlRows.mkString("""<table>""", "", "</table>")
+          val phaseStatistics = for {
+            it         <- phase
+            statistics <- CompileServerMetricsStateManager.get(project).compilation.phases.find(_.name == it.name)
+          } yield phaseStatisticsHtml(statistics)
+          htmlRows.mkString("""<table>""", "", "</table>") + phaseStatistics.getOrElse("")
         }
         else {
           //language=HTML
@@ -312,6 +317,15 @@ object DiagramsComponent {
   private def roundToSeconds(duration0: FiniteDuration): FiniteDuration =
     Math.round(duration0.toMillis / 1000f).seconds
 
+  /** Statistics of the phase in all the modules of the current build */
+  private def phaseStatisticsHtml(phase: PhaseMetrics): String = {
+    val wall = stringifyForSegmentTooltip(phase.wallTimeMs.millis)
+    val cpu = stringifyForSegmentTooltip(phase.cpuTimeMs.millis)
+    val allocated = stringify(phase.allocatedBytes, showMb = true)
+    //language=HTML
+    s"<pre style='margin: 0'>All modules: $wall, CPU $cpu, allocated $allocated, ${phase.units} units</pre>"
+  }
+
   private def stringifyForSegmentTooltip(timeRangeOwner: TimeRangeOwner): String =
     stringifyForSegmentTooltip(timeRangeOwner.to - timeRangeOwner.from)
 
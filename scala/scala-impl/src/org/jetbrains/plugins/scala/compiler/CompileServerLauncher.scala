@@ -11,6 +11,7 @@ import com.intellij.openapi.projectRoots.{JavaSdkVersion, ProjectJdkTable, Sdk}
 import com.intellij.openapi.roots.ModuleRootManager
 import com.intellij.openapi.roots.impl.OrderEntryUtil
 import com.intellij.openapi.roots.ui.configuration.ProjectSettingsService
+import com.intellij.openapi.util.registry.Registry
 import com.intellij.util.net.NetUtils
 import org.apache.commons.lang3.StringUtils
 import org.jetbrains.annotations.Nls
@@ -229,6 +230,10 @@ object CompileServerLauncher {
         else
           Seq.empty
 
+        val warmStartOptions =
+          if (Registry.is(CompileServerProperties.WarmStart)) warmStartJvmOptions(jdk, buildSystemDir, classpath)
+          else Seq.empty
+
         val userJvmParameters = jvmParameters
         val commands =
           jdk.executable.canonicalPath +:
@@ -238,6 +243,7 @@ object CompileServerLauncher {
             isScalaCompileServer +:
             parallelCompilation +:
             addOpensOptions ++:
+            warmStartOptions ++:
             vmOptions ++:
             NailgunRunnerFQN +:
             freePort.toString +:
@@ -297,6 +303,28 @@ object CompileServerLauncher {
     }
   }
 
+  /**
+   * The server restores its caches on start, see [[org.jetbrains.jps.incremental.scala.local.WarmStart]].
+   * On JDK 13+ the loaded classes are also stored to a dynamic class-data-sharing archive when the server exits,
+   * and the archive is used by the subsequent starts with the same JDK and classpath.
+   */
+  private def warmStartJvmOptions(jdk: JDK, buildSystemDir: Path, classpath: Iterable[String]): Seq[String] = {
+    val warmStart = s"-D${CompileServerProperties.WarmStart}=true"
+    val classDataSharing =
+      if (jdk.version.exists(_ isAtLeast JavaSdkVersion.JDK_13)) {
+        val key = (jdk.executable.canonicalPath +: classpath.toSeq).mkString(File.pathSeparator).hashCode
+        val archive = buildSystemDir.resolve("scala-compile-server").resolve(s"classes-${Integer.toHexString(key)}.jsa")
+        if (Files.isRegularFile(archive))
+          Seq(s"-XX:SharedArchiveFile=$archive")
+        else {
+          Files.createDirectories(archive.getParent)
+          Seq(s"-XX:ArchiveClassesAtExit=$archive")
+        }
+      }
+      else Seq.empty
+    warmStart +: classDataSharing
+  }
+
   // ensure that old tokens from old sessions do not exist on file system to avoid race conditions (see ticket from the commit)
   // it should be deleted in org.jetbrains.plugins.scala.nailgun.NailgunRunner.ShutdownHook.run
   // but in case of some server crashes it can remain on the file system
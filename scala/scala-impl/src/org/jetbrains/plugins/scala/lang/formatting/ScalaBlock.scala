@@ -39,13 +39,17 @@ class ScalaBlock(val parentBlock: ScalaBlock,
                  val alignment: Alignment,
                  val indent: Indent,
                  val wrap: Wrap,
-                 val settings: CodeStyleSettings,
+                 val request: ScalaFormattingRequest,
                  val subBlocksContext: Option[SubBlocksContext] = None)
   extends ASTBlock with ScalaTokenTypes {
 
   protected var subBlocks: util.List[Block] = _
 
-  def commonSettings: CommonCodeStyleSettings = settings.getCommonSettings(ScalaLanguage.INSTANCE)
+  def settings: CodeStyleSettings = request.settings
+
+  def commonSettings: CommonCodeStyleSettings = request.commonSettings
+
+  def scalaSettings: ScalaCodeStyleSettings = request.scalaSettings
 
   override def getNode: ASTNode = node
 
@@ -64,8 +68,6 @@ class ScalaBlock(val parentBlock: ScalaBlock,
   override def isIncomplete: Boolean = ScalaBlock.isIncomplete(node)
 
   override def getChildAttributes(newChildIndex: Int): ChildAttributes = {
-    val scalaSettings = settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
-
     if (scalaSettings.USE_SCALAFMT_FORMATTER)
       getChildAttributesScalafmtInner(newChildIndex)
     else
@@ -210,13 +212,6 @@ class ScalaBlock(val parentBlock: ScalaBlock,
       })
   }
 
-  /**
-   * Used to pass to intellij logic when scalafmt is enabled.<br>
-   * In case there are any changes in IntelliJ formatter settings (even though scalafmt is selected),
-   * we do not want these settings to be applicable in `getChildAttributesScalafmtInner`
-   */
-  private val DefaultScalaCodeStyleSettings = new ScalaCodeStyleSettings
-
   // TODO: in latest scalafmt versions there are a lot of new more-precise indent values.
   //  We should handle all of them to provide proper indent on Enter handler
   //  see https://scalameta.org/scalafmt/docs/configuration.html#indentation
@@ -248,7 +243,7 @@ class ScalaBlock(val parentBlock: ScalaBlock,
 
     val indent = scalamtSpecificIndentOpt.getOrElse {
       //fallback to default intellij indent calculation logic
-      val intellijChildAttributes = getChildAttributesIntellijInner(newChildIndex, DefaultScalaCodeStyleSettings)
+      val intellijChildAttributes = getChildAttributesIntellijInner(newChildIndex, request.defaultScalaSettings)
       val intellijIndent = intellijChildAttributes.getChildIndent
       val useScalafmtMainIndent = intellijIndent.getType match {
         case Indent.Type.SPACES => false
@@ -273,10 +268,8 @@ class ScalaBlock(val parentBlock: ScalaBlock,
   override def getSubBlocks: util.List[Block] = {
     if (subBlocks == null) {
       val blocks = getDummyBlocks(this)(node, lastNode)
+      blocks.removeIf((block: Block) => block.asInstanceOf[ScalaBlock].getNode.getElementType == ScalaTokenTypes.tWHITE_SPACE_IN_LINE)
       subBlocks = blocks
-        .asScala
-        .filterNot(_.asInstanceOf[ScalaBlock].getNode.getElementType == ScalaTokenTypes.tWHITE_SPACE_IN_LINE)
-        .asJava
       // printSubBlocksDebugInfoToConsole()
     }
     subBlocks
@@ -290,7 +283,6 @@ class ScalaBlock(val parentBlock: ScalaBlock,
 
   def suggestedWrap: Wrap = {
     if (_suggestedWrap == null) {
-      val scalaSettings = settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
       _suggestedWrap = ScalaWrapManager.suggestedWrap(this, scalaSettings)
     }
     _suggestedWrap
@@ -39,7 +39,7 @@ final class ScalaFormattingModelBuilder extends FormattingModelBuilder {
 
     new ScalaFormattingModel(
       containingFile,
-      new ScalaBlock(null, fileNode, null, null, Indent.getAbsoluteNoneIndent, null, styleSettings)
+      new ScalaBlock(null, fileNode, null, null, Indent.getAbsoluteNoneIndent, null, new ScalaFormattingRequest(file, styleSettings))
     )
   }
 
@@ -0,0 +1,38 @@
+package org.jetbrains.plugins.scala
+package lang
+package formatting
+
+import com.intellij.openapi.editor.Document
+import com.intellij.psi.codeStyle.{CodeStyleSettings, CommonCodeStyleSettings}
+import com.intellij.psi.{PsiDocumentManager, PsiFile}
+import org.jetbrains.plugins.scala.extensions.PsiFileExt
+import org.jetbrains.plugins.scala.lang.formatting.settings.ScalaCodeStyleSettings
+
+/**
+ * Data of a single formatting request, shared by all [[ScalaBlock]]s built for it.
+ *
+ * Settings are required for every block and for every pair of adjacent blocks,
+ * so they are looked up once per request and not on each access.
+ */
+final class ScalaFormattingRequest(val file: PsiFile, val settings: CodeStyleSettings) {
+
+  val commonSettings: CommonCodeStyleSettings = settings.getCommonSettings(ScalaLanguage.INSTANCE)
+
+  val scalaSettings: ScalaCodeStyleSettings = settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
+
+  /**
+   * Used to pass to intellij logic when scalafmt is enabled.<br>
+   * In case there are any changes in IntelliJ formatter settings (even though scalafmt is selected),
+   * we do not want these settings to be applicable in `ScalaBlock.getChildAttributesScalafmtInner`
+   */
+  lazy val defaultScalaSettings: ScalaCodeStyleSettings = new ScalaCodeStyleSettings
+
+  private lazy val document: Option[Document] =
+    Option(PsiDocumentManager.getInstance(file.getProject)).flatMap(manager => Option(manager.getDocument(file)))
+
+  /** Current text of the file, immutable document text is a snapshot, which is cheap to take */
+  def fileText: CharSequence = document match {
+    case Some(document) => document.getImmutableCharSequence
+    case None           => file.charSequence
+  }
+}
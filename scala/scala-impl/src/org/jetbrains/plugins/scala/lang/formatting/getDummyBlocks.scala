@@ -93,8 +93,8 @@ object getDummyBlocks {
     }
 
   private class StringLineScalaBlock(myTextRange: TextRange, mainNode: ASTNode, myParentBlock: ScalaBlock,
-                                     myAlignment: Alignment, myIndent: Indent, myWrap: Wrap, mySettings: CodeStyleSettings)
-    extends ScalaBlock(myParentBlock, mainNode, null, myAlignment, myIndent, myWrap, mySettings) {
+                                     myAlignment: Alignment, myIndent: Indent, myWrap: Wrap, myRequest: ScalaFormattingRequest)
+    extends ScalaBlock(myParentBlock, mainNode, null, myAlignment, myIndent, myWrap, myRequest) {
 
     override def getTextRange: TextRange = myTextRange
     override def isLeaf = true
@@ -112,9 +112,10 @@ object getDummyBlocks {
 
 //noinspection RedundantDefaultArgument
 class getDummyBlocks(private val block: ScalaBlock) {
-  private val settings: CodeStyleSettings = block.settings
-  private val commonSettings: CommonCodeStyleSettings = settings.getCommonSettings(ScalaLanguage.INSTANCE)
-  private implicit val scalaSettings: ScalaCodeStyleSettings = settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
+  private val request: ScalaFormattingRequest = block.request
+  private val settings: CodeStyleSettings = request.settings
+  private val commonSettings: CommonCodeStyleSettings = request.commonSettings
+  private implicit val scalaSettings: ScalaCodeStyleSettings = request.scalaSettings
 
   // shortcuts to simplify long conditions that operate with settings
   @inline private def cs = commonSettings
@@ -222,25 +223,30 @@ class getDummyBlocks(private val block: ScalaBlock) {
 
     val sharedAlignment: Alignment = createAlignment(node)
 
-    val children = node.getChildren(null)
-    for (child <- children if isNotEmptyNode(child)) {
-      val childAlignment: Alignment = calcChildAlignment(node, child, sharedAlignment)
+    // the most common case, children are iterated without copying them to an array
+    var child = node.getFirstChildNode
+    while (child != null) {
+      if (isNotEmptyNode(child)) {
+        val childAlignment: Alignment = calcChildAlignment(nodePsi, child, sharedAlignment)
 
-      val needFlattenInterpolatedStrings = child.getFirstChildNode == null &&
-        child.getElementType == tINTERPOLATED_MULTILINE_STRING &&
-        ss.supportMultilineString
-      if (needFlattenInterpolatedStrings) {
-        subBlocks.addAll(getMultilineStringBlocks(child))
-      } else {
-        subBlocks.add(subBlock(child, null, childAlignment))
+        val needFlattenInterpolatedStrings = child.getFirstChildNode == null &&
+          child.getElementType == tINTERPOLATED_MULTILINE_STRING &&
+          ss.supportMultilineString
+        if (needFlattenInterpolatedStrings) {
+          subBlocks.addAll(getMultilineStringBlocks(child))
+        } else {
+          subBlocks.add(subBlock(child, null, childAlignment))
+        }
       }
+      child = child.getTreeNext
     }
 
     subBlocks
   }
 
-  private def calcChildAlignment(parent: ASTNode, child: ASTNode, sharedAlignment: Alignment): Alignment =
-    parent.getPsi match {
+  // the parent psi is passed by the caller, it's the same for all children
+  private def calcChildAlignment(parentPsi: PsiElement, child: ASTNode, sharedAlignment: Alignment): Alignment =
+    parentPsi match {
       case _: ScDocListItem if scalaSettings.SD_ALIGN_LIST_ITEM_CONTENT =>
         val doNotAlignInListItem = child.getElementType match {
           case ScalaDocTokenType.DOC_LIST_ITEM_HEAD |
@@ -663,9 +669,9 @@ class getDummyBlocks(private val block: ScalaBlock) {
 
       if (trimmedLine.startsWith(marginChar)) {
         val marginRange = relativeRange(linePrefixLength, linePrefixLength + 1, acc)
-        subBlocks.add(new StringLineScalaBlock(marginRange, node, block, marginAlignment, marginIndent, null, settings))
+        subBlocks.add(new StringLineScalaBlock(marginRange, node, block, marginAlignment, marginIndent, null, request))
         val contentRange = relativeRange(linePrefixLength + 1, lineLength, acc)
-        subBlocks.add(new StringLineScalaBlock(contentRange, node, block, null, Indent.getNoneIndent, wrap, settings))
+        subBlocks.add(new StringLineScalaBlock(contentRange, node, block, null, Indent.getNoneIndent, wrap, request))
       } else if (trimmedLine.nonEmpty) {
         val (range, myIndent, myAlignment) =
           if (trimmedLine.startsWith(MultilineQuotes)) {
@@ -673,7 +679,7 @@ class getDummyBlocks(private val block: ScalaBlock) {
               val hasMarginOnFirstLine = trimmedLine.charAt(MultilineQuotes.length.min(trimmedLine.length - 1)) == '|'
               if (hasMarginOnFirstLine && lineLength > 3) {
                 val range = relativeRange(0, 3)
-                val marginBlock = new StringLineScalaBlock(range, node, block, quotesAlignment, Indent.getNoneIndent, null, settings)
+                val marginBlock = new StringLineScalaBlock(range, node, block, quotesAlignment, Indent.getNoneIndent, null, request)
                 subBlocks.add(marginBlock)
                 //now, return block parameters for text after the opening quotes
                 (relativeRange(3, lineLength), Indent.getNoneIndent, marginAlignment)
@@ -686,7 +692,7 @@ class getDummyBlocks(private val block: ScalaBlock) {
           } else {
             (relativeRange(0, lineLength, acc), Indent.getAbsoluteNoneIndent, null)
           }
-        subBlocks.add(new StringLineScalaBlock(range, node, block, myAlignment, myIndent, null, settings))
+        subBlocks.add(new StringLineScalaBlock(range, node, block, myAlignment, myIndent, null, request))
       }
 
       acc += lineLength + 1
@@ -913,7 +919,7 @@ class getDummyBlocks(private val block: ScalaBlock) {
         val sharedAlignment = createAlignment(node)
         val children = node.getChildren(null)
         for (child <- children if isNotEmptyDocNode(child)) {
-          val childAlignment = calcChildAlignment(node, child, sharedAlignment)
+          val childAlignment = calcChildAlignment(nodePsi, child, sharedAlignment)
           subBlocks.add(subBlock(child, null, childAlignment))
         }
     }
@@ -1036,6 +1042,6 @@ class getDummyBlocks(private val block: ScalaBlock) {
                        context: Option[SubBlocksContext] = None): ScalaBlock = {
     val indentFinal = indent.getOrElse(ScalaIndentProcessor.getChildIndent(block, node))
     val wrapFinal = wrap.getOrElse(arrangeSuggestedWrapForChild(block, node, block.suggestedWrap))
-    new ScalaBlock(block, node, lastNode, alignment, indentFinal, wrapFinal, settings, context)
+    new ScalaBlock(block, node, lastNode, alignment, indentFinal, wrapFinal, request, context)
   }
 }
\ No newline at end of file
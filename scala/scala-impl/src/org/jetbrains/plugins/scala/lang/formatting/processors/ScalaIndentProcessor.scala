@@ -11,7 +11,6 @@ import com.intellij.psi.impl.source.tree.{LeafPsiElement, PsiWhiteSpaceImpl}
 import com.intellij.psi.tree.TokenSet
 import org.jetbrains.plugins.scala.extensions.{PsiElementExt, _}
 import org.jetbrains.plugins.scala.lang.formatting.ScalaBlock.isConstructorArgOrMemberFunctionParameter
-import org.jetbrains.plugins.scala.lang.formatting.settings.ScalaCodeStyleSettings
 import org.jetbrains.plugins.scala.lang.lexer.{ScalaTokenType, ScalaTokenTypes}
 import org.jetbrains.plugins.scala.lang.parser.ScCodeBlockElementType.BlockExpression
 import org.jetbrains.plugins.scala.lang.parser.ScalaElementType
@@ -46,7 +45,7 @@ object ScalaIndentProcessor extends ScalaTokenTypes {
 
   def getChildIndent(parent: ScalaBlock, child: ASTNode): Indent = {
     val settings = parent.commonSettings
-    val scalaSettings = parent.settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
+    val scalaSettings = parent.scalaSettings
 
     // todo: rename to parentNode
     val node = parent.getNode
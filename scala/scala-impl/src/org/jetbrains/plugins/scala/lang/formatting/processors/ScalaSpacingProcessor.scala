@@ -67,15 +67,8 @@ object ScalaSpacingProcessor extends ScalaTokenTypes {
   private def spacesToPreventNewIds(left: ScalaBlock, right: ScalaBlock, fileText: CharSequence, textRange: TextRange): Integer = {
     if (ScalaXmlTokenTypes.XML_ELEMENTS.contains(left.getNode.getElementType) ||
       ScalaXmlTokenTypes.XML_ELEMENTS.contains(right.getNode.getElementType)) return 0
-    @tailrec
-    def dfsChildren(currentNode: ASTNode, getChildren: ASTNode => List[ASTNode]): ASTNode = {
-      getChildren(currentNode) find (_.getTextLength > 0) match {
-        case Some(next) => dfsChildren(next, getChildren)
-        case None => currentNode
-      }
-    }
-    val leftNode = dfsChildren(left.lastNode.nullSafe.getOrElse(left.getNode), _.getChildren(null).toList.reverse)
-    val rightNode = dfsChildren(right.getNode, _.getChildren(null).toList)
+    val leftNode = lastNonEmptyLeaf(left.lastNode.nullSafe.getOrElse(left.getNode))
+    val rightNode = firstNonEmptyLeaf(right.getNode)
 
     (leftNode.getTreeParent.getElementType, rightNode.getTreeParent.getElementType) match {
       case (ScalaElementType.InterpolatedString, _) => 0
@@ -90,8 +83,26 @@ object ScalaSpacingProcessor extends ScalaTokenTypes {
     }
   }
 
+  @tailrec
+  private def firstNonEmptyLeaf(node: ASTNode): ASTNode = {
+    var child = node.getFirstChildNode
+    while (child != null && child.getTextLength == 0)
+      child = child.getTreeNext
+    if (child == null) node
+    else firstNonEmptyLeaf(child)
+  }
+
+  @tailrec
+  private def lastNonEmptyLeaf(node: ASTNode): ASTNode = {
+    var child = node.getLastChildNode
+    while (child != null && child.getTextLength == 0)
+      child = child.getTreePrev
+    if (child == null) node
+    else lastNonEmptyLeaf(child)
+  }
+
   def getSpacing(@Nullable left0: ScalaBlock, right: ScalaBlock): Spacing = {
-    val settings = right.settings.getCommonSettings(ScalaLanguage.INSTANCE)
+    val settings = right.commonSettings
 
     if (left0 == null) {
       val keepBlankLines = if (settings.KEEP_LINE_BREAKS) settings.KEEP_BLANK_LINES_IN_CODE else 0
@@ -101,7 +112,7 @@ object ScalaSpacingProcessor extends ScalaTokenTypes {
     val left = getPrevBlockForLineCommentInTheEndOfLine(left0)
     val leftIsLineComment = !(left eq left0) || left.lastNode != null && left.lastNode.getElementType == ScalaTokenTypes.tLINE_COMMENT
 
-    val scalaSettings = right.settings.getCustomSettings(classOf[ScalaCodeStyleSettings])
+    val scalaSettings = right.scalaSettings
 
     getSpacingImpl(left, right, leftIsLineComment, settings, scalaSettings)
   }
@@ -126,7 +137,7 @@ object ScalaSpacingProcessor extends ScalaTokenTypes {
 
   // NOTE: align, indent, wrap don't matter in spacing processor
   private def dummyBlock(left: ScalaBlock, prev: ASTNode): ScalaBlock =
-    new ScalaBlock(left.parentBlock, prev, null, null, null, null, left.settings, None)
+    new ScalaBlock(left.parentBlock, prev, null, null, null, null, left.request, None)
 
   private def prevOnSameLine(node: ASTNode): ASTNode =
     node.getTreePrev match {
@@ -197,12 +208,7 @@ object ScalaSpacingProcessor extends ScalaTokenTypes {
     val leftPsiParent  = leftNode.getPsi.getParent
     val rightPsiParent = rightNode.getPsi.getParent
 
-    // TODO: it's not good for performance to extract entire file text on each reformat
-    //  (it can be reformat of tiny block, e.g. after tiny refactoring)
-    val fileText = PsiDocumentManager.getInstance(leftPsi.getProject).nullSafe
-      .map(_.getDocument(leftPsi.getContainingFile))
-      .map(_.getImmutableCharSequence)
-      .getOrElse(leftPsi.getContainingFile.charSequence)
+    val fileText = left.request.fileText
 
     val fileTextRange = new TextRange(0, fileText.length())
 
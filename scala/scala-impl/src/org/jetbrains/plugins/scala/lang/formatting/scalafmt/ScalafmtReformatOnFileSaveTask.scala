@@ -7,6 +7,7 @@ import com.intellij.openapi.editor.Document
 import com.intellij.openapi.fileEditor.{FileDocumentManager, FileDocumentManagerListener}
 import com.intellij.openapi.project.{Project, ProjectManagerListener}
 import com.intellij.openapi.roots.ProjectRootManager
+import com.intellij.openapi.util.Key
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.{PsiDocumentManager, PsiFile}
 import org.jetbrains.plugins.scala.extensions._
@@ -18,21 +19,45 @@ import org.jetbrains.sbt.language.SbtFileImpl
 
 final class ScalafmtReformatOnFileSaveTask extends ProjectManagerListener {
 
+  import ScalafmtReformatOnFileSaveTask._
+
   override def projectOpened(project: Project): Unit = {
     val bus = ApplicationManager.getApplication.getMessageBus
     bus.connect(project.unloadAwareDisposable).subscribe(AppTopics.FILE_DOCUMENT_SYNC, new FileDocumentManagerListener {
+      override def beforeAllDocumentsSaving(): Unit = reformatAllIfNeeded()(project)
+
       override def beforeDocumentSaving(document: Document): Unit = reformatIfNeeded(document)(project)
     })
   }
+}
 
-  // for now 'reformat on file save' is only implemented for scalafmt formatter
-  private def reformatIfNeeded(document: Document)(implicit project: Project): Unit = {
+object ScalafmtReformatOnFileSaveTask {
+
+  /** Modification stamp of a document right after it was formatted together with other unsaved documents */
+  val FormattedStampKey: Key[java.lang.Long] = Key.create("scalafmt.formatted.before.all.documents.saving")
+
+  /**
+   * All unsaved documents are formatted at once, before each of them is saved,
+   * documents, which are then saved, aren't formatted once again.
+   */
+  def reformatAllIfNeeded()(implicit project: Project): Unit = {
     if (project.isDisposed || !isScalafmtSaveOnfileEnabled(project)) return
 
+    val files = FileDocumentManager.getInstance.getUnsavedDocuments.toSeq.flatMap(document => supportedFile(document).map((_, document)))
+    if (files.isEmpty) return
+
+    CommandProcessor.runUndoTransparentAction { () =>
+      val formattedDocuments = ScalaFmtPreFormatProcessor.formatWithoutCommit(files, respectProjectMatcher = true)
+      formattedDocuments.foreach(document => document.putUserData(FormattedStampKey, document.getModificationStamp))
+    }
+  }
+
+  // for now 'reformat on file save' is only implemented for scalafmt formatter
+  def reformatIfNeeded(document: Document)(implicit project: Project): Unit = {
+    if (project.isDisposed || !isScalafmtSaveOnfileEnabled(project) || isJustFormatted(document)) return
+
     for {
-      vFile <- FileDocumentManager.getInstance.getFile(document).nullSafe
-      psiFile <- PsiDocumentManager.getInstance(project).getPsiFile(document).nullSafe
-      if isFileSupported(psiFile) && isInProjectSources(psiFile, vFile)
+      psiFile <- supportedFile(document)
     } {
       CommandProcessor.runUndoTransparentAction { () =>
         ScalaFmtPreFormatProcessor.formatWithoutCommit(psiFile, document, respectProjectMatcher = true)
@@ -40,6 +65,19 @@ final class ScalafmtReformatOnFileSaveTask extends ProjectManagerListener {
     }
   }
 
+  private def supportedFile(document: Document)(implicit project: Project): Option[PsiFile] =
+    for {
+      vFile <- FileDocumentManager.getInstance.getFile(document).nullSafe
+      psiFile <- PsiDocumentManager.getInstance(project).getPsiFile(document).nullSafe
+      if isFileSupported(psiFile) && isInProjectSources(psiFile, vFile)
+    } yield psiFile
+
+  private def isJustFormatted(document: Document): Boolean = {
+    val formattedStamp = document.getUserData(FormattedStampKey)
+    document.putUserData(FormattedStampKey, null)
+    formattedStamp != null && formattedStamp == document.getModificationStamp
+  }
+
   private def isScalafmtSaveOnfileEnabled(project: Project): Boolean = {
     val scalaSettings = ScalaCodeStyleSettings.getInstance(project)
     scalaSettings.SCALAFMT_REFORMAT_ON_FILES_SAVE && scalaSettings.USE_SCALAFMT_FORMATTER()
@@ -63,4 +101,4 @@ final class ScalafmtReformatOnFileSaveTask extends ProjectManagerListener {
         false
     }
   }
-}
\ No newline at end of file
+}
@@ -71,7 +71,15 @@ case class ScalafmtReflect(
     }
   }
 
-  def format(code: String, config: ScalafmtReflectConfig, filenameOpt: Option[String]): String = {
+  def format(code: String, config: ScalafmtReflectConfig, filenameOpt: Option[String]): String =
+    format(code, config, filenameOpt, clearCache = true)
+
+  /**
+   * @param clearCache the tokenizer cache of scalameta isn't guarded against concurrent modification,
+   *                   so texts, which are formatted concurrently, should be formatted without clearing it,
+   *                   and [[clearTokenizerCache]] should be called when all of them are formatted
+   */
+  def format(code: String, config: ScalafmtReflectConfig, filenameOpt: Option[String], clearCache: Boolean): String = {
     checkVersionMismatch(config)
     val formatted = (formatMethodWithFilename, filenameOpt) match {
       case (Some(method), Some(filename)) =>
@@ -79,7 +87,9 @@ case class ScalafmtReflect(
       case _ =>
         formatMethod.invoke(null, code, config.target, emptyRange)
     }
-    clearTokenizerCache()
+    if (clearCache) {
+      clearTokenizerCache()
+    }
     try
       formattedGet.invoke(formatted).asInstanceOf[String]
     catch {
@@ -117,7 +127,7 @@ case class ScalafmtReflect(
         )
     }
 
-  private def clearTokenizerCache(): Unit = {
+  def clearTokenizerCache(): Unit = {
     val cache = moduleInstance(
       "scala.meta.internal.tokenizers.PlatformTokenizerCache$"
     )
@@ -7,16 +7,19 @@ import com.intellij.openapi.application.ApplicationManager
 import com.intellij.openapi.diagnostic.Logger
 import com.intellij.openapi.editor.Document
 import com.intellij.openapi.fileEditor.OpenFileDescriptor
-import com.intellij.openapi.progress.ProgressIndicatorProvider
+import com.intellij.openapi.progress.{ProcessCanceledException, ProgressIndicator, ProgressIndicatorProvider, ProgressManager}
 import com.intellij.openapi.project.Project
-import com.intellij.openapi.util.{Key, TextRange}
+import com.intellij.openapi.util.{Key, TextRange, ThrowableComputable}
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi._
 import com.intellij.psi.impl.source.codeStyle.PreFormatProcessor
 import com.intellij.psi.impl.source.tree.LeafPsiElement
 import com.intellij.psi.javadoc.PsiDocComment
 import com.intellij.psi.util.PsiTreeUtil
+import com.intellij.util.concurrency.AppExecutorUtil
 
+import java.util.concurrent.{ExecutionException, TimeUnit, TimeoutException}
+import java.util.concurrent.atomic.AtomicInteger
 import javax.swing.event.HyperlinkEvent
 import org.apache.commons.lang3.StringUtils
 import org.jetbrains.annotations.{NonNls, TestOnly}
@@ -45,6 +48,7 @@ import org.jetbrains.plugins.scala.lang.psi.impl.expr.ScBlockImpl
 import org.jetbrains.plugins.scala.lang.scaladoc.psi.api.ScDocComment
 import org.jetbrains.plugins.scala.project.UserDataHolderExt
 import org.jetbrains.plugins.scala.{ScalaBundle, ScalaFileType}
+import org.jetbrains.sbt.language.SbtFileImpl
 
 import scala.annotation.{nowarn, tailrec}
 import scala.collection.immutable.ArraySeq
@@ -396,6 +400,129 @@ object ScalaFmtPreFormatProcessor {
     }
   }
 
+  /**
+   * Formats many documents at once, e.g. all documents, which are saved.
+   *
+   * Configs are resolved once per config file. Texts of the documents are formatted concurrently on a bounded pool,
+   * the calling thread only waits for them, under a modal progress when it's the EDT. The results are applied
+   * in a single write action, documents, which were changed in the meantime, are left as is.
+   * When the progress is cancelled, none of the documents are changed.
+   *
+   * @return documents, which were formatted or were attempted to be formatted
+   */
+  def formatWithoutCommit(files: collection.Seq[(PsiFile, Document)], respectProjectMatcher: Boolean): Seq[Document] = {
+    if (files.isEmpty)
+      return Seq.empty
+
+    implicit val project: Project = files.head._1.getProject
+    val configManager = ScalafmtDynamicConfigService.instanceIn(project)
+
+    // config for sbt files differs only by dialect, but it's also resolved once
+    val configs = mutable.HashMap.empty[(Option[VirtualFile], Boolean), Option[ScalafmtReflectConfig]]
+    val requests = for {
+      (file, document) <- files.toIndexedSeq
+      configKey = (configManager.configFileForFile(file), file.isInstanceOf[SbtFileImpl])
+      config <- configs.getOrElseUpdate(configKey, configManager.configForFile(file))
+      if !respectProjectMatcher || configManager.isFileIncludedInProject(file, config)
+    } yield BatchRequest(file, document, document.getText, document.getModificationStamp,
+      ConfigContext(config, Option(file.getVirtualFile).safeMap(_.getCanonicalPath)))
+    if (requests.isEmpty)
+      return Seq.empty
+
+    val results = formatUnderProgress(requests) match {
+      case Some(results) => results
+      case None          => return requests.map(_.document)
+    }
+
+    inWriteAction {
+      requests.iterator.zip(results.iterator).foreach {
+        case (request, Right(formattedText))
+          if request.document.getModificationStamp == request.documentStamp && formattedText != request.text =>
+          request.document.setText(formattedText)
+        case _ =>
+      }
+    }
+
+    val errors = requests.iterator.zip(results.iterator).collect { case (request, Left(error)) => (request.file, error) }
+    if (errors.hasNext) {
+      // a notification per file would be too noisy for a batch
+      val (file, error) = errors.next()
+      reportInvalidCodeFailure(file, Some(error))
+    } else {
+      ScalafmtNotifications.hideAllFormatErrorNotifications()
+    }
+
+    requests.map(_.document)
+  }
+
+  /** @return None, if the modal progress was cancelled */
+  private def formatUnderProgress(requests: IndexedSeq[BatchRequest])
+                                 (implicit project: Project): Option[Array[Either[ScalafmtFormatError, String]]] =
+    if (ApplicationManager.getApplication.isDispatchThread)
+      try Some(ProgressManager.getInstance.runProcessWithProgressSynchronously(
+        new ThrowableComputable[Array[Either[ScalafmtFormatError, String]], RuntimeException] {
+          override def compute(): Array[Either[ScalafmtFormatError, String]] =
+            formatConcurrently(requests, ProgressManager.getInstance.getProgressIndicator)
+        },
+        ScalaBundle.message("scalafmt.format.progress.title"),
+        true,
+        project
+      )) catch {
+        case _: ProcessCanceledException => None
+      }
+    else
+      Some(formatConcurrently(requests, ProgressManager.getInstance.getProgressIndicator))
+
+  private def formatConcurrently(requests: IndexedSeq[BatchRequest],
+                                 indicator: ProgressIndicator): Array[Either[ScalafmtFormatError, String]] = {
+    val results = new Array[Either[ScalafmtFormatError, String]](requests.size)
+    val nextIndex = new AtomicInteger()
+    val formattedCount = new AtomicInteger()
+
+    def checkCanceled(): Unit =
+      if (indicator != null) indicator.checkCanceled()
+
+    if (indicator != null)
+      indicator.setIndeterminate(false)
+
+    val task: Runnable = () => {
+      var index = nextIndex.getAndIncrement()
+      while (index < results.length) {
+        checkCanceled()
+        val request = requests(index)
+        results(index) = request.context.config.fmtReflect.tryFormat(request.text, clearCache = false)(request.context)
+        if (indicator != null)
+          indicator.setFraction(formattedCount.incrementAndGet().toDouble / results.length)
+        index = nextIndex.getAndIncrement()
+      }
+    }
+
+    val threads = math.max(1, math.min(Runtime.getRuntime.availableProcessors(), requests.size))
+    val executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Scalafmt batch formatter", threads)
+    try {
+      val futures = Seq.fill(threads)(executor.submit(task))
+      futures.foreach { future =>
+        // the calling thread is responsive to the cancellation while a worker formats a large file
+        var done = false
+        while (!done) {
+          checkCanceled()
+          try {
+            future.get(50, TimeUnit.MILLISECONDS)
+            done = true
+          } catch {
+            case _: TimeoutException   =>
+            case e: ExecutionException => throw e.getCause
+          }
+        }
+      }
+    } finally {
+      executor.shutdownNow()
+      requests.map(_.context.config.fmtReflect).distinct.foreach(_.clearTokenizerCache())
+    }
+
+    results
+  }
+
   private def formatRange(file: ScalaFile, range: TextRange)
                          (implicit context: ConfigContext): Either[Unit, Option[Int]] = {
     implicit val project: Project = file.getProject
@@ -1045,6 +1172,8 @@ object ScalaFmtPreFormatProcessor {
   private case class ScalafmtFormatError(cause: Throwable) extends FormattingError
   private case class CantFindMarkerElementInFormattedCode(isStartMarker: Boolean) extends FormattingError
 
+  private case class BatchRequest(file: PsiFile, document: Document, text: String, documentStamp: Long, context: ConfigContext)
+
   /** This is a helper class to keep information about how formatted elements were wrapped
    */
   private class WrappedCode(val text: String, val wrapped: Boolean, val wrappedInHelperClass: Boolean) {
@@ -1060,8 +1189,8 @@ object ScalaFmtPreFormatProcessor {
 
   private implicit class ScalafmtReflectExt(private val scalafmt: ScalafmtReflect) extends AnyVal {
 
-    def tryFormat(code: String)(implicit context: ConfigContext): Either[ScalafmtFormatError, String] =
-      Try(scalafmt.format(code, context.config, context.filePath)).toEither.left.map {
+    def tryFormat(code: String, clearCache: Boolean = true)(implicit context: ConfigContext): Either[ScalafmtFormatError, String] =
+      Try(scalafmt.format(code, context.config, context.filePath, clearCache)).toEither.left.map {
         case ReflectionException(e) => ScalafmtFormatError(e)
         case e                      => ScalafmtFormatError(e)
       }
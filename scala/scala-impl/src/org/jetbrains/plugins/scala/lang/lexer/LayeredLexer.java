@@ -18,7 +18,7 @@ import java.util.Map;
 // As we channel the main Scala lexer via a layer, we need this customization
 // for incremental highlighting to work properly (see LexerStateTest).
 class LayeredLexer extends DelegateLexer {
-  public static ThreadLocal<Boolean> ourDisableLayersFlag = new ThreadLocal<Boolean>();
+  public static final ThreadLocal<Boolean> ourDisableLayersFlag = new ThreadLocal<Boolean>();
 
   private static final Logger LOG = Logger.getInstance("#com.intellij.lexer.LayeredLexer");
   private static final int OUT_OF_LAYER_STATE = 1024; // TODO: Other value?
@@ -32,8 +32,14 @@ class LayeredLexer extends DelegateLexer {
   // for this purposes we store left part of token in the following fields
   private IElementType myCurrentBaseTokenType;
   private int myLayerLeftPart = -1;
+  private int myBaseTokenStart = -1;
   private int myBaseTokenEnd = -1;
 
+  // CHANGED
+  // The layer token and state to start the first layer from (see startInLayer)
+  private int myLayerStart = -1;
+  private int myLayerStartState = 0;
+
   private final HashSet<Lexer> mySelfStoppingLexers = new HashSet<Lexer>(1);
   private final HashMap<Lexer, IElementType[]> myStopTokens = new HashMap<Lexer,IElementType[]>(1);
 
@@ -62,8 +68,13 @@ class LayeredLexer extends DelegateLexer {
     myCurrentLayerLexer = myStartTokenToLayerLexer.get(baseTokenType);
     if (myCurrentLayerLexer != null) {
       myCurrentBaseTokenType = baseTokenType;
+      myBaseTokenStart = super.getTokenStart();
       myBaseTokenEnd = super.getTokenEnd();
-      myCurrentLayerLexer.start(super.getBufferSequence(), super.getTokenStart(), super.getTokenEnd());
+      if (myLayerStart >= myBaseTokenStart && myLayerStart < myBaseTokenEnd) {
+        myCurrentLayerLexer.start(super.getBufferSequence(), myLayerStart, myBaseTokenEnd, myLayerStartState);
+      } else {
+        myCurrentLayerLexer.start(super.getBufferSequence(), myBaseTokenStart, myBaseTokenEnd);
+      }
       if (mySelfStoppingLexers.contains(myCurrentLayerLexer)) {
         super.advance();
       }
@@ -80,11 +91,38 @@ class LayeredLexer extends DelegateLexer {
     activateLayerIfNecessary();
   }
 
+  // CHANGED
+  // Unlike start, restarts the lexer in the middle of a base token, at a token of its layer.
+  // The base lexer is restarted from the start of its token (see getBaseTokenStart),
+  // the layer lexer from the given token in the given state (see getLayerState).
+  public void startInLayer(@NotNull CharSequence buffer, int baseTokenStart, int layerTokenStart, int endOffset, int layerState) {
+    myLayerStart = layerTokenStart;
+    myLayerStartState = layerState;
+    try {
+      start(buffer, baseTokenStart, endOffset, 0);
+    } finally {
+      myLayerStart = -1;
+      myLayerStartState = 0;
+    }
+  }
+
   @Override
   public int getState() {
     return myState;
   }
 
+  // CHANGED
+  // The state of the current token of the active layer, 0 if there is no active layer
+  public int getLayerState() {
+    return isLayerActive() && !isInLayerEndGap() ? myCurrentLayerLexer.getState() : 0;
+  }
+
+  // CHANGED
+  // The start of the base token, which is lexed by the active layer
+  public int getBaseTokenStart() {
+    return isLayerActive() ? myBaseTokenStart : getTokenStart();
+  }
+
   @Override
   public IElementType getTokenType() {
     if (isInLayerEndGap()) {
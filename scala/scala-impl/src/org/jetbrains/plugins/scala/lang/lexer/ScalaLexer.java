@@ -21,9 +21,8 @@ import com.intellij.openapi.project.Project;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.xml.IXmlLeafElementType;
 import com.intellij.psi.xml.XmlTokenType;
-import com.intellij.util.containers.Stack;
+import com.intellij.util.containers.FList;
 import com.intellij.util.text.CharArrayUtil;
-import gnu.trove.TIntStack;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.scala.settings.ScalaProjectSettings;
@@ -31,6 +30,7 @@ import org.jetbrains.plugins.scala.settings.ScalaProjectSettings;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @author ilyas
@@ -48,8 +48,9 @@ public final class ScalaLexer extends Lexer {
 
   private Lexer myCurrentLexer;
 
-  private TIntStack myBraceStack = new TIntStack();
-  private Stack<Stack<MyOpenXmlTag>> myLayeredTagStack = new Stack<>();
+  // Stacks are persistent, so they are shared with the positions of the lexer (see MyState)
+  private FList<Integer> myBraceStack = FList.emptyList();
+  private FList<FList<TAG_STATE>> myLayeredTagStack = FList.emptyList();
 
   private int myBufferEnd;
   private CharSequence myBuffer;
@@ -67,6 +68,21 @@ public final class ScalaLexer extends Lexer {
    */
   private IElementType previousToken = null;
 
+  // The state at the start of the last token, which the lexer can be restarted from (see getCurrentPosition).
+  // Only the fields are saved for every token, the snapshot is created on demand.
+  private boolean myRestartAtToken;
+  private int myRestartStart;
+  private int myRestartBaseStart;
+  private boolean myRestartInXml;
+  private int myRestartLexerState;
+  private int myRestartXmlState;
+  private FList<Integer> myRestartBraceStack;
+  private FList<FList<TAG_STATE>> myRestartTagStack;
+  private boolean myRestartInCdata;
+  private int myRestartXmlSteps;
+  // the last created snapshot, it's reused while the state doesn't change
+  private MyState myRestartState = null;
+
   public ScalaLexer(boolean isScala3,
                     @Nullable Project project) {
     myScalaPlainLexer = new ScalaPlainLexer(
@@ -80,8 +96,8 @@ public final class ScalaLexer extends Lexer {
   public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
     myCurrentLexer = myScalaPlainLexer;
     myCurrentLexer.start(buffer, startOffset, endOffset, initialState & MASK);
-    myBraceStack.clear();
-    myLayeredTagStack.clear();
+    myBraceStack = FList.emptyList();
+    myLayeredTagStack = FList.emptyList();
     myXmlState = (initialState >> XML_SHIFT) & MASK;
     inCdata = false;
     xmlSteps = -1;
@@ -93,7 +109,7 @@ public final class ScalaLexer extends Lexer {
   public int getState() {
     locateToken();
     int state = 0;
-    if (myLayeredTagStack.size() > 0) state = 239;
+    if (!myLayeredTagStack.isEmpty()) state = 239;
     if (myXmlState != 0 || isXmlTokenType(previousToken)) state = 239;
     int scalaState = myScalaPlainLexer.getState();
     if (scalaState != 0) state = 239;
@@ -113,12 +129,17 @@ public final class ScalaLexer extends Lexer {
 
     if (myTokenType == null) {
       doLocateToken();
+      if (myRestartAtToken) {
+        myRestartStart = myTokenType == null ? myTokenEnd : myTokenStart;
+      }
     }
   }
 
   private void doLocateToken() {
     assert myTokenType == null;
 
+    saveTokenState();
+
     final IElementType type = myCurrentLexer.getTokenType();
     final int start = myCurrentLexer.getTokenStart();
     final int end = myCurrentLexer.getTokenEnd();
@@ -137,7 +158,7 @@ public final class ScalaLexer extends Lexer {
         ScalaXmlLexer.ScalaXmlTokenType$.MODULE$.unapply(type) ||
         type == ScalaTokenTypesEx.SCALA_XML_CONTENT_START;
 
-    boolean isInsideXmlInjection = myBraceStack.size() > 0;
+    boolean isInsideXmlInjection = !myBraceStack.isEmpty();
 
     final boolean handled;
     if (isXmlToken || isInsideXmlInjection || isLineBreakInsideXml) {
@@ -188,8 +209,7 @@ public final class ScalaLexer extends Lexer {
       myCurrentLexer = myXmlLexer;
       myXmlState = 0;
       myCurrentLexer.start(getBufferSequence(), start, myBufferEnd, 0);
-      myLayeredTagStack.push(new Stack<>());
-      myLayeredTagStack.peek().push(new MyOpenXmlTag());
+      myLayeredTagStack = myLayeredTagStack.prepend(FList.<TAG_STATE>emptyList().prepend(TAG_STATE.UNDEFINED));
       myTokenType = myCurrentLexer.getTokenType();
       locateTextRange();
     }
@@ -206,23 +226,23 @@ public final class ScalaLexer extends Lexer {
       myCurrentLexer = myScalaPlainLexer;
       myCurrentLexer.start(getBufferSequence(), start, myBufferEnd, 0);
       locateTextRange();
-      myBraceStack.push(1);
+      myBraceStack = myBraceStack.prepend(1);
       myTokenType = ScalaTokenTypesEx.SCALA_IN_XML_INJECTION_START;
     }
     else if (type == ScalaTokenTypes.tRBRACE) {
-      int currentLayer = myBraceStack.pop();
+      int currentLayer = myBraceStack.getHead();
+      myBraceStack = myBraceStack.getTail();
       if (currentLayer == 1) {
         locateTextRange();
         myCurrentLexer = myXmlLexer;
         myXmlLexer.start(getBufferSequence(), start + 1, myBufferEnd, myXmlState);
         myTokenType = ScalaTokenTypesEx.SCALA_IN_XML_INJECTION_END;
       } else {
-        myBraceStack.push(--currentLayer);
+        myBraceStack = myBraceStack.prepend(--currentLayer);
       }
     }
     else if (type == ScalaTokenTypes.tLBRACE) {
-      int currentLayer = myBraceStack.pop();
-      myBraceStack.push(++currentLayer);
+      myBraceStack = myBraceStack.getTail().prepend(myBraceStack.getHead() + 1);
     }
     else if ((ScalaXmlTokenTypes.XML_START_TAG_START() == type ||
         ScalaXmlTokenTypes.XML_COMMENT_START() == type ||
@@ -233,16 +253,14 @@ public final class ScalaLexer extends Lexer {
       if (type == ScalaXmlTokenTypes.XML_CDATA_START()) {
         inCdata = true;
       }
-      myLayeredTagStack.peek().push(new MyOpenXmlTag());
+      pushTag(TAG_STATE.UNDEFINED);
     }
     else if (ScalaXmlTokenTypes.XML_EMPTY_ELEMENT_END() == type &&
-        !myLayeredTagStack.isEmpty() &&
-        !myLayeredTagStack.peek().isEmpty() &&
-        myLayeredTagStack.peek().peek().state == TAG_STATE.UNDEFINED) {
+        topTagState() == TAG_STATE.UNDEFINED) {
 
-      myLayeredTagStack.peek().pop();
-      if (myLayeredTagStack.peek().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
-        myLayeredTagStack.pop();
+      popTag();
+      if (myLayeredTagStack.getHead().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
+        myLayeredTagStack = myLayeredTagStack.getTail();
         locateTextRange();
         myTokenType = ScalaXmlTokenTypes.XML_EMPTY_ELEMENT_END();
         startScalaPlainLexer(start + 2);
@@ -250,18 +268,18 @@ public final class ScalaLexer extends Lexer {
       }
     }
     else if (ScalaXmlTokenTypes.XML_TAG_END() == type &&
-        !myLayeredTagStack.isEmpty() &&
-        !myLayeredTagStack.peek().isEmpty()
+        topTagState() != null
     ) {
-      MyOpenXmlTag tag = myLayeredTagStack.peek().peek();
-      if (tag.state == TAG_STATE.UNDEFINED) {
-        tag.state = TAG_STATE.NONEMPTY;
+      TAG_STATE tag = topTagState();
+      if (tag == TAG_STATE.UNDEFINED) {
+        popTag();
+        pushTag(TAG_STATE.NONEMPTY);
       }
-      else if (tag.state == TAG_STATE.NONEMPTY) {
-        myLayeredTagStack.peek().pop();
+      else if (tag == TAG_STATE.NONEMPTY) {
+        popTag();
       }
-      if (myLayeredTagStack.peek().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
-        myLayeredTagStack.pop();
+      if (myLayeredTagStack.getHead().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
+        myLayeredTagStack = myLayeredTagStack.getTail();
         locateTextRange();
         myTokenType = ScalaXmlTokenTypes.XML_TAG_END();
         startScalaPlainLexer(start + 1);
@@ -269,14 +287,12 @@ public final class ScalaLexer extends Lexer {
       }
     }
     else if (ScalaXmlTokenTypes.XML_PI_END() == type &&
-        !myLayeredTagStack.isEmpty() &&
-        !myLayeredTagStack.peek().isEmpty() &&
-        myLayeredTagStack.peek().peek().state == TAG_STATE.UNDEFINED
+        topTagState() == TAG_STATE.UNDEFINED
     ) {
 
-      myLayeredTagStack.peek().pop();
-      if (myLayeredTagStack.peek().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
-        myLayeredTagStack.pop();
+      popTag();
+      if (myLayeredTagStack.getHead().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
+        myLayeredTagStack = myLayeredTagStack.getTail();
         locateTextRange();
         myTokenType = ScalaXmlTokenTypes.XML_PI_END();
         startScalaPlainLexer(start + 2);
@@ -284,14 +300,12 @@ public final class ScalaLexer extends Lexer {
       }
     }
     else if (ScalaXmlTokenTypes.XML_COMMENT_END() == type &&
-        !myLayeredTagStack.isEmpty() &&
-        !myLayeredTagStack.peek().isEmpty() &&
-        myLayeredTagStack.peek().peek().state == TAG_STATE.UNDEFINED
+        topTagState() == TAG_STATE.UNDEFINED
     ) {
 
-      myLayeredTagStack.peek().pop();
-      if (myLayeredTagStack.peek().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
-        myLayeredTagStack.pop();
+      popTag();
+      if (myLayeredTagStack.getHead().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
+        myLayeredTagStack = myLayeredTagStack.getTail();
         locateTextRange();
         myTokenType = ScalaXmlTokenTypes.XML_COMMENT_END();
         startScalaPlainLexer(start + 3);
@@ -299,14 +313,12 @@ public final class ScalaLexer extends Lexer {
       }
     }
     else if (ScalaXmlTokenTypes.XML_CDATA_END() == type &&
-        !myLayeredTagStack.isEmpty() &&
-        !myLayeredTagStack.peek().isEmpty() &&
-        myLayeredTagStack.peek().peek().state == TAG_STATE.UNDEFINED
+        topTagState() == TAG_STATE.UNDEFINED
     ) {
       inCdata = false;
-      myLayeredTagStack.peek().pop();
-      if (myLayeredTagStack.peek().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
-        myLayeredTagStack.pop();
+      popTag();
+      if (myLayeredTagStack.getHead().isEmpty() && checkNotNextXmlBegin(myCurrentLexer)) {
+        myLayeredTagStack = myLayeredTagStack.getTail();
         locateTextRange();
         myTokenType = ScalaXmlTokenTypes.XML_CDATA_END();
         startScalaPlainLexer(start + 3);
@@ -395,32 +407,91 @@ public final class ScalaLexer extends Lexer {
     myTokenType = null;
   }
 
+  /**
+   * Unlike {@link #getState()}, the position can be restored at almost any token,
+   * including the ones inside interpolated strings and xml literals.
+   * Inside the interpolated strings, which are nested too deep (see {@link ScalaPlainLexer#isRestartable}),
+   * it's the position of the last token before, which the lexer can be restarted from, so its offset can be less than the token start.
+   */
   @NotNull
   public LexerPosition getCurrentPosition() {
-    return new MyPosition(
-        myTokenStart,
-        myTokenEnd,
-        new MyState(
-            myXmlState,
-            0,
-            myBraceStack,
-            myCurrentLexer,
-            myLayeredTagStack));
+    locateToken();
+
+    MyState state = myRestartState;
+    if (state == null || !state.isSameAs(myRestartInXml, myRestartLexerState, myRestartXmlState,
+                                         myRestartBraceStack, myRestartTagStack, myRestartInCdata, myRestartXmlSteps)) {
+      state = new MyState(myRestartInXml, myRestartLexerState, myRestartXmlState,
+                          myRestartBraceStack, myRestartTagStack, myRestartInCdata, myRestartXmlSteps);
+      myRestartState = state;
+    }
+    return new MyPosition(myRestartStart, myRestartBaseStart, state);
   }
 
   public void restore(@NotNull LexerPosition position) {
     MyPosition pos = (MyPosition) position;
-    myBraceStack = pos.state.braceStack;
-    myCurrentLexer = pos.state.currentLexer;
-    myTokenStart = pos.getOffset();
-    myTokenEnd = pos.end;
-    myLayeredTagStack = pos.state.tagStack;
-    myCurrentLexer.start(
-        myCurrentLexer.getBufferSequence(),
-        myTokenStart,
-        myBufferEnd,
-        myCurrentLexer instanceof ScalaXmlLexer ? pos.state.xmlState : 0
-    );
+    start(myBuffer, pos.start, myBufferEnd, pos.baseStart, pos.state);
+  }
+
+  /**
+   * Restarts the lexer at the position, which was got from the same text, e.g. before a change after that position.
+   */
+  public void start(@NotNull CharSequence buffer, int endOffset, @NotNull LexerPosition position) {
+    MyPosition pos = (MyPosition) position;
+    start(buffer, pos.start, endOffset, pos.baseStart, pos.state);
+  }
+
+  private void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int baseStart, @Nullable MyState state) {
+    if (state == null) {
+      start(buffer, startOffset, endOffset, 0);
+      return;
+    }
+
+    myBraceStack = state.braceStack;
+    myLayeredTagStack = state.tagStack;
+    myXmlState = state.xmlState;
+    inCdata = state.inCdata;
+    xmlSteps = state.xmlSteps;
+    myBuffer = buffer;
+    myBufferEnd = endOffset;
+    myTokenType = null;
+
+    if (state.inXml) {
+      myCurrentLexer = myXmlLexer;
+      myXmlLexer.start(buffer, startOffset, endOffset, state.lexerState);
+    } else {
+      myCurrentLexer = myScalaPlainLexer;
+      myScalaPlainLexer.startInLayer(buffer, baseStart, startOffset, endOffset, state.lexerState);
+    }
+  }
+
+  private void saveTokenState() {
+    boolean inXml = myCurrentLexer == myXmlLexer;
+    int lexerState = inXml ? myXmlLexer.getState() : myScalaPlainLexer.getLayerState();
+    myRestartAtToken = inXml || ScalaPlainLexer.isRestartable(lexerState);
+    if (!myRestartAtToken) return;
+
+    myRestartBaseStart = inXml ? myXmlLexer.getTokenStart() : myScalaPlainLexer.getBaseTokenStart();
+    myRestartInXml = inXml;
+    myRestartLexerState = lexerState;
+    myRestartXmlState = myXmlState;
+    myRestartBraceStack = myBraceStack;
+    myRestartTagStack = myLayeredTagStack;
+    myRestartInCdata = inCdata;
+    // all negative steps are the same, there is no tag to validate
+    myRestartXmlSteps = Math.max(xmlSteps, -1);
+  }
+
+  @Nullable
+  private TAG_STATE topTagState() {
+    return myLayeredTagStack.isEmpty() ? null : myLayeredTagStack.getHead().getHead();
+  }
+
+  private void pushTag(@NotNull TAG_STATE state) {
+    myLayeredTagStack = myLayeredTagStack.getTail().prepend(myLayeredTagStack.getHead().prepend(state));
+  }
+
+  private void popTag() {
+    myLayeredTagStack = myLayeredTagStack.getTail().prepend(myLayeredTagStack.getHead().getTail());
   }
 
   @NotNull
@@ -436,32 +507,86 @@ public final class ScalaLexer extends Lexer {
     return tpe != null && ScalaXmlTokenTypes.XML_ELEMENTS().contains(tpe);
   }
 
-  private static class MyState {
+  /**
+   * Immutable state of the lexer at the start of a token, it doesn't depend on the offset of the token.
+   * The stacks are shared with the lexer, so equal states of the consequent tokens are the same instance.
+   */
+  private static final class MyState {
+
+    public final boolean inXml;
+    public final int lexerState;
+    public final int xmlState;
+    public final FList<Integer> braceStack;
+    public final FList<FList<TAG_STATE>> tagStack;
+    public final boolean inCdata;
+    public final int xmlSteps;
+
+    private final int hashCode;
+
+    public MyState(final boolean inXml,
+                   final int lexerState,
+                   final int xmlState,
+                   final FList<Integer> braceStack,
+                   final FList<FList<TAG_STATE>> tagStack,
+                   final boolean inCdata,
+                   final int xmlSteps) {
+      this.inXml = inXml;
+      this.lexerState = lexerState;
+      this.xmlState = xmlState;
+      this.braceStack = braceStack;
+      this.tagStack = tagStack;
+      this.inCdata = inCdata;
+      this.xmlSteps = xmlSteps;
+      this.hashCode = Objects.hash(inXml, lexerState, xmlState, braceStack, tagStack, inCdata, xmlSteps);
+    }
 
-    public TIntStack braceStack;
-    public Stack<Stack<MyOpenXmlTag>> tagStack;
-    public Lexer currentLexer;
-    public int xmlState;
-    public int scalaState;
+    public boolean isSameAs(final boolean inXml,
+                            final int lexerState,
+                            final int xmlState,
+                            final FList<Integer> braceStack,
+                            final FList<FList<TAG_STATE>> tagStack,
+                            final boolean inCdata,
+                            final int xmlSteps) {
+      return this.inXml == inXml &&
+          this.lexerState == lexerState &&
+          this.xmlState == xmlState &&
+          this.braceStack == braceStack &&
+          this.tagStack == tagStack &&
+          this.inCdata == inCdata &&
+          this.xmlSteps == xmlSteps;
+    }
 
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      MyState state = (MyState) o;
+      return hashCode == state.hashCode &&
+          inXml == state.inXml &&
+          lexerState == state.lexerState &&
+          xmlState == state.xmlState &&
+          inCdata == state.inCdata &&
+          xmlSteps == state.xmlSteps &&
+          braceStack.equals(state.braceStack) &&
+          tagStack.equals(state.tagStack);
+    }
 
-    public MyState(final int xmlState, final int scalaState, TIntStack braceStack, Lexer lexer, Stack<Stack<MyOpenXmlTag>> tagStack) {
-      this.braceStack = braceStack;
-      this.tagStack = tagStack;
-      this.currentLexer = lexer;
-      this.xmlState = xmlState;
-      this.scalaState = scalaState;
+    @Override
+    public int hashCode() {
+      return hashCode;
     }
   }
 
-  private static class MyPosition implements LexerPosition {
-    public int start;
-    public int end;
-    public MyState state;
+  private static final class MyPosition implements LexerPosition {
+    public final int start;
+    public final int baseStart;
+    @Nullable
+    public final MyState state;
 
-    public MyPosition(final int start, final int end, final MyState state) {
+    public MyPosition(final int start, final int baseStart, @Nullable final MyState state) {
       this.start = start;
-      this.end = end;
+      this.baseStart = baseStart;
       this.state = state;
     }
 
@@ -470,7 +595,23 @@ public final class ScalaLexer extends Lexer {
     }
 
     public int getState() {
-      return state.currentLexer.getState();
+      return state == null ? 0 : state.lexerState;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      MyPosition position = (MyPosition) o;
+      return start == position.start &&
+          baseStart == position.baseStart &&
+          Objects.equals(state, position.state);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(start, baseStart, state);
     }
   }
 
@@ -478,10 +619,6 @@ public final class ScalaLexer extends Lexer {
     UNDEFINED, EMPTY, NONEMPTY
   }
 
-  private static class MyOpenXmlTag {
-    public TAG_STATE state = TAG_STATE.UNDEFINED;
-  }
-
   private static class XmlTagValidator {
     final private static List<IElementType> allStopTokens =
         Arrays.asList(ScalaXmlTokenTypes.XML_TAG_END(), ScalaXmlTokenTypes.XML_EMPTY_ELEMENT_END(), ScalaXmlTokenTypes.XML_PI_END(),
@@ -6,12 +6,14 @@ object ScalaModifierTokenType {
 
   def of(mod: ScalaModifier): ScalaModifierTokenType = ScalaModifierTokenType(mod)
 
-  def apply(mod: ScalaModifier): ScalaModifierTokenType = {
-    if (cache.get(mod) == null) {
-      cache.put(mod, new ScalaModifierTokenType(mod))
+  // filled eagerly, it's read concurrently by lexers and parsers
+  private val cache = {
+    val result = new java.util.EnumMap[ScalaModifier, ScalaModifierTokenType](classOf[ScalaModifier])
+    ScalaModifier.values.foreach { mod =>
+      result.put(mod, new ScalaModifierTokenType(mod))
     }
-    cache.get(mod)
+    result
   }
 
-  private val cache = new java.util.EnumMap[ScalaModifier, ScalaModifierTokenType](classOf[ScalaModifier])
+  def apply(mod: ScalaModifier): ScalaModifierTokenType = cache.get(mod)
 }
\ No newline at end of file
@@ -4,7 +4,7 @@ package lexer
 
 import java.lang
 
-import com.intellij.lexer.{FlexAdapter, MergingLexerAdapter}
+import com.intellij.lexer.{FlexAdapter, FlexLexer, MergingLexerAdapter}
 import com.intellij.psi.tree.{IElementType, TokenSet}
 import org.jetbrains.plugins.scala.lang.lexer.ScalaPlainLexer.ScalaSplittingLayerLexer
 
@@ -83,12 +83,82 @@ object ScalaPlainLexer {
   }
 
   private[this] final class ScalaFlexLexer(isScala3: Boolean)
-    extends FlexAdapter(new ScalaCoreLexer(isScala3)) {
+    extends FlexAdapter(new InterpolationStateFlex(new ScalaCoreLexer(isScala3))) {
 
-    override def getFlex: ScalaCoreLexer = super.getFlex.asInstanceOf[ScalaCoreLexer]
+    private def coreLexer: ScalaCoreLexer = super.getFlex.asInstanceOf[InterpolationStateFlex].delegate
+
+    override def start(buffer: CharSequence, startOffset: Int, endOffset: Int, initialState: Int): Unit =
+      super.start(buffer, startOffset, endOffset, initialState >> 1)
 
     override def getState: Int =
-      super.getState << 1 | (if (getFlex.isInterpolatedStringState) 1 else 0)
+      super.getState << 1 | (if (coreLexer.isInterpolatedStringState) 1 else 0)
+  }
+
+  /**
+   * Whether the layer can be restarted in the state, see [[LayeredLexer.getLayerState]].
+   * It can't inside the interpolated strings, which are nested too deep to be packed into the state.
+   */
+  def isRestartable(layerState: Int): Boolean =
+    (layerState >> 1) != InterpolationStates.Unpacked
+
+  /**
+   * Reports a state inside an interpolated string as the packed [[ScalaCoreLexer.InterpolationState]],
+   * so the layer can be restarted there with the usual `start(..., initialState)`.
+   */
+  private[this] final class InterpolationStateFlex(val delegate: ScalaCoreLexer) extends FlexLexer {
+
+    // the core lexer reuses the state while it stays in it
+    private var lastState: ScalaCoreLexer.InterpolationState = _
+    private var lastId = 0
+
+    override def yybegin(state: Int): Unit = delegate.yybegin(state)
+
+    override def yystate(): Int = delegate.getInterpolationState match {
+      case null => delegate.yystate()
+      case state if state eq lastState => lastId
+      case state =>
+        lastId = InterpolationStates.id(state)
+        lastState = state
+        lastId
+    }
+
+    override def getTokenStart(): Int = delegate.getTokenStart()
+
+    override def getTokenEnd(): Int = delegate.getTokenEnd()
+
+    override def advance(): IElementType = delegate.advance()
+
+    override def reset(buffer: CharSequence, start: Int, end: Int, initialState: Int): Unit =
+      if (!InterpolationStates.isId(initialState)) {
+        delegate.reset(buffer, start, end, initialState)
+      } else {
+        delegate.reset(buffer, start, end, ScalaCoreLexer.YYINITIAL)
+        delegate.restoreInterpolationState(InterpolationStates(initialState))
+      }
+  }
+
+  /**
+   * The states are packed into the bits of the id, above the lexical states of the core lexer.
+   * The strings, which are nested too deep or have too many opened braces, get the [[InterpolationStates.Unpacked]] id,
+   * the lexer can't be restarted there (see [[ScalaLexer#getCurrentPosition]]).
+   */
+  private object InterpolationStates {
+
+    import ScalaCoreLexer.InterpolationState.BITS
+
+    private final val Packed = 1 << BITS
+    final val Unpacked = 1 << (BITS + 1)
+
+    def isId(state: Int): Boolean = state >= Packed
+
+    def id(state: ScalaCoreLexer.InterpolationState): Int = state.toBits match {
+      case -1 => Unpacked
+      case bits => Packed | bits
+    }
+
+    def apply(id: Int): ScalaCoreLexer.InterpolationState =
+      if (id == Unpacked) throw new IllegalArgumentException("Can't restart inside a string, which is nested too deep")
+      else ScalaCoreLexer.InterpolationState.fromBits(id & (Packed - 1))
   }
 
   private[this] final class ScalaSplittingFlexLexer(treatDocCommentAsBlockComment: Boolean)
@@ -24,7 +24,8 @@ object ScalaXmlLexer {
 
   object ScalaXmlTokenType {
 
-    private val typesByName = new util.HashMap[String, ScalaXmlTokenType]
+    // token types are registered on initialization of ScalaXmlTokenTypes, while other threads may be lexing already
+    private val typesByName = new util.concurrent.ConcurrentHashMap[String, ScalaXmlTokenType]
 
     def apply(debugName: String): ScalaXmlTokenType = {
       val tokenType = new ScalaXmlTokenType(debugName)
@@ -4,8 +4,9 @@ package org.jetbrains.plugins.scala.lang.lexer.core;
 
 import com.intellij.lexer.FlexLexer;
 import com.intellij.psi.tree.IElementType;
-import com.intellij.util.containers.Stack;
+import com.intellij.util.containers.FList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.scala.lang.lexer.ScalaTokenTypesEx;
 import org.jetbrains.plugins.scala.lang.scaladoc.parser.ScalaDocElementTypes;
 import com.intellij.openapi.util.text.StringUtil;
@@ -1164,16 +1165,15 @@ public class _ScalaCoreLexer implements FlexLexer {
       this.isScala3 = isScala3;
     }
 
+    // Levels are immutable, so the stack of them can be shared by the lexer states (see InterpolationState)
     private static abstract class InterpolatedStringLevel {
-      private int value = 0;
+      private final int value;
 
       public final boolean isRaw;
 
-      public InterpolatedStringLevel(boolean isRaw) {
+      protected InterpolatedStringLevel(boolean isRaw, int value) {
         this.isRaw = isRaw;
-      }
-      public InterpolatedStringLevel(CharSequence interpolator) {
-        this(StringUtil.equal(interpolator, "raw", true));
+        this.value = value;
       }
 
       public int get() {
@@ -1184,20 +1184,46 @@ public class _ScalaCoreLexer implements FlexLexer {
         return value == 0;
       }
 
-      public void increase() {
-        ++value;
+      public InterpolatedStringLevel increased() {
+        return withValue(value + 1);
       }
 
-      public void decrease() {
-        --value;
+      public InterpolatedStringLevel decreased() {
+        return withValue(value - 1);
       }
 
+      protected abstract InterpolatedStringLevel withValue(int value);
+
       public abstract int getState();
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        InterpolatedStringLevel level = (InterpolatedStringLevel) o;
+        return value == level.value && isRaw == level.isRaw;
+      }
+
+      @Override
+      public int hashCode() {
+        return 31 * value + (isRaw ? 1 : 0);
+      }
+    }
+
+    private static boolean isRaw(CharSequence interpolator) {
+      return StringUtil.equal(interpolator, "raw", true);
     }
 
     private static class RegularLevel extends InterpolatedStringLevel {
       public RegularLevel(CharSequence intepolator) {
-        super(intepolator);
+        this(isRaw(intepolator), 0);
+      }
+      private RegularLevel(boolean isRaw, int value) {
+        super(isRaw, value);
+      }
+      protected InterpolatedStringLevel withValue(int value) {
+        return new RegularLevel(isRaw, value);
       }
       public int getState() {
         return INSIDE_INTERPOLATED_STRING;
@@ -1206,13 +1232,137 @@ public class _ScalaCoreLexer implements FlexLexer {
 
     private static class MultilineLevel extends InterpolatedStringLevel {
       public MultilineLevel(CharSequence intepolator) {
-        super(intepolator);
+        this(isRaw(intepolator), 0);
+      }
+      private MultilineLevel(boolean isRaw, int value) {
+        super(isRaw, value);
+      }
+      protected InterpolatedStringLevel withValue(int value) {
+        return new MultilineLevel(isRaw, value);
       }
       public int getState() {
         return INSIDE_MULTI_LINE_INTERPOLATED_STRING;
       }
     }
 
+    /**
+     * Snapshot of the interpolated strings, which are being lexed, together with the lexical state.
+     * It's immutable and hashable, the levels of the nested strings are shared with the lexer.
+     */
+    public static final class InterpolationState {
+      private final int lexicalState;
+      private final FList<InterpolatedStringLevel> nestedString;
+      private final boolean haveIdInString;
+      private final boolean haveIdInMultilineString;
+      private final boolean isRawInterpolator;
+
+      private InterpolationState(int lexicalState,
+                                 FList<InterpolatedStringLevel> nestedString,
+                                 boolean haveIdInString,
+                                 boolean haveIdInMultilineString,
+                                 boolean isRawInterpolator) {
+        this.lexicalState = lexicalState;
+        this.nestedString = nestedString;
+        this.haveIdInString = haveIdInString;
+        this.haveIdInMultilineString = haveIdInMultilineString;
+        this.isRawInterpolator = isRawInterpolator;
+      }
+
+      private boolean isStateOf(_ScalaCoreLexer lexer) {
+        return lexicalState == lexer.yystate() &&
+               nestedString == lexer.nestedString &&
+               haveIdInString == lexer.haveIdInString &&
+               haveIdInMultilineString == lexer.haveIdInMultilineString &&
+               isRawInterpolator == lexer.isLastSeenInterpolatorRaw();
+      }
+
+      @Override
+      public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        InterpolationState state = (InterpolationState) o;
+        return lexicalState == state.lexicalState &&
+               haveIdInString == state.haveIdInString &&
+               haveIdInMultilineString == state.haveIdInMultilineString &&
+               isRawInterpolator == state.isRawInterpolator &&
+               nestedString.equals(state.nestedString);
+      }
+
+      @Override
+      public int hashCode() {
+        int result = lexicalState;
+        result = 31 * result + nestedString.hashCode();
+        result = 31 * result + (haveIdInString ? 1 : 0);
+        result = 31 * result + (haveIdInMultilineString ? 1 : 0);
+        result = 31 * result + (isRawInterpolator ? 1 : 0);
+        return result;
+      }
+
+      // the packing of a state into the bits of an int, see toBits
+      private static final int LEXICAL_STATE_BITS = 6;
+      private static final int MAX_LEVELS = 3;
+      private static final int LEVEL_VALUE_BITS = 3;
+      private static final int LEVEL_BITS = LEVEL_VALUE_BITS + 2;
+      private static final int LEVELS_SHIFT = LEXICAL_STATE_BITS + 5;
+
+      public static final int BITS = LEVELS_SHIFT + MAX_LEVELS * LEVEL_BITS;
+
+      /**
+       * Packs the state into the lowest {@link #BITS} bits of an int: the lexical state, the flags,
+       * the number of the nested strings and, for each of them, its kind and the number of the opened braces.
+       *
+       * @return -1, if the strings are nested too deep or have too many opened braces to fit
+       */
+      public int toBits() {
+        int size = nestedString.size();
+        if (lexicalState >= 1 << LEXICAL_STATE_BITS || size > MAX_LEVELS) return -1;
+
+        int bits = lexicalState |
+                   (haveIdInString ? 1 : 0) << LEXICAL_STATE_BITS |
+                   (haveIdInMultilineString ? 1 : 0) << LEXICAL_STATE_BITS + 1 |
+                   (isRawInterpolator ? 1 : 0) << LEXICAL_STATE_BITS + 2 |
+                   size << LEXICAL_STATE_BITS + 3;
+
+        int shift = LEVELS_SHIFT;
+        for (InterpolatedStringLevel level : nestedString) {
+          if (level.get() >>> LEVEL_VALUE_BITS != 0) return -1;
+
+          bits |= (level.get() |
+                   (level.isRaw ? 1 : 0) << LEVEL_VALUE_BITS |
+                   (level instanceof MultilineLevel ? 1 : 0) << LEVEL_VALUE_BITS + 1) << shift;
+          shift += LEVEL_BITS;
+        }
+        return bits;
+      }
+
+      /**
+       * @param bits a result of {@link #toBits()}
+       */
+      @NotNull
+      public static InterpolationState fromBits(int bits) {
+        int size = bits >> LEXICAL_STATE_BITS + 3 & 3;
+
+        FList<InterpolatedStringLevel> nestedString = FList.emptyList();
+        for (int i = size - 1; i >= 0; i--) {
+          int level = bits >> LEVELS_SHIFT + i * LEVEL_BITS;
+          int value = level & (1 << LEVEL_VALUE_BITS) - 1;
+          boolean isRaw = (level >> LEVEL_VALUE_BITS & 1) != 0;
+          nestedString = nestedString.prepend(
+            (level >> LEVEL_VALUE_BITS + 1 & 1) != 0 ? new MultilineLevel(isRaw, value) : new RegularLevel(isRaw, value)
+          );
+        }
+
+        return new InterpolationState(
+          bits & (1 << LEXICAL_STATE_BITS) - 1,
+          nestedString,
+          (bits >> LEXICAL_STATE_BITS & 1) != 0,
+          (bits >> LEXICAL_STATE_BITS + 1 & 1) != 0,
+          (bits >> LEXICAL_STATE_BITS + 2 & 1) != 0
+        );
+      }
+    }
+
     private boolean isScala3;
 
     //
@@ -1222,20 +1372,65 @@ public class _ScalaCoreLexer implements FlexLexer {
     private boolean haveIdInString = false;
     private boolean haveIdInMultilineString = false;
     // Currently opened interpolated Strings. Each int represents the number of the opened left structural braces in the String
-    private Stack<InterpolatedStringLevel> nestedString = new Stack<>();
+    private FList<InterpolatedStringLevel> nestedString = FList.emptyList();
     private CharSequence lastSeenInterpolator = null;
+    // the last returned state, it's reused while the lexer stays in it
+    private InterpolationState lastInterpolationState = null;
 
     private boolean isInsideRawInterpolator() {
-      return !nestedString.isEmpty() && nestedString.peek().isRaw;
+      return !nestedString.isEmpty() && nestedString.getHead().isRaw;
+    }
+
+    private boolean isLastSeenInterpolatorRaw() {
+      return yystate() == WAIT_FOR_INTERPOLATED_STRING && isRaw(lastSeenInterpolator);
+    }
+
+    private void pushLevel(InterpolatedStringLevel level) {
+      nestedString = nestedString.prepend(level);
+    }
+
+    private void increaseLevel() {
+      nestedString = nestedString.getTail().prepend(nestedString.getHead().increased());
+    }
+
+    private InterpolatedStringLevel decreaseLevel() {
+      InterpolatedStringLevel level = nestedString.getHead().decreased();
+      nestedString = nestedString.getTail().prepend(level);
+      return level;
     }
 
     public void resetCustom() {
       haveIdInString = false;
       haveIdInMultilineString = false;
-      nestedString.clear();
+      nestedString = FList.emptyList();
       lastSeenInterpolator = null;
     }
 
+    /**
+     * @return the state to restart the lexer from the current position with {@link #restoreInterpolationState},
+     * or {@code null} if the lexer isn't inside an interpolated string, so {@link #yystate()} is enough
+     */
+    @Nullable
+    public InterpolationState getInterpolationState() {
+      if (nestedString.isEmpty() && !haveIdInString && !haveIdInMultilineString && yystate() != WAIT_FOR_INTERPOLATED_STRING)
+        return null;
+
+      InterpolationState state = lastInterpolationState;
+      if (state == null || !state.isStateOf(this)) {
+        state = new InterpolationState(yystate(), nestedString, haveIdInString, haveIdInMultilineString, isLastSeenInterpolatorRaw());
+        lastInterpolationState = state;
+      }
+      return state;
+    }
+
+    public void restoreInterpolationState(@NotNull InterpolationState state) {
+      yybegin(state.lexicalState);
+      nestedString = state.nestedString;
+      haveIdInString = state.haveIdInString;
+      haveIdInMultilineString = state.haveIdInMultilineString;
+      lastSeenInterpolator = state.isRawInterpolator ? "raw" : null;
+    }
+
     public boolean isInterpolatedStringState() {
         return isInsideInterpolatedString() ||
                haveIdInString ||
@@ -1258,7 +1453,7 @@ public class _ScalaCoreLexer implements FlexLexer {
 
     private IElementType processOutsideString(IElementType typ) {
       if (isInsideInterpolatedString())
-        nestedString.pop();
+        nestedString = nestedString.getTail();
       yybegin(COMMON_STATE);
       return process(typ);
     }
@@ -1650,7 +1845,7 @@ public class _ScalaCoreLexer implements FlexLexer {
           case 118: break;
           case 13: 
             { if (shouldProcessBracesForInterpolated()) {
-                                              nestedString.peek().increase();
+                                              increaseLevel();
                                             }
 
                                             return process(tLBRACE);
@@ -1664,8 +1859,7 @@ public class _ScalaCoreLexer implements FlexLexer {
           case 120: break;
           case 15: 
             { if (shouldProcessBracesForInterpolated()) {
-                                              InterpolatedStringLevel level = nestedString.peek();
-                                              level.decrease();
+                                              InterpolatedStringLevel level = decreaseLevel();
 
                                               if (level.isZero()) {
                                                 yybegin(level.getState());
@@ -1708,7 +1902,7 @@ public class _ScalaCoreLexer implements FlexLexer {
           case 22: 
             { yypushback(yylength() - 1); // only push opening quote
     yybegin(INSIDE_INTERPOLATED_STRING);
-    nestedString.push(new RegularLevel(lastSeenInterpolator));
+    pushLevel(new RegularLevel(lastSeenInterpolator));
     return process(tINTERPOLATED_STRING);
             } 
             // fall through
@@ -1978,7 +2172,7 @@ public class _ScalaCoreLexer implements FlexLexer {
           case 161: break;
           case 56: 
             { if (shouldProcessBracesForInterpolated()) {
-                                              nestedString.peek().increase();
+                                              increaseLevel();
                                             }
 
                                             yypushback(yylength() - 1);
@@ -2021,7 +2215,7 @@ public class _ScalaCoreLexer implements FlexLexer {
           case 168: break;
           case 63: 
             { yybegin(INSIDE_MULTI_LINE_INTERPOLATED_STRING);
-    nestedString.push(new MultilineLevel(lastSeenInterpolator));
+    pushLevel(new MultilineLevel(lastSeenInterpolator));
     return process(tINTERPOLATED_MULTILINE_STRING);
             } 
             // fall through
@@ -4,18 +4,26 @@ package parser
 
 import com.intellij.lang.{ASTNode, Language}
 import com.intellij.openapi.project.Project
-import com.intellij.psi.PsiElement
-import com.intellij.psi.tree.{ICompositeElementType, IErrorCounterReparseableElementType}
+import com.intellij.psi.tree.{ICompositeElementType, IErrorCounterReparseableElementType, TokenSet}
+import com.intellij.psi.{PsiElement, TokenType}
 import com.intellij.psi.util.PsiUtilCore
 
 import scala.annotation.tailrec
 
+/**
+ * Blocks in braces, and in Scala 3 the indentation-based blocks of definition bodies, are reparsed on their own.
+ *
+ * The text of an indentation-based block starts with the line break before its first statement,
+ * so the indentation of the region is known from the text. Its statements are valid, if no line of the new text
+ * is indented less than the first one, and the indentation of the first line isn't changed.
+ */
 abstract class ScCodeBlockElementType extends IErrorCounterReparseableElementType(
   "block of expressions",
   ScalaLanguage.INSTANCE
 ) with ICompositeElementType {
 
   import IErrorCounterReparseableElementType._
+  import ScCodeBlockElementType._
   import lexer.ScalaTokenTypes.{tLBRACE => LeftBrace, tRBRACE => RightBrace}
 
   override final def createCompositeNode: ASTNode = createNode(null)
@@ -31,6 +39,27 @@ abstract class ScCodeBlockElementType extends IErrorCounterReparseableElementTyp
     }
   }
 
+  override def isParsable(parent: ASTNode,
+                          buffer: CharSequence,
+                          fileLanguage: Language,
+                          project: Project): Boolean =
+    regionIndentation(buffer) match {
+      case Some(indentation) =>
+        fileLanguage.isKindOf(Scala3Language.INSTANCE) &&
+          parent != null && IndentedBlockOwners.contains(parent.getElementType) &&
+          !Character.isWhitespace(buffer.charAt(buffer.length - 1)) &&
+          isIndentedRegion(buffer, indentation)
+      case None =>
+        super.isParsable(parent, buffer, fileLanguage, project)
+    }
+
+  override def isValidReparse(oldNode: ASTNode, newNode: ASTNode): Boolean = {
+    val indentation = regionIndentation(oldNode.getChars)
+    indentation == regionIndentation(newNode.getChars) &&
+      (indentation.isEmpty || !hasErrors(newNode)) &&
+      super.isValidReparse(oldNode, newNode)
+  }
+
   @tailrec
   private def iterate(balance: Int)
                      (implicit scalaLexer: lexer.ScalaLexer): Int = {
@@ -47,6 +76,78 @@ abstract class ScCodeBlockElementType extends IErrorCounterReparseableElementTyp
 
 object ScCodeBlockElementType {
 
+  import lexer.ScalaTokenTypes._
+
+  //the bodies, parsed by `ExprInIndentationRegion`
+  private lazy val IndentedBlockOwners = TokenSet.create(
+    ScalaElementType.FUNCTION_DEFINITION,
+    ScalaElementType.PATTERN_DEFINITION,
+    ScalaElementType.VARIABLE_DEFINITION
+  )
+
+  private val Opening = TokenSet.create(tLBRACE, tLPARENTHESIS, tLSQBRACKET)
+  private val Closing = TokenSet.create(tRBRACE, tRPARENTHESIS, tRSQBRACKET)
+
+  /** The indentation of the first statement, if the block starts with a line break, i.e. it isn't in braces */
+  private def regionIndentation(text: CharSequence): Option[IndentationWidth] =
+    if (text.length == 0 || !Character.isWhitespace(text.charAt(0))) None
+    else {
+      val scalaLexer = new lexer.ScalaLexer(true, null)
+      scalaLexer.start(text)
+      while (scalaLexer.getTokenType != null && WHITES_SPACES_AND_COMMENTS_TOKEN_SET.contains(scalaLexer.getTokenType)) {
+        scalaLexer.advance()
+      }
+
+      if (scalaLexer.getTokenType == null) None
+      else lastLineIndentation(text.subSequence(0, scalaLexer.getTokenStart))
+        .filter(_ > IndentationWidth.initial)
+    }
+
+  //the same as `findPreviousIndent` of the parser
+  private def lastLineIndentation(whitespace: CharSequence): Option[IndentationWidth] = {
+    val string = whitespace.toString
+    string.lastIndexOf('\n') match {
+      case -1 => None
+      case lastLineBreak => IndentationWidth(string.substring(lastLineBreak + 1))
+    }
+  }
+
+  /**
+   * All lines are indented at least as the first one, so the region doesn't end before the end of the text,
+   * and all brackets opened in the text are closed in it.
+   */
+  private def isIndentedRegion(text: CharSequence, indentation: IndentationWidth): Boolean = {
+    val scalaLexer = new lexer.ScalaLexer(true, null)
+    scalaLexer.start(text)
+
+    var balance = 0
+    var whitespaceStart = -1
+    while (scalaLexer.getTokenType != null) {
+      val tokenType = scalaLexer.getTokenType
+      if (WHITES_SPACES_AND_COMMENTS_TOKEN_SET.contains(tokenType)) {
+        if (whitespaceStart < 0) whitespaceStart = scalaLexer.getTokenStart
+      } else {
+        if (whitespaceStart >= 0) {
+          if (lastLineIndentation(text.subSequence(whitespaceStart, scalaLexer.getTokenStart)).exists(_ < indentation))
+            return false
+          whitespaceStart = -1
+        }
+
+        if (Opening.contains(tokenType)) balance += 1
+        else if (Closing.contains(tokenType)) {
+          balance -= 1
+          if (balance < 0) return false
+        }
+      }
+      scalaLexer.advance()
+    }
+    balance == 0
+  }
+
+  private def hasErrors(node: ASTNode): Boolean =
+    node.getElementType == TokenType.ERROR_ELEMENT ||
+      node.getChildren(null).exists(hasErrors)
+
   object BlockExpression extends ScCodeBlockElementType with SelfPsiCreator {
 
     override def createNode(text: CharSequence): ASTNode = new psi.impl.expr.ScBlockExprImpl(this, text)
@@ -15,7 +15,8 @@ final class ScalaParser(isScala3: Boolean) extends PsiParser {
 
     rootElementType match {
       case ScCodeBlockElementType.BlockExpression =>
-        expressions.BlockExpr()
+        if (builder.getTokenType == lexer.ScalaTokenTypes.tLBRACE) expressions.BlockExpr()
+        else expressions.ExprInIndentationRegion.parseDetachedBlock()
       case _ =>
         val rootMarker = delegate.mark()
         CompilationUnit()
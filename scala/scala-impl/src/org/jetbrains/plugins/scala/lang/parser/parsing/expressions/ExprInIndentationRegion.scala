@@ -59,9 +59,44 @@ sealed trait ExprInIndentationRegion extends ParsingRule {
     }
 
     val blockMarker = builder.mark()
-    builder.withIndentationWidth(indentationForExprBlock) {
+    blockMarker.setCustomEdgeTokenBinders(ScalaTokenBinders.PRECEDING_WS_AND_COMMENT_TOKENS, null)
+
+    val (isBlock, firstParsed) = parseRegion(indentationForExprBlock)
+    if (isBlock) {
+      blockMarker.done(blockType)
+      true
+    } else {
+      blockMarker.drop()
+      firstParsed
+    }
+  }
+
+  /**
+   * Parses the text of a reparsed block, which starts with the line break and the indentation of the region
+   * (see [[ScCodeBlockElementType]]).
+   * Anything, which wouldn't be parsed as the same single block in the whole file, is marked as an error.
+   */
+  final def parseDetachedBlock()(implicit builder: ScalaPsiBuilder): Unit = {
+    val blockMarker = builder.mark()
+    blockMarker.setCustomEdgeTokenBinders(ScalaTokenBinders.PRECEDING_WS_AND_COMMENT_TOKENS, null)
+
+    val isBlock = builder.findPreviousIndent.exists(parseRegion(_)._1)
+    if (!isBlock || !builder.eof()) {
+      builder.error(ScalaBundle.message("wrong.expression"))
+      while (!builder.eof()) {
+        builder.advanceLexer()
+      }
+    }
+    blockMarker.done(blockType)
+  }
 
-      blockMarker.setCustomEdgeTokenBinders(ScalaTokenBinders.PRECEDING_WS_AND_COMMENT_TOKENS, null)
+  /**
+   * @return whether the region is a block, i.e. it has several statements or its first statement
+   *         isn't an expression, and whether the first statement was parsed
+   */
+  private def parseRegion(indentationForExprBlock: IndentationWidth)
+                         (implicit builder: ScalaPsiBuilder): (Boolean, Boolean) =
+    builder.withIndentationWidth(indentationForExprBlock) {
 
       // We need to early parse those definitions which begin with a soft keyword
       // (extension, inline, transparent, infix, open)
@@ -105,15 +140,8 @@ sealed trait ExprInIndentationRegion extends ParsingRule {
        *     var inner = 42
        * }}}
        */
-      if (parseRest(isBlock = false) || firstParsedAsBlockStat) {
-        blockMarker.done(blockType)
-        true
-      } else {
-        blockMarker.drop()
-        firstParsed
-      }
+      (parseRest(isBlock = false) || firstParsedAsBlockStat, firstParsed)
     }
-  }
 }
 
 object ExprInIndentationRegion extends ExprInIndentationRegion {
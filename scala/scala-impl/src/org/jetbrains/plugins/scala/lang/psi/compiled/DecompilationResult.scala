@@ -9,6 +9,7 @@ import com.intellij.openapi.util.Key
 import com.intellij.openapi.vfs.{VirtualFile, VirtualFileWithId, newvfs}
 import com.intellij.reference.SoftReference
 import org.jetbrains.plugins.scala.decompiler.Decompiler
+import org.jetbrains.plugins.scala.decompiler.scalasig.ScalaSig
 import org.jetbrains.plugins.scala.extensions.ObjectExt
 import org.jetbrains.plugins.scala.lang.psi.compiled.ScClassFileDecompiler.ScClsStubBuilder.getStubVersion
 import org.jetbrains.plugins.scala.tasty.{TastyFileType, TastyReader}
@@ -50,6 +51,20 @@ private object DecompilationResult {
 
   private case class Lazy(override val sourceName: String, override val timeStamp: Long, sourceTextComputation: () => String) extends ScalaDecompilationResult {
     override lazy val sourceText: String = sourceTextComputation()
+
+    // the signature parsed on decompilation, it's kept until the stubs are built from it
+    @volatile private var signature: ScalaSig = _
+
+    def withSignature(scalaSig: ScalaSig): Lazy = {
+      signature = scalaSig
+      this
+    }
+
+    def takeSignature(): Option[ScalaSig] = {
+      val result = Option(signature)
+      signature = null
+      result
+    }
   }
 
   private def toWritable(decompilationResult: DecompilationResult): WritableResult = decompilationResult match {
@@ -79,6 +94,16 @@ private object DecompilationResult {
       (result.sourceName, result.sourceText)
     }
 
+  /**
+   * The source name and the signature, which were parsed when the file was decompiled, so they aren't parsed again.
+   * The signature is given away once, it isn't kept after the stubs are built.
+   */
+  private[compiled] def takeSignature(file: VirtualFile): Option[(String, ScalaSig)] =
+    getFromUserData(file) match {
+      case result: Lazy if result.timeStamp == file.getTimeStamp => result.takeSignature().map((result.sourceName, _))
+      case _                                                     => None
+    }
+
   private[compiled] def tryDecompile(file: VirtualFile, bytes: Array[Byte] = null): Option[ScalaDecompilationResult] = {
     val maybeContent: Option[() => Array[Byte]] = bytes match {
       case null =>
@@ -106,10 +131,20 @@ private object DecompilationResult {
       case Some(PartialScala(sourceName, _)) =>
         Lazy(sourceName, timeStamp, () => sourceNameAndText(file, content).map(_._2).getOrElse(""))
       case None =>
-        val recomputedResult = sourceNameAndText(file, content) match {
-          case Some((sourceName, sourceText)) => Full(sourceName, sourceText, timeStamp)
-          case None                           => NonScala(timeStamp)
-        }
+        val recomputedResult =
+          if (isTasty(file))
+            sourceNameAndText(file, content) match {
+              case Some((sourceName, sourceText)) => Full(sourceName, sourceText, timeStamp)
+              case None                           => NonScala(timeStamp)
+            }
+          else
+            // stubs are built from the signature, the text is only printed when the file is opened
+            Decompiler.sourceNameAndSignature(file.getName, content()) match {
+              case Some((sourceName, scalaSig)) =>
+                Lazy(sourceName, timeStamp, () => sourceNameAndText(file, content).map(_._2).getOrElse(""))
+                  .withSignature(scalaSig)
+              case None                  => NonScala(timeStamp)
+            }
 
         writeToFileAttribute(file, recomputedResult)
 
@@ -122,13 +157,16 @@ private object DecompilationResult {
   }
 
   private def sourceNameAndText(file: VirtualFile, content: () => Array[Byte]): Option[(String, String)] = {
-    if (file.getExtension == TastyFileType.getDefaultExtension) {
+    if (isTasty(file)) {
       TastyReader.read(content.apply())
     } else {
       Decompiler.sourceNameAndText(file.getName, content())
     }
   }
 
+  private def isTasty(file: VirtualFile): Boolean =
+    file.getExtension == TastyFileType.getDefaultExtension
+
   private def getFromFileAttribute(file: VirtualFile): Option[DecompilationResult.WritableResult] = {
     for {
       attribute <- DecompilerFileAttribute
@@ -40,13 +40,26 @@ object ScClassFileDecompiler {
 
   object ScClsStubBuilder extends compiled.ClsStubBuilder {
 
-    override val getStubVersion = 364
+    override val getStubVersion = 366
 
     override def buildFileStub(content: FileContent): stubs.PsiFileStubImpl[_ <: PsiFile] =
-      decompiledScalaFile(content)
-        .map((if (isTasty(content.getFile)) stub3Builder else stub2Builder).buildStubTree)
+      signatureStub(content)
+        .orElse {
+          decompiledScalaFile(content)
+            .map((if (isTasty(content.getFile)) stub3Builder else stub2Builder).buildStubTree)
+        }
         .orNull
 
+    private def signatureStub(content: FileContent): Option[stubs.PsiFileStubImpl[_ <: PsiFile]] = content.getFile match {
+      case original if !isTasty(original) && isTopLevelScalaClass(original) =>
+        // the signature is usually parsed by isTopLevelScalaClass already
+        takeSignature(original) match {
+          case Some((sourceName, scalaSig)) => ScalaSigStubBuilder.buildFileStub(original.getName, sourceName, scalaSig)
+          case None                         => ScalaSigStubBuilder.buildFileStub(original.getName, content.getContent)
+        }
+      case _ => None
+    }
+
     private def stub2Builder =
       LanguageParserDefinitions.INSTANCE
         .forLanguage(ScalaLanguage.INSTANCE)
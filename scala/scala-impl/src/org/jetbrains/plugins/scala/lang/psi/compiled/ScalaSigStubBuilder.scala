@@ -0,0 +1,974 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package compiled
+
+import com.intellij.openapi.diagnostic.ControlFlowException
+import com.intellij.psi.CommonClassNames.JAVA_LANG_OBJECT
+import com.intellij.psi.PsiElement
+import com.intellij.psi.stubs.{PsiFileStubImpl, StubElement}
+import com.intellij.util.ArrayUtil.EMPTY_STRING_ARRAY
+import org.jetbrains.plugins.scala.decompiler.Decompiler
+import org.jetbrains.plugins.scala.decompiler.scalasig._
+import org.jetbrains.plugins.scala.lang.lexer.ScalaModifier
+import org.jetbrains.plugins.scala.lang.parser.{ScalaElementType, ScalaParserDefinition}
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.api.base.patterns.ScReferencePattern
+import org.jetbrains.plugins.scala.lang.psi.api.statements.{ScFunction, ScValueOrVariable}
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScTemplateDefinition
+import org.jetbrains.plugins.scala.lang.psi.stubs.elements.ScTemplateDefinitionElementType
+import org.jetbrains.plugins.scala.lang.psi.stubs.elements.signatures.ScParamElementType
+import org.jetbrains.plugins.scala.lang.psi.stubs.impl._
+import org.jetbrains.plugins.scala.lang.refactoring.util.ScalaNamesUtil
+import org.jetbrains.plugins.scala.util.CommonQualifiedNames.{AnyFqn, AnyRefFqn}
+import org.jetbrains.plugins.scala.util.EnumSet
+import org.jetbrains.plugins.scala.util.EnumSet.EnumSet
+
+import scala.collection.immutable.ArraySeq
+import scala.util.control.NonFatal
+
+/**
+ * Builds the stub tree of a Scala 2 class file right from its signature,
+ * without printing the decompiled text and parsing it back.
+ *
+ * The tree is the same as the one built from the text printed by [[ScalaSigPrinter]]:
+ * all the texts are taken from the printer, the rest is derived from the symbols the way the stub element types do it.
+ * Signatures printed in a way that isn't mirrored here are left to the decompiled text (`None` is returned).
+ */
+private[scala] object ScalaSigStubBuilder {
+
+  def buildFileStub(fileName: String, bytes: Array[Byte]): Option[PsiFileStubImpl[ScalaFile]] =
+    try {
+      Decompiler.sourceNameAndSignature(fileName, bytes).flatMap {
+        case (sourceName, scalaSig) => buildFileStub(fileName, sourceName, scalaSig)
+      }
+    } catch {
+      case e: ControlFlowException => throw e
+      case NonFatal(_)             => None
+    }
+
+  /** Builds the stubs from a signature, which is already parsed, see [[DecompilationResult.takeSignature]]. */
+  def buildFileStub(fileName: String, sourceName: String, scalaSig: ScalaSig): Option[PsiFileStubImpl[ScalaFile]] =
+    try {
+      Some(new Builder(sourceName, scalaSig, Decompiler.isPackageObject(fileName)).build())
+    } catch {
+      case e: ControlFlowException => throw e
+      case NonFatal(_)             => None
+    }
+
+  private type Stub = StubElement[_ <: PsiElement]
+
+  private final class Unsupported extends RuntimeException(null, null, false, false)
+
+  private def unsupported(): Nothing = throw new Unsupported
+
+  private val CompiledCode = "{ /* compiled code */ }"
+
+  private final case class Annotation(text: String, typeText: String) {
+    def name: String = typeText.substring(typeText.lastIndexOf('.') + 1)
+
+    def isDeprecated: Boolean = typeText == "deprecated" || typeText == "scala.deprecated"
+  }
+
+  private final case class Access(isProtected: Boolean, isPrivate: Boolean, isThis: Boolean, id: Option[String])
+
+  private final case class Modifiers(set: EnumSet[ScalaModifier], access: Option[Access]) {
+    def contains(modifier: ScalaModifier): Boolean = set.contains(modifier)
+
+    def isEmpty: Boolean = set.isEmpty
+  }
+
+  private final case class TypeParam(name: String,
+                                     text: String,
+                                     lower: Option[String],
+                                     upper: Option[String],
+                                     boundClass: Option[String],
+                                     isCovariant: Boolean,
+                                     isContravariant: Boolean,
+                                     annotations: Seq[Annotation],
+                                     clause: Option[TypeParamClause])
+
+  private final case class TypeParamClause(text: String, params: Seq[TypeParam])
+
+  private final case class Param(name: String,
+                                 typeText: String,
+                                 tpe: Type,
+                                 isRepeated: Boolean,
+                                 isCallByName: Boolean,
+                                 hasDefault: Boolean,
+                                 annotations: Seq[Annotation] = Seq.empty,
+                                 modifiers: Modifiers = Modifiers(EnumSet.empty, None),
+                                 isVal: Boolean = false,
+                                 isVar: Boolean = false,
+                                 deprecatedName: Option[String] = None,
+                                 implicitClassNames: Array[String] = EMPTY_STRING_ARRAY)
+
+  private final case class ParamClause(isImplicit: Boolean, params: Seq[Param])
+
+  /** What the members of a template definition need to know about it. */
+  private final case class Owner(name: String,
+                                 qualifiedName: String,
+                                 memberPrefix: Seq[String],
+                                 isObject: Boolean,
+                                 inPackageObject: Boolean,
+                                 membersAreStatic: Boolean,
+                                 typeParams: Seq[TypeParam],
+                                 outer: Option[Owner])
+
+  /** The reference a printed type starts with, see `classNames` in the stubs package object. */
+  private sealed trait Reference
+
+  private final case class SimpleReference(text: String) extends Reference {
+    def isSingleton: Boolean = text.endsWith(".type")
+
+    def refName: String = text.substring(text.lastIndexOf('.') + 1)
+  }
+
+  private final case class Projection(refName: String) extends Reference
+
+  private final class Builder(sourceName: String, scalaSig: ScalaSig, isPackageObjectFile: Boolean) {
+
+    import ScalaElementType._
+    import ScalaSigPrinter.{StringFixes, isSetterFor, processName}
+
+    private val printer = new ScalaSigPrinter(new java.lang.StringBuilder)
+
+    private val packageName = Decompiler.packageName(scalaSig, isPackageObjectFile)
+
+    private val packageSegments = packageName.fold(Seq.empty[String])(_.split('.').toSeq)
+
+    // annotations of the skipped symbols are printed before the next member
+    private var pendingAnnotations = Seq.empty[Annotation]
+
+    def build(): PsiFileStubImpl[ScalaFile] = {
+      val fileStub = ScalaParserDefinition.FileNodeType.createFileStub()
+      val parent = packageName match {
+        case Some(name) => new ScPackagingStubImpl(fileStub, PACKAGING, name, "", false)
+        case None => fileStub
+      }
+      members(parent, Decompiler.topLevelSymbols(scalaSig).toSeq, level = 0, owner = None)
+      fileStub
+    }
+
+    // see ScalaSigPrinter.printChildren
+    private def bodyMembers(symbol: Symbol, filterFirstConstructor: Boolean): Seq[Symbol] = {
+      var firstConstructorFiltered = !filterFirstConstructor
+      symbol.children.iterator.filter {
+        case child if child.isParam && child.isType => false
+        case m: MethodSymbol if !firstConstructorFiltered && isConstructor(m) =>
+          firstConstructorFiltered = true
+          false
+        case _ => true
+      }.toSeq
+    }
+
+    private def members(parent: Stub, symbols: Seq[Symbol], level: Int, owner: Option[Owner]): Unit = {
+      val companionNames = symbols.collect {
+        case c: ClassSymbol if isPrinted(c, level) && isPrintedClass(c) && !isLocalChild(c) => className(c)
+      }.toSet
+
+      symbols.foreach { symbol =>
+        if (isPrinted(symbol, level)) symbol match {
+          case o: ObjectSymbol =>
+            objectDefinition(parent, o, takeAnnotations(o), level, owner, companionNames)
+          case c: ClassSymbol if isPrintedClass(c) =>
+            if (isLocalChild(c)) {
+              // printed as an empty line
+              if (pendingAnnotations.nonEmpty || c.attributes.nonEmpty) unsupported()
+            } else classDefinition(parent, c, takeAnnotations(c), level, owner)
+          case m: MethodSymbol =>
+            pendingAnnotations ++= m.attributes.map(annotation(_))
+            if (!isSkipped(m)) method(parent, m, takeAnnotations(), owner.getOrElse(unsupported()))
+          case a: AliasSymbol =>
+            typeAlias(parent, a, takeAnnotations(a), owner.getOrElse(unsupported()))
+          case t: TypeSymbol if !t.isParam && !t.name.matches("_\\$\\d+") && !t.name.matches("\\?(\\d)+") =>
+            typeDeclaration(parent, t, takeAnnotations(t), owner.getOrElse(unsupported()))
+          case _ =>
+        }
+      }
+
+      if (pendingAnnotations.nonEmpty) unsupported()
+    }
+
+    // see ScalaSigPrinter.printSymbol
+    private def isPrinted(symbol: Symbol, level: Int): Boolean = {
+      val accessibilityOk = symbol match {
+        case _ if level == 0 => true
+        case _: AliasSymbol | _: ObjectSymbol => true
+        case _ => !symbol.isPrivate
+      }
+      accessibilityOk && !symbol.isSynthetic && !symbol.isCaseAccessor && !symbol.isParamAccessor
+    }
+
+    private def isPrintedClass(c: ClassSymbol): Boolean = c.name != "<refinement>" && !c.isModule
+
+    private def isLocalChild(c: ClassSymbol): Boolean = c.name == "<local child>"
+
+    private def isConstructor(m: MethodSymbol): Boolean = m.name == "<init>"
+
+    // see ScalaSigPrinter.printMethod
+    private def isSkipped(m: MethodSymbol): Boolean = {
+      val name = m.name
+      val parentClass = m.parent.collect { case c: ClassSymbol => c }
+
+      parentClass.exists(_.isModule) && isConstructor(m) ||
+        parentClass.exists(_.isTrait) && name == "$init$" ||
+        name.isDefaultParameterMethodName ||
+        name.startsWith("super$") ||
+        m.isAccessor && name.endsWith("_$eq") ||
+        m.isParamAccessor ||
+        name.startsWith("<local ")
+    }
+
+    private def takeAnnotations(symbol: Symbol): Seq[Annotation] = {
+      pendingAnnotations ++= symbol.attributes.map(annotation(_))
+      takeAnnotations()
+    }
+
+    private def takeAnnotations(): Seq[Annotation] = {
+      val result = pendingAnnotations
+      pendingAnnotations = Seq.empty
+      result
+    }
+
+    private def className(c: ClassSymbol): String = processName(c.name)
+
+    private def memberPrefix(owner: Option[Owner]): Seq[String] = owner.fold(packageSegments)(_.memberPrefix)
+
+    private def topLevelQualifier(owner: Option[Owner]): Option[String] =
+      packageName.orElse(if (owner.isEmpty) Some("") else None)
+
+    // template definitions
+
+    private def classDefinition(parent: Stub, c: ClassSymbol, annotations: Seq[Annotation],
+                                level: Int, owner: Option[Owner]): Unit = {
+      val name = className(c)
+      val modifiers = this.modifiers(c)
+      val isTrait = c.isTrait
+      val constructor = if (isTrait) None else primaryConstructor(c)
+
+      val (classInfo, typeParamSymbols) = c.infoType match {
+        case PolyType(Ref(info), symbols) => (info, symbols.map(_.get))
+        case info => (info, Seq.empty)
+      }
+      val parentTypes = classInfo match {
+        case ClassInfoType(_, typeRefs) if typeRefs.nonEmpty => typeRefs.map(_.get)
+        case _ => unsupported()
+      }
+
+      typeParamSymbols.foreach(printer.addTypeParameter)
+      try {
+        val typeParamClause = this.typeParamClause(typeParamSymbols)
+        val selfType = c.thisTypeRef.map(ref => selfTypeData(ref.get))
+
+        val isImplicit = modifiers.contains(ScalaModifier.Implicit)
+        val conversionParamClass = constructor.filter(_ => isImplicit).flatMap {
+          case (params, p) => params.flatMap(_.params).headOption.flatMap { param =>
+            classOrUpperBoundClass(param.tpe, p, typeParamClause.toSeq.flatMap(_.params), owner)
+          }
+        }
+
+        val element = if (isTrait) TraitDefinition else ClassDefinition
+        val stub = templateDefinitionStub(parent, element, name, annotations, owner,
+          javaName = ScalaNamesUtil.toJavaName(name),
+          suffix = "",
+          additionalJavaName = if (isTrait) Some(ScalaNamesUtil.toJavaName(name) + "$class")
+                               else if (modifiers.contains(ScalaModifier.Case)) Some(ScalaNamesUtil.toJavaName(name) + "$")
+                               else None,
+          isPackageObject = false,
+          isImplicitObject = false,
+          conversionParamClass = conversionParamClass,
+          implicitClassNames = EMPTY_STRING_ARRAY
+        )
+        createAnnotations(stub, annotations)
+        createModifiers(stub, modifiers)
+        typeParamClause.foreach(createTypeParamClause(stub, _))
+        constructor.foreach {
+          case (clauses, _) =>
+            val constructorStub = new ScPrimaryConstructorStubImpl(stub, PRIMARY_CONSTRUCTOR)
+            createAnnotations(constructorStub, Seq.empty)
+            createModifiers(constructorStub, this.modifiers(firstConstructor(c).get))
+            createParamClauses(constructorStub, clauses, CLASS_PARAM)
+        }
+
+        val qualifiedName = (memberPrefix(owner) :+ name).mkString(".")
+        val members = bodyMembers(c, filterFirstConstructor = !isTrait)
+        val bodyStub = extendsBlock(stub, parentTypes, modifiers.contains(ScalaModifier.Case), hasConstructor = !isTrait)
+        selfType.foreach {
+          case (text, classNames) => new ScSelfTypeElementStubImpl(bodyStub, SELF_TYPE, "this", Some(text), classNames)
+        }
+        val memberOwner = Owner(name, qualifiedName, memberPrefix(owner) :+ name,
+          isObject = false,
+          inPackageObject = owner.exists(_.inPackageObject),
+          membersAreStatic = false,
+          typeParams = typeParamClause.toSeq.flatMap(_.params),
+          outer = owner
+        )
+        this.members(bodyStub, members, level + 1, Some(memberOwner))
+      } finally {
+        typeParamSymbols.foreach(printer.removeTypeParameter)
+      }
+    }
+
+    private def objectDefinition(parent: Stub, o: ObjectSymbol, annotations: Seq[Annotation],
+                                 level: Int, owner: Option[Owner], companionNames: Set[String]): Unit = {
+      val classSymbol = o.infoType match {
+        case TypeRefType(_, Ref(c: ClassSymbol), _) => c
+        case _ => unsupported()
+      }
+      val parentTypes = classSymbol.infoType match {
+        case ClassInfoType(_, typeRefs) if typeRefs.nonEmpty => typeRefs.map(_.get)
+        case _ => unsupported()
+      }
+
+      val isPackageObject = o.name == "package" || o.name == "`package`"
+      val name =
+        if (isPackageObject) processName(o.symbolInfo.owner.get.name)
+        else processName(o.name)
+      val modifiers = this.modifiers(o)
+      if (isPackageObject && (annotations.nonEmpty || !modifiers.isEmpty)) unsupported()
+
+      val qualifiedName = (memberPrefix(owner) :+ name).mkString(".")
+      val isImplicit = modifiers.contains(ScalaModifier.Implicit)
+      val javaName = if (isPackageObject) "package$" else ScalaNamesUtil.toJavaName(name) + "$"
+
+      val stub = templateDefinitionStub(parent, ObjectDefinition, name, annotations, owner,
+        javaName = javaName,
+        suffix = if (isPackageObject) ".package$" else "$",
+        additionalJavaName = if (companionNames.contains(name)) None else Some(javaName.stripSuffix("$")),
+        isPackageObject = isPackageObject,
+        isImplicitObject = isImplicit,
+        conversionParamClass = None,
+        implicitClassNames = if (isImplicit) parentTypes.toArray.flatMap(classNames(_)) else EMPTY_STRING_ARRAY
+      )
+      createAnnotations(stub, annotations)
+      createModifiers(stub, modifiers)
+      val bodyStub = extendsBlock(stub, parentTypes, modifiers.contains(ScalaModifier.Case), hasConstructor = true)
+
+      val isStatic = owner.forall(o => o.isObject && o.membersAreStatic)
+      val memberOwner = Owner(name, qualifiedName,
+        memberPrefix = if (isPackageObject && name == "`package`") memberPrefix(owner) else memberPrefix(owner) :+ name,
+        isObject = true,
+        inPackageObject = isPackageObject || owner.exists(_.inPackageObject),
+        membersAreStatic = isPackageObject || qualifiedName == "scala.Predef" || isStatic,
+        typeParams = Seq.empty,
+        outer = owner
+      )
+      members(bodyStub, bodyMembers(classSymbol, filterFirstConstructor = false), level + 1, Some(memberOwner))
+    }
+
+    private def templateDefinitionStub(parent: Stub,
+                                       element: ScTemplateDefinitionElementType[_ <: ScTemplateDefinition],
+                                       name: String,
+                                       annotations: Seq[Annotation],
+                                       owner: Option[Owner],
+                                       javaName: String,
+                                       suffix: String,
+                                       additionalJavaName: Option[String],
+                                       isPackageObject: Boolean,
+                                       isImplicitObject: Boolean,
+                                       conversionParamClass: Option[String],
+                                       implicitClassNames: Array[String]): Stub = {
+      import ScalaNamesUtil.{isBacktickedName, toJavaName}
+
+      val segments = memberPrefix(owner) :+ name
+      val javaQualifiedName =
+        if (owner.exists(o => o.isObject && o.inPackageObject && !o.outer.exists(_.inPackageObject))) null
+        else segments.map(toJavaName).mkString(".")
+          .split('.')
+          .map(isBacktickedName(_).orNull)
+          .mkString(".") + suffix
+
+      new ScTemplateDefinitionStubImpl[ScTemplateDefinition](
+        parent,
+        element,
+        nameRef = name,
+        getQualifiedName = segments.mkString("."),
+        getSourceFileName = sourceName,
+        javaName = javaName,
+        javaQualifiedName = javaQualifiedName,
+        additionalJavaName = additionalJavaName,
+        isPackageObject = isPackageObject,
+        isScriptFileClass = false,
+        isDeprecated = annotations.exists(_.isDeprecated),
+        isLocal = false,
+        isVisibleInJava = !owner.exists(_.inPackageObject),
+        isImplicitObject = isImplicitObject,
+        implicitConversionParameterClass = conversionParamClass,
+        implicitClassNames = implicitClassNames,
+        isTopLevel = owner.isEmpty,
+        topLevelQualifier = topLevelQualifier(owner)
+      )
+    }
+
+    private def extendsBlock(parent: Stub, parentTypes: Seq[Type], isCase: Boolean, hasConstructor: Boolean): Stub = {
+      val texts = parentTypes.map(typeText(_))
+      val baseClasses = parentTypes.flatMap { tpe =>
+        reference(tpe, printer).collect {
+          case reference: SimpleReference if !reference.isSingleton => reference.refName
+        }
+      } ++ (if (isCase) Seq("Object", "Product", "Serializable") else Seq("Object"))
+
+      val stub = new ScExtendsBlockStubImpl(parent, EXTENDS_BLOCK, ArraySeq.from(baseClasses))
+      if (hasConstructor)
+        new ScTemplateParentsStubImpl(stub, TEMPLATE_PARENTS, texts.tail.toArray, texts.headOption)
+      else
+        new ScTemplateParentsStubImpl(stub, TEMPLATE_PARENTS, texts.toArray, None)
+      new ScTemplateBodyStubImpl(stub, TEMPLATE_BODY)
+    }
+
+    private def selfTypeData(tpe: Type): (String, Array[String]) = {
+      val text = typeText(tpe)
+      if (text.endsWith(".type")) unsupported()
+
+      def refNames(tpe: Type): Seq[String] = unwrap(tpe) match {
+        case RefinedType(_, typeRefs) => typeRefs.flatMap(ref => refNames(ref.get))
+        case t => reference(t, printer).toSeq.collect {
+          case reference: SimpleReference => reference.refName
+        }
+      }
+
+      (text, refNames(tpe).toArray)
+    }
+
+    private def firstConstructor(c: ClassSymbol): Option[MethodSymbol] = c.children.collectFirst {
+      case m: MethodSymbol if isConstructor(m) => m
+    }
+
+    // see ScalaSigPrinter.getPrinterByConstructor, the constructor is printed by a separate printer
+    private def primaryConstructor(c: ClassSymbol): Option[(Seq[ParamClause], ScalaSigPrinter)] =
+      firstConstructor(c) match {
+        case Some(constructor) if constructor.infoType.isInstanceOf[FunctionType] =>
+          val constructorPrinter = new ScalaSigPrinter(new java.lang.StringBuilder)
+          val clauses = paramClauses(constructor.infoType, classParam(_, c, constructorPrinter))._1
+          Some((clauses, constructorPrinter))
+        // the parsed class always has a primary constructor
+        case _ => unsupported()
+      }
+
+    // see ScalaSigPrinter.methodSymbolAsClassParam
+    private def classParam(symbol: MethodSymbol, c: ClassSymbol, constructorPrinter: ScalaSigPrinter): Param = {
+      val name = symbol.name
+      val accessors = c.children.filter {
+        case m: MethodSymbol => m.isParamAccessor && m.name.startsWith(name)
+        case _ => false
+      }
+      val isMutable = accessors.exists(accessor => isSetterFor(accessor.name, name))
+      val printed = accessors.find(accessor => !accessor.isPrivate || !accessor.isLocal)
+
+      val annotations = printed.toSeq.flatMap(_.attributes.map(annotation(_, new ScalaSigPrinter(new java.lang.StringBuilder))))
+      val modifiers = printed.fold(Modifiers(EnumSet.empty, None))(this.modifiers)
+
+      val param = methodParam(symbol, constructorPrinter)
+      param.copy(
+        annotations = annotations,
+        modifiers = modifiers,
+        isVal = printed.isDefined && !isMutable,
+        isVar = printed.isDefined && isMutable,
+        deprecatedName = deprecatedName(printed.toSeq.flatMap(_.attributes), annotations),
+        implicitClassNames =
+          if (modifiers.contains(ScalaModifier.Implicit)) classNames(param.tpe, constructorPrinter)
+          else EMPTY_STRING_ARRAY
+      )
+    }
+
+    // see ScalaSigPrinter.methodSymbolAsMethodParam
+    private def methodParam(symbol: MethodSymbol, p: ScalaSigPrinter = printer): Param = {
+      val name = processName(symbol.name)
+      if (name == "_") unsupported()
+
+      val (tpe, isRepeated, isCallByName) = symbol.infoType match {
+        case TypeRefType(_, Ref(s), Seq(Ref(arg))) if s.path == "scala.<repeated>" =>
+          if (unwrap(arg).isInstanceOf[RefinedType]) unsupported()
+          (arg, true, false)
+        case TypeRefType(_, Ref(s), Seq(Ref(arg))) if s.path == "scala.<byname>" => (arg, false, true)
+        case tpe => (tpe, false, false)
+      }
+
+      Param(name, typeText(tpe, p, printRepeated = true), tpe, isRepeated, isCallByName, symbol.hasDefault)
+    }
+
+    // see ScalaSigPrinter.printMethodType
+    private def paramClauses(tpe: Type, param: MethodSymbol => Param): (Seq[ParamClause], Type) = tpe match {
+      case functionType: FunctionType =>
+        val symbols = functionType.paramSymbols
+        val params = symbols.map {
+          case m: MethodSymbol => param(m)
+          case _ => unsupported()
+        }
+        val isImplicit = functionType match {
+          case _: ImplicitMethodType => true
+          case _ => symbols.headOption.exists(_.isImplicit)
+        }
+        if (isImplicit && params.isEmpty) unsupported()
+
+        val (clauses, resultType) = functionType.resultType.get match {
+          case result: FunctionType => paramClauses(result, param)
+          case result => (Seq.empty, result)
+        }
+        if (isImplicit && clauses.nonEmpty) unsupported()
+        (ParamClause(isImplicit, params) +: clauses, resultType)
+      case _: PolyType => unsupported()
+      case result => (Seq.empty, result)
+    }
+
+    private def createParamClauses(parent: Stub, clauses: Seq[ParamClause], element: ScParamElementType[_]): Unit = {
+      val clausesStub = new ScParamClausesStubImpl(parent, PARAM_CLAUSES)
+      clauses.foreach { clause =>
+        val clauseStub = new ScParamClauseStubImpl(clausesStub, PARAM_CLAUSE, clause.isImplicit, isUsing = false)
+        clause.params.foreach { param =>
+          val paramStub = new ScParameterStubImpl(clauseStub, element,
+            name = param.name,
+            typeText = Some(param.typeText),
+            isStable = !param.isVar,
+            isDefaultParameter = param.hasDefault,
+            isRepeated = param.isRepeated,
+            isVal = param.isVal,
+            isVar = param.isVar,
+            isCallByNameParameter = param.isCallByName,
+            bodyText = if (param.hasDefault) Some(CompiledCode) else None,
+            deprecatedName = param.deprecatedName,
+            implicitClassNames = param.implicitClassNames
+          )
+          createAnnotations(paramStub, param.annotations)
+          createModifiers(paramStub, param.modifiers)
+        }
+      }
+    }
+
+    // members
+
+    private def method(parent: Stub, m: MethodSymbol, annotations: Seq[Annotation], owner: Owner): Unit = {
+      val modifiers = this.modifiers(m)
+      if (isConstructor(m)) {
+        if (!m.infoType.isInstanceOf[MethodType]) unsupported()
+        val (clauses, _) = paramClauses(m.infoType, methodParam(_))
+        function(parent, "this", annotations, modifiers, None, clauses, None, isDefinition = true, conversionParamClass = None)
+      } else if (!m.isAccessor) {
+        val typeParamSymbols = m.infoType match {
+          case polyType: PolyType => polyType.paramSymbols
+          case _ => Seq.empty
+        }
+        typeParamSymbols.foreach(printer.addTypeParameter)
+        try {
+          val typeParamClause = this.typeParamClause(typeParamSymbols)
+          val (clauses, resultType) = m.infoType match {
+            case polyType: PolyType => paramClauses(polyType.typeRef.get, methodParam(_))
+            case tpe => paramClauses(tpe, methodParam(_))
+          }
+          val isConversion = modifiers.contains(ScalaModifier.Implicit) && (clauses match {
+            case first +: rest => first.params.size == 1 && !first.isImplicit && rest.forall(_.isImplicit)
+            case _ => false
+          })
+          val conversionParamClass =
+            if (isConversion) classOrUpperBoundClass(clauses.head.params.head.tpe, printer, typeParamClause.toSeq.flatMap(_.params), Some(owner))
+            else None
+          function(parent, processName(m.name), annotations, modifiers, typeParamClause, clauses,
+            Some(resultType), isDefinition = !m.isDeferred, conversionParamClass)
+        } finally {
+          typeParamSymbols.foreach(printer.removeTypeParameter)
+        }
+      } else {
+        val hasSetter = m.parent.get.children.exists {
+          case setter: MethodSymbol => isSetterFor(setter.name, m.name)
+          case _ => false
+        }
+        val isVal = m.isLazy || !hasSetter
+        val withLazy = if (m.isLazy) Modifiers(modifiers.set ++ ScalaModifier.Lazy, modifiers.access) else modifiers
+        property(parent, m, annotations, withLazy, isVal, owner)
+      }
+    }
+
+    private def function(parent: Stub,
+                         name: String,
+                         annotations: Seq[Annotation],
+                         modifiers: Modifiers,
+                         typeParamClause: Option[TypeParamClause],
+                         clauses: Seq[ParamClause],
+                         resultType: Option[Type],
+                         isDefinition: Boolean,
+                         conversionParamClass: Option[String]): Unit = {
+      val typeText = resultType.map(this.typeText(_))
+      val implicitClassNames =
+        if (modifiers.contains(ScalaModifier.Implicit)) resultType.toArray.flatMap(classNames(_))
+        else EMPTY_STRING_ARRAY
+
+      val stub = new ScFunctionStubImpl[ScFunction](
+        parent,
+        if (isDefinition) FUNCTION_DEFINITION else FUNCTION_DECLARATION,
+        name = name,
+        isDeclaration = !isDefinition,
+        annotations = annotations.map(_.name).toArray,
+        typeText = typeText,
+        bodyText = if (typeText.isEmpty && isDefinition) Some(CompiledCode) else None,
+        hasAssign = isDefinition,
+        implicitConversionParameterClass = conversionParamClass,
+        isLocal = false,
+        implicitClassNames = implicitClassNames,
+        isTopLevel = false,
+        topLevelQualifier = packageName,
+        isExtensionMethod = false
+      )
+      createAnnotations(stub, annotations)
+      createModifiers(stub, modifiers)
+      typeParamClause.foreach(createTypeParamClause(stub, _))
+      createParamClauses(stub, clauses, PARAM)
+    }
+
+    private def property(parent: Stub, m: MethodSymbol, annotations: Seq[Annotation], modifiers: Modifiers,
+                         isVal: Boolean, owner: Owner): Unit = {
+      val name = processName(m.name)
+
+      // see the constant value definitions in ScalaSigPrinter.printMethod
+      val constant = m.infoType match {
+        case printer.isConstantType(constant) if m.isFinal && isVal && !m.isLazy => Some(constant)
+        case _ => None
+      }
+      val (typeText, classNames, bodyText) = constant match {
+        case Some(value) =>
+          printer.Constants.constantExpression(value) match {
+            case Some(expression) =>
+              checkConstantExpression(value.value)
+              (None, EMPTY_STRING_ARRAY, Some(expression))
+            case None =>
+              val text = printer.Constants.typeText(value)
+              val classNames = if (text.startsWith("'")) EMPTY_STRING_ARRAY else Array(text.takeWhile(_ != '['))
+              (Some(text), classNames, Some(CompiledCode))
+          }
+        case None =>
+          val tpe = m.infoType match {
+            case NullaryMethodType(Ref(result)) => result
+            case _: FunctionType | _: PolyType => unsupported()
+            case tpe => tpe
+          }
+          (Some(this.typeText(tpe)), this.classNames(tpe), if (m.isDeferred) None else Some(CompiledCode))
+      }
+
+      val isDefinition = bodyText.isDefined
+      val element =
+        if (isVal) { if (isDefinition) PATTERN_DEFINITION else VALUE_DECLARATION }
+        else { if (isDefinition) VARIABLE_DEFINITION else VARIABLE_DECLARATION }
+
+      val stub = new ScPropertyStubImpl[ScValueOrVariable](
+        parent,
+        element,
+        isDeclaration = !isVal && !isDefinition,
+        isImplicit = modifiers.contains(ScalaModifier.Implicit),
+        names = Array(name),
+        typeText = typeText,
+        bodyText = bodyText,
+        isLocal = false,
+        classNames = classNames,
+        isTopLevel = false,
+        topLevelQualifier = packageName
+      )
+      createAnnotations(stub, annotations)
+      createModifiers(stub, modifiers)
+      if (isDefinition) {
+        val patterns = new ScPatternListStubImpl(stub, PATTERN_LIST, true)
+        new ScBindingPatternStubImpl[ScReferencePattern](patterns, REFERENCE_PATTERN, name)
+      } else {
+        val ids = new ScIdListStubImpl(stub.asInstanceOf[StubElement[PsiElement]], IDENTIFIER_LIST)
+        new ScFieldIdStubImpl(ids, FIELD_ID, name)
+      }
+    }
+
+    private def checkConstantExpression(value: Any): Unit = value match {
+      case c: Char if c < ' ' || c > '~' || c == '\'' || c == '\\' => unsupported()
+      case _ =>
+    }
+
+    // see ScalaSigPrinter.printAlias
+    private def typeAlias(parent: Stub, a: AliasSymbol, annotations: Seq[Annotation], owner: Owner): Unit = {
+      val (typeParamClause, aliased) = a.infoType match {
+        case PolyType(Ref(tpe), symbols) => (this.typeParamClause(symbols.map(_.get)), tpe)
+        case tpe => (None, tpe)
+      }
+      aliased match {
+        case _: TypeBoundsType | _: PolyType => unsupported()
+        case _ =>
+      }
+      if (bodyMembers(a, filterFirstConstructor = false).nonEmpty) unsupported()
+
+      typeAliasStub(parent, a, annotations, modifiers(a), owner, typeParamClause,
+        typeText = Some(typeText(aliased)), lower = None, upper = None)
+    }
+
+    // see ScalaSigPrinter.printTypeSymbol
+    private def typeDeclaration(parent: Stub, t: TypeSymbol, annotations: Seq[Annotation], owner: Owner): Unit = {
+      val (typeParamClause, bounds) = t.infoType match {
+        case PolyType(Ref(bounds: TypeBoundsType), symbols) => (this.typeParamClause(symbols.map(_.get)), bounds)
+        case bounds: TypeBoundsType => (None, bounds)
+        case _ => unsupported()
+      }
+      val (lower, upper) = boundsTexts(bounds)
+
+      // modifiers aren't printed for abstract types
+      typeAliasStub(parent, t, annotations, Modifiers(EnumSet.empty, None), owner, typeParamClause,
+        typeText = None, lower = lower, upper = upper)
+    }
+
+    private def typeAliasStub(parent: Stub, symbol: Symbol, annotations: Seq[Annotation], modifiers: Modifiers,
+                              owner: Owner, typeParamClause: Option[TypeParamClause],
+                              typeText: Option[String], lower: Option[String], upper: Option[String]): Unit = {
+      val name = processName(symbol.name)
+      val stableQualifier =
+        if (owner.isObject && owner.membersAreStatic) Some(owner.qualifiedName + "." + name)
+        else None
+
+      val stub = new ScTypeAliasStubImpl(
+        parent,
+        if (typeText.isDefined) TYPE_DEFINITION else TYPE_DECLARATION,
+        name = name,
+        typeText = typeText,
+        lowerBoundText = lower,
+        upperBoundText = upper,
+        isLocal = false,
+        isDeclaration = typeText.isEmpty,
+        isStableQualifier = stableQualifier.isDefined,
+        stableQualifier = stableQualifier,
+        isTopLevel = false,
+        topLevelQualifier = packageName
+      )
+      createAnnotations(stub, annotations)
+      createModifiers(stub, modifiers)
+      typeParamClause.foreach(createTypeParamClause(stub, _))
+    }
+
+    // type parameters
+
+    private def typeParamClause(symbols: Seq[Symbol]): Option[TypeParamClause] =
+      if (symbols.isEmpty) None
+      else {
+        val text = printer.typeParamString(symbols)
+        checkText(text)
+        Some(TypeParamClause(text, symbols.map(typeParam)))
+      }
+
+    // see ScalaSigPrinter.toString(Symbol)
+    private def typeParam(symbol: Symbol): TypeParam = symbol match {
+      case t: TypeSymbol =>
+        val (clause, bounds) = t.infoType match {
+          case PolyType(Ref(bounds: TypeBoundsType), symbols) => (typeParamClause(symbols.map(_.get)), bounds)
+          case bounds: TypeBoundsType => (None, bounds)
+          case _ => unsupported()
+        }
+        val (lower, upper) = boundsTexts(bounds)
+        val boundClass = upper match {
+          case None => Some(AnyFqn)
+          case Some(_) => classNames(bounds.upper.get).headOption
+        }
+
+        TypeParam(
+          name = printer.typeParameterName(t),
+          text = printer.toString(t),
+          lower = lower,
+          upper = upper,
+          boundClass = boundClass,
+          isCovariant = t.isCovariant,
+          isContravariant = t.isContravariant,
+          annotations = t.attributes.map(annotation(_)).toSeq,
+          clause = clause
+        )
+      case _ => unsupported()
+    }
+
+    private def boundsTexts(bounds: TypeBoundsType): (Option[String], Option[String]) = {
+      val lower = typeText(bounds.lower.get)
+      val upper = typeText(bounds.upper.get)
+      (Some(lower).filter(_ != "scala.Nothing"), Some(upper).filter(_ != "scala.Any"))
+    }
+
+    private def createTypeParamClause(parent: Stub, clause: TypeParamClause): Unit = {
+      val clauseStub = new ScTypeParamClauseStubImpl(parent, TYPE_PARAM_CLAUSE, clause.text)
+      clause.params.foreach { param =>
+        val paramStub = new ScTypeParamStubImpl(clauseStub, TYPE_PARAM,
+          name = param.name,
+          text = param.text,
+          lowerBoundText = param.lower,
+          upperBoundText = param.upper,
+          viewBoundsTexts = EMPTY_STRING_ARRAY,
+          contextBoundsTexts = EMPTY_STRING_ARRAY,
+          isCovariant = param.isCovariant,
+          isContravariant = param.isContravariant,
+          containingFileName = sourceName
+        )
+        if (param.annotations.nonEmpty)
+          createAnnotations(paramStub, param.annotations)
+        param.clause.foreach(createTypeParamClause(paramStub, _))
+      }
+    }
+
+    // modifiers and annotations
+
+    // see ScalaSigPrinter.printModifiers
+    private def modifiers(symbol: Symbol): Modifiers = {
+      val privateWithin = symbol match {
+        case s: SymbolInfoSymbol => s.symbolInfo.privateWithin.map(ref => processName(ref.get.name))
+        case _ => None
+      }
+      val access =
+        if (symbol.isPrivate) Some(Access(isProtected = false, isPrivate = true, isThis = symbol.isLocal, id = None))
+        else if (symbol.isProtected) Some(Access(isProtected = true, isPrivate = false, isThis = symbol.isLocal,
+          id = if (symbol.isLocal) None else privateWithin))
+        else privateWithin.map(id => Access(isProtected = false, isPrivate = true, isThis = false, id = Some(id)))
+
+      var set = EnumSet.empty[ScalaModifier]
+      access.foreach { access =>
+        set ++= (if (access.isPrivate) ScalaModifier.Private else ScalaModifier.Protected)
+      }
+      if (symbol.isSealed) set ++= ScalaModifier.Sealed
+      if (symbol.isImplicit) set ++= ScalaModifier.Implicit
+      if (symbol.isFinal && !symbol.isInstanceOf[ObjectSymbol]) set ++= ScalaModifier.Final
+      if (symbol.isOverride) set ++= ScalaModifier.Override
+      if (symbol.isAbstract) symbol match {
+        case _: ClassSymbol | _: ObjectSymbol if !symbol.isTrait => set ++= ScalaModifier.Abstract
+        case _ =>
+      }
+      if (symbol.isAbstractOverride) set = set ++ ScalaModifier.Abstract ++ ScalaModifier.Override
+      if (symbol.isCase && !symbol.isMethod) set ++= ScalaModifier.Case
+
+      Modifiers(set, access)
+    }
+
+    private def createModifiers(parent: Stub, modifiers: Modifiers): Unit = {
+      val stub = new ScModifiersStubImpl(parent, MODIFIERS, modifiers.set)
+      modifiers.access.foreach { access =>
+        new ScAccessModifierStubImpl(stub, ACCESS_MODIFIER, access.isProtected, access.isPrivate, access.isThis, access.id)
+      }
+    }
+
+    private def annotation(attribute: SymAnnot, p: ScalaSigPrinter = printer): Annotation = {
+      val typeText = attribute.typeRef match {
+        case tpe@TypeRefType(_, _, Seq()) => this.typeText(tpe, p)
+        case _ => unsupported()
+      }
+      if (typeText.contains('#') || typeText.contains(' ') || typeText.endsWith(".type")) unsupported()
+      (attribute.args ++ attribute.namedArgs.map(_._2)).foreach(checkAnnotationArgument)
+
+      val text = p.toString(attribute)
+      Annotation(text.stripPrefix("@"), typeText)
+    }
+
+    private def checkAnnotationArgument(argument: Any): Unit = argument match {
+      case string: String =>
+        // multiline strings are printed without escaping
+        if ((string.contains('\n') || string.contains('\r')) && string.contains('"')) unsupported()
+      case Name(string) => checkAnnotationArgument(string)
+      case Constant(value) => checkAnnotationArgument(value)
+      case AnnotArgArray(arguments) => arguments.foreach(ref => checkAnnotationArgument(ref.get))
+      case ref: Ref[_] => checkAnnotationArgument(ref.get)
+      case _ =>
+    }
+
+    // see ScParameterImpl.deprecatedName
+    private def deprecatedName(attributes: Seq[SymAnnot], annotations: Seq[Annotation]): Option[String] = {
+      def stringValue(argument: Any): Option[String] = argument match {
+        case string: String => Some(string)
+        case Name(string) => Some(string)
+        case Constant(value) => stringValue(value)
+        case ref: Ref[_] => stringValue(ref.get)
+        case _ => None
+      }
+
+      attributes.zip(annotations).collectFirst {
+        case (attribute, annotation) if annotation.typeText.contains("deprecatedName") => attribute
+      }.flatMap { attribute =>
+        attribute.args.headOption.flatMap(stringValue).map { value =>
+          if (!value.forall(c => c >= ' ' && c <= '~' && c != '"' && c != '\\')) unsupported()
+          value
+        }
+      }
+    }
+
+    private def createAnnotations(parent: Stub, annotations: Seq[Annotation]): Unit = {
+      val stub = new ScAnnotationsStubImpl(parent, ANNOTATIONS)
+      annotations.foreach { annotation =>
+        new ScAnnotationStubImpl(stub, ANNOTATION, annotation.text, Some(annotation.name))
+      }
+    }
+
+    // types
+
+    private def typeText(tpe: Type, p: ScalaSigPrinter = printer, printRepeated: Boolean = false): String = {
+      val text = p.toString(tpe)(p.TypeFlags(printRepeated))
+      checkText(text)
+      if (text.startsWith("=> ")) unsupported()
+      text
+    }
+
+    // refinements, existential types and type lambdas, see ScalaSigPrinter.toString(Type)
+    private def checkText(text: String): Unit =
+      if (text.isEmpty || text.contains('{') || text.contains("/*")) unsupported()
+
+    // the printed type is the same as the type without annotations
+    private def unwrap(tpe: Type): Type = tpe match {
+      case AnnotatedType(Ref(inner)) => unwrap(inner)
+      case AnnotatedWithSelfType(Ref(inner), _, _) => unwrap(inner)
+      case NullaryMethodType(Ref(inner)) => unwrap(inner)
+      // without `forSome`, which is checked by `typeText`
+      case ExistentialType(Ref(inner), _) => unwrap(inner)
+      case _ => tpe
+    }
+
+    private def reference(tpe: Type, p: ScalaSigPrinter): Option[Reference] = unwrap(tpe) match {
+      case typeRef@TypeRefType(_, Ref(symbol), typeArgs) =>
+        symbol.path match {
+          case "scala.<repeated>" => Some(SimpleReference("scala.Seq"))
+          case "scala.<byname>" => unsupported()
+          case _ =>
+            val text = p.toString(typeRef)(p._tf)
+            checkText(text)
+            val argsText = p.typeArgString(typeArgs.map(_.get), 0)
+            if (!text.endsWith(argsText)) unsupported()
+
+            val base = text.substring(0, text.length - argsText.length)
+            val name = processName(symbol.name)
+            if (name == "_" || base.contains(' ') || base.endsWith(".type") && typeArgs.nonEmpty) unsupported()
+
+            Some {
+              if (base.endsWith("#" + name)) Projection(name)
+              else SimpleReference(base)
+            }
+        }
+      case singleton@(_: ThisType | _: SingleType) =>
+        val text = p.toString(singleton)(p._tf)
+        checkText(text)
+        Some(SimpleReference(text))
+      case _ => None
+    }
+
+    // see classNames in the stubs package object
+    private def classNames(tpe: Type, p: ScalaSigPrinter = printer): Array[String] = {
+      def names(tpe: Type): Seq[String] = unwrap(tpe) match {
+        case RefinedType(_, typeRefs) => typeRefs.flatMap(ref => names(ref.get))
+        case _: ConstantType => unsupported()
+        case t => reference(t, p) match {
+          case Some(SimpleReference(text)) => Seq(text)
+          case Some(Projection(refName)) => Seq(refName)
+          case None => unsupported()
+        }
+      }
+
+      names(tpe).filter {
+        case JAVA_LANG_OBJECT | AnyRefFqn => false
+        case _ => true
+      }.toArray
+    }
+
+    // see ScImplicitStub.classOrUpperBoundClass
+    private def classOrUpperBoundClass(tpe: Type, p: ScalaSigPrinter,
+                                       typeParams: Seq[TypeParam], owner: Option[Owner]): Option[String] = {
+      def ownerTypeParams(owner: Option[Owner]): Seq[TypeParam] =
+        owner.toSeq.flatMap(o => o.typeParams ++ ownerTypeParams(o.outer))
+
+      val simpleName = reference(tpe, p).collect {
+        case reference: SimpleReference if !reference.isSingleton && !reference.text.contains('.') => reference.text
+      }
+      simpleName.flatMap(name => (typeParams ++ ownerTypeParams(owner)).find(_.name == name)) match {
+        case Some(typeParam) => typeParam.boundClass
+        case None => classNames(tpe, p).headOption
+      }
+    }
+  }
+}
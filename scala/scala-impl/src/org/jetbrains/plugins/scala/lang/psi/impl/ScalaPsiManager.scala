@@ -319,8 +319,8 @@ class ScalaPsiManager(implicit val project: Project) {
     ).map(_.name).toSet
 
   private def clearCaches(): Unit = {
-    new ProjectContext(project).typeSystem.clearCache()
     ParameterizedType.substitutorCache.clear()
+    ScTypeInterner.instance(project).clear()
     PropertyMethods.clearCache()
     collectImplicitObjectsCache.clear()
     implicitCollectorCache.clear()
@@ -342,6 +342,8 @@ class ScalaPsiManager(implicit val project: Project) {
 
   private def clearOnRootsChange(): Unit = {
     clearOnTopLevelChange()
+    // conformance and equivalence results are checked against the modification trackers, see TypeRelationCache
+    new ProjectContext(project).typeSystem.clearCache()
     clearCacheOnRootsChange.fireCleanup()
   }
 
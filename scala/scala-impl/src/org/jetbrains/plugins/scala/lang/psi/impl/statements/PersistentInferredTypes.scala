@@ -0,0 +1,318 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package impl
+package statements
+
+import com.intellij.openapi.fileEditor.FileDocumentManager
+import com.intellij.openapi.project.{Project, ProjectManagerListener}
+import com.intellij.openapi.util.Key
+import com.intellij.openapi.util.registry.{Registry, RegistryValue}
+import com.intellij.openapi.vfs.newvfs.FileAttribute
+import com.intellij.openapi.vfs.{VirtualFile, VirtualFileManager, VirtualFileWithId}
+import com.intellij.psi.{PsiAnchor, PsiElement, PsiFile, StubBasedPsiElement}
+import org.jetbrains.plugins.scala.caches.{BlockModificationTracker, RecursionManager}
+import org.jetbrains.plugins.scala.components.ScalaPluginVersionVerifier
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.ImplicitArgumentsOwner
+import org.jetbrains.plugins.scala.lang.psi.api.base.ScReference
+import org.jetbrains.plugins.scala.lang.psi.api.base.patterns.ScBindingPattern
+import org.jetbrains.plugins.scala.lang.psi.api.expr.ScExpression
+import org.jetbrains.plugins.scala.lang.psi.api.statements.{ScFunctionDefinition, ScPatternDefinition}
+import org.jetbrains.plugins.scala.lang.parser.ScalaParserDefinition
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScMember
+import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiElementFactory.createTypeFromText
+import org.jetbrains.plugins.scala.lang.psi.types.result._
+import org.jetbrains.plugins.scala.lang.resolve.ScalaResolveResult
+import org.jetbrains.plugins.scala.macroAnnotations.CachedInUserData
+
+import java.io.{DataInput, DataOutput, IOException}
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.{ConcurrentHashMap, TimeUnit}
+import java.util.zip.CRC32
+import scala.jdk.CollectionConverters._
+
+/**
+ * Keeps the inferred types of the members without an explicit type between IDE sessions.
+ *
+ * The types of a file are stored in a VFS attribute, together with the hash of the file content.
+ * A member is identified by its index in the stub tree, so only members of templates and top-level members are stored.
+ * Every entry remembers the files its body refers to (transitively, through the other members with inferred types),
+ * and it's used only while all of them are unchanged.
+ * The type is stored as its canonical text, and only when the text is parsed back to an equivalent type.
+ * New entries are written in the background, once per file, or when a project is closed.
+ * The attribute is dropped when the stub version changes, and ignored when it's written by another plugin build.
+ *
+ * Declarations added to the other files, which would change the resolve or the implicit search
+ * inside the body, are not tracked, so the cache is opt-in with the `scala.inferred.types.persistent.cache` registry key.
+ */
+private[statements] object PersistentInferredTypes {
+  val RegistryKey = "scala.inferred.types.persistent.cache"
+
+  private lazy val enabled: RegistryValue = Registry.get(RegistryKey)
+
+  private val FormatVersion = 1
+
+  // members are identified by their stub indices, so the stored types are valid only for the same stub version
+  private lazy val Attribute =
+    new FileAttribute("_scala_inferred_types_", ScalaParserDefinition.FileNodeType.getStubVersion * 100 + FormatVersion, false)
+
+  private lazy val PluginBuild: String = ScalaPluginVersionVerifier.getPluginVersion.fold("")(_.presentation)
+
+  private[statements] val FileTypesKey: Key[FileTypes] = Key.create("scala.inferred.types.of.file")
+
+  private val MaxTypeTextLength = 1024
+
+  private val FlushDelaySeconds = 5
+
+  private val dirtyFiles = ConcurrentHashMap.newKeySet[FileTypes]()
+
+  private val flushScheduled = new AtomicBoolean(false)
+
+  def isEnabled: Boolean = enabled.asBoolean()
+
+  def functionType(function: ScFunctionDefinition)(infer: => TypeResult): TypeResult =
+    if (isEnabled && !function.hasModifierProperty("implicit")) typeOf(function, function.body)(infer)
+    else infer
+
+  def patternDefinitionType(definition: ScPatternDefinition)(infer: => TypeResult): TypeResult =
+    if (isEnabled && definition.isSimple && !definition.hasModifierProperty("implicit")) typeOf(definition, definition.expr)(infer)
+    else infer
+
+  private def typeOf(member: ScMember, body: => Option[ScExpression])
+                    (infer: => TypeResult): TypeResult = {
+
+    @CachedInUserData(member, BlockModificationTracker(member))
+    def cached: TypeResult = location(member) match {
+      case Some((fileTypes, index)) =>
+        fileTypes.entries.get(index) match {
+          case entry: Entry if entry.isUpToDate =>
+            createTypeFromText(entry.typeText, member, null) match {
+              case Some(tpe) => Right(tpe)
+              case None      => infer
+            }
+          case _ =>
+            // a type inferred inside a recursion cut off by a guard is partial, it mustn't outlive the session
+            val stackStamp = RecursionManager.markStack()
+            val result = infer
+            for {
+              tpe          <- result.toOption
+              if stackStamp.mayCacheNow()
+              typeText     = tpe.canonicalText
+              if typeText.length <= MaxTypeTextLength
+              dependencies <- body.flatMap(dependenciesOf(member, _))
+              if createTypeFromText(typeText, member, null).exists(_.equiv(tpe))
+            } fileTypes.put(index, Entry(typeText, dependencies))
+
+            result
+        }
+      case None => infer
+    }
+
+    cached
+  }
+
+  private def location(member: ScMember): Option[(FileTypes, Int)] = (member, member.getContainingFile) match {
+    case (stubBased: StubBasedPsiElement[_], file: PsiFile) if file.isPhysical =>
+      file.getVirtualFile match {
+        case virtualFile: VirtualFileWithId =>
+          val index = PsiAnchor.calcStubIndex(stubBased)
+          if (index < 0) None
+          else Some((fileTypes(virtualFile, file), index))
+        case _ => None
+      }
+    case _ => None
+  }
+
+  private def fileTypes(virtualFile: VirtualFile, file: PsiFile): FileTypes = {
+    val modificationStamp = file.getModificationStamp
+
+    virtualFile.getUserData(FileTypesKey) match {
+      case fileTypes: FileTypes if fileTypes.modificationStamp == modificationStamp => fileTypes
+      case cachedTypes =>
+        val contentHash = hash(file.getText)
+        val fileTypes = cachedTypes match {
+          case fileTypes: FileTypes if fileTypes.contentHash == contentHash => fileTypes
+          case _ =>
+            readAttribute(virtualFile).filter(_.contentHash == contentHash)
+              .getOrElse(new FileTypes(contentHash))
+        }
+        fileTypes.file = virtualFile
+        fileTypes.modificationStamp = modificationStamp
+        virtualFile.putUserData(FileTypesKey, fileTypes)
+        fileTypes
+    }
+  }
+
+  /**
+   * The files, which the type of `body` depends on, and their stamps.
+   * None, if some of them are not saved yet, or the type of a referenced member isn't stored.
+   */
+  private def dependenciesOf(member: PsiElement, body: ScExpression): Option[Map[String, Long]] = {
+    val ownFile = member.getContainingFile.getVirtualFile
+    var result = Map.empty[String, Long]
+    var persistable = true
+
+    def addElement(element: PsiElement): Unit = if (persistable && element != member) {
+      Option(element.getContainingFile).flatMap(f => Option(f.getVirtualFile)) match {
+        case Some(file) =>
+          if (file != ownFile) {
+            stamp(file) match {
+              case Some(s) => result += file.getUrl -> s
+              case None    => persistable = false
+            }
+          }
+          //local definitions are a part of the body
+          for {
+            inferred       <- inferredMember(element)
+            if inferred != member
+            (types, index) <- location(inferred)
+          } types.entries.get(index) match {
+            case null  => persistable = false
+            case entry => result ++= entry.dependencies
+          }
+        // synthetic elements
+        case None =>
+      }
+    }
+
+    def addResult(result: ScalaResolveResult): Unit = {
+      addElement(result.element)
+      result.implicitConversion.foreach(addResult)
+      result.implicitParameters.foreach(addResult)
+      result.innerResolveResult.foreach(addResult)
+    }
+
+    val iterator = body.depthFirst()
+    while (persistable && iterator.hasNext) {
+      val element = iterator.next()
+      element match {
+        case reference: ScReference => reference.multiResolveScala(false).foreach(addResult)
+        case _                      =>
+      }
+      element match {
+        case owner: ImplicitArgumentsOwner => owner.findImplicitArguments.foreach(_.foreach(addResult))
+        case _                             =>
+      }
+    }
+
+    if (persistable) Some(result) else None
+  }
+
+  private def inferredMember(element: PsiElement): Option[ScMember] = element match {
+    case function: ScFunctionDefinition if function.returnTypeElement.isEmpty && function.hasAssign => Some(function)
+    case binding: ScBindingPattern =>
+      binding.nameContext match {
+        case definition: ScPatternDefinition if definition.typeElement.isEmpty => Some(definition)
+        case _                                                                 => None
+      }
+    case _ => None
+  }
+
+  private def stamp(file: VirtualFile): Option[Long] =
+    if (!file.isValid || FileDocumentManager.getInstance.isFileModified(file)) None
+    else Some(file.getTimeStamp * 31 + file.getLength)
+
+  private def hash(text: String): Long = {
+    val crc = new CRC32
+    crc.update(text.getBytes(StandardCharsets.UTF_8))
+    (crc.getValue << 32) ^ text.hashCode
+  }
+
+  private[statements] final case class Entry(typeText: String, dependencies: Map[String, Long]) {
+
+    def isUpToDate: Boolean = dependencies.forall { case (url, expected) =>
+      Option(VirtualFileManager.getInstance.findFileByUrl(url)).flatMap(stamp).contains(expected)
+    }
+  }
+
+  private[statements] final class FileTypes(val contentHash: Long) {
+    @volatile var file: VirtualFile = _
+    @volatile var modificationStamp: Long = -1
+
+    val entries = new ConcurrentHashMap[Int, Entry]()
+
+    def put(index: Int, entry: Entry): Unit = {
+      entries.put(index, entry)
+      if (dirtyFiles.add(this)) scheduleFlush()
+    }
+
+    private[statements] def writeTo(output: DataOutput, build: String = PluginBuild): Unit = {
+      val snapshot = entries.asScala.toSeq
+      output.writeUTF(build)
+      output.writeLong(contentHash)
+      output.writeInt(snapshot.size)
+      snapshot.foreach { case (index, Entry(typeText, dependencies)) =>
+        output.writeInt(index)
+        output.writeUTF(typeText)
+        output.writeInt(dependencies.size)
+        dependencies.foreach { case (url, stamp) =>
+          output.writeUTF(url)
+          output.writeLong(stamp)
+        }
+      }
+    }
+  }
+
+  private[statements] object FileTypes {
+
+    /** None, if the types are written by another build of the plugin, which could infer them differently */
+    def readFrom(input: DataInput, build: String = PluginBuild): Option[FileTypes] =
+      if (input.readUTF() != build) None
+      else {
+        val fileTypes = new FileTypes(input.readLong())
+        for (_ <- 0 until input.readInt()) {
+          val index = input.readInt()
+          val typeText = input.readUTF()
+          val dependencies = (0 until input.readInt()).map(_ => input.readUTF() -> input.readLong()).toMap
+          fileTypes.entries.put(index, Entry(typeText, dependencies))
+        }
+        Some(fileTypes)
+      }
+  }
+
+  /** Writes the types of all files with new entries */
+  private[statements] def flush(): Unit = {
+    val iterator = dirtyFiles.iterator()
+    while (iterator.hasNext) {
+      val fileTypes = iterator.next()
+      iterator.remove()
+      writeAttribute(fileTypes)
+    }
+  }
+
+  private def scheduleFlush(): Unit =
+    if (flushScheduled.compareAndSet(false, true)) {
+      scheduleOnPooledThread(FlushDelaySeconds, TimeUnit.SECONDS) {
+        flushScheduled.set(false)
+        flush()
+      }
+    }
+
+  class FlushOnProjectClosing extends ProjectManagerListener {
+    override def projectClosing(project: Project): Unit = flush()
+  }
+
+  private def readAttribute(file: VirtualFile): Option[FileTypes] =
+    try {
+      Option(Attribute.readAttribute(file)).flatMap { input =>
+        try FileTypes.readFrom(input)
+        finally input.close()
+      }
+    } catch {
+      case _: IOException => None
+    }
+
+  private def writeAttribute(fileTypes: FileTypes): Unit = fileTypes.file match {
+    case file: VirtualFile if file.isValid =>
+      try {
+        val output = Attribute.writeAttribute(file)
+        try fileTypes.writeTo(output)
+        finally output.close()
+      } catch {
+        case _: IOException =>
+      }
+    case _ =>
+  }
+}
@@ -112,9 +112,11 @@ private object ScFunctionDefinitionImpl {
     fun.returnTypeElement match {
       case None if !fun.hasAssign => Right(api.Unit)
       case None =>
-        fun.body match {
-          case Some(b) => b.`type`().map(ScLiteralType.widenRecursive)
-          case _       => Right(api.Unit)
+        PersistentInferredTypes.functionType(fun) {
+          fun.body match {
+            case Some(b) => b.`type`().map(ScLiteralType.widenRecursive)
+            case _       => Right(api.Unit)
+          }
         }
       case Some(rte: ScTypeElement) => rte.`type`()
     }
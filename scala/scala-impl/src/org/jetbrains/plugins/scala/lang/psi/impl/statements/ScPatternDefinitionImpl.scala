@@ -50,13 +50,15 @@ final class ScPatternDefinitionImpl private[psi](stub: ScPropertyStub[ScPatternD
   override def `type`(): TypeResult = typeElement match {
     case Some(te) => te.`type`()
     case _ =>
-      expr.toRight {
-        new Failure(ScalaBundle.nls("cannot.infer.type.without.an.expression"))
-      }.flatMap {
-        _.`type`()
-      }.map {
-        case literalType: ScLiteralType if this.hasFinalModifier => literalType
-        case t => ScLiteralType.widenRecursive(t)
+      PersistentInferredTypes.patternDefinitionType(this) {
+        expr.toRight {
+          new Failure(ScalaBundle.nls("cannot.infer.type.without.an.expression"))
+        }.flatMap {
+          _.`type`()
+        }.map {
+          case literalType: ScLiteralType if this.hasFinalModifier => literalType
+          case t => ScLiteralType.widenRecursive(t)
+        }
       }
   }
 
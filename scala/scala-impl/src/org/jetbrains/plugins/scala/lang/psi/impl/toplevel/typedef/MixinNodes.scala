@@ -39,6 +39,7 @@ import scala.jdk.CollectionConverters._
 
 abstract class MixinNodes[T <: Signature](signatureCollector: SignatureProcessor[T]) {
   type Map = MixinNodes.Map[T]
+  type Layer = MixinNodes.Layer[T]
 
   def build(clazz: PsiClass, withSupers: Boolean): Map = {
     if (!clazz.isValid) MixinNodes.emptyMap[T]
@@ -47,7 +48,7 @@ abstract class MixinNodes[T <: Signature](signatureCollector: SignatureProcessor
 
         val map = new Map
 
-        signatureCollector.processAll(clazz, ScSubstitutor.empty, map)
+        map.addThisLayer(layer(clazz))
         map.thisFinished()
 
         if (withSupers) addSuperSignatures(SuperTypesData(clazz), map)
@@ -69,13 +70,29 @@ abstract class MixinNodes[T <: Signature](signatureCollector: SignatureProcessor
   private def addSuperSignatures(superTypesData: SuperTypesData, map: Map): Unit = {
 
     for ((superClass, subst) <- superTypesData.substitutors) {
-      signatureCollector.processAll(superClass, subst, map)
+      map.addSuperLayer(layer(superClass), subst, signatureCollector)
     }
 
     for (compoundType <- superTypesData.refinements) {
       signatureCollector.processRefinement(compoundType, map)
     }
   }
+
+  //declarations of a class don't depend on its subclasses, so a layer is shared by all of them.
+  //Layers of library classes survive the edits in the project, but layers of the project classes are still
+  //invalidated by any change outside of code blocks (the top-level modification tracker), not only by their own
+  private def layer(clazz: PsiClass): Layer = {
+
+    @CachedInUserData(clazz, ModTracker.libraryAware(clazz))
+    def cachedLayer(clazz: PsiClass, collector: SignatureProcessor[T]): Layer = {
+      val layer = new Layer
+      collector.processAll(clazz, ScSubstitutor.empty, layer)
+      layer
+    }
+
+    //@CachedInUserData creates a single map for all collectors, so we need to pass it as a parameter to have different keys
+    cachedLayer(clazz, signatureCollector)
+  }
 }
 
 object MixinNodes {
@@ -161,13 +178,57 @@ object MixinNodes {
     def primarySuper: Option[Node[T]] = concreteSuper.orElse(supers.headOption)
   }
 
+  /**
+   * Signatures declared in a single class, collected with an empty substitutor.
+   * It's filled once and isn't modified after that, so it may be referenced from the maps of all subclasses.
+   */
+  final class Layer[T <: Signature] private[typedef]() extends SignatureSink[T] {
+
+    private val signaturesByName: THashMap[String, JList[T]] = new THashMap()
+    private[MixinNodes] val implicitNames: SmartHashSet[String] = new SmartHashSet[String]
+
+    override def put(signature: T): Unit = {
+      val name = signature.name
+      signaturesByName.computeIfAbsent(name, _ => new SmartList[T]).add(signature)
+
+      if (signature.isImplicit || signature.isExtensionMethod)
+        implicitNames.add(name)
+    }
+
+    private[MixinNodes] def names: java.util.Set[String] = signaturesByName.keySet
+
+    private[MixinNodes] def forName(cleanName: String): JList[T] =
+      signaturesByName.getOrDefault(cleanName, ContainerUtil.emptyList[T])
+  }
+
+  /**
+   * Signatures of a class or a compound type with all its supertypes.
+   *
+   * Declarations of every superclass are kept in a shared [[Layer]] together with the substitutor of this map,
+   * signatures as seen from this class are created only when nodes with their name are requested.
+   */
   class Map[T <: Signature] extends SignatureSink[T] {
 
-    private val allNames: THashSet[String] = new THashSet[String]
-    private[Map] val implicitNames: SmartHashSet[String] = new SmartHashSet[String]
+    private var thisLayer: Layer[T] = new Layer[T]
+    private val superLayers = mutable.ArrayBuffer.empty[(Layer[T], ScSubstitutor, SignatureProcessor[T])]
+
+    //signatures of refinements, which aren't shared
+    private val supersSignatures: Layer[T] = new Layer[T]
 
-    private val thisSignaturesByName: THashMap[String, JList[T]] = new THashMap()
-    private val supersSignaturesByName: THashMap[String, JList[T]] = new THashMap()
+    private def layers: Iterator[Layer[T]] =
+      Iterator(thisLayer) ++ superLayers.iterator.map(_._1) ++ Iterator(supersSignatures)
+
+    private lazy val allNames: THashSet[String] = {
+      val names = new THashSet[String]
+      layers.foreach(layer => names.addAll(layer.names))
+      names
+    }
+
+    private[Map] lazy val implicitNames: THashSet[String] = {
+      val names = new THashSet[String]
+      layers.foreach(layer => names.addAll(layer.implicitNames))
+      names
+    }
 
     private val forNameCache = new ConcurrentHashMap[String, AllNodes[T]]()
 
@@ -192,19 +253,17 @@ object MixinNodes {
       fromSuper = true
     }
 
-    override def put(signature: T): Unit = {
-      val name = signature.name
-      val buffer =
-        if (fromSuper) supersSignaturesByName.computeIfAbsent(name, _ => new SmartList[T])
-        else thisSignaturesByName.computeIfAbsent(name, _ => new SmartList[T])
-
-      buffer.add(signature)
-
-      allNames.add(name)
+    private[typedef] def addThisLayer(layer: Layer[T]): Unit = {
+      thisLayer = layer
+    }
 
-      if (signature.isImplicit || signature.isExtensionMethod)
-        implicitNames.add(name)
+    private[typedef] def addSuperLayer(layer: Layer[T], substitutor: ScSubstitutor, collector: SignatureProcessor[T]): Unit = {
+      superLayers += ((layer, substitutor, collector))
+    }
 
+    override def put(signature: T): Unit = {
+      if (fromSuper) supersSignatures.put(signature)
+      else thisLayer.put(signature)
     }
 
     def nameCount: Int = allNames.size
@@ -232,13 +291,24 @@ object MixinNodes {
     def forName(name: String): AllNodes[T] = {
       val cleanName = ScalaNamesUtil.clean(name)
       def calculate: AllNodes[T] = {
-        val thisSignatures = thisSignaturesByName.getOrDefault(cleanName, ContainerUtil.emptyList[T])
-        val superSignatures = supersSignaturesByName.getOrDefault(cleanName, ContainerUtil.emptyList[T])
-        merge(thisSignatures, superSignatures)
+        val thisSignatures = thisLayer.forName(cleanName)
+        merge(thisSignatures, superSignatures(cleanName))
       }
       forNameCache.atomicGetOrElseUpdate(cleanName, calculate)
     }
 
+    private def superSignatures(cleanName: String): JList[T] = {
+      val result = new SmartList[T]
+
+      superLayers.foreach { case (layer, substitutor, collector) =>
+        layer.forName(cleanName).forEach { signature =>
+          result.add(collector.withSubstitutor(signature, substitutor))
+        }
+      }
+      result.addAll(supersSignatures.forName(cleanName))
+      result
+    }
+
     private def merge(thisSignatures: JList[T], superSignatures: JList[T]): AllNodes[T] = {
 
       val nodesMap = NodesMap.empty[T]
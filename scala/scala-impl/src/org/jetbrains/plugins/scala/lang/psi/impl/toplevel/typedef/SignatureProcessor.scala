@@ -21,6 +21,9 @@ sealed trait SignatureProcessor[T <: Signature] {
 
   protected def shouldSkip(t: T): Boolean
 
+  /** Signature of the same member, collected with `substitutor` instead of an empty one */
+  def withSubstitutor(t: T, substitutor: ScSubstitutor): T
+
   def process(t: T, sink: Sink): Unit = {
     if (!shouldSkip(t))
       sink.put(t)
@@ -59,6 +62,9 @@ object TypesCollector extends SignatureProcessor[TypeSignature] {
     case _ => true
   }
 
+  override def withSubstitutor(t: TypeSignature, substitutor: ScSubstitutor): TypeSignature =
+    t.copy(substitutor = substitutor)
+
   override protected def processJava(clazz: PsiClass, subst: ScSubstitutor, sink: Sink): Unit = {
     for (inner <- clazz.getInnerClasses) {
       process(TypeSignature(inner, subst), sink)
@@ -97,6 +103,9 @@ sealed abstract class TermsCollector extends SignatureProcessor[TermSignature] {
     case _             => false
   }
 
+  override def withSubstitutor(t: TermSignature, substitutor: ScSubstitutor): TermSignature =
+    t.withSubstitutor(substitutor)
+
   override protected def processJava(clazz: PsiClass, subst: ScSubstitutor, sink: Sink): Unit = {
     for (method <- clazz.getMethods) {
       val phys = new PhysicalMethodSignature(method, subst)
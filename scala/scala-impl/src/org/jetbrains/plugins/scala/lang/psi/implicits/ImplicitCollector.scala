@@ -131,6 +131,11 @@ class ImplicitCollector(
 
   private val mostSpecificUtil: MostSpecificUtil = MostSpecificUtil(place, 1)
 
+  //implicit conversions and extensions are not checked against `tp` itself
+  private lazy val searchedShape: Option[ImplicitShape] =
+    if (isImplicitConversion || isExtensionConversion || withExtensions) None
+    else ImplicitShape.of(tp)
+
   private def isExtensionConversion: Boolean = extensionData.isDefined
 
   private def canContainExtension(srr: ScalaResolveResult, hasExplicitClause: Boolean): Boolean =
@@ -217,7 +222,9 @@ class ImplicitCollector(
     ImplicitCollector.implicitsFromType(place, expandedTp)
       .map(_.copy(implicitSearchState = Some(collectorState)))
 
-  private def compatible(candidates: Set[ScalaResolveResult]): Seq[ScalaResolveResult] = TraceLogger.func {
+  private def compatible(allCandidates: Set[ScalaResolveResult]): Seq[ScalaResolveResult] = TraceLogger.func {
+    val candidates = withPossibleShape(allCandidates)
+
     //implicits found without local type inference have higher priority
     val withoutLocalTypeInference = collectCompatibleCandidates(candidates, withLocalTypeInference = false)
 
@@ -231,6 +238,22 @@ class ImplicitCollector(
     }
   }
 
+  /**
+   * Skips the candidates, whose declared type can't conform to `tp` (see [[ImplicitShape]]),
+   * before running any type inference for them.
+   */
+  private def withPossibleShape(candidates: Set[ScalaResolveResult]): Set[ScalaResolveResult] = searchedShape match {
+    case Some(shape) =>
+      val possible = candidates.filter { c =>
+        c.isExtension || ImplicitShape.ofCandidate(c.element).forall(_.mayConformTo(shape))
+      }
+      val pruned = candidates.size - possible.size
+      if (pruned > 0)
+        TraceLogger.log(s"Pruned $pruned of ${candidates.size} candidates by the shape of their type")
+      possible
+    case None => candidates
+  }
+
   private def collectFullInfo(candidates: Set[ScalaResolveResult]): Seq[ScalaResolveResult] = TraceLogger.func {
     val allCandidates =
       candidates.flatMap(c => checkCompatible(c, withLocalTypeInference = false)) ++
@@ -305,15 +328,20 @@ class ImplicitCollector(
   ): Set[ScalaResolveResult] = TraceLogger.func {
     val filteredCandidates = mutable.HashSet.empty[ScalaResolveResult]
 
-    val iterator = candidates.iterator
-    while (iterator.hasNext) {
-      val c = iterator.next()
-
-      if (withExtensions) {
-        //no point in filtering candidates by type if they are potentially holding
-        //extensions, that we are looking for
-        filteredCandidates += c
-      } else filteredCandidates ++= checkCompatible(c, withLocalTypeInference, checkFast = true)
+    if (withExtensions) {
+      //no point in filtering candidates by type if they are potentially holding
+      //extensions, that we are looking for
+      filteredCandidates ++= candidates
+    } else if (ParallelImplicitChecks.shouldRunInParallel(candidates.size)) {
+      //candidates are independent until the most specific one is chosen below
+      filteredCandidates ++= ParallelImplicitChecks.map(candidates.toSeq) {
+        checkCompatible(_, withLocalTypeInference, checkFast = true)
+      }.flatten
+    } else {
+      val iterator = candidates.iterator
+      while (iterator.hasNext) {
+        filteredCandidates ++= checkCompatible(iterator.next(), withLocalTypeInference, checkFast = true)
+      }
     }
 
     var results = Set.empty[ScalaResolveResult]
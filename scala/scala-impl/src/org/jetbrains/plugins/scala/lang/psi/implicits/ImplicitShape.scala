@@ -0,0 +1,93 @@
+package org.jetbrains.plugins.scala.lang.psi.implicits
+
+import com.intellij.psi.{PsiClass, PsiElement, PsiTypeParameter}
+import org.jetbrains.plugins.scala.caches.ModTracker
+import org.jetbrains.plugins.scala.extensions.PsiClassExt
+import org.jetbrains.plugins.scala.lang.psi.api.base.types.ScTypeElement
+import org.jetbrains.plugins.scala.lang.psi.api.statements.params.{ScParameter, ScTypeParam}
+import org.jetbrains.plugins.scala.lang.psi.api.statements.{ScFunction, ScMacroDefinition, ScValueOrVariable}
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.ScNamedElement
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScObject
+import org.jetbrains.plugins.scala.lang.psi.types.api.ParameterizedType
+import org.jetbrains.plugins.scala.lang.psi.types.api.designator.ScDesignatorType
+import org.jetbrains.plugins.scala.lang.psi.types.{ScType, ScTypeExt}
+import org.jetbrains.plugins.scala.macroAnnotations.CachedInUserData
+import org.jetbrains.plugins.scala.util.CommonQualifiedNames.JavaObjectFqn
+import org.jetbrains.plugins.scala.util.ScEquivalenceUtil.areClassesEquivalent
+
+/**
+  * A rough shape of a type: the class of its head type constructor, the number of type arguments,
+  * and the classes of the arguments, which are plain class types.
+  *
+  * The shape of an implicit candidate is taken from its declared type, without any type inference,
+  * so [[ImplicitCollector]] can skip the candidates, which can't conform to the searched type anyway.
+  */
+private final case class ImplicitShape(clazz: PsiClass, arguments: Seq[Option[PsiClass]]) {
+
+  def mayConformTo(expected: ImplicitShape): Boolean =
+    if (expected.clazz.qualifiedName == JavaObjectFqn) true
+    else if (!clazz.sameOrInheritor(expected.clazz)) false
+    // the arguments of a base class are not known without a substitution
+    else if (!areClassesEquivalent(clazz, expected.clazz)) true
+    // raw types
+    else if (arguments.length != expected.arguments.length) true
+    else {
+      val typeParameters = expected.clazz.getTypeParameters
+      typeParameters.length != arguments.length ||
+        typeParameters.indices.forall { i =>
+          !isInvariant(typeParameters(i)) || sameOrUnknown(arguments(i), expected.arguments(i))
+        }
+    }
+
+  private def isInvariant(parameter: PsiTypeParameter): Boolean = parameter match {
+    case scalaParameter: ScTypeParam => !scalaParameter.isCovariant && !scalaParameter.isContravariant
+    case _                           => true
+  }
+
+  private def sameOrUnknown(left: Option[PsiClass], right: Option[PsiClass]): Boolean = (left, right) match {
+    case (Some(l), Some(r)) => areClassesEquivalent(l, r)
+    case _                  => true
+  }
+}
+
+private object ImplicitShape {
+
+  def of(tpe: ScType): Option[ImplicitShape] = tpe.removeAliasDefinitions() match {
+    case ScDesignatorType(clazz: PsiClass)                               => Some(ImplicitShape(clazz, Seq.empty))
+    case ParameterizedType(ScDesignatorType(clazz: PsiClass), arguments) => Some(ImplicitShape(clazz, arguments.map(argumentClass)))
+    case _                                                               => None
+  }
+
+  /**
+    * The shape of the declared type of an implicit candidate.
+    * None for the candidates without an explicit type, macros, conversions and non-class types.
+    */
+  def ofCandidate(element: PsiElement): Option[ImplicitShape] = element match {
+    case obj: ScObject          => Some(ImplicitShape(obj, Seq.empty))
+    case _: ScMacroDefinition   => None
+    case function: ScFunction if function.effectiveParameterClauses.forall(_.isImplicitOrUsing) =>
+      ofTypeElement(function, function.returnTypeElement)
+    case _: ScFunction          => None
+    case parameter: ScParameter => ofTypeElement(parameter, parameter.typeElement)
+    case named: ScNamedElement  =>
+      named.nameContext match {
+        case valueOrVariable: ScValueOrVariable if valueOrVariable.declaredElements.size == 1 =>
+          ofTypeElement(valueOrVariable, valueOrVariable.typeElement)
+        case _ => None
+      }
+    case _ => None
+  }
+
+  private def ofTypeElement(owner: PsiElement, typeElement: Option[ScTypeElement]): Option[ImplicitShape] = {
+
+    @CachedInUserData(owner, ModTracker.libraryAware(owner))
+    def cached: Option[ImplicitShape] = typeElement.flatMap(_.`type`().toOption).flatMap(of)
+
+    cached
+  }
+
+  private def argumentClass(argument: ScType): Option[PsiClass] = argument.removeAliasDefinitions() match {
+    case ScDesignatorType(clazz: PsiClass) => Some(clazz)
+    case _                                 => None
+  }
+}
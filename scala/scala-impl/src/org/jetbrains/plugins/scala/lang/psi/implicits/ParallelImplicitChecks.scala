@@ -0,0 +1,84 @@
+package org.jetbrains.plugins.scala.lang.psi.implicits
+
+import com.intellij.concurrency.JobLauncher
+import com.intellij.openapi.progress.ProgressManager
+import com.intellij.openapi.util.registry.{Registry, RegistryValue}
+import org.jetbrains.plugins.scala.caches.RecursionManager
+import org.jetbrains.plugins.scala.util.UnloadableThreadLocal
+
+import java.util
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Checks the candidates of an implicit search concurrently (see [[ImplicitCollector.collectCompatibleCandidates]]).
+ *
+ * The candidates are checked on the fork-join pool of [[JobLauncher]], in read actions,
+ * and are cancelled together with the progress indicator of the calling thread.
+ * Every worker starts with the [[ImplicitsRecursionGuard]] state of the caller, so divergent searches are still detected,
+ * and with a copy of the [[RecursionManager]] stack of the caller, so a calculation, which is in progress
+ * on the calling thread, is cut off as a recursion in a worker, as it would be in a sequential check.
+ * Such recursion is recorded on the calling thread afterwards, so that the results depending on it aren't cached.
+ *
+ * Only the outermost search is parallel, the nested ones run on the thread of their worker.
+ * The results are returned in the order of the candidates, so the outcome doesn't depend on the scheduling.
+ *
+ * Opt-in with the `scala.implicits.parallel.checking` registry key.
+ */
+private[implicits] object ParallelImplicitChecks {
+  val RegistryKey = "scala.implicits.parallel.checking"
+
+  val MinCandidates = 8
+
+  private lazy val enabled: RegistryValue = Registry.get(RegistryKey)
+
+  private val inWorker: UnloadableThreadLocal[Boolean] = UnloadableThreadLocal(false)
+
+  private val ParallelRuns = new AtomicLong(0)
+
+  /** The number of the searches, whose candidates were checked concurrently */
+  def parallelRuns: Long = ParallelRuns.get
+
+  def isEnabled: Boolean = enabled.asBoolean()
+
+  def shouldRunInParallel(candidatesCount: Int): Boolean =
+    candidatesCount >= MinCandidates && isEnabled && !inWorker.value
+
+  def map[A, B](items: Seq[A])(f: A => B): Seq[B] = {
+    ParallelRuns.incrementAndGet()
+
+    val results = new Array[Any](items.size)
+    val indices = new util.ArrayList[Integer](items.size)
+    items.indices.foreach(indices.add(_))
+
+    val recursionMap = ImplicitsRecursionGuard.currentMap
+    val stack = RecursionManager.stackSnapshot()
+    val indicator = ProgressManager.getInstance.getProgressIndicator
+
+    val completed = JobLauncher.getInstance.invokeConcurrentlyUnderProgress(indices, indicator, true, false, (index: Integer) => {
+      val savedMap = ImplicitsRecursionGuard.currentMap
+      val savedInWorker = inWorker.value
+      try {
+        ImplicitsRecursionGuard.setRecursionMap(recursionMap)
+        inWorker.value = true
+        results(index) = RecursionManager.runWithStack(stack)(f(items(index)))
+      } finally {
+        ImplicitsRecursionGuard.setRecursionMap(savedMap)
+        inWorker.value = savedInWorker
+      }
+      true
+    })
+
+    RecursionManager.mergeRecursion(stack)
+
+    if (!completed) {
+      ProgressManager.checkCanceled()
+      //some of the items weren't processed, e.g. a worker failed to start a read action
+      results.indices.foreach { index =>
+        if (results(index) == null)
+          results(index) = f(items(index))
+      }
+    }
+
+    results.toSeq.asInstanceOf[Seq[B]]
+  }
+}
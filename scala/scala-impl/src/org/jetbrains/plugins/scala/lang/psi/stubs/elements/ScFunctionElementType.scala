@@ -24,37 +24,45 @@ abstract class ScFunctionElementType[Fun <: ScFunction](debugName: String,
   extends ScStubElementType[ScFunctionStub[Fun], Fun](debugName, language) {
 
   override def serialize(stub: ScFunctionStub[Fun], dataStream: StubOutputStream): Unit = {
+    dataStream.writeFlags(
+      stub.isDeclaration,
+      stub.hasAssign,
+      stub.isLocal,
+      stub.isTopLevel,
+      stub.isExtensionMethod,
+      stub.typeText.isDefined,
+      stub.bodyText.isDefined,
+      stub.implicitConversionParameterClass.isDefined,
+      stub.topLevelQualifier.isDefined
+    )
     dataStream.writeName(stub.getName)
-    dataStream.writeBoolean(stub.isDeclaration)
     dataStream.writeNames(stub.annotations)
-    dataStream.writeOptionName(stub.typeText)
-    dataStream.writeOptionName(stub.bodyText)
-    dataStream.writeBoolean(stub.hasAssign)
-    dataStream.writeOptionName(stub.implicitConversionParameterClass)
-    dataStream.writeBoolean(stub.isLocal)
+    dataStream.writeNameIfDefined(stub.typeText)
+    dataStream.writeNameIfDefined(stub.bodyText)
+    dataStream.writeNameIfDefined(stub.implicitConversionParameterClass)
     dataStream.writeNames(stub.implicitClassNames)
-    dataStream.writeBoolean(stub.isTopLevel)
-    dataStream.writeOptionName(stub.topLevelQualifier)
-    dataStream.writeBoolean(stub.isExtensionMethod)
+    dataStream.writeNameIfDefined(stub.topLevelQualifier)
   }
 
-  override def deserialize(dataStream: StubInputStream, parent: StubElement[_ <: PsiElement]) =
+  override def deserialize(dataStream: StubInputStream, parent: StubElement[_ <: PsiElement]) = {
+    val flags = dataStream.readFlags
     new ScFunctionStubImpl(
       parent,
       this,
       name                             = dataStream.readNameString,
-      isDeclaration                    = dataStream.readBoolean,
+      isDeclaration                    = flags(0),
       annotations                      = dataStream.readNames,
-      typeText                         = dataStream.readOptionName,
-      bodyText                         = dataStream.readOptionName,
-      hasAssign                        = dataStream.readBoolean,
-      implicitConversionParameterClass = dataStream.readOptionName,
-      isLocal                          = dataStream.readBoolean,
+      typeText                         = dataStream.readNameIf(flags(5)),
+      bodyText                         = dataStream.readNameIf(flags(6)),
+      hasAssign                        = flags(1),
+      implicitConversionParameterClass = dataStream.readNameIf(flags(7)),
+      isLocal                          = flags(2),
       implicitClassNames               = dataStream.readNames,
-      isTopLevel                       = dataStream.readBoolean,
-      topLevelQualifier                = dataStream.readOptionName,
-      isExtensionMethod                = dataStream.readBoolean
+      isTopLevel                       = flags(3),
+      topLevelQualifier                = dataStream.readNameIf(flags(8)),
+      isExtensionMethod                = flags(4)
     )
+  }
 
   override def createStubImpl(function: Fun,
                               parentStub: StubElement[_ <: PsiElement]): ScFunctionStub[Fun] = {
@@ -20,31 +20,38 @@ sealed abstract class ScPropertyElementType[P <: ScValueOrVariable](debugName: S
 
   override final def serialize(stub: ScPropertyStub[P],
                                dataStream: StubOutputStream): Unit = {
-    dataStream.writeBoolean(stub.isDeclaration)
-    dataStream.writeBoolean(stub.isImplicit)
+    dataStream.writeFlags(
+      stub.isDeclaration,
+      stub.isImplicit,
+      stub.isLocal,
+      stub.isTopLevel,
+      stub.typeText.isDefined,
+      stub.bodyText.isDefined,
+      stub.topLevelQualifier.isDefined
+    )
     dataStream.writeNames(stub.names)
-    dataStream.writeOptionName(stub.typeText)
-    dataStream.writeOptionName(stub.bodyText)
-    dataStream.writeBoolean(stub.isLocal)
+    dataStream.writeNameIfDefined(stub.typeText)
+    dataStream.writeNameIfDefined(stub.bodyText)
     dataStream.writeNames(stub.classNames)
-    dataStream.writeBoolean(stub.isTopLevel)
-    dataStream.writeOptionName(stub.topLevelQualifier)
+    dataStream.writeNameIfDefined(stub.topLevelQualifier)
   }
 
-  override final def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]) =
+  override final def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]) = {
+    val flags = dataStream.readFlags
     new ScPropertyStubImpl(
       parentStub,
       this,
-      isDeclaration     = dataStream.readBoolean,
-      isImplicit        = dataStream.readBoolean,
+      isDeclaration     = flags(0),
+      isImplicit        = flags(1),
       names             = dataStream.readNames,
-      typeText          = dataStream.readOptionName,
-      bodyText          = dataStream.readOptionName,
-      isLocal           = dataStream.readBoolean,
+      typeText          = dataStream.readNameIf(flags(4)),
+      bodyText          = dataStream.readNameIf(flags(5)),
+      isLocal           = flags(2),
       classNames        = dataStream.readNames,
-      isTopLevel        = dataStream.readBoolean,
-      topLevelQualifier = dataStream.readOptionName
+      isTopLevel        = flags(3),
+      topLevelQualifier = dataStream.readNameIf(flags(6))
     )
+  }
 
   override protected final def createStubImpl(property: P, parentStub: StubElement[_ <: PsiElement]) =
     new ScPropertyStubImpl(
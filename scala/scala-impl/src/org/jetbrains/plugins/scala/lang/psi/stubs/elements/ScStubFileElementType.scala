@@ -34,6 +34,9 @@ class ScStubFileElementType(override val getExternalId: String,
 
   import api.ScalaFile
 
+  /** The root of a stub tree built without parsing, see [[compiled.ScalaSigStubBuilder]]. */
+  final def createFileStub(): PsiFileStubImpl[ScalaFile] = new ScFileStubImpl(null)
+
   protected class ScFileStubBuilderImpl extends DefaultStubBuilder {
 
     override def buildStubTree(file: PsiFile) =
@@ -25,25 +25,31 @@ abstract class ScTemplateDefinitionElementType[TypeDef <: ScTemplateDefinition](
   extends ScStubElementType.Impl[ScTemplateDefinitionStub[TypeDef], TypeDef](debugName, language) {
 
   override final def serialize(stub: ScTemplateDefinitionStub[TypeDef], dataStream: StubOutputStream): Unit = {
+    dataStream.writeFlags(
+      stub.isPackageObject,
+      stub.isScriptFileClass,
+      stub.isDeprecated,
+      stub.isLocal,
+      stub.isVisibleInJava,
+      stub.isImplicitObject,
+      stub.isTopLevel,
+      stub.additionalJavaName.isDefined,
+      stub.implicitConversionParameterClass.isDefined,
+      stub.topLevelQualifier.isDefined
+    )
     dataStream.writeName(stub.getName)
     dataStream.writeName(stub.getQualifiedName)
     dataStream.writeName(stub.getSourceFileName)
     dataStream.writeName(stub.javaName)
     dataStream.writeName(stub.javaQualifiedName)
-    dataStream.writeOptionName(stub.additionalJavaName)
-    dataStream.writeBoolean(stub.isPackageObject)
-    dataStream.writeBoolean(stub.isScriptFileClass)
-    dataStream.writeBoolean(stub.isDeprecated)
-    dataStream.writeBoolean(stub.isLocal)
-    dataStream.writeBoolean(stub.isVisibleInJava)
-    dataStream.writeBoolean(stub.isImplicitObject)
-    dataStream.writeOptionName(stub.implicitConversionParameterClass)
+    dataStream.writeNameIfDefined(stub.additionalJavaName)
+    dataStream.writeNameIfDefined(stub.implicitConversionParameterClass)
     dataStream.writeNames(stub.implicitClassNames)
-    dataStream.writeBoolean(stub.isTopLevel)
-    dataStream.writeOptionName(stub.topLevelQualifier)
+    dataStream.writeNameIfDefined(stub.topLevelQualifier)
   }
 
-  override final def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]) =
+  override final def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]) = {
+    val flags = dataStream.readFlags
     new ScTemplateDefinitionStubImpl(
       parentStub,
       this,
@@ -52,18 +58,19 @@ abstract class ScTemplateDefinitionElementType[TypeDef <: ScTemplateDefinition](
       getSourceFileName                = dataStream.readNameString,
       javaName                         = dataStream.readNameString,
       javaQualifiedName                = dataStream.readNameString,
-      additionalJavaName               = dataStream.readOptionName,
-      isPackageObject                  = dataStream.readBoolean,
-      isScriptFileClass                = dataStream.readBoolean,
-      isDeprecated                     = dataStream.readBoolean,
-      isLocal                          = dataStream.readBoolean,
-      isVisibleInJava                  = dataStream.readBoolean,
-      isImplicitObject                 = dataStream.readBoolean,
-      implicitConversionParameterClass = dataStream.readOptionName,
+      additionalJavaName               = dataStream.readNameIf(flags(7)),
+      isPackageObject                  = flags(0),
+      isScriptFileClass                = flags(1),
+      isDeprecated                     = flags(2),
+      isLocal                          = flags(3),
+      isVisibleInJava                  = flags(4),
+      isImplicitObject                 = flags(5),
+      implicitConversionParameterClass = dataStream.readNameIf(flags(8)),
       implicitClassNames               = dataStream.readNames,
-      isTopLevel                       = dataStream.readBoolean,
-      topLevelQualifier                = dataStream.readOptionName
+      isTopLevel                       = flags(6),
+      topLevelQualifier                = dataStream.readNameIf(flags(9))
     )
+  }
 
   override final def createStubImpl(definition: TypeDef,
                                     parent: StubElement[_ <: PsiElement]): ScTemplateDefinitionStub[TypeDef] = {
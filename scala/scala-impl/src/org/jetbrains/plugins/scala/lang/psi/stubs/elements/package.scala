@@ -5,6 +5,7 @@ package stubs
 
 import com.intellij.psi.PsiElement
 import com.intellij.psi.stubs._
+import com.intellij.util.io.DataInputOutputUtil
 import com.intellij.util.{ArrayFactory, ArrayUtil}
 import org.jetbrains.plugins.scala.extensions.{ArrayExt, IterableExt}
 import org.jetbrains.plugins.scala.lang.refactoring.util.ScalaNamesUtil
@@ -21,11 +22,18 @@ package object elements {
     }
 
     def readNames: Array[String] = {
-      val length = dataStream.readInt
+      val length = DataInputOutputUtil.readINT(dataStream)
 
-      new Array[String](length)
+      if (length == 0) ArrayUtil.EMPTY_STRING_ARRAY
+      else new Array[String](length)
         .updateContent(_ => dataStream.readNameString())
     }
+
+    def readFlags: StubFlags = new StubFlags(DataInputOutputUtil.readINT(dataStream))
+
+    /** Reads a name written by [[StubOutputStreamExt.writeNameIfDefined]], its presence is stored in flags */
+    def readNameIf(isDefined: Boolean): Option[String] =
+      if (isDefined) Some(dataStream.readNameString) else None
   }
 
   implicit class StubOutputStreamExt(private val dataStream: StubOutputStream) extends AnyVal {
@@ -37,11 +45,35 @@ package object elements {
     }
 
     def writeNames(names: collection.Seq[String]): Unit = {
-      dataStream.writeInt(names.length)
+      DataInputOutputUtil.writeINT(dataStream, names.length)
       names.foreach {
         dataStream.writeName
       }
     }
+
+    /**
+     * Packs boolean fields of a stub into a single var-length int, instead of a byte per field.
+     * The presence of optional names is usually written here as well, see [[writeNameIfDefined]].
+     */
+    def writeFlags(flags: Boolean*): Unit = {
+      var bits = 0
+      var index = 0
+      flags.foreach { flag =>
+        if (flag) bits |= 1 << index
+        index += 1
+      }
+      DataInputOutputUtil.writeINT(dataStream, bits)
+    }
+
+    def writeNameIfDefined(maybeName: Option[String]): Unit =
+      maybeName.foreach {
+        dataStream.writeName
+      }
+  }
+
+  /** Boolean fields of a stub in the order they were passed to [[StubOutputStreamExt.writeFlags]] */
+  final class StubFlags(private val bits: Int) extends AnyVal {
+    def apply(index: Int): Boolean = (bits & (1 << index)) != 0
   }
 
   implicit class PsiElementsExt(private val elements: Iterable[PsiElement]) extends AnyVal {
@@ -18,32 +18,39 @@ import org.jetbrains.plugins.scala.lang.psi.stubs.impl.ScParameterStubImpl
 abstract class ScParamElementType[P <: ScParameter](debugName: String) extends ScStubElementType[ScParameterStub, ScParameter](debugName) {
 
   override def serialize(stub: ScParameterStub, dataStream: StubOutputStream): Unit = {
+    dataStream.writeFlags(
+      stub.isStable,
+      stub.isDefaultParameter,
+      stub.isRepeated,
+      stub.isVal,
+      stub.isVar,
+      stub.isCallByNameParameter,
+      stub.typeText.isDefined,
+      stub.bodyText.isDefined,
+      stub.deprecatedName.isDefined
+    )
     dataStream.writeName(stub.getName)
-    dataStream.writeOptionName(stub.typeText)
-    dataStream.writeBoolean(stub.isStable)
-    dataStream.writeBoolean(stub.isDefaultParameter)
-    dataStream.writeBoolean(stub.isRepeated)
-    dataStream.writeBoolean(stub.isVal)
-    dataStream.writeBoolean(stub.isVar)
-    dataStream.writeBoolean(stub.isCallByNameParameter)
-    dataStream.writeOptionName(stub.bodyText)
-    dataStream.writeOptionName(stub.deprecatedName)
+    dataStream.writeNameIfDefined(stub.typeText)
+    dataStream.writeNameIfDefined(stub.bodyText)
+    dataStream.writeNameIfDefined(stub.deprecatedName)
     dataStream.writeNames(stub.implicitClassNames)
   }
 
-  override def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]): ScParameterStub =
+  override def deserialize(dataStream: StubInputStream, parentStub: StubElement[_ <: PsiElement]): ScParameterStub = {
+    val flags = dataStream.readFlags
     new ScParameterStubImpl(parentStub, this,
       name = dataStream.readNameString,
-      typeText = dataStream.readOptionName,
-      isStable = dataStream.readBoolean,
-      isDefaultParameter = dataStream.readBoolean,
-      isRepeated = dataStream.readBoolean,
-      isVal = dataStream.readBoolean,
-      isVar = dataStream.readBoolean,
-      isCallByNameParameter = dataStream.readBoolean,
-      bodyText = dataStream.readOptionName,
-      deprecatedName = dataStream.readOptionName,
+      typeText = dataStream.readNameIf(flags(6)),
+      isStable = flags(0),
+      isDefaultParameter = flags(1),
+      isRepeated = flags(2),
+      isVal = flags(3),
+      isVar = flags(4),
+      isCallByNameParameter = flags(5),
+      bodyText = dataStream.readNameIf(flags(7)),
+      deprecatedName = dataStream.readNameIf(flags(8)),
       implicitClassNames = dataStream.readNames)
+  }
 
   override def createStubImpl(parameter: ScParameter, parentStub: StubElement[_ <: PsiElement]): ScParameterStub = {
     val typeText = parameter.typeElement.map {
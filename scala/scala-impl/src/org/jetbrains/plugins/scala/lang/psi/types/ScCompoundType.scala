@@ -134,7 +134,10 @@ object ScCompoundType {
         case (acc, otherTpe) => (acc._1 :+ otherTpe, acc._2, acc._3)
       }
 
-    new ScCompoundType(comps.distinct, sigs, types)
+    val compound = new ScCompoundType(comps.distinct, sigs, types)
+    // signatures are equal regardless of their declarations, so refinements with different members would be mixed up
+    if (sigs.isEmpty && types.isEmpty) ScTypeInterner.intern(compound)
+    else compound
   }
 
   def fromPsi(
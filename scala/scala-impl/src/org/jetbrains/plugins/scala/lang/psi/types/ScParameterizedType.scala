@@ -176,6 +176,7 @@ final class ScParameterizedType private (override val designator: ScType, overri
   def canEqual(other: Any): Boolean = other.isInstanceOf[ScParameterizedType]
 
   override def equals(other: Any): Boolean = other match {
+    case that: ScParameterizedType if that eq this => true
     case that: ScParameterizedType =>
       (that canEqual this) &&
         designator == that.designator &&
@@ -188,7 +189,7 @@ object ScParameterizedType {
 
   def apply(designator: ScType, typeArgs: Seq[ScType]): ValueType = {
 
-    def simple = new ScParameterizedType(designator, typeArgs)
+    def simple = interned(new ScParameterizedType(designator, typeArgs))
     designator match {
       // Any and Nothing can take type parameter but will always produce themselves ignoring the arguments
       case anyOrNothing@StdType(StdType.Name.Any | StdType.Name.Nothing, _) => anyOrNothing
@@ -207,7 +208,7 @@ object ScParameterizedType {
 
       // Simplify application of ScTypePolymorphicType encoding of type lambdas
       case ScTypePolymorphicType(internal: ScParameterizedType, typeParameters) =>
-        new ScParameterizedType(internal.designator, internal.typeArguments.map {
+        interned(new ScParameterizedType(internal.designator, internal.typeArguments.map {
           case pType: TypeParameterType =>
             typeParameters
               .zip(typeArgs)
@@ -216,8 +217,13 @@ object ScParameterizedType {
               .getOrElse(pType)
           case aType =>
             aType
-        })
+        }))
       case _ => simple
     }
   }
+
+  // the project context of a designator may require a walk up the tree, so it's not looked up when nothing is interned
+  private def interned(tpe: ScParameterizedType): ScParameterizedType =
+    if (ScTypeInterner.isEnabled) ScTypeInterner.intern(tpe)(tpe.designator.projectContext)
+    else tpe
 }
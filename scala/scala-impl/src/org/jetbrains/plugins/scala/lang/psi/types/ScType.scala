@@ -33,6 +33,16 @@ trait ScType extends project.ProjectContextOwner {
     unpacked
   }
 
+  private var freeTypeParamsMaskInner: Long = 0L
+
+  /** see [[recursiveUpdate.FreeTypeParams]] */
+  private[types] final def freeTypeParamsMask: Long = {
+    if (freeTypeParamsMaskInner == 0L) {
+      freeTypeParamsMaskInner = recursiveUpdate.FreeTypeParams.mask(this)
+    }
+    freeTypeParamsMaskInner
+  }
+
   protected def calculateAliasType: Option[AliasType] = None
 
   // TODO: we must not override toString which does such a complex stuff (resolve, tree traversal etc...)
@@ -0,0 +1,52 @@
+package org.jetbrains.plugins.scala.lang.psi.types
+
+import com.intellij.openapi.roots.ProjectRootManager
+import com.intellij.openapi.util.registry.{Registry, RegistryValue}
+import com.intellij.util.containers.ContainerUtil
+import org.jetbrains.plugins.scala.macroAnnotations.CachedInUserData
+import org.jetbrains.plugins.scala.project.ProjectContext
+
+import java.util.concurrent.ConcurrentMap
+
+/**
+ * Hash-consing of the types which are created over and over during substitution and conformance checks
+ * (see [[ScParameterizedType]], [[api.designator.ScDesignatorType]] and [[ScCompoundType]]).
+ *
+ * Structurally equal types share one instance (with its cached hash code, alias type etc.),
+ * so most of the equality checks and cache lookups become reference comparisons.
+ * Both keys and values are weak, the table doesn't keep the types or their PSI alive.
+ *
+ * Opt-in with the `scala.types.interning` registry key.
+ */
+final class ScTypeInterner private {
+  private val table: ConcurrentMap[ScType, ScType] = ContainerUtil.createConcurrentWeakKeyWeakValueMap()
+
+  def intern[T <: ScType](tpe: T): T = table.putIfAbsent(tpe, tpe) match {
+    case null     => tpe
+    case existing => existing.asInstanceOf[T]
+  }
+
+  def size: Int = table.size
+
+  def clear(): Unit = table.clear()
+}
+
+object ScTypeInterner {
+  val RegistryKey = "scala.types.interning"
+
+  private lazy val enabled: RegistryValue = Registry.get(RegistryKey)
+
+  def isEnabled: Boolean = enabled.asBoolean()
+
+  def intern[T <: ScType](tpe: T)(implicit projectContext: ProjectContext): T =
+    if (isEnabled) instance.intern(tpe)
+    else tpe
+
+  def instance(implicit projectContext: ProjectContext): ScTypeInterner = {
+
+    @CachedInUserData(projectContext.project, ProjectRootManager.getInstance(projectContext))
+    def cached: ScTypeInterner = new ScTypeInterner
+
+    cached
+  }
+}
@@ -186,6 +186,10 @@ class TermSignature(
     thisKind == otherKind || (thisKind == ScalaVal && otherKind == Parameterless)
   }
 
+  /** The same member as seen with another substitutor, see [[impl.toplevel.typedef.MixinNodes.Layer]] */
+  def withSubstitutor(subst: ScSubstitutor): TermSignature =
+    new TermSignature(name, typesEval, tParams, subst, namedElement, hasRepeatedParam)
+
   override def toString = s"Signature($namedElement, $substitutor)"
 
   override def isAbstract: Boolean = namedElement match {
@@ -355,6 +359,9 @@ final class PhysicalMethodSignature(
   PhysicalMethodSignature.hasRepeatedParam(method)
 ) {
 
+  override def withSubstitutor(subst: ScSubstitutor): TermSignature =
+    new PhysicalMethodSignature(method, subst, extensionTypeParameters)
+
   override def isJava: Boolean            = method.getLanguage == JavaLanguage.INSTANCE
   override def isExtensionMethod: Boolean = extensionTypeParameters.nonEmpty
 }
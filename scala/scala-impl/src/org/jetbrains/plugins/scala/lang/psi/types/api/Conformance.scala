@@ -2,13 +2,10 @@ package org.jetbrains.plugins.scala.lang.psi
 package types
 package api
 
-import java.util.concurrent.ConcurrentHashMap
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.util.Computable
 import com.intellij.psi.PsiClass
 import org.jetbrains.plugins.scala.caches.RecursionManager
-import org.jetbrains.plugins.scala.caches.stats.CacheCapabilities
-import org.jetbrains.plugins.scala.caches.stats.CacheTracker
 import org.jetbrains.plugins.scala.caches.stats.Tracer
 import org.jetbrains.plugins.scala.extensions.NullSafe
 import org.jetbrains.plugins.scala.lang.psi.types.api.Conformance._
@@ -25,10 +22,7 @@ trait Conformance {
 
   private val guard = RecursionManager.RecursionGuard[Key, ConstraintsResult](s"${typeSystem.name}.conformance.guard")
 
-  private val cache =
-    CacheTracker.alwaysTrack(conformsInnerCache, conformsInnerCache) {
-      new ConcurrentHashMap[Key, ConstraintsResult]()
-    }
+  private lazy val cache = new TypeRelationCache[Key](conformsInnerCache)(typeSystem.projectContext)
 
   /**
     * Checks, whether the following assignment is correct:
@@ -63,7 +57,7 @@ trait Conformance {
           val result = NullSafe(conformsComputable(key, visited).compute())
           result.foreach(result =>
               if (stackStamp.mayCacheNow())
-                cache.put(key, result)
+                cache.put(key, key.left, key.right, result)
           )
           result
         }
@@ -77,9 +71,4 @@ trait Conformance {
 
 object Conformance {
   val conformsInnerCache: String = "Conformance.conformsInner"
-  implicit def ConformanceCacheCapabilities[T]: CacheCapabilities[ConcurrentHashMap[T, ConstraintsResult]] =
-    new CacheCapabilities[ConcurrentHashMap[T, ConstraintsResult]] {
-      override def cachedEntitiesCount(cache: CacheType): Int = cache.size()
-      override def clear(cache: CacheType): Unit = cache.clear()
-    }
 }
\ No newline at end of file
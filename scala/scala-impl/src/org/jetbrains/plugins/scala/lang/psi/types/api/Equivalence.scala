@@ -2,13 +2,9 @@ package org.jetbrains.plugins.scala.lang.psi
 package types
 package api
 
-import java.util.concurrent.ConcurrentHashMap
-
 import com.intellij.openapi.progress.ProgressManager
 import com.intellij.openapi.util.Computable
 import org.jetbrains.plugins.scala.caches.RecursionManager
-import org.jetbrains.plugins.scala.caches.stats.CacheCapabilities
-import org.jetbrains.plugins.scala.caches.stats.CacheTracker
 import org.jetbrains.plugins.scala.caches.stats.Tracer
 import org.jetbrains.plugins.scala.extensions.NullSafe
 import org.jetbrains.plugins.scala.lang.psi.types.api.Equivalence._
@@ -26,11 +22,7 @@ trait Equivalence {
 
   private val guard = RecursionManager.RecursionGuard[Key, ConstraintsResult](s"${typeSystem.name}.equivalence.guard")
 
-  private val cache = {
-    val cache = new ConcurrentHashMap[Key, ConstraintsResult]()
-    CacheTracker.alwaysTrack(equivInnerTraceId, equivInnerTraceId)(this: Equivalence)
-    cache
-  }
+  private lazy val cache = new TypeRelationCache[Key](equivInnerTraceId)(typeSystem.projectContext)
 
   private val eval = new DynamicVariable(false)
 
@@ -79,7 +71,7 @@ trait Equivalence {
 
         result.foreach(result =>
           if (!nowEval && stackStamp.mayCacheNow())
-            eval.withValue(true) { cache.put(key, result) }
+            eval.withValue(true) { cache.put(key, key.left, key.right, result) }
         )
         result
       }.getOrElse(NullSafe.empty)
@@ -89,10 +81,4 @@ trait Equivalence {
 
 object Equivalence {
   val equivInnerTraceId: String = "Equivalence.equivInner"
-
-  implicit val EquivInnerCacheCapabilities: CacheCapabilities[Equivalence] =
-    new CacheCapabilities[Equivalence] {
-      override def cachedEntitiesCount(cache: CacheType): Int = cache.cache.size()
-      override def clear(cache: CacheType): Unit = cache.clearCache()
-    }
 }
\ No newline at end of file
@@ -0,0 +1,99 @@
+package org.jetbrains.plugins.scala.lang.psi
+package types
+package api
+
+import com.intellij.openapi.roots.ProjectRootManager
+import com.intellij.openapi.util.ModificationTracker
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.psi.{PsiElement, PsiFile}
+import org.jetbrains.plugins.scala.caches.{BlockModificationTracker, ModTracker, StampedCache}
+import org.jetbrains.plugins.scala.caches.stats.CacheTracker
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
+import org.jetbrains.plugins.scala.lang.psi.types.api.TypeRelationCache._
+import org.jetbrains.plugins.scala.lang.psi.types.api.designator.DesignatorOwner
+import org.jetbrains.plugins.scala.lang.psi.types.nonvalue.NonValueType
+import org.jetbrains.plugins.scala.project.ProjectContext
+
+/**
+  * Cache of [[Conformance]] and [[Equivalence]] results.
+  *
+  * A result depends on the declarations of the elements the types refer to, so it's valid:
+  *  - for library elements, until the project roots are changed,
+  *  - for top-level declarations of the project, until a change outside of the expressions with a stable type
+  *    (see [[BlockModificationTracker]]),
+  *  - for anything else, until any change of Scala PSI.
+  *
+  * Typing inside a method body doesn't throw away the results for the rest of the project.
+  */
+private[api] final class TypeRelationCache[K](id: String)(implicit projectContext: ProjectContext) {
+
+  private val cache =
+    CacheTracker.alwaysTrack(id, id) {
+      new StampedCache[K, ConstraintsResult](Registry.intValue(SizeRegistryKey, DefaultSize))
+    }
+
+  private val rootManager = ProjectRootManager.getInstance(projectContext)
+
+  private val topLevel = ScalaPsiManager.instance.TopLevelModificationTracker
+
+  private val trackers = Array[ModificationTracker](
+    rootManager,
+    () => rootManager.getModificationCount + topLevel.getModificationCount,
+    () => rootManager.getModificationCount + topLevel.getModificationCount + ModTracker.anyScalaPsiChange.getModificationCount
+  )
+
+  def get(key: K): ConstraintsResult = cache.get(key)
+
+  def put(key: K, left: ScType, right: ScType, result: ConstraintsResult): Unit =
+    cache.put(key, result, trackers(dependency(right, dependency(left, Library))))
+
+  def clear(): Unit = cache.clear()
+
+  private def dependency(tpe: ScType, atLeast: Int): Int = {
+    var result = atLeast
+
+    if (result < Local) tpe.subtypeExists { t =>
+      result = result.max(typeDependency(t))
+      result == Local
+    }
+    result
+  }
+
+  private def typeDependency(tpe: ScType): Int = tpe match {
+    case designator: DesignatorOwner     => elementDependency(designator.element)
+    case parameter: TypeParameterType    => elementDependency(parameter.psiTypeParameter)
+    case undefined: UndefinedType        => elementDependency(undefined.typeParameter.psiTypeParameter)
+    case abstractType: ScAbstractType    => elementDependency(abstractType.typeParameter.psiTypeParameter)
+    // signatures and method types refer to the parameters
+    case compound: ScCompoundType if compound.signatureMap.nonEmpty || compound.typesMap.nonEmpty => Local
+    case _: NonValueType                 => Local
+    case _                               => Library
+  }
+
+  private def elementDependency(element: PsiElement): Int =
+    if (element == null || !element.isValid) Local
+    else ModTracker.libraryAware(element) match {
+      case `rootManager` => Library
+      case _ =>
+        element.getContainingFile match {
+          case file: ScalaFile if isPhysical(file) && BlockModificationTracker.contextWithStableType(element).isEmpty => TopLevel
+          case _: ScalaFile                                                                                        => Local
+          // changes of other files increment the top-level tracker
+          case file if isPhysical(file)                                                                            => TopLevel
+          case _                                                                                                   => Local
+        }
+    }
+
+  private def isPhysical(file: PsiFile): Boolean =
+    file != null && file.isPhysical && file.getContext == null
+}
+
+private object TypeRelationCache {
+  private val SizeRegistryKey = "scala.type.relation.cache.size"
+  private val DefaultSize = 20000
+
+  private val Library  = 0
+  private val TopLevel = 1
+  private val Local    = 2
+}
@@ -102,8 +102,16 @@ final case class ScDesignatorType(override val element: PsiNamedElement) extends
 
 object ScDesignatorType {
 
+  // static designators are not interned: `isStatic` is not a part of the equality
+  def apply(element: PsiNamedElement): ScDesignatorType = {
+    val designator = new ScDesignatorType(element)
+    // the project is found by a walk up the tree, so it's not looked up when nothing is interned
+    if (ScTypeInterner.isEnabled) ScTypeInterner.intern(designator)(element)
+    else designator
+  }
+
   def static(element: PsiNamedElement): ScDesignatorType = {
-    val des = ScDesignatorType(element)
+    val des = new ScDesignatorType(element)
     des.setStatic()
     des
   }
@@ -0,0 +1,35 @@
+package org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate
+
+import org.jetbrains.plugins.scala.lang.psi.api.statements.params.TypeParamIdOwner
+import org.jetbrains.plugins.scala.lang.psi.types.api.{TypeParameterType, UndefinedType}
+import org.jetbrains.plugins.scala.lang.psi.types.{ScAbstractType, ScCompoundType, ScType}
+
+/**
+ * A bitmask of the type parameters, which occur in a type, as leaves replaceable by [[TypeParamSubstitution]].
+ *
+ * Every type parameter sets one of 63 bits, chosen by its id, so an empty intersection of the masks of a type
+ * and of a substitution means that the substitution leaves the type as is.
+ * The highest bit marks a computed mask, the mask is cached in the type (see [[ScType.freeTypeParamsMask]]).
+ * Refinements with members may refer to any type parameter.
+ */
+private[types] object FreeTypeParams {
+
+  private val Computed = 1L << 63
+
+  private val All = -1L
+
+  def bit(typeParamId: Long): Long = 1L << java.lang.Long.remainderUnsigned(typeParamId, 63)
+
+  def mask(tp: ScType): Long = {
+    var result = Computed
+    tp.visitRecursively {
+      case tpt: TypeParameterType => result |= bit(tpt.typeParamId)
+      case u: UndefinedType       => result |= bit(u.typeParameter.typeParamId)
+      case a: ScAbstractType      => result |= bit(a.typeParameter.typeParamId)
+      //parameter types of signatures are updated lazily and are not visited
+      case c: ScCompoundType if c.signatureMap.nonEmpty || c.typesMap.nonEmpty => result = All
+      case _                      =>
+    }
+    result
+  }
+}
@@ -10,7 +10,6 @@ import org.jetbrains.plugins.scala.lang.psi.types.api.{Covariant, TypeParameter,
 import org.jetbrains.plugins.scala.lang.psi.types.nonvalue.Parameter
 import org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate.AfterUpdate.{ProcessSubtypes, ReplaceWith, Stop}
 
-import scala.annotation.tailrec
 import scala.collection.immutable.LongMap
 import scala.util.hashing.MurmurHash3
 
@@ -30,28 +29,52 @@ import scala.util.hashing.MurmurHash3
   * recursively traversing a type several times.
   **/
 final class ScSubstitutor private(_substitutions: Array[Update],   //Array is used for the best concatenation performance, it is effectively immutable
-                                  _fromIndex: Int = 0)
+                                  _fromIndex: Int = 0,
+                                  _parts: ScSubstitutor.Parts = null)
   extends (ScType => ScType) {
 
   import ScSubstitutor._
 
   private[recursiveUpdate] val substitutions = _substitutions
   private[recursiveUpdate] val fromIndex = _fromIndex
-  private[recursiveUpdate] def next: ScSubstitutor = new ScSubstitutor(substitutions, fromIndex + 1)
 
-  private[recursiveUpdate] lazy val hasNonLeafSubstitutions: Boolean = hasNonLeafSubstitutionsImpl
+  //suffixes and single updates of a full substitutor, shared by all of its suffixes
+  @volatile private[this] var parts: Parts = _parts
 
-  private[this] def hasNonLeafSubstitutionsImpl: Boolean = {
-    var idx = fromIndex
-    while (idx < substitutions.length) {
-      if (!substitutions(idx).isInstanceOf[LeafSubstitution])
-        return true
+  private[this] def sharedParts: Parts = {
+    var result = parts
+    if (result == null) {
+      result = new Parts(substitutions.length)
+      parts = result
+    }
+    result
+  }
 
-      idx += 1
+  //positive fromIndex is possible only for temporary substitutors during recursive update
+  private[recursiveUpdate] def suffix(index: Int): ScSubstitutor =
+    if (index == fromIndex) this
+    else {
+      val suffixes = sharedParts.suffixes
+      var result = suffixes(index)
+      if (result == null) {
+        result = new ScSubstitutor(substitutions, index, sharedParts)
+        suffixes(index) = result
+      }
+      result
     }
-    false
+
+  private[this] def single(index: Int): ScSubstitutor = {
+    val singles = sharedParts.singles
+    var result = singles(index)
+    if (result == null) {
+      result = ScSubstitutor(substitutions(index))
+      singles(index) = result
+    }
+    result
   }
 
+  private[this] lazy val lastNonLeafIndex: Int = substitutions.lastIndexWhere(!_.isInstanceOf[LeafSubstitution])
+
   //positive fromIndex is possible only for temporary substitutors during recursive update
   private def assertFullSubstitutor(): Unit = LOG.assertTrue(fromIndex == 0)
 
@@ -59,37 +82,80 @@ final class ScSubstitutor private(_substitutions: Array[Update],   //Array is us
     if (cacheSubstitutions)
       cache ++= this.allTypeParamsMap
 
-    recursiveUpdateImpl(`type`)(SubtypeUpdaterNoVariance, Set.empty)
+    val index = firstAffectingIndex(`type`)
+    if (index >= substitutions.length) `type`
+    else {
+      val visited = Visited.threadLocal
+      val previousScope = visited.enterScope()
+      try suffix(index).recursiveUpdateImpl(`type`)(SubtypeUpdaterNoVariance, visited)
+      finally visited.exitScope(previousScope)
+    }
+  }
+
+  //leading substitutions of type parameters, which don't occur in the type, leave it as is
+  private def firstAffectingIndex(`type`: ScType): Int = {
+    var index = fromIndex
+    var typeMask = 0L
+    while (index < substitutions.length) {
+      substitutions(index) match {
+        case substitution: TypeParamSubstitution =>
+          if (typeMask == 0L)
+            typeMask = `type`.freeTypeParamsMask
+
+          if ((substitution.typeParamsMask & typeMask) != 0L)
+            return index
+        case _ =>
+          return index
+      }
+      index += 1
+    }
+    index
   }
 
   //This method allows application of different `Update` functions in a single pass (see ScSubstitutor).
   //WARNING: If several updates are used, they should be applicable only for leaf types, e.g. which return themselves
   //from `updateSubtypes` method
-  @tailrec
   private[recursiveUpdate] def recursiveUpdateImpl(scType: ScType,
                                                    variance: Variance = Covariant,
                                                    isLazySubtype: Boolean = false)
                                                   (implicit subtypeUpdater: SubtypeUpdater,
-                                                   visited: Set[ScType] = Set.empty): ScType = {
-    if (fromIndex >= substitutions.length || visited(scType)) scType
-    else {
-      val currentUpdate = substitutions(fromIndex)
-
-      currentUpdate(scType, variance) match {
-        case ReplaceWith(res) =>
-          next.recursiveUpdateImpl(res, variance, isLazySubtype)(subtypeUpdater, visited)
-        case Stop => scType
-        case ProcessSubtypes =>
-          val newVisited = if (isLazySubtype) visited + scType else visited
-
-          if (hasNonLeafSubstitutions) {
-            val withCurrentUpdate = subtypeUpdater.updateSubtypes(scType, variance, ScSubstitutor(currentUpdate))(newVisited)
-            next.recursiveUpdateImpl(withCurrentUpdate, variance)(subtypeUpdater, Set.empty)
-          }
-          else {
-            subtypeUpdater.updateSubtypes(scType, variance, this)(newVisited)
-          }
+                                                   visited: Visited): ScType = {
+    var result = scType
+    var isLazy = isLazySubtype
+    var index = fromIndex
+    val previousScope = visited.scope
+
+    try {
+      while (index < substitutions.length && !visited.contains(result)) {
+        val currentUpdate = substitutions(index)
+
+        currentUpdate(result, variance) match {
+          case ReplaceWith(res) =>
+            result = res
+            index += 1
+          case Stop =>
+            return result
+          case ProcessSubtypes =>
+            if (isLazy) visited.push(result)
+
+            if (lastNonLeafIndex >= index) {
+              try result = subtypeUpdater.updateSubtypes(result, variance, single(index))
+              finally if (isLazy) visited.pop()
+
+              //the rest of the updates are applied to the result from scratch
+              visited.enterScope()
+              isLazy = false
+              index += 1
+            }
+            else {
+              try return subtypeUpdater.updateSubtypes(result, variance, suffix(index))
+              finally if (isLazy) visited.pop()
+            }
+        }
       }
+      result
+    } finally {
+      visited.exitScope(previousScope)
     }
   }
 
@@ -166,6 +232,12 @@ final class ScSubstitutor private(_substitutions: Array[Update],   //Array is us
 }
 
 object ScSubstitutor {
+
+  private[recursiveUpdate] final class Parts(length: Int) {
+    val suffixes = new Array[ScSubstitutor](length)
+    val singles = new Array[ScSubstitutor](length)
+  }
+
   val LOG: Logger = Logger.getInstance("#org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate.ScSubstitutor")
 
   /**
@@ -15,12 +15,17 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateCompoundType(ct: ScCompoundType,
                          variance: Variance,
                          substitutor: ScSubstitutor)
-                        (implicit visited: Set[ScType]): ScType = {
+                        (implicit visited: Visited): ScType = {
+
+    //parameter types are updated lazily, when the current stack of visited types is gone
+    val outerVisited = if (ct.signatureMap.isEmpty) null else visited.snapshot
 
     val updSignatureMap = ct.signatureMap.map {
       case (s: TermSignature, tp) =>
         val tParams = s.typeParams.map(updateTypeParameter(_, substitutor, Invariant))
-        val paramTypes = s.substitutedTypes.map(_.map(f => () => substitutor.recursiveUpdateImpl(f(), variance, isLazySubtype = true)))
+        val paramTypes = s.substitutedTypes.map(_.map(f => () =>
+          substitutor.recursiveUpdateImpl(f(), variance, isLazySubtype = true)(implicitThis, Visited.fromSnapshot(outerVisited))
+        ))
         val updSignature = new TermSignature(s.name, paramTypes, tParams, s.substitutor.followed(substitutor), s.namedElement, s.hasRepeatedParam)
         (updSignature, substitutor.recursiveUpdateImpl(tp, Covariant))
     }
@@ -42,7 +47,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateExistentialArg(exArg: ScExistentialArgument,
                            variance: Variance,
                            substitutor: ScSubstitutor)
-                          (implicit visited: Set[ScType]): ScType = {
+                          (implicit visited: Visited): ScType = {
     exArg.copyWithBounds(
       substitutor.recursiveUpdateImpl(exArg.lower, Contravariant, exArg.isLazy),
       substitutor.recursiveUpdateImpl(exArg.upper, Covariant, exArg.isLazy)
@@ -52,7 +57,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateExistentialType(exType: ScExistentialType,
                             variance: Variance,
                             substitutor: ScSubstitutor)
-                           (implicit visited: Set[ScType]): ScType = {
+                           (implicit visited: Visited): ScType = {
     val quantified = exType.quantified
     val updatedQ = substitutor.recursiveUpdateImpl(quantified, variance)
 
@@ -63,7 +68,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateParameterizedType(pt: ScParameterizedType,
                               variance: Variance,
                               substitutor: ScSubstitutor)
-                             (implicit visited: Set[ScType]): ScType = {
+                             (implicit visited: Visited): ScType = {
 
     val designator = pt.designator
     val typeArguments = pt.typeArguments
@@ -88,14 +93,14 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateJavaArrayType(arrType: JavaArrayType,
                           variance: Variance,
                           substitutor: ScSubstitutor)
-                         (implicit visited: Set[ScType]): ScType = {
+                         (implicit visited: Visited): ScType = {
     JavaArrayType(substitutor.recursiveUpdateImpl(arrType.argument, Invariant))
   }
 
   def updateProjectionType(pt: ScProjectionType,
                            variance: Variance,
                            substitutor: ScSubstitutor)
-                          (implicit visited: Set[ScType]): ScType = {
+                          (implicit visited: Visited): ScType = {
 
     val projected = pt.projected
     val updatedType = substitutor.recursiveUpdateImpl(projected, Covariant)
@@ -107,7 +112,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateMethodType(mt: ScMethodType,
                        variance: Variance,
                        substitutor: ScSubstitutor)
-                      (implicit visited: Set[ScType]): ScType = {
+                      (implicit visited: Visited): ScType = {
 
     def updateParameterType(tp: ScType) = substitutor.recursiveUpdateImpl(tp, -variance, isLazySubtype = true)
 
@@ -126,7 +131,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateTypePolymorphicType(tpt: ScTypePolymorphicType,
                                 variance: Variance,
                                 substitutor: ScSubstitutor)
-                               (implicit visited: Set[ScType]): ScType =
+                               (implicit visited: Visited): ScType =
     ScTypePolymorphicType(
       substitutor.recursiveUpdateImpl(tpt.internalType, variance),
       tpt.typeParameters.map(updateTypeParameter(_, substitutor, -variance))
@@ -135,7 +140,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   def updateTypeParameter(tp: TypeParameter,
                           substitutor: ScSubstitutor,
                           variance: Variance = Invariant)
-                         (implicit visited: Set[ScType]): TypeParameter =
+                         (implicit visited: Visited): TypeParameter =
     TypeParameter(
       tp.psiTypeParameter,
       tp.typeParameters.map(updateTypeParameter(_, substitutor, variance)),
@@ -147,7 +152,7 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
   final def updateSubtypes(scType: ScType,
                            variance: Variance,
                            substitutor: ScSubstitutor)
-                          (implicit visited: Set[ScType]): ScType =
+                          (implicit visited: Visited): ScType =
     scType match {
       case t: ScCompoundType        => updateCompoundType       (t, variance, substitutor)
       case t: ScExistentialArgument => updateExistentialArg     (t, variance, substitutor)
@@ -164,16 +169,23 @@ private abstract class SubtypeUpdater(needVariance: Boolean, needUpdate: Boolean
     update(scType, variance) match {
       case ReplaceWith(res) => res
       case Stop => scType
-      case ProcessSubtypes => updateSubtypes(scType, variance, ScSubstitutor(update))(Set.empty)
+      case ProcessSubtypes =>
+        val visited = Visited.threadLocal
+        val previousScope = visited.enterScope()
+        try updateSubtypes(scType, variance, ScSubstitutor(update))(visited)
+        finally visited.exitScope(previousScope)
     }
 
 }
 
 object SubtypeUpdater {
   implicit class TypeParameterUpdateExt(private val typeParameter: TypeParameter) extends AnyVal {
-    def update(substitutor: ScSubstitutor)
-              (implicit visited: Set[ScType] = Set.empty): TypeParameter =
-      SubtypeUpdaterNoVariance.updateTypeParameter(typeParameter, substitutor)
+    def update(substitutor: ScSubstitutor): TypeParameter = {
+      val visited = Visited.threadLocal
+      val previousScope = visited.enterScope()
+      try SubtypeUpdaterNoVariance.updateTypeParameter(typeParameter, substitutor)(visited)
+      finally visited.exitScope(previousScope)
+    }
   }
 }
 
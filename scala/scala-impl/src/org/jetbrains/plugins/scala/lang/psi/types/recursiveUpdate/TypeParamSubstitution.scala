@@ -18,6 +18,15 @@ private case class TypeParamSubstitution(tvMap: LongMap[ScType]) extends LeafSub
       case (id, tp) => params.typeParamName(id) + " -> " + tp.toString
     }.mkString("Map(", ", ", ")")
 
+  /** see [[FreeTypeParams]] */
+  private[recursiveUpdate] lazy val typeParamsMask: Long =
+    tvMap.keysIterator.foldLeft(0L)(_ | FreeTypeParams.bit(_))
+
+  //LongMap is a trie, an open addressing table is faster to look up for every leaf
+  private[this] lazy val table = TypeParamSubstitution.Table(tvMap)
+
+  private def substitution(id: Long): ScType = table.get(id)
+
   override protected val subst: PartialFunction[LeafType, ScType] = {
     case a: ScAbstractType    => updatedAbstract(a)
     case u: UndefinedType     => updatedUndefined(u)
@@ -26,7 +35,7 @@ private case class TypeParamSubstitution(tvMap: LongMap[ScType]) extends LeafSub
 
   private def updatedAbstract(a: ScAbstractType): ScType = {
     val typeParameter = a.typeParameter
-    tvMap.getOrElse(typeParameter.typeParamId, null) match {
+    substitution(typeParameter.typeParamId) match {
       case null => a
       case v =>
         v match {
@@ -38,7 +47,7 @@ private case class TypeParamSubstitution(tvMap: LongMap[ScType]) extends LeafSub
 
   private def updatedUndefined(u: UndefinedType): ScType = {
     val typeParameter = u.typeParameter
-    tvMap.getOrElse(typeParameter.typeParamId, null) match {
+    substitution(typeParameter.typeParamId) match {
       case null => u
       case v =>
         v match {
@@ -49,7 +58,7 @@ private case class TypeParamSubstitution(tvMap: LongMap[ScType]) extends LeafSub
   }
 
   private def updatedTypeParameter(tpt: TypeParameterType): ScType =
-    tvMap.getOrElse(tpt.typeParamId, null) match {
+    substitution(tpt.typeParamId) match {
       case null             => tpt
       case v: ScLiteralType => v.blockWiden
       case v                => v
@@ -57,6 +66,43 @@ private case class TypeParamSubstitution(tvMap: LongMap[ScType]) extends LeafSub
 }
 
 private object TypeParamSubstitution {
+
+  private final class Table private(keys: Array[Long], values: Array[ScType]) {
+    private[this] val mask = keys.length - 1
+
+    def get(id: Long): ScType = {
+      var idx = slot(id, mask)
+      var value = values(idx)
+      while (value != null && keys(idx) != id) {
+        idx = (idx + 1) & mask
+        value = values(idx)
+      }
+      value
+    }
+  }
+
+  private object Table {
+    //at most a half of the slots is used
+    def apply(tvMap: LongMap[ScType]): Table = {
+      val capacity = Integer.highestOneBit(math.max(tvMap.size, 2) * 2 - 1) << 1
+      val keys = new Array[Long](capacity)
+      val values = new Array[ScType](capacity)
+
+      tvMap.foreach { case (id, tp) =>
+        var idx = slot(id, capacity - 1)
+        while (values(idx) != null)
+          idx = (idx + 1) & (capacity - 1)
+
+        keys(idx) = id
+        values(idx) = tp
+      }
+      new Table(keys, values)
+    }
+  }
+
+  private def slot(id: Long, mask: Int): Int =
+    ((java.lang.Long.hashCode(id) * 0x9E3779B9) >>> 16) & mask
+
   def buildMap[T, S](
     typeParamsLike: Iterable[T],
     types:          Iterable[S],
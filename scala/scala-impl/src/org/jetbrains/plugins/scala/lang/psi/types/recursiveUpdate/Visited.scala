@@ -0,0 +1,68 @@
+package org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate
+
+import org.jetbrains.plugins.scala.lang.psi.types.ScType
+import org.jetbrains.plugins.scala.util.UnloadableThreadLocal
+
+/**
+ * Lazy subtypes, which are being updated at the moment, to stop infinite recursion (see [[ScSubstitutor]]).
+ *
+ * It's a stack, reused by all substitutions on a thread: a type is pushed before its subtypes are updated
+ * and popped after that. A new scope hides the types of the outer substitution, so nested substitutions
+ * don't need a new instance. Types are compared by reference first, the same instance is usually met again.
+ */
+private[recursiveUpdate] final class Visited private(private[this] var types: Array[ScType],
+                                                     private[this] var size: Int) {
+
+  private[this] var scopeStart = 0
+
+  def contains(tp: ScType): Boolean = {
+    var idx = scopeStart
+    while (idx < size) {
+      val visited = types(idx)
+      if ((visited eq tp) || visited == tp)
+        return true
+
+      idx += 1
+    }
+    false
+  }
+
+  def push(tp: ScType): Unit = {
+    if (size == types.length)
+      types = java.util.Arrays.copyOf(types, size * 2)
+
+    types(size) = tp
+    size += 1
+  }
+
+  def pop(): Unit = {
+    size -= 1
+    types(size) = null
+  }
+
+  def scope: Int = scopeStart
+
+  /** @return the start of the previous scope, which should be passed to [[exitScope]] */
+  def enterScope(): Int = {
+    val previous = scopeStart
+    scopeStart = size
+    previous
+  }
+
+  def exitScope(previous: Int): Unit =
+    scopeStart = previous
+
+  /** The types of the current scope, for the updates, which are computed lazily on another stack */
+  def snapshot: Array[ScType] =
+    java.util.Arrays.copyOfRange(types, scopeStart, size)
+}
+
+private[recursiveUpdate] object Visited {
+
+  private val current: UnloadableThreadLocal[Visited] = UnloadableThreadLocal(new Visited(new Array[ScType](8), 0))
+
+  def threadLocal: Visited = current.value
+
+  def fromSnapshot(types: Array[ScType]): Visited =
+    new Visited(java.util.Arrays.copyOf(types, math.max(types.length, 4)), types.length)
+}
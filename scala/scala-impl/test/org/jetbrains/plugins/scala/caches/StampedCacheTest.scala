@@ -0,0 +1,53 @@
+package org.jetbrains.plugins.scala
+package caches
+
+import com.intellij.openapi.util.SimpleModificationTracker
+import junit.framework.TestCase
+import org.jetbrains.plugins.scala.caches.stats.CacheStats
+import org.junit.Assert._
+
+class StampedCacheTest extends TestCase {
+
+  def testOutdatedEntry(): Unit = {
+    val cache = new StampedCache[String, String](10)
+    val tracker = new SimpleModificationTracker
+    val other = new SimpleModificationTracker
+
+    cache.put("a", "1", tracker)
+    cache.put("b", "2", other)
+    assertEquals("1", cache.get("a"))
+
+    tracker.incModificationCount()
+    assertNull(cache.get("a"))
+    assertEquals("2", cache.get("b"))
+    assertEquals(CacheStats(hits = 2, misses = 1, evictions = 1), cache.stats)
+  }
+
+  def testLeastRecentlyUsedAreEvicted(): Unit = {
+    val cache = new StampedCache[Int, String](8)
+    val tracker = new SimpleModificationTracker
+
+    (0 until 8).foreach(i => cache.put(i, i.toString, tracker))
+    (0 until 4).foreach(i => assertEquals(i.toString, cache.get(i)))
+    cache.put(8, "8", tracker)
+
+    assertEquals(6, cache.size)
+    (0 until 4).foreach(i => assertEquals(i.toString, cache.get(i)))
+    assertEquals("8", cache.get(8))
+    assertEquals(3, cache.stats.evictions)
+  }
+
+  def testOutdatedAreEvictedFirst(): Unit = {
+    val cache = new StampedCache[Int, String](4)
+    val tracker = new SimpleModificationTracker
+    val other = new SimpleModificationTracker
+
+    (0 until 2).foreach(i => cache.put(i, i.toString, tracker))
+    (2 until 4).foreach(i => cache.put(i, i.toString, other))
+    other.incModificationCount()
+    cache.put(4, "4", tracker)
+
+    assertEquals(3, cache.size)
+    Seq(0, 1, 4).foreach(i => assertEquals(i.toString, cache.get(i)))
+  }
+}
@@ -0,0 +1,119 @@
+package org.jetbrains.plugins.scala
+package caches
+package stats
+
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.junit.Assert._
+
+import scala.jdk.CollectionConverters._
+
+class TracerTest extends SimpleTestCase {
+
+  override def setUp(): Unit = {
+    super.setUp()
+    Tracer.clearAll()
+    Tracer.setEnabled(true)
+    Tracer.setSamplingInterval(1)
+  }
+
+  override def tearDown(): Unit = {
+    Tracer.setEnabled(false)
+    Tracer.clearAll()
+    super.tearDown()
+  }
+
+  private def tracer(name: String): Tracer = Tracer(s"${getName}.$name", name)
+
+  private def calculation(tracer: Tracer)(body: => Unit): Unit = {
+    tracer.invocation()
+    tracer.calculationStart()
+    try body
+    finally tracer.calculationEnd()
+  }
+
+  private def dataOf(tracer: Tracer): Option[TracerData] =
+    Tracer.getCurrentData.asScala.find(_.id == tracer.id)
+
+  def testCounters(): Unit = {
+    val foo = tracer("foo")
+
+    calculation(foo)(())
+    calculation(foo)(())
+    foo.invocation()
+
+    val data = foo.getCurrentData
+    assertEquals(3, data.totalCount)
+    assertEquals(2, data.actualCount)
+    assertEquals(1, data.fromCacheCount)
+  }
+
+  def testNestedCalculationTimes(): Unit = {
+    val outer = tracer("outer")
+    val inner = tracer("inner")
+
+    calculation(outer) {
+      Thread.sleep(50)
+      calculation(inner) {
+        Thread.sleep(100)
+      }
+    }
+
+    val outerData = outer.getCurrentData
+    val innerData = inner.getCurrentData
+
+    assertTrue(s"$innerData", innerData.ownTime >= 100)
+    assertEquals(innerData.ownTime, innerData.totalTime)
+    assertTrue(s"$outerData", outerData.totalTime >= 150)
+    assertTrue(s"$outerData", outerData.ownTime >= 50 && outerData.ownTime < 100)
+    assertTrue(s"$outerData", outerData.maxTime >= outerData.totalTime)
+
+    assertEquals(Seq(("outer", 1)), innerData.parentCalls.asScala)
+    assertEquals(Seq(("<root>", 1)), outerData.parentCalls.asScala)
+  }
+
+  def testRecursiveCalculationTimeIsCountedOnce(): Unit = {
+    val recursive = tracer("recursive")
+
+    calculation(recursive) {
+      Thread.sleep(50)
+      calculation(recursive) {
+        Thread.sleep(50)
+      }
+    }
+
+    val data = recursive.getCurrentData
+    assertEquals(2, data.actualCount)
+    assertTrue(s"$data", data.totalTime >= 100 && data.totalTime < 200)
+    assertEquals(data.totalTime, data.ownTime)
+  }
+
+  def testOtherThreads(): Unit = {
+    val foo = tracer("foo")
+
+    val threads = (1 to 4).map(_ => new Thread(() => calculation(foo)(())))
+    threads.foreach(_.start())
+    threads.foreach(_.join())
+    calculation(foo)(())
+
+    assertEquals(5, foo.getCurrentData.actualCount)
+  }
+
+  def testReset(): Unit = {
+    val foo = tracer("foo")
+    calculation(foo)(())
+
+    Tracer.clearAll()
+    assertEquals(None, dataOf(foo))
+
+    calculation(foo)(())
+    assertEquals(1, foo.getCurrentData.actualCount)
+  }
+
+  def testDisabled(): Unit = {
+    Tracer.setEnabled(false)
+    val foo = tracer("foo")
+    calculation(foo)(())
+
+    assertEquals(None, dataOf(foo))
+  }
+}
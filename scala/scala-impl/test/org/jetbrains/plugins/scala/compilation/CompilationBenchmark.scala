@@ -124,8 +124,9 @@ abstract class CompilationBenchmark
 
     val timeStr = s"${result.compilationTime} ${scaleConfig.unit}"
 
-    val CompileServerMeteringInfo(maxParallelism, maxHeapSizeMb) = result.meteringInfo
-    val meteringStr = s"maxParallelism=$maxParallelism;maxHeapSizeMb=$maxHeapSizeMb"
+    val CompileServerMeteringInfo(maxParallelism, maxHeapSizeMb, compilation) = result.meteringInfo
+    val phasesStr = compilation.phases.map(phase => s"${phase.name}=${phase.wallTimeMs}ms").mkString(",")
+    val meteringStr = s"maxParallelism=$maxParallelism;maxHeapSizeMb=$maxHeapSizeMb;unitsPerSecond=${compilation.unitsPerSecond};phases=$phasesStr"
 
     s"$paramsStr => $timeStr [$meteringStr]"
   }
@@ -0,0 +1,111 @@
+package org.jetbrains.plugins.scala.compilation
+
+import java.util.concurrent.TimeUnit
+
+import com.intellij.openapi.projectRoots.ProjectJdkTable
+import com.intellij.openapi.util.SystemInfo
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.testFramework.CompilerTester
+import org.jetbrains.plugins.scala.base.ScalaSdkOwner
+import org.jetbrains.plugins.scala.base.libraryLoaders.LibraryLoader
+import org.jetbrains.plugins.scala.compilation.CompilerTestUtil.RevertableChange
+import org.jetbrains.plugins.scala.compiler.CompileServerLauncher
+import org.jetbrains.plugins.scala.debugger.ScalaCompilerTestBase
+import org.jetbrains.plugins.scala.debugger.ScalaCompilerTestBase.ListCompilerMessageExt
+import org.jetbrains.plugins.scala.extensions.inWriteAction
+import org.jetbrains.plugins.scala.performance.DownloadingAndImportingTestCase
+import org.jetbrains.plugins.scala.project.ProjectExt
+import org.jetbrains.plugins.scala.server.CompileServerProperties
+import org.jetbrains.plugins.scala.{LatestScalaVersions, ScalaVersion}
+import org.junit.Ignore
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Time to the first compilation after the compile server start, with and without the warm start
+ * (see [[org.jetbrains.jps.incremental.scala.local.WarmStart]]).
+ *
+ * Each measurement starts a new server process and rebuilds the project. In the warm mode,
+ * the server is started and stopped once before the measurements, so the warm start data exist.
+ */
+abstract class FirstCompilationBenchmark
+  extends DownloadingAndImportingTestCase
+    with ScalaSdkOwner {
+
+  override protected def librariesLoaders: Seq[LibraryLoader] = Seq.empty
+
+  override protected def supportedIn(version: ScalaVersion): Boolean = version == LatestScalaVersions.Scala_2_13
+
+  private final val Repeats = 5
+
+  private var revertable: RevertableChange = _
+  private var compiler: CompilerTester = _
+
+  override def setUp(): Unit = {
+    super.setUp()
+    revertable = CompilerTestUtil.withEnabledCompileServer(true)
+    revertable.applyChange()
+    compiler = new CompilerTester(myProject, myProject.modules.asJava, null)
+  }
+
+  override def tearDown(): Unit = try {
+    compiler.tearDown()
+    ScalaCompilerTestBase.stopAndWait()
+    Registry.get(CompileServerProperties.WarmStart).resetToDefault()
+    val table = ProjectJdkTable.getInstance
+    inWriteAction {
+      table.getAllJdks.foreach(table.removeJdk)
+    }
+  } finally {
+    compiler = null
+    revertable.revertChange()
+    super.tearDown()
+  }
+
+  private def firstCompilationTimeMs(): Long = {
+    CompileServerLauncher.stop(timeoutMs = 3000)
+    val start = System.nanoTime()
+    CompileServerLauncher.ensureServerRunning(myProject)
+    compiler.rebuild().assertNoProblems(allowWarnings = true)
+    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+  }
+
+  private def measure(warmStart: Boolean): Seq[Long] = {
+    Registry.get(CompileServerProperties.WarmStart).setValue(warmStart)
+    if (warmStart)
+      firstCompilationTimeMs()
+    (1 to Repeats).map(_ => firstCompilationTimeMs())
+  }
+
+  private def resultAsString(name: String, times: Seq[Long]): String = {
+    val sorted = times.sorted
+    s"$name: median=${sorted(sorted.size / 2)}ms, min=${sorted.head}ms, max=${sorted.last}ms, all=${times.mkString(",")}"
+  }
+
+  def testBenchmark(): Unit = {
+    println(
+      s"""|=====================Info=====================
+          |OS:      ${SystemInfo.OS_NAME} (${SystemInfo.OS_VERSION}, ${SystemInfo.OS_ARCH})
+          |Project: $githubRepoUrl
+          |Repeats: $Repeats""".stripMargin
+    )
+
+    val cold = measure(warmStart = false)
+    val warm = measure(warmStart = true)
+
+    println("==================Result=================")
+    println(resultAsString("cold start", cold))
+    println(resultAsString("warm start", warm))
+  }
+}
+
+@Ignore("Benchmark")
+class ZioFirstCompilationBenchmark
+  extends FirstCompilationBenchmark {
+
+  override def githubUsername: String = "zio"
+
+  override def githubRepoName: String = "zio"
+
+  override def revision: String = "dd21e98ead466bfef5d63e84a77b115122296146"
+}
@@ -0,0 +1,106 @@
+package org.jetbrains.plugins.scala.lang.formatter.tests.scalafmt
+
+import com.intellij.openapi.command.CommandProcessor
+import com.intellij.openapi.editor.Document
+import com.intellij.psi.{PsiDocumentManager, PsiFile, PsiFileFactory}
+import org.jetbrains.plugins.scala.extensions.inWriteAction
+import org.jetbrains.plugins.scala.lang.formatting.scalafmt.ScalafmtReformatOnFileSaveTask
+import org.jetbrains.plugins.scala.lang.formatting.scalafmt.ScalafmtReformatOnFileSaveTask.FormattedStampKey
+import org.jetbrains.plugins.scala.lang.formatting.scalafmt.processors.ScalaFmtPreFormatProcessor
+import org.jetbrains.plugins.scala.util.PsiFileTestUtil
+import org.junit.Assert._
+
+class ScalaFmtBatchFormattingTest extends ScalaFmtTestBase {
+
+  private def fileWithDocument(fileName: String, text: String): (PsiFile, Document) = {
+    val file = PsiFileFactory.getInstance(project).createFileFromText(fileName, language, text, true, false)
+    (file, PsiDocumentManager.getInstance(project).getDocument(file))
+  }
+
+  private def formatAll(files: Seq[(PsiFile, Document)]): Seq[Document] = {
+    var formatted: Seq[Document] = Seq.empty
+    CommandProcessor.getInstance.runUndoTransparentAction { () =>
+      formatted = ScalaFmtPreFormatProcessor.formatWithoutCommit(files, respectProjectMatcher = false)
+    }
+    formatted
+  }
+
+  def testFormatManyFiles(): Unit = {
+    val files = (0 until 10).map { i =>
+      fileWithDocument(s"A$i.scala", s"object        A$i{}")
+    }
+
+    val formatted = formatAll(files)
+
+    assertEquals(files.map(_._2), formatted)
+    files.zipWithIndex.foreach { case ((_, document), i) =>
+      assertEquals(s"object A$i {}\n", document.getText)
+    }
+  }
+
+  def testUnchangedFile(): Unit = {
+    val text = "object O {}\n"
+    val (file, document) = fileWithDocument("O.scala", text)
+    val stamp = document.getModificationStamp
+
+    formatAll(Seq((file, document)))
+
+    assertEquals(text, document.getText)
+    assertEquals(stamp, document.getModificationStamp)
+  }
+
+  def testNoFiles(): Unit =
+    assertTrue(formatAll(Seq.empty).isEmpty)
+
+  private def unsavedDocumentInSources(fileName: String, text: String): Document = {
+    val file = PsiFileTestUtil.addFileToProject(fileName, "", project)
+    val document = PsiDocumentManager.getInstance(project).getDocument(file)
+    setText(document, text)
+    PsiDocumentManager.getInstance(project).commitDocument(document)
+    document
+  }
+
+  private def setText(document: Document, text: String): Unit =
+    CommandProcessor.getInstance.runUndoTransparentAction { () =>
+      inWriteAction(document.setText(text))
+    }
+
+  private def withReformatOnSave(body: => Unit): Unit = {
+    scalaSettings.SCALAFMT_REFORMAT_ON_FILES_SAVE = true
+    try body
+    finally scalaSettings.SCALAFMT_REFORMAT_ON_FILES_SAVE = false
+  }
+
+  def testFormattedBeforeAllDocumentsSaving(): Unit = withReformatOnSave {
+    val document = unsavedDocumentInSources("Batch.scala", "object        Batch{}")
+
+    ScalafmtReformatOnFileSaveTask.reformatAllIfNeeded()
+    assertEquals("object Batch {}\n", document.getText)
+    assertEquals(document.getModificationStamp, document.getUserData(FormattedStampKey).longValue)
+
+    ScalafmtReformatOnFileSaveTask.reformatIfNeeded(document)
+    assertEquals("object Batch {}\n", document.getText)
+    assertNull("the stamp should be used once", document.getUserData(FormattedStampKey))
+  }
+
+  def testJustFormattedDocumentIsSkippedOnSave(): Unit = withReformatOnSave {
+    val text = "object        Skipped{}"
+    val document = unsavedDocumentInSources("Skipped.scala", text)
+    document.putUserData(FormattedStampKey, document.getModificationStamp)
+
+    ScalafmtReformatOnFileSaveTask.reformatIfNeeded(document)
+    assertEquals(text, document.getText)
+
+    ScalafmtReformatOnFileSaveTask.reformatIfNeeded(document)
+    assertEquals("object Skipped {}\n", document.getText)
+  }
+
+  def testDocumentChangedAfterBatchIsFormattedOnSave(): Unit = withReformatOnSave {
+    val document = unsavedDocumentInSources("Changed.scala", "object Changed {}\n")
+    document.putUserData(FormattedStampKey, document.getModificationStamp)
+    setText(document, "object        Changed{}")
+
+    ScalafmtReformatOnFileSaveTask.reformatIfNeeded(document)
+    assertEquals("object Changed {}\n", document.getText)
+  }
+}
@@ -0,0 +1,164 @@
+package org.jetbrains.plugins.scala
+package lang
+package lexer
+
+import com.intellij.lexer.LexerPosition
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.junit.Assert._
+
+import scala.collection.mutable
+
+class ScalaLexerPositionTest extends SimpleTestCase {
+
+  private def tokens(lexer: ScalaLexer): Seq[String] = {
+    val result = mutable.ArrayBuffer.empty[String]
+    while (lexer.getTokenType != null) {
+      result += s"${lexer.getTokenType} [${lexer.getTokenStart}, ${lexer.getTokenEnd}]"
+      lexer.advance()
+    }
+    result.toSeq
+  }
+
+  // the positions of all the tokens and the tokens
+  private def lex(text: String, isScala3: Boolean): (Seq[LexerPosition], Seq[(Int, String)]) = {
+    val lexer = new ScalaLexer(isScala3, null)
+    lexer.start(text)
+
+    val positions = mutable.ArrayBuffer.empty[LexerPosition]
+    val expected = mutable.ArrayBuffer.empty[(Int, String)]
+    while (lexer.getTokenType != null) {
+      positions += lexer.getCurrentPosition
+      expected += ((lexer.getTokenStart, s"${lexer.getTokenType} [${lexer.getTokenStart}, ${lexer.getTokenEnd}]"))
+      lexer.advance()
+    }
+    (positions.toSeq, expected.toSeq)
+  }
+
+  private def assertRestarts(text: String, position: LexerPosition, expected: Seq[(Int, String)], isScala3: Boolean): Unit = {
+    val expectedTokens = expected.dropWhile(_._1 < position.getOffset).map(_._2).mkString("\n")
+
+    val restarted = new ScalaLexer(isScala3, null)
+    restarted.start(text, text.length, position)
+    assertEquals(s"restarted at ${position.getOffset}", expectedTokens, tokens(restarted).mkString("\n"))
+  }
+
+  private def doTest(text: String, isScala3: Boolean = false): Unit = {
+    val (positions, expected) = lex(text, isScala3)
+
+    val lexer = new ScalaLexer(isScala3, null)
+    lexer.start(text)
+    for (position <- positions) {
+      assertRestarts(text, position, expected, isScala3)
+
+      lexer.restore(position)
+      val expectedTokens = expected.dropWhile(_._1 < position.getOffset).map(_._2).mkString("\n")
+      assertEquals(s"restored at ${position.getOffset}", expectedTokens, tokens(lexer).mkString("\n"))
+    }
+  }
+
+  def testPlain(): Unit = doTest(
+    """class A {
+      |  /* comment */ def foo(x: Int) = x + 1 // comment
+      |}
+      |""".stripMargin
+  )
+
+  def testInterpolatedStrings(): Unit = doTest(
+    """object A {
+      |  val a = s"a $b ${c + 1} d"
+      |  val b = s"a ${s"b ${c} /* not a comment */ d"} e // neither"
+      |  val c = raw"a\n$b${ s"$c" }"
+      |}
+      |""".stripMargin
+  )
+
+  def testMultilineInterpolatedStrings(): Unit = doTest(
+    "object A {\n" +
+      "  val a = s\"\"\"first $b\n" +
+      "    |second ${ { c } + f\"${d}%d\" }\n" +
+      "    |third\"\"\".stripMargin\n" +
+      "}\n"
+  )
+
+  // too deep or with too many braces to be packed into the state
+  def testDeeplyNestedInterpolatedStrings(): Unit = doTest(
+    """object A {
+      |  val a = s"a ${s"b ${s"c ${s"d $e"}"}"}"
+      |  val b = s"a ${ { { { { { { { { b } } } } } } } } }"
+      |}
+      |""".stripMargin
+  )
+
+  def testPositionBeforeDeepString(): Unit = {
+    val text = "object A {\n  val a = s\"a ${s\"b ${s\"c ${s\"d $e\"}\"}\"}\"\n}\n"
+    val (positions, expected) = lex(text, isScala3 = false)
+
+    val tokenStarts = expected.map(_._1)
+    assertTrue(positions.map(_.getOffset).forall(tokenStarts.contains))
+    assertTrue("the fourth string should be restarted from before", positions.zip(tokenStarts).exists {
+      case (position, start) => position.getOffset < start
+    })
+  }
+
+  // all the deep states are different, but none of them is kept by the lexer
+  def testManyDeepStates(): Unit = {
+    val kinds = Seq("s\"" -> "\"", "raw\"" -> "\"", "s\"\"\"" -> "\"\"\"", "raw\"\"\"" -> "\"\"\"")
+    val levels = for (kind <- kinds; braces <- 0 to 1) yield (kind, braces)
+
+    def string(nested: Seq[((String, String), Int)]): String = nested match {
+      case Seq() => "x"
+      case ((open, close), braces) +: rest =>
+        open + "a ${ " + "{ " * braces + string(rest) + " }" * braces + " }" + close
+    }
+
+    val lines = for {
+      first  <- levels
+      second <- levels
+      third  <- levels
+      fourth <- levels.take(3)
+    } yield s"  val a = ${string(Seq(first, second, third, fourth))}\n"
+    assertTrue(lines.size > 1024)
+
+    val text = "object A {\n" + lines.mkString + "}\n"
+    val (positions, expected) = lex(text, isScala3 = false)
+
+    positions.take(30).foreach(assertRestarts(text, _, expected, isScala3 = false))
+  }
+
+  def testXml(): Unit = doTest(
+    """object A {
+      |  val a = <a attr={b}>{ c.map(i => <b>{i}</b>) }<!-- comment --><c/></a>
+      |  val b = 42
+      |}
+      |""".stripMargin
+  )
+
+  def testScala3(): Unit = doTest(
+    """object A:
+      |  def foo(x: Int) =
+      |    s"x = ${x + 1}"
+      |""".stripMargin,
+    isScala3 = true
+  )
+
+  def testEqualStatesInEqualLines(): Unit = {
+    val prefix = "object A {\n"
+    val line = "  val a = s\"a ${b + s\"$c\"} d\"\n"
+    val text = prefix + line + line + "}\n"
+
+    val lexer = new ScalaLexer(false, null)
+    lexer.start(text)
+
+    val states = mutable.LinkedHashMap.empty[Int, Int]
+    while (lexer.getTokenType != null) {
+      val position = lexer.getCurrentPosition
+      states(position.getOffset) = position.getState
+      lexer.advance()
+    }
+
+    for {
+      (offset, state) <- states
+      if offset >= prefix.length && offset < prefix.length + line.length
+    } assertEquals(s"state at $offset", state, states(offset + line.length))
+  }
+}
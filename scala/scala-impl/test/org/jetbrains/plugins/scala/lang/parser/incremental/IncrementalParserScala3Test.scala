@@ -0,0 +1,52 @@
+package org.jetbrains.plugins.scala.lang.parser.incremental
+
+import org.jetbrains.plugins.scala.{LatestScalaVersions, ScalaVersion}
+
+class IncrementalParserScala3Test extends IncrementalParserTestBase {
+
+  override protected def supportedIn(version: ScalaVersion): Boolean = version >= LatestScalaVersions.Scala_3_0
+
+  private val body =
+    s"""class A:
+       |  def foo =
+       |    val x = 1
+       |    ${START}x$END + 1
+       |
+       |  def bar = 2
+       |""".stripMargin
+
+  def test_edit_inside_indented_body(): Unit = doTest(body, "x.toString.length")
+
+  def test_add_statement_to_indented_body(): Unit = doTest(body, "println(x)\n    x")
+
+  def test_outdent_inside_indented_body(): Unit = doTest(body, "x\n  def baz = x")
+
+  def test_unbalanced_parenthesis_inside_indented_body(): Unit = doTest(body, "x)")
+
+  def test_single_expression_left_in_indented_body(): Unit = doTest(
+    s"""class A:
+       |  def foo =
+       |    ${START}val x = 1
+       |    ${END}1
+       |""".stripMargin
+  )
+
+  def test_change_indentation_of_the_first_line(): Unit = doTest(
+    s"""object A:
+       |  val foo =
+       |  $START  $END  println(1)
+       |    2
+       |""".stripMargin
+  )
+
+  def test_edit_inside_indented_case_clause(): Unit = doTest(
+    s"""def foo(x: Int) =
+       |  x match
+       |    case 1 =>
+       |      val y = x
+       |      ${START}y$END
+       |    case _ => 0
+       |""".stripMargin,
+    "y + 1"
+  )
+}
@@ -0,0 +1,62 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package compiled
+
+import java.io.{ByteArrayOutputStream, File}
+import java.nio.file.Files
+
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.impl.DebugUtil
+import com.intellij.psi.stubs.{SerializationManagerEx, StubElement}
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.decompiler.Decompiler
+import org.jetbrains.plugins.scala.lang.parser.ScalaParserDefinition
+import org.jetbrains.plugins.scala.util.TestUtils
+import org.junit.Assert._
+
+/**
+ * The stubs built from the signature must be the same as the stubs of the decompiled text.
+ */
+class ScalaSigStubBuilderTest extends SimpleTestCase {
+
+  private def classFiles(directory: File): Seq[File] =
+    directory.listFiles.toSeq.sortBy(_.getName).flatMap {
+      case child if child.isDirectory => classFiles(child)
+      case child if child.getName.endsWith(".class") => Seq(child)
+      case _ => Seq.empty
+    }
+
+  private def textStubTree(fileName: String, bytes: Array[Byte]): Option[StubElement[_]] =
+    Decompiler.sourceNameAndText(fileName, bytes).map {
+      case (sourceName, text) =>
+        val file = PsiFileFactory.getInstance(fixture.getProject)
+          .createFileFromText(sourceName, ScalaLanguage.INSTANCE, text)
+        ScalaParserDefinition.FileNodeType.getBuilder.buildStubTree(file)
+    }
+
+  // unlike the tree string, it has the contents of the stubs: names, type texts, flags, bodies
+  private def serialized(stub: StubElement[_]): Array[Byte] = {
+    val bytes = new ByteArrayOutputStream()
+    SerializationManagerEx.getInstanceEx.serialize(stub, bytes)
+    bytes.toByteArray
+  }
+
+  def testSameAsDecompiledText(): Unit = {
+    val files = classFiles(new File(TestUtils.getTestDataPath, "decompiler"))
+
+    val built = for {
+      file <- files
+      bytes = Files.readAllBytes(file.toPath)
+      stub <- ScalaSigStubBuilder.buildFileStub(file.getName, bytes)
+    } yield {
+      val expected = textStubTree(file.getName, bytes).orNull
+      assertNotNull(file.getPath, expected)
+      assertEquals(file.getPath, DebugUtil.stubTreeToString(expected), DebugUtil.stubTreeToString(stub))
+      assertArrayEquals(file.getPath, serialized(expected), serialized(stub))
+      file
+    }
+
+    assertTrue("no stubs are built from the signatures", built.nonEmpty)
+  }
+}
@@ -0,0 +1,89 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package impl
+package statements
+
+import com.intellij.openapi.application.WriteAction
+import com.intellij.openapi.util.registry.Registry
+import com.intellij.openapi.vfs.VfsUtil
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.statements.{ScFunctionDefinition, ScPatternDefinition}
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
+import org.jetbrains.plugins.scala.lang.psi.impl.statements.PersistentInferredTypes.{Entry, FileTypes, FileTypesKey}
+import org.jetbrains.plugins.scala.lang.psi.types.result._
+import org.junit.Assert._
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream, DataInputStream, DataOutputStream}
+
+class PersistentInferredTypesTest extends SimpleTestCase {
+
+  def testEncoding(): Unit = {
+    val fileTypes = new FileTypes(42L)
+    fileTypes.entries.put(3, Entry("_root_.scala.Int", Map.empty))
+    fileTypes.entries.put(7, Entry("_root_.scala.List[_root_.A]", Map("file:///A.scala" -> 11L, "file:///B.scala" -> 12L)))
+
+    val bytes = new ByteArrayOutputStream()
+    fileTypes.writeTo(new DataOutputStream(bytes))
+    val read = FileTypes.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray))).get
+
+    assertEquals(42L, read.contentHash)
+    assertEquals(fileTypes.entries, read.entries)
+  }
+
+  def testAnotherPluginBuild(): Unit = {
+    val fileTypes = new FileTypes(42L)
+    fileTypes.entries.put(3, Entry("_root_.scala.Int", Map.empty))
+
+    val bytes = new ByteArrayOutputStream()
+    fileTypes.writeTo(new DataOutputStream(bytes), build = "2021.3.1")
+    val input = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray))
+
+    assertEquals(None, FileTypes.readFrom(input, build = "2021.3.2"))
+  }
+
+  def testNonPhysicalFile(): Unit = {
+    Registry.get(PersistentInferredTypes.RegistryKey).setValue(true, getTestRootDisposable)
+    val file = parseText(
+      """object A {
+        |  def f = 1
+        |  val v = List("")
+        |}
+        |""".stripMargin)
+
+    val function = file.depthFirst().collectFirst { case f: ScFunctionDefinition => f }.get
+    val definition = file.depthFirst().collectFirst { case d: ScPatternDefinition => d }.get
+
+    assertEquals("Int", function.returnType.get.presentableText(function))
+    assertEquals("List[String]", definition.`type`().get.presentableText(definition))
+  }
+
+  def testPhysicalFile(): Unit = {
+    Registry.get(PersistentInferredTypes.RegistryKey).setValue(true, getTestRootDisposable)
+    val fileA = fixture.addFileToProject("A.scala", "object A {\n  def f = B.g\n}\n").asInstanceOf[ScalaFile]
+    val fileB = fixture.addFileToProject("B.scala", "object B {\n  def g = 1\n}\n")
+
+    val function = fileA.depthFirst().collectFirst { case f: ScFunctionDefinition => f }.get
+    def returnType: String = {
+      // drops the in-memory caches, so the type is taken from the stored entries
+      ScalaPsiManager.instance(fixture.getProject).TopLevelModificationTracker.incModificationCount()
+      function.returnType.get.presentableText(function)
+    }
+
+    assertEquals("Int", returnType)
+
+    val entries = fileA.getVirtualFile.getUserData(FileTypesKey).entries
+    val Entry(typeText, dependencies) = entries.values.iterator.next()
+    assertEquals("_root_.scala.Int", typeText)
+    assertEquals(Set(fileB.getVirtualFile.getUrl), dependencies.keySet)
+
+    // a different type is stored, so the second lookup shows whether the entry is reused
+    entries.replaceAll((_, entry) => entry.copy(typeText = "_root_.scala.Long"))
+    assertEquals("Long", returnType)
+
+    WriteAction.run[Throwable](() => VfsUtil.saveText(fileB.getVirtualFile, "object B {\n  def g = \"\"\n}\n"))
+    assertEquals("String", returnType)
+  }
+}
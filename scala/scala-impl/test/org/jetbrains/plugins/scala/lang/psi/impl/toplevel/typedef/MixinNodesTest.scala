@@ -0,0 +1,69 @@
+package org.jetbrains.plugins.scala.lang.psi.impl.toplevel.typedef
+
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScTypeDefinition
+import org.jetbrains.plugins.scala.lang.psi.types.{PhysicalMethodSignature, TermSignature}
+import org.junit.Assert._
+
+class MixinNodesTest extends SimpleTestCase {
+
+  private def classes(): Map[String, ScTypeDefinition] = {
+    val file = parseText(
+      """trait A[T] {
+        |  def foo(t: T): T
+        |  def bar: T = ???
+        |}
+        |class B extends A[Int] {
+        |  override def foo(t: Int): Int = t
+        |}
+        |class C extends A[String] {
+        |  def foo(t: String): String = t
+        |}
+        |""".stripMargin)
+    file.depthFirst().collect { case td: ScTypeDefinition => td.name -> td }.toMap
+  }
+
+  private def signature(clazz: ScTypeDefinition, name: String): TermSignature =
+    TypeDefinitionMembers.getSignatures(clazz).forName(name).iterator.next()
+
+  private def paramType(signature: TermSignature, clazz: ScTypeDefinition): String =
+    signature.substitutedTypes.head.head().presentableText(clazz)
+
+  def testSuperSignatureSubstituted(): Unit = {
+    val cls = classes()
+
+    assertEquals("Int", paramType(signature(cls("B"), "foo"), cls("B")))
+    assertEquals("String", paramType(signature(cls("C"), "foo"), cls("C")))
+  }
+
+  def testInheritedMember(): Unit = {
+    val cls = classes()
+    val bar = signature(cls("B"), "bar")
+
+    assertTrue(bar.isInstanceOf[PhysicalMethodSignature])
+    assertEquals(Some(cls("A")), bar.namedElement.containingClassOfNameContext)
+  }
+
+  def testOverridingNode(): Unit = {
+    val cls = classes()
+    val nodes = TypeDefinitionMembers.getSignatures(cls("B")).forName("foo").nodesIterator.toList
+
+    assertEquals(1, nodes.size)
+    assertFalse(nodes.head.fromSuper)
+    assertEquals(Seq(Some(cls("A"))), nodes.head.supers.map(_.info.namedElement.containingClassOfNameContext))
+  }
+
+  def testImplicitNames(): Unit = {
+    val file = parseText(
+      """trait Base {
+        |  implicit def conv(s: String): Int = 1
+        |}
+        |class Derived extends Base
+        |""".stripMargin)
+    val derived = file.depthFirst().collectFirst { case td: ScTypeDefinition if td.name == "Derived" => td }.get
+    val implicits = TypeDefinitionMembers.getSignatures(derived).nodesIterator("", isSupers = false, onlyImplicit = true)
+
+    assertEquals(List("conv"), implicits.map(_.info.name).toList)
+  }
+}
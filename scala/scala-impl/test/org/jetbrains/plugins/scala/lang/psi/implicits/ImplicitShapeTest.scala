@@ -0,0 +1,62 @@
+package org.jetbrains.plugins.scala.lang.psi.implicits
+
+import com.intellij.psi.PsiElement
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.ScNamedElement
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScTypeDefinition
+import org.jetbrains.plugins.scala.lang.psi.types.ScParameterizedType
+import org.jetbrains.plugins.scala.lang.psi.types.api.designator.ScDesignatorType
+import org.junit.Assert._
+
+class ImplicitShapeTest extends SimpleTestCase {
+
+  private val code =
+    """class Inv[A]
+      |class Cov[+A]
+      |class Sub[A] extends Inv[A]
+      |class X
+      |class Y
+      |
+      |object Defs {
+      |  implicit val invX: Inv[X] = ???
+      |  implicit val covX: Cov[X] = ???
+      |  implicit val y: Y = ???
+      |  implicit val inferred = new Y
+      |  implicit def sub[A](implicit a: A): Sub[A] = ???
+      |  implicit def conversion(x: X): Y = ???
+      |  implicit object Obj extends Inv[Y]
+      |}
+      |""".stripMargin
+
+  private def mayConform(file: ScalaFile, candidate: String, className: String, argument: String): Option[Boolean] = {
+    def named(name: String): PsiElement =
+      file.depthFirst().collectFirst { case e: ScNamedElement if e.name == name => e }.get
+
+    def classType(name: String) = ScDesignatorType(named(name).asInstanceOf[ScTypeDefinition])
+
+    val expected = ImplicitShape.of(ScParameterizedType(classType(className), Seq(classType(argument)))).get
+    ImplicitShape.ofCandidate(named(candidate)).map(_.mayConformTo(expected))
+  }
+
+  def testShapes(): Unit = {
+    val file = parseText(code)
+
+    assertEquals(Some(true), mayConform(file, "invX", "Inv", "X"))
+    assertEquals(Some(false), mayConform(file, "invX", "Inv", "Y"))
+    assertEquals(Some(true), mayConform(file, "covX", "Cov", "Y"))
+    assertEquals(Some(false), mayConform(file, "covX", "Inv", "X"))
+    assertEquals(Some(false), mayConform(file, "y", "Inv", "Y"))
+    assertEquals(Some(true), mayConform(file, "sub", "Inv", "Y"))
+    assertEquals(Some(true), mayConform(file, "Obj", "Inv", "Y"))
+    assertEquals(Some(false), mayConform(file, "Obj", "Cov", "Y"))
+  }
+
+  def testUnknownShapes(): Unit = {
+    val file = parseText(code)
+
+    assertEquals(None, mayConform(file, "inferred", "Inv", "Y"))
+    assertEquals(None, mayConform(file, "conversion", "Inv", "Y"))
+  }
+}
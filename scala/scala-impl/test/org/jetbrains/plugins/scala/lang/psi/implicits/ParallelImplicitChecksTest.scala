@@ -0,0 +1,113 @@
+package org.jetbrains.plugins.scala.lang.psi.implicits
+
+import com.intellij.openapi.util.registry.Registry
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.caches.RecursionManager
+import org.jetbrains.plugins.scala.caches.RecursionManager.RecursionGuard
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.expr.ScGenericCall
+import org.jetbrains.plugins.scala.lang.psi.api.statements.ScFunctionDefinition
+import org.jetbrains.plugins.scala.lang.psi.impl.ScalaPsiManager
+import org.jetbrains.plugins.scala.lang.psi.types.api
+import org.junit.Assert._
+
+class ParallelImplicitChecksTest extends SimpleTestCase {
+
+  private def enableParallelChecks(): Unit =
+    Registry.get(ParallelImplicitChecks.RegistryKey).setValue(true, getTestRootDisposable)
+
+  def testDisabledByDefault(): Unit =
+    assertFalse(ParallelImplicitChecks.shouldRunInParallel(100))
+
+  def testFewCandidates(): Unit = {
+    enableParallelChecks()
+
+    assertFalse(ParallelImplicitChecks.shouldRunInParallel(ParallelImplicitChecks.MinCandidates - 1))
+    assertTrue(ParallelImplicitChecks.shouldRunInParallel(ParallelImplicitChecks.MinCandidates))
+  }
+
+  def testResultsInOrder(): Unit = {
+    enableParallelChecks()
+    val items = 0 until 100
+
+    assertEquals(items.map(_ * 2), ParallelImplicitChecks.map(items)(_ * 2))
+  }
+
+  def testRecursionStateInWorkers(): Unit = {
+    enableParallelChecks()
+    val file = parseText("object A")
+    val map: ImplicitsRecursionGuard.RecursionMap = Map(file -> List(api.Any))
+    val initial = ImplicitsRecursionGuard.currentMap
+
+    ImplicitsRecursionGuard.setRecursionMap(map)
+    try {
+      val results = ParallelImplicitChecks.map(0 until 20) { _ =>
+        (ImplicitsRecursionGuard.currentMap, ParallelImplicitChecks.shouldRunInParallel(100))
+      }
+
+      results.foreach { case (workerMap, nestedInParallel) =>
+        assertEquals(map, workerMap)
+        assertFalse(nestedInParallel)
+      }
+      assertEquals(map, ImplicitsRecursionGuard.currentMap)
+      assertTrue(ParallelImplicitChecks.shouldRunInParallel(100))
+    } finally {
+      ImplicitsRecursionGuard.setRecursionMap(initial)
+    }
+  }
+
+  def testRecursionManagerStackInWorkers(): Unit = {
+    enableParallelChecks()
+    val guard = RecursionGuard[String, Null]("ParallelImplicitChecksTest")
+
+    val result = guard.doPreventingRecursion("outer") {
+      guard.doPreventingRecursion("inner") {
+        val stamp = RecursionManager.markStack()
+        val reentered = ParallelImplicitChecks.map(0 until 20) { _ =>
+          guard.doPreventingRecursion("outer")(()).isEmpty
+        }
+        (reentered, stamp.mayCacheNow)
+      }
+    }
+
+    assertEquals("the calculation of the caller should be cut off in workers", Some(Some((Seq.fill(20)(true), false))), result)
+  }
+
+  // c1 is a candidate of the search in its own body, none of the candidates without a type is pruned by the shape
+  def testRecursiveImplicit(): Unit = {
+    val file = parseText(
+      """object A {
+        |  def need[T](implicit t: T): T = t
+        |
+        |  class C0; class C1; class C2; class C3; class C4; class C5; class C6; class C7; class C8
+        |
+        |  implicit val c0: C0 = new C0
+        |  implicit def c1 = { need[C0]; new C1 }
+        |  implicit def c2 = new C2
+        |  implicit def c3 = new C3
+        |  implicit def c4 = new C4
+        |  implicit def c5 = new C5
+        |  implicit def c6 = new C6
+        |  implicit def c7 = new C7
+        |  implicit def c8 = new C8
+        |}
+        |""".stripMargin)
+    val function = file.depthFirst().collectFirst { case f: ScFunctionDefinition if f.name == "c1" => f }.get
+    val call = file.depthFirst().collectFirst { case c: ScGenericCall => c }.get
+
+    def result: (String, Seq[String]) = {
+      ScalaPsiManager.instance(function.getProject).clearAllCaches()
+      val returnType = function.returnType.get.presentableText(function)
+      (returnType, call.findImplicitArguments.toSeq.flatten.map(_.name))
+    }
+
+    val sequential = result
+    assertTrue(sequential._1, sequential._1.endsWith("C1"))
+    assertEquals(Seq("c0"), sequential._2)
+
+    enableParallelChecks()
+    val runs = ParallelImplicitChecks.parallelRuns
+    assertEquals(sequential, result)
+    assertTrue("the candidates should be checked in parallel", ParallelImplicitChecks.parallelRuns > runs)
+  }
+}
@@ -0,0 +1,94 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package stubs
+package elements
+
+import java.util.concurrent.{ExecutionException, Executors}
+import java.util.concurrent.atomic.AtomicInteger
+
+import com.intellij.lang.LanguageParserDefinitions
+import com.intellij.openapi.application.ReadAction
+import com.intellij.psi.impl.DebugUtil
+import com.intellij.psi.stubs.StubElement
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.lang.psi.api.ScalaFile
+import org.junit.Assert._
+
+/**
+ * Stub trees built concurrently must be the same as the ones built on a single thread.
+ */
+class ParallelStubBuildingTest extends SimpleTestCase {
+
+  import ParallelStubBuildingTest._
+
+  private def texts: Seq[String] = (0 until 32).map { i =>
+    s"""package p$i
+       |
+       |import scala.collection.mutable
+       |
+       |sealed trait Base$i[+T] {
+       |  private[p$i] def foo(x: Int)(implicit ev: T <:< String): Map[String, List[T]] = ???
+       |  protected lazy val bar: Option[(Int, String)] = None
+       |}
+       |
+       |case class Impl$i(override val name: String) extends Base$i[String] {
+       |  val interpolated = s"$${name.length} and $${raw"$$name"}"
+       |  val xml = <a attr={name}>{name}</a>
+       |}
+       |
+       |object Impl$i {
+       |  implicit class Rich(private val s: String) extends AnyVal
+       |  type Alias[X] = mutable.Map[X, Impl$i]
+       |}
+       |""".stripMargin
+  }
+
+  def testSameAsSequential(): Unit = {
+    def files = texts.map(parseText(_))
+
+    val expected = files.map(file => DebugUtil.stubTreeToString(buildStubTree(file)))
+    val actual = buildStubTrees(files, threads = 4).map(DebugUtil.stubTreeToString).toSeq
+
+    assertEquals(expected, actual)
+  }
+}
+
+object ParallelStubBuildingTest {
+
+  /**
+   * Builds the stub trees of the files on a number of threads, as the indexing does:
+   * each file is lexed, parsed and stubbed by a single thread, in a read action of its own.
+   */
+  def buildStubTrees(files: collection.Seq[ScalaFile], threads: Int): Array[StubElement[_]] = {
+    val result = new Array[StubElement[_]](files.size)
+    val nextIndex = new AtomicInteger()
+
+    val task: Runnable = () => {
+      var index = nextIndex.getAndIncrement()
+      while (index < result.length) {
+        result(index) = ReadAction.compute[StubElement[_], RuntimeException](() => buildStubTree(files(index)))
+        index = nextIndex.getAndIncrement()
+      }
+    }
+
+    val executor = Executors.newFixedThreadPool(threads)
+    try {
+      Seq.fill(threads)(executor.submit(task)).foreach { future =>
+        try future.get()
+        catch {
+          case e: ExecutionException => throw e.getCause
+        }
+      }
+    } finally {
+      executor.shutdownNow()
+    }
+
+    result
+  }
+
+  def buildStubTree(file: ScalaFile): StubElement[_] =
+    LanguageParserDefinitions.INSTANCE.forLanguage(file.getLanguage).getFileNodeType match {
+      case fileType: ScStubFileElementType => fileType.getBuilder.buildStubTree(file)
+    }
+}
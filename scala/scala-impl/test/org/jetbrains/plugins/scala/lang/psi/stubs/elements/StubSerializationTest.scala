@@ -0,0 +1,120 @@
+package org.jetbrains.plugins.scala
+package lang
+package psi
+package stubs
+package elements
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+
+import com.intellij.psi.PsiFileFactory
+import com.intellij.psi.impl.DebugUtil
+import com.intellij.psi.stubs.{SerializationManagerEx, StubElement}
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.lang.parser.ScalaParserDefinition
+import org.junit.Assert._
+
+import scala.jdk.CollectionConverters._
+
+/**
+ * Stubs must be the same after a serialization round trip, including the packed flags.
+ */
+class StubSerializationTest extends SimpleTestCase {
+
+  private def buildStubTree(text: String): StubElement[_] = {
+    val file = PsiFileFactory.getInstance(fixture.getProject)
+      .createFileFromText("dummy.scala", ScalaLanguage.INSTANCE, text)
+    ScalaParserDefinition.FileNodeType.getBuilder.buildStubTree(file)
+  }
+
+  private def roundTrip(stub: StubElement[_]): StubElement[_] = {
+    val manager = SerializationManagerEx.getInstanceEx
+    val bytes = new ByteArrayOutputStream()
+    manager.serialize(stub, bytes)
+    manager.deserialize(new ByteArrayInputStream(bytes.toByteArray)).asInstanceOf[StubElement[_]]
+  }
+
+  private def allStubs(stub: StubElement[_]): Seq[StubElement[_]] =
+    stub +: stub.getChildrenStubs.asScala.toSeq.flatMap(allStubs(_))
+
+  private def text =
+    """package a
+      |
+      |@deprecated
+      |object O {
+      |  implicit class Rich(val s: String) extends AnyVal {
+      |    def twice: String = s + s
+      |  }
+      |
+      |  @inline def foo[T](t: T, xs: Int*)(implicit ev: T => String, f: => Int = 1): List[T] = ???
+      |  def bar = 42
+      |  protected var baz: Option[Int] = None
+      |  implicit val qux: Ordering[Int] = Ordering.Int
+      |  val (x, y) = (1, 2)
+      |}
+      |
+      |class C(private val a: Int, var b: String = "")
+      |""".stripMargin
+
+  def testSameTree(): Unit = {
+    val stub = buildStubTree(text)
+    assertEquals(DebugUtil.stubTreeToString(stub), DebugUtil.stubTreeToString(roundTrip(stub)))
+  }
+
+  def testSameFields(): Unit = {
+    val stubs = allStubs(buildStubTree(text))
+    val deserialized = allStubs(roundTrip(buildStubTree(text)))
+    assertEquals(stubs.size, deserialized.size)
+
+    stubs.zip(deserialized).foreach {
+      case (expected: ScFunctionStub[_], actual: ScFunctionStub[_]) =>
+        assertEquals(expected.getName, actual.getName)
+        assertEquals(expected.isDeclaration, actual.isDeclaration)
+        assertEquals(expected.annotations.toSeq, actual.annotations.toSeq)
+        assertEquals(expected.typeText, actual.typeText)
+        assertEquals(expected.bodyText, actual.bodyText)
+        assertEquals(expected.hasAssign, actual.hasAssign)
+        assertEquals(expected.implicitConversionParameterClass, actual.implicitConversionParameterClass)
+        assertEquals(expected.isLocal, actual.isLocal)
+        assertEquals(expected.implicitClassNames.toSeq, actual.implicitClassNames.toSeq)
+        assertEquals(expected.isTopLevel, actual.isTopLevel)
+        assertEquals(expected.topLevelQualifier, actual.topLevelQualifier)
+        assertEquals(expected.isExtensionMethod, actual.isExtensionMethod)
+      case (expected: ScPropertyStub[_], actual: ScPropertyStub[_]) =>
+        assertEquals(expected.isDeclaration, actual.isDeclaration)
+        assertEquals(expected.isImplicit, actual.isImplicit)
+        assertEquals(expected.names.toSeq, actual.names.toSeq)
+        assertEquals(expected.typeText, actual.typeText)
+        assertEquals(expected.bodyText, actual.bodyText)
+        assertEquals(expected.isLocal, actual.isLocal)
+        assertEquals(expected.classNames.toSeq, actual.classNames.toSeq)
+        assertEquals(expected.isTopLevel, actual.isTopLevel)
+        assertEquals(expected.topLevelQualifier, actual.topLevelQualifier)
+      case (expected: ScParameterStub, actual: ScParameterStub) =>
+        assertEquals(expected.getName, actual.getName)
+        assertEquals(expected.typeText, actual.typeText)
+        assertEquals(expected.isStable, actual.isStable)
+        assertEquals(expected.isDefaultParameter, actual.isDefaultParameter)
+        assertEquals(expected.isRepeated, actual.isRepeated)
+        assertEquals(expected.isVal, actual.isVal)
+        assertEquals(expected.isVar, actual.isVar)
+        assertEquals(expected.isCallByNameParameter, actual.isCallByNameParameter)
+        assertEquals(expected.bodyText, actual.bodyText)
+        assertEquals(expected.deprecatedName, actual.deprecatedName)
+        assertEquals(expected.implicitClassNames.toSeq, actual.implicitClassNames.toSeq)
+      case (expected: ScTemplateDefinitionStub[_], actual: ScTemplateDefinitionStub[_]) =>
+        assertEquals(expected.getName, actual.getName)
+        assertEquals(expected.getQualifiedName, actual.getQualifiedName)
+        assertEquals(expected.additionalJavaName, actual.additionalJavaName)
+        assertEquals(expected.isPackageObject, actual.isPackageObject)
+        assertEquals(expected.isDeprecated, actual.isDeprecated)
+        assertEquals(expected.isLocal, actual.isLocal)
+        assertEquals(expected.isVisibleInJava, actual.isVisibleInJava)
+        assertEquals(expected.isImplicitObject, actual.isImplicitObject)
+        assertEquals(expected.implicitConversionParameterClass, actual.implicitConversionParameterClass)
+        assertEquals(expected.implicitClassNames.toSeq, actual.implicitClassNames.toSeq)
+        assertEquals(expected.isTopLevel, actual.isTopLevel)
+        assertEquals(expected.topLevelQualifier, actual.topLevelQualifier)
+      case _ =>
+    }
+  }
+}
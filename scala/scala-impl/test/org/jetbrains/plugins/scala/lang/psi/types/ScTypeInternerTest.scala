@@ -0,0 +1,78 @@
+package org.jetbrains.plugins.scala.lang.psi.types
+
+import com.intellij.openapi.util.registry.Registry
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.base.types.ScCompoundTypeElement
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScTypeDefinition
+import org.jetbrains.plugins.scala.lang.psi.types.api._
+import org.jetbrains.plugins.scala.lang.psi.types.api.designator.ScDesignatorType
+import org.jetbrains.plugins.scala.lang.psi.types.result._
+import org.junit.Assert._
+
+class ScTypeInternerTest extends SimpleTestCase {
+
+  private def definitions: (ScTypeDefinition, ScTypeDefinition) =
+    parseText("class A[T]; object B").typeDefinitions match {
+      case Seq(a, b) => (a, b)
+    }
+
+  private def enableInterning(): Unit =
+    Registry.get(ScTypeInterner.RegistryKey).setValue(true, getTestRootDisposable)
+
+  def testDisabled(): Unit = {
+    val (a, _) = definitions
+
+    assertNotSame(ScDesignatorType(a), ScDesignatorType(a))
+    assertEquals(ScDesignatorType(a), ScDesignatorType(a))
+  }
+
+  def testDesignator(): Unit = {
+    enableInterning()
+    val (a, b) = definitions
+
+    assertSame(ScDesignatorType(a), ScDesignatorType(a))
+    assertNotSame(ScDesignatorType(a), ScDesignatorType(b))
+  }
+
+  def testStaticDesignatorIsNotInterned(): Unit = {
+    enableInterning()
+    val (_, b) = definitions
+
+    val static = ScDesignatorType.static(b)
+    assertTrue(static.isStatic)
+    assertNotSame(static, ScDesignatorType(b))
+    assertFalse(ScDesignatorType(b).isStatic)
+  }
+
+  def testParameterized(): Unit = {
+    enableInterning()
+    val (a, _) = definitions
+
+    assertSame(ScParameterizedType(ScDesignatorType(a), Seq(Int)), ScParameterizedType(ScDesignatorType(a), Seq(Int)))
+    assertNotSame(ScParameterizedType(ScDesignatorType(a), Seq(Int)), ScParameterizedType(ScDesignatorType(a), Seq(Long)))
+  }
+
+  def testCompound(): Unit = {
+    enableInterning()
+    val (a, b) = definitions
+
+    assertSame(ScCompoundType(Seq(ScDesignatorType(a), ScDesignatorType(b))), ScCompoundType(Seq(ScDesignatorType(a), ScDesignatorType(b))))
+  }
+
+  def testRefinementsWithDifferentDeclarationsAreNotInterned(): Unit = {
+    enableInterning()
+    val file = parseText(
+      """class A
+        |object Refinements {
+        |  type X = A { def foo: Int }
+        |  type Y = A { def foo: Int }
+        |}
+        |""".stripMargin)
+    val Seq(x, y) = file.depthFirst().collect { case c: ScCompoundTypeElement => c.`type`().get }.toSeq
+
+    assertNotSame(x, y)
+    val declarations = Seq(x, y).collect { case c: ScCompoundType => c.signatureMap.keys.map(_.namedElement) }
+    assertEquals(2, declarations.flatten.distinct.size)
+  }
+}
@@ -0,0 +1,56 @@
+package org.jetbrains.plugins.scala.lang.psi.types.recursiveUpdate
+
+import org.jetbrains.plugins.scala.base.SimpleTestCase
+import org.jetbrains.plugins.scala.extensions._
+import org.jetbrains.plugins.scala.lang.psi.api.statements.ScFunction
+import org.jetbrains.plugins.scala.lang.psi.api.toplevel.typedef.ScClass
+import org.jetbrains.plugins.scala.lang.psi.types.api
+import org.jetbrains.plugins.scala.lang.psi.types.result._
+import org.junit.Assert._
+
+class ScSubstitutorTest extends SimpleTestCase {
+
+  private def classAndFunction(name: String): (ScClass, ScFunction) = {
+    val file = parseText(
+      """class Outer[A, B] {
+        |  def affected(a: A): Map[A, List[B]] = ???
+        |  def unaffected(s: String): List[Int] = ???
+        |  def refinement: { def foo(a: A): Int } = ???
+        |  def alias[C](c: C): Either[C, A] = ???
+        |}
+        |""".stripMargin)
+    val clazz = file.depthFirst().collectFirst { case c: ScClass => c }.get
+    (clazz, clazz.functions.find(_.name == name).get)
+  }
+
+  def testAffected(): Unit = {
+    val (clazz, function) = classAndFunction("affected")
+    val substitutor = ScSubstitutor.bind(clazz.typeParameters, Seq(api.Int, api.Boolean))
+
+    assertEquals("Map[Int, List[Boolean]]", substitutor(function.returnType.get).presentableText(function))
+  }
+
+  def testUnaffectedIsTheSameInstance(): Unit = {
+    val (clazz, function) = classAndFunction("unaffected")
+    val substitutor = ScSubstitutor.bind(clazz.typeParameters, Seq(api.Int, api.Boolean))
+    val tpe = function.returnType.get
+
+    assertSame(tpe, substitutor(tpe))
+  }
+
+  def testRefinementParameters(): Unit = {
+    val (clazz, function) = classAndFunction("refinement")
+    val substitutor = ScSubstitutor.bind(clazz.typeParameters, Seq(api.Int, api.Boolean))
+    val substituted = substitutor(function.returnType.get)
+
+    assertTrue(substituted.presentableText(function).contains("def foo(a: Int): Int"))
+  }
+
+  def testFollowed(): Unit = {
+    val (clazz, function) = classAndFunction("alias")
+    val substitutor = ScSubstitutor.bind(function.typeParameters, Seq(api.Long))
+      .followed(ScSubstitutor.bind(clazz.typeParameters, Seq(api.Int, api.Boolean)))
+
+    assertEquals("Either[Long, Int]", substitutor(function.returnType.get).presentableText(function))
+  }
+}
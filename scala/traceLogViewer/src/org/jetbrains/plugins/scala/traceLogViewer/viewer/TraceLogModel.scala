@@ -13,6 +13,7 @@ import org.jetbrains.plugins.scala.traceLogger.protocol.{StackTraceEntry, TraceL
 import org.jetbrains.plugins.scala.traceLogger.{Data, TraceLogReader}
 
 import java.awt.event.MouseEvent
+import java.nio.file.Path
 import java.util
 import javax.swing.table.TableCellRenderer
 import javax.swing.tree.{TreeNode, TreePath}
@@ -34,9 +35,15 @@ class TraceLogModel(root: Node) extends ListTreeTableModelOnColumns(root, Column
 
 //noinspection ScalaExtractStringToBundle
 object TraceLogModel {
-  def createFromLines(lines: Iterator[String]): TraceLogModel = {
-    val roots = NodesReader.readLines(lines)
-    val root = new EnclosingNode("Log Roots", Seq.empty, Nil, roots)
+  def createFromLines(lines: Iterator[String]): TraceLogModel =
+    createFromRoots(NodesReader.readLines(lines))
+
+  /** Only the top-level nodes are read, the enclosed nodes are read when they are expanded */
+  def createFromBinary(path: Path): TraceLogModel =
+    createFromRoots(NodesReader.readBinary(path))
+
+  private def createFromRoots(roots: ArraySeq[Node]): TraceLogModel = {
+    val root = new EnclosingNode("Log Roots", Seq.empty, Nil, () => roots)
     new TraceLogModel(root)
   }
 
@@ -101,13 +108,17 @@ object TraceLogModel {
   final class EnclosingNode(_msg: String,
                             _values: Seq[(String, Data)],
                             _stackTrace: List[StackTraceEntry],
-                            val childrenSeq: ArraySeq[Node])
+                            readChildren: () => ArraySeq[Node])
     extends Node(_msg, _values, _stackTrace)
   {
-    childrenSeq.foreach {
-      child =>
-        assert(child.parent == null)
-        child.parent = this
+    lazy val childrenSeq: ArraySeq[Node] = {
+      val children = readChildren()
+      children.foreach {
+        child =>
+          assert(child.parent == null)
+          child.parent = this
+      }
+      children
     }
 
     override def getChildAt(childIndex: Int): TreeNode = childrenSeq(childIndex)
@@ -132,6 +143,12 @@ object TraceLogModel {
                                                inners: ArraySeq[Node],
                                                result: EnclosingResult,
                                                stackTrace: List[StackTraceEntry]): Node =
+      new EnclosingNode(start.msg, start.values, stackTrace, () => inners)
+
+    override protected def createLazyEnclosingNode(start: TraceLoggerEntry.Start,
+                                                   inners: () => ArraySeq[Node],
+                                                   result: () => EnclosingResult,
+                                                   stackTrace: List[StackTraceEntry]): Node =
       new EnclosingNode(start.msg, start.values, stackTrace, inners)
   }
 }
\ No newline at end of file
@@ -9,6 +9,7 @@ import com.intellij.ui.dualView.TreeTableView
 import org.jetbrains.plugins.scala.NlsString
 import org.jetbrains.plugins.scala.extensions.invokeLater
 import org.jetbrains.plugins.scala.traceLogViewer.{ClickableColumn, TraceLogViewerWindowFactory}
+import org.jetbrains.plugins.scala.traceLogger.BinaryTraceLog
 
 import java.awt.BorderLayout
 import java.nio.file.Path
@@ -39,10 +40,13 @@ object TraceLogView {
   }
 
   def createContentFromFile(path: Path): Content = {
-    val source = Source.fromFile(path.toFile)
     val model =
-      try TraceLogModel.createFromLines(source.getLines())
-      finally source.close()
+      if (BinaryTraceLog.isBinary(path)) TraceLogModel.createFromBinary(path)
+      else {
+        val source = Source.fromFile(path.toFile)
+        try TraceLogModel.createFromLines(source.getLines())
+        finally source.close()
+      }
     createContent(path, model)
   }
 
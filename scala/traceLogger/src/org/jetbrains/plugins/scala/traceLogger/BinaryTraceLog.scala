@@ -0,0 +1,499 @@
+package org.jetbrains.plugins.scala.traceLogger
+
+import org.jetbrains.plugins.scala.traceLogger.protocol.{StackTraceDiff, StackTraceEntry, TraceLoggerEntry}
+
+import java.io.{IOException, UncheckedIOException}
+import java.nio.channels.FileChannel
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Path, StandardOpenOption}
+import java.nio.{ByteBuffer, MappedByteBuffer}
+import java.util.concurrent.{ConcurrentLinkedQueue, ExecutorService, Executors, Semaphore}
+import scala.collection.mutable
+
+/**
+ * Binary trace log format.
+ *
+ * {{{
+ *   header:  magic: Int, version: Int, trailerOffset: Long (0 while the log is being written)
+ *   records: tag: Byte, payload
+ *   trailer: all interned strings and stack frames, so a reader doesn't have to scan the records for them
+ * }}}
+ *
+ * Messages, value names and stack frames are interned: they are defined by a [[Tag.String]] / [[Tag.Frame]] record
+ * before the first use and referenced by ids afterwards (0 stands for `null`). Values are written inline.
+ *
+ * Unlike the text format, the stack trace of a record is a diff to the stack trace of the enclosing [[Tag.Start]]
+ * record, and a start record contains the offset of its [[Tag.Success]] / [[Tag.Fail]] record, patched when
+ * the enclosing ends. So any subtree can be read (or skipped) without reading the records before it.
+ *
+ * Logs are written in this format only with `-Dscala.trace.logger.format=binary`, the viewer reads both formats.
+ */
+object BinaryTraceLog {
+  final val Magic = 0x53544C42 // "STLB"
+  final val Version = 1
+
+  private[traceLogger] final val HeaderSize = 16
+  private final val TrailerOffsetPosition = 8
+
+  private[traceLogger] object Tag {
+    final val String = 1
+    final val Frame = 2
+    final val Msg = 3
+    final val Start = 4
+    final val Success = 5
+    final val Fail = 6
+  }
+
+  def isBinary(path: Path): Boolean =
+    try {
+      val channel = FileChannel.open(path, StandardOpenOption.READ)
+      try {
+        val buffer = ByteBuffer.allocate(4)
+        channel.read(buffer) == 4 && buffer.getInt(0) == Magic
+      } finally channel.close()
+    } catch {
+      case _: IOException => false
+    }
+
+  /**
+   * Records are encoded into a buffer, full buffers are written to the file by a background thread.
+   * Not thread-safe, like any other [[TraceLogWriter]] it's used by a single thread.
+   */
+  final class Writer(path: Path) extends TraceLogWriter {
+    private val channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)
+
+    private val strings = new java.util.HashMap[String, Integer]
+    private val stringsInOrder = mutable.ArrayBuffer.empty[Array[Byte]]
+    private val frames = new java.util.HashMap[StackTraceElement, Integer]
+    private val framesInOrder = mutable.ArrayBuffer.empty[StackTraceElement]
+
+    private val buffers = new ConcurrentLinkedQueue[ByteBuffer]
+    private val inFlight = new Semaphore(MaxBuffersInFlight)
+    @volatile private var failure: IOException = _
+
+    private var buffer = newBuffer()
+    // file offset of the buffer start
+    private var bufferOffset = 0L
+
+    // start record offsets and stack traces of the enclosings that haven't ended yet
+    private val startOffsets = mutable.Stack.empty[Long]
+    private val startStackTraces = mutable.Stack.empty[StackTrace]
+
+    buffer.putInt(Magic)
+    buffer.putInt(Version)
+    buffer.putLong(0L)
+
+    override def log(msg: String, values: Seq[ValueDesc], st: StackTrace): Unit = {
+      val msgId = stringId(msg)
+      val valueIds = values.map { case (name, _) => stringId(name) }
+      val frameIds = newFrameIds(st)
+      ensure(1)
+      buffer.put(Tag.Msg.toByte)
+      writeEntry(msgId, valueIds, values, frameIds)
+    }
+
+    override def startEnclosing(msg: String, args: Seq[ValueDesc], st: StackTrace): Unit = {
+      val msgId = stringId(msg)
+      val valueIds = args.map { case (name, _) => stringId(name) }
+      val frameIds = newFrameIds(st)
+      ensure(9)
+      startOffsets.push(position)
+      startStackTraces.push(st)
+      buffer.put(Tag.Start.toByte)
+      buffer.putLong(0L)
+      writeEntry(msgId, valueIds, args, frameIds)
+    }
+
+    override def enclosingSuccess(result: Data, st: StackTrace): Unit = {
+      endEnclosing()
+      ensure(1)
+      buffer.put(Tag.Success.toByte)
+      writeString(result)
+    }
+
+    override def enclosingFail(exception: Throwable, st: StackTrace): Unit = {
+      endEnclosing()
+      ensure(1)
+      buffer.put(Tag.Fail.toByte)
+      writeString(exception.getMessage)
+    }
+
+    override def close(): Unit = {
+      val trailerOffset = position
+      writeVarInt(stringsInOrder.size)
+      stringsInOrder.foreach(writeBytes)
+      writeVarInt(framesInOrder.size)
+      framesInOrder.foreach(writeFrame)
+      flushBuffer()
+      patch(TrailerOffsetPosition, trailerOffset)
+
+      // wait until everything is written
+      inFlight.acquire(MaxBuffersInFlight)
+      channel.close()
+      if (failure != null)
+        throw new UncheckedIOException(failure)
+    }
+
+    private def position: Long = bufferOffset + buffer.position()
+
+    private def endEnclosing(): Unit =
+      if (startOffsets.nonEmpty) {
+        startStackTraces.pop()
+        patch(startOffsets.pop() + 1, position)
+      }
+
+    private def writeEntry(msgId: Int, valueIds: Seq[Int], values: Seq[ValueDesc], diff: (Int, Seq[Int])): Unit = {
+      writeVarInt(msgId)
+      writeVarInt(values.size)
+      valueIds.zip(values).foreach { case (nameId, (_, data)) =>
+        writeVarInt(nameId)
+        writeString(data)
+      }
+      val (base, frameIds) = diff
+      writeVarInt(base)
+      writeVarInt(frameIds.size)
+      frameIds.foreach(writeVarInt)
+    }
+
+    /** The diff to the stack trace of the enclosing start, the first frame (`Thread.getStackTrace`) is dropped */
+    private def newFrameIds(st: StackTrace): (Int, Seq[Int]) = {
+      val base = if (startStackTraces.isEmpty) Array.empty[StackTraceElement] else startStackTraces.top
+      val same = TraceLog.commonSuffixLength(base, st)
+      val frameIds = st.iterator.slice(1, st.length - same).map(frameId).toSeq
+      (same, frameIds)
+    }
+
+    private def stringId(string: String): Int =
+      if (string == null) 0
+      else {
+        val existing = strings.get(string)
+        if (existing != null) existing.intValue
+        else {
+          val id = strings.size + 1
+          val bytes = string.getBytes(StandardCharsets.UTF_8)
+          strings.put(string, id)
+          stringsInOrder += bytes
+          ensure(1)
+          buffer.put(Tag.String.toByte)
+          writeVarInt(id)
+          writeBytes(bytes)
+          id
+        }
+      }
+
+    private def frameId(element: StackTraceElement): Int = {
+      val existing = frames.get(element)
+      if (existing != null) existing.intValue
+      else {
+        val id = frames.size + 1
+        // the strings are defined before the frame
+        stringId(element.getMethodName)
+        stringId(element.getClassName)
+        stringId(element.getFileName)
+        frames.put(element, id)
+        framesInOrder += element
+        ensure(1)
+        buffer.put(Tag.Frame.toByte)
+        writeVarInt(id)
+        writeFrame(element)
+        id
+      }
+    }
+
+    private def writeFrame(element: StackTraceElement): Unit = {
+      writeVarInt(stringId(element.getMethodName))
+      writeVarInt(stringId(element.getClassName))
+      writeVarInt(element.getLineNumber + 2) // -2 is a native method
+      writeVarInt(stringId(element.getFileName))
+    }
+
+    /** nullable, the length is shifted by one */
+    private def writeString(string: String): Unit =
+      if (string == null) writeVarInt(0)
+      else {
+        val bytes = string.getBytes(StandardCharsets.UTF_8)
+        writeVarInt(bytes.length + 1)
+        writeRaw(bytes)
+      }
+
+    private def writeBytes(bytes: Array[Byte]): Unit = {
+      writeVarInt(bytes.length)
+      writeRaw(bytes)
+    }
+
+    private def writeRaw(bytes: Array[Byte]): Unit = {
+      var written = 0
+      while (written < bytes.length) {
+        ensure(1)
+        val length = math.min(buffer.remaining, bytes.length - written)
+        buffer.put(bytes, written, length)
+        written += length
+      }
+    }
+
+    private def writeVarInt(value: Int): Unit = {
+      ensure(5)
+      var rest = value
+      while ((rest & ~0x7F) != 0) {
+        buffer.put(((rest & 0x7F) | 0x80).toByte)
+        rest >>>= 7
+      }
+      buffer.put(rest.toByte)
+    }
+
+    private def ensure(bytes: Int): Unit =
+      if (buffer.remaining < bytes)
+        flushBuffer()
+
+    private def patch(offset: Long, value: Long): Unit =
+      if (offset >= bufferOffset)
+        buffer.putLong((offset - bufferOffset).toInt, value)
+      else {
+        val bytes = ByteBuffer.allocate(8).putLong(0, value)
+        submit(bytes, offset, recycle = false)
+      }
+
+    private def flushBuffer(): Unit = {
+      val full = buffer
+      full.flip()
+      val offset = bufferOffset
+      bufferOffset += full.remaining
+      buffer = Option(buffers.poll()).getOrElse(newBuffer())
+      submit(full, offset, recycle = true)
+    }
+
+    private def submit(data: ByteBuffer, offset: Long, recycle: Boolean): Unit = {
+      inFlight.acquire()
+      WriterExecutor.execute { () =>
+        try {
+          var position = offset
+          while (data.hasRemaining)
+            position += channel.write(data, position)
+        } catch {
+          case e: IOException =>
+            if (failure == null) failure = e
+        } finally {
+          if (recycle) {
+            data.clear()
+            buffers.add(data)
+          }
+          inFlight.release()
+        }
+      }
+    }
+  }
+
+  private final val BufferSize = 1 << 16
+  private final val MaxBuffersInFlight = 8
+
+  private def newBuffer(): ByteBuffer = ByteBuffer.allocate(BufferSize)
+
+  // a single thread, so the writes of a log are applied in order
+  private lazy val WriterExecutor: ExecutorService = Executors.newSingleThreadExecutor { runnable =>
+    val thread = new Thread(runnable, "scala-trace-log-writer")
+    thread.setDaemon(true)
+    thread
+  }
+
+  private[traceLogger] sealed abstract class Record {
+    def next: Long
+  }
+
+  private[traceLogger] object Record {
+    final case class Definition(next: Long) extends Record
+    final case class Msg(entry: TraceLoggerEntry.Msg, next: Long) extends Record
+    final case class Start(entry: TraceLoggerEntry.Start, endOffset: Long, next: Long) extends Record
+    final case class End(result: TraceLogReader.EnclosingResult, next: Long) extends Record
+  }
+
+  /**
+   * Random access to a binary log, the file is memory-mapped in segments, so logs larger than 2GB are supported.
+   * The records are decoded on demand.
+   */
+  private[traceLogger] final class File(path: Path) {
+    private val SegmentSize = 1L << 30
+
+    private val (segments, fileSize) = {
+      val channel = FileChannel.open(path, StandardOpenOption.READ)
+      try {
+        val size = channel.size
+        val segments = (0L until size by SegmentSize).map { start =>
+          channel.map(FileChannel.MapMode.READ_ONLY, start, math.min(SegmentSize, size - start))
+        }.toArray[MappedByteBuffer]
+        (segments, size)
+      } finally channel.close()
+    }
+
+    if (fileSize < HeaderSize || int(0) != Magic || int(4) != Version)
+      throw new IOException(s"Not a binary trace log: $path")
+
+    private val trailerOffset = long(TrailerOffsetPosition)
+
+    /** the end of the records */
+    val end: Long = if (trailerOffset > 0) trailerOffset else fileSize
+
+    private val strings = mutable.ArrayBuffer[String](null)
+    private val frames = mutable.ArrayBuffer[StackTraceEntry](null)
+
+    if (trailerOffset > 0) readTrailer()
+    else readDefinitions()
+
+    def recordAt(offset: Long): Record = {
+      val cursor = new Cursor(offset)
+      cursor.byte() match {
+        case Tag.String =>
+          cursor.varInt()
+          cursor.skip(cursor.varInt())
+          Record.Definition(cursor.position)
+        case Tag.Frame =>
+          cursor.varInt()
+          readFrame(cursor)
+          Record.Definition(cursor.position)
+        case Tag.Msg =>
+          val (msg, values, diff) = readEntry(cursor)
+          Record.Msg(TraceLoggerEntry.Msg(msg, values, diff), cursor.position)
+        case Tag.Start =>
+          val endOffset = cursor.long()
+          val (msg, values, diff) = readEntry(cursor)
+          Record.Start(TraceLoggerEntry.Start(msg, values, diff), endOffset, cursor.position)
+        case Tag.Success =>
+          Record.End(Right(TraceLoggerEntry.Success(cursor.string())), cursor.position)
+        case Tag.Fail =>
+          Record.End(Left(Some(TraceLoggerEntry.Fail(cursor.string()))), cursor.position)
+        case tag =>
+          throw new IOException(s"Unknown record $tag at $offset")
+      }
+    }
+
+    def firstRecord: Long = HeaderSize
+
+    /** The end record of an enclosing whose offset wasn't patched (the log is incomplete), or [[end]] */
+    def findEnd(childrenOffset: Long): Long = {
+      var depth = 0
+      var offset = childrenOffset
+      while (offset < end) {
+        val record = recordAt(offset)
+        record match {
+          case _: Record.Start => depth += 1
+          case _: Record.End if depth == 0 => return offset
+          case _: Record.End => depth -= 1
+          case _ =>
+        }
+        offset = record.next
+      }
+      end
+    }
+
+    private def readEntry(cursor: Cursor): (String, Seq[ValueDesc], StackTraceDiff) = {
+      val msg = strings(cursor.varInt())
+      val values = Seq.fill(cursor.varInt()) {
+        val name = strings(cursor.varInt())
+        (name, cursor.string())
+      }
+      val base = cursor.varInt()
+      val additional = Seq.fill(cursor.varInt())(frames(cursor.varInt()))
+      (msg, values, StackTraceDiff(base, additional))
+    }
+
+    private def readFrame(cursor: Cursor): StackTraceEntry = {
+      val method = strings(cursor.varInt())
+      val className = strings(cursor.varInt())
+      val line = cursor.varInt() - 2
+      val fileName = strings(cursor.varInt())
+      StackTraceEntry(method, className, line, fileName)
+    }
+
+    private def readTrailer(): Unit = {
+      val cursor = new Cursor(trailerOffset)
+      for (_ <- 0 until cursor.varInt())
+        strings += cursor.utf8(cursor.varInt())
+      for (_ <- 0 until cursor.varInt())
+        frames += readFrame(cursor)
+    }
+
+    // the log is being written or wasn't closed properly, a truncated tail is ignored
+    private def readDefinitions(): Unit = {
+      var offset = firstRecord
+      try {
+        while (offset < end) {
+          val cursor = new Cursor(offset)
+          cursor.byte() match {
+            case Tag.String =>
+              cursor.varInt()
+              strings += cursor.utf8(cursor.varInt())
+              offset = cursor.position
+            case Tag.Frame =>
+              cursor.varInt()
+              frames += readFrame(cursor)
+              offset = cursor.position
+            case _ =>
+              offset = recordAt(offset).next
+          }
+        }
+      } catch {
+        case _: IndexOutOfBoundsException | _: IOException =>
+      }
+    }
+
+    private def byteAt(offset: Long): Byte =
+      segments((offset / SegmentSize).toInt).get((offset % SegmentSize).toInt)
+
+    private def int(offset: Long): Int =
+      (0 until 4).foldLeft(0)((result, i) => (result << 8) | (byteAt(offset + i) & 0xFF))
+
+    private def long(offset: Long): Long =
+      (0 until 8).foldLeft(0L)((result, i) => (result << 8) | (byteAt(offset + i) & 0xFF))
+
+    private final class Cursor(var position: Long) {
+      def byte(): Int = {
+        if (position >= fileSize)
+          throw new IndexOutOfBoundsException(s"$position >= $fileSize")
+        val result = byteAt(position)
+        position += 1
+        result
+      }
+
+      def long(): Long = {
+        val result = File.this.long(position)
+        position += 8
+        result
+      }
+
+      def varInt(): Int = {
+        var result = 0
+        var shift = 0
+        var b = byte()
+        while ((b & 0x80) != 0) {
+          result |= (b & 0x7F) << shift
+          shift += 7
+          b = byte()
+        }
+        result | (b << shift)
+      }
+
+      def skip(bytes: Int): Unit =
+        position += bytes
+
+      def string(): String = {
+        val length = varInt()
+        if (length == 0) null
+        else utf8(length - 1)
+      }
+
+      def utf8(length: Int): String = {
+        if (position + length > fileSize)
+          throw new IndexOutOfBoundsException(s"${position + length} > $fileSize")
+        val bytes = new Array[Byte](length)
+        var i = 0
+        while (i < length) {
+          bytes(i) = byteAt(position + i)
+          i += 1
+        }
+        position += length
+        new String(bytes, StandardCharsets.UTF_8)
+      }
+    }
+  }
+
+  private[traceLogger] def open(path: Path): File = new File(path)
+}
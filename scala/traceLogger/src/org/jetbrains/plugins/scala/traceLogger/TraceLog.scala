@@ -43,10 +43,26 @@ object TraceLog {
     temp.resolve("intellij-scala-trace-logger")
   }
 
+  /** the number of the same outermost frames */
+  private[traceLogger] def commonSuffixLength(prev: StackTrace, st: StackTrace): Int = {
+    val commonLength = math.min(prev.length, st.length)
+    var same = 0
+    while (same < commonLength && st(st.length - same - 1) == prev(prev.length - same - 1)) {
+      same += 1
+    }
+    same
+  }
+
+  /**
+   * `-Dscala.trace.logger.format=binary` writes compact logs, see [[BinaryTraceLog]],
+   * otherwise logs are written as human-readable json lines
+   */
+  private val writesBinary: Boolean = System.getProperty("scala.trace.logger.format") == "binary"
+
   private def createTraceLogWriter(topic: String): TraceLogWriter = this.synchronized {
     val thread = Thread.currentThread()
     val dir = loggerOutputPath
-    val ext = ".log"
+    val ext = if (writesBinary) ".tlog" else ".log"
     val initialName =
       if (topic.isEmpty) s"thread${thread.getId}"
       else s"$topic-thread${thread.getId}"
@@ -62,9 +78,8 @@ object TraceLog {
     if (!Files.exists(dir)) {
       Files.createDirectories(dir)
     }
-    val writer = new FileWriter(path.toFile)
-
-    new FileWritingTraceLogger(writer)
+    if (writesBinary) new BinaryTraceLog.Writer(path)
+    else new FileWritingTraceLogger(new FileWriter(path.toFile))
   }
 
   private object NoOpLogger extends TraceLogWriter {
@@ -83,12 +98,7 @@ object TraceLog {
      * write the difference.
      */
     private[this] def updatePrevCallStack(st: StackTrace): StackTraceDiff = {
-      // the
-      val commonLength = math.min(prevCallStack.length, st.length)
-      var same = 0
-      while (same < commonLength && st(st.length - same - 1) == prevCallStack(prevCallStack.length - same - 1)) {
-        same += 1
-      }
+      val same = commonSuffixLength(prevCallStack, st)
       prevCallStack = st
 
       // we have to throw the first entry away, because it is the frame in Thread::stackTrace() itself
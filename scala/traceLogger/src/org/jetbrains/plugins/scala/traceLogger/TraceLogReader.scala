@@ -3,6 +3,8 @@ package org.jetbrains.plugins.scala.traceLogger
 import org.jetbrains.plugins.scala.traceLogger.TraceLogReader.EnclosingResult
 import org.jetbrains.plugins.scala.traceLogger.protocol.{SerializationApi, StackTraceDiff, StackTraceEntry, TraceLoggerEntry}
 
+import java.io.IOException
+import java.nio.file.Path
 import scala.annotation.tailrec
 import scala.collection.mutable
 import scala.io.Source
@@ -17,6 +19,11 @@ abstract class TraceLogReader {
   protected def createEnclosingNode(start: TraceLoggerEntry.Start, inners: NodeSeq,
                                     result: EnclosingResult, stackTrace: List[StackTraceEntry]): Node
 
+  /** Used for binary logs, the inners and the result are read when they are requested */
+  protected def createLazyEnclosingNode(start: TraceLoggerEntry.Start, inners: () => NodeSeq,
+                                        result: () => EnclosingResult, stackTrace: List[StackTraceEntry]): Node =
+    createEnclosingNode(start, inners(), result(), stackTrace)
+
   final def readStream(stream: java.io.InputStream): NodeSeq =
     readSource(Source.fromInputStream(stream))
 
@@ -65,6 +72,49 @@ abstract class TraceLogReader {
 
     convertFrame()._2
   }
+
+  /** Reads the top-level nodes of a [[BinaryTraceLog]], the enclosed nodes are read lazily */
+  final def readBinary(path: Path): NodeSeq = {
+    val log = BinaryTraceLog.open(path)
+    readBinaryNodes(log, log.firstRecord, log.end, Nil)
+  }
+
+  private def readBinaryNodes(log: BinaryTraceLog.File, from: Long, until: Long,
+                              enclosingStackTrace: List[StackTraceEntry]): NodeSeq = {
+    import BinaryTraceLog.Record
+
+    def stackTraceOf(diff: StackTraceDiff): List[StackTraceEntry] =
+      diff.additional ++: enclosingStackTrace.takeRight(diff.base)
+
+    val builder = newNodeSeqBuilder()
+    var offset = from
+    try {
+      while (offset < until) {
+        log.recordAt(offset) match {
+          case Record.Msg(msg, next) =>
+            builder += createMsgNode(msg, stackTraceOf(msg.stackTraceDiff))
+            offset = next
+          case Record.Start(start, endOffset, next) =>
+            val stackTrace = stackTraceOf(start.stackTraceDiff)
+            val end = if (endOffset > 0) endOffset else log.findEnd(next)
+            val result = () =>
+              if (end < log.end) log.recordAt(end) match {
+                case Record.End(enclosingResult, _) => enclosingResult
+                case _ => Left(None)
+              }
+              else Left(None)
+            builder += createLazyEnclosingNode(start, () => readBinaryNodes(log, next, end, stackTrace), result, stackTrace)
+            offset = if (end < log.end) log.recordAt(end).next else end
+          case record =>
+            offset = record.next
+        }
+      }
+    } catch {
+      // a truncated tail of a log that wasn't closed
+      case _: IndexOutOfBoundsException | _: IOException =>
+    }
+    builder.result()
+  }
 }
 
 object TraceLogReader {
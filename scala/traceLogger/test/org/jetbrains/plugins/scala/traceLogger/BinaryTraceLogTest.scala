@@ -0,0 +1,97 @@
+package org.jetbrains.plugins.scala.traceLogger
+
+import junit.framework.TestCase
+import org.jetbrains.plugins.scala.traceLogger.TraceLogReader.EnclosingResult
+import org.jetbrains.plugins.scala.traceLogger.protocol.{StackTraceEntry, TraceLoggerEntry}
+import org.junit.Assert
+
+import java.io.StringWriter
+import java.nio.ByteBuffer
+import java.nio.channels.FileChannel
+import java.nio.file.{Files, StandardOpenOption}
+import scala.collection.mutable
+
+class BinaryTraceLogTest extends TestCase {
+  import BinaryTraceLogTest._
+
+  private def writeEntries(writer: TraceLogWriter): Unit = {
+    writer.log("first", Seq("a" -> "1"), stackTrace())
+    nested(writer, 3)
+    writer.startEnclosing(null, Seq.empty, stackTrace())
+    writer.log("inside", Seq("b" -> "✓", "c" -> ""), stackTrace())
+    writer.enclosingFail(new RuntimeException("boom"), stackTrace())
+    writer.log("last", Seq.empty, stackTrace())
+  }
+
+  private def nested(writer: TraceLogWriter, depth: Int): Unit = {
+    writer.startEnclosing(s"nested $depth", Seq("depth" -> depth.toString), stackTrace())
+    if (depth > 0) {
+      nested(writer, depth - 1)
+      writer.log("after", Seq.empty, stackTrace())
+    }
+    writer.enclosingSuccess(s"result $depth", stackTrace())
+  }
+
+  private def writeBinary(withTrailer: Boolean): String = {
+    val path = Files.createTempFile("trace", ".tlog")
+    try {
+      val writer = new BinaryTraceLog.Writer(path)
+      writeEntries(writer)
+      writer.close()
+      if (!withTrailer) {
+        // as if the log is still being written
+        val channel = FileChannel.open(path, StandardOpenOption.WRITE)
+        try channel.write(ByteBuffer.allocate(8), 8)
+        finally channel.close()
+      }
+
+      Assert.assertTrue(BinaryTraceLog.isBinary(path))
+      StringReader.readBinary(path).mkString("\n")
+    } finally Files.delete(path)
+  }
+
+  private def writeText(): String = {
+    val stringWriter = new StringWriter
+    writeEntries(new TraceLog.FileWritingTraceLogger(stringWriter))
+    StringReader.readText(stringWriter.toString).mkString("\n")
+  }
+
+  def test_sameAsText(): Unit =
+    Assert.assertEquals(writeText(), writeBinary(withTrailer = true))
+
+  def test_withoutTrailer(): Unit =
+    Assert.assertEquals(writeText(), writeBinary(withTrailer = false))
+
+  def test_stackTraces(): Unit = {
+    val result = writeBinary(withTrailer = true)
+    Assert.assertTrue(result, result.linesIterator.map(_.trim).filterNot(_.startsWith("-> ")).forall(_.contains("writeEntries")))
+    Assert.assertTrue(result, result.contains("@stackTrace/nested/nested/writeEntries"))
+  }
+}
+
+object BinaryTraceLogTest {
+  private def stackTrace(): StackTrace = Thread.currentThread.getStackTrace
+
+  private object StringReader extends TraceLogReader {
+    override type Node = String
+    override type NodeSeq = Seq[String]
+
+    override protected def newNodeSeqBuilder(): mutable.Builder[String, Seq[String]] = Seq.newBuilder
+
+    private def describe(msg: String, values: Seq[ValueDesc], stackTrace: List[StackTraceEntry]): String = {
+      // the frames below `writeEntries` differ between the tests
+      val (inner, outer) = stackTrace.map(_.method).span(_ != "writeEntries")
+      val frames = inner ++ outer.take(1)
+      s"$msg${values.mkString("(", ", ", ")")} @${frames.mkString("/")}"
+    }
+
+    override protected def createMsgNode(msg: TraceLoggerEntry.Msg, stackTrace: List[StackTraceEntry]): String =
+      describe(msg.msg, msg.values, stackTrace)
+
+    override protected def createEnclosingNode(start: TraceLoggerEntry.Start, inners: Seq[String],
+                                               result: EnclosingResult, stackTrace: List[StackTraceEntry]): String = {
+      val resultText = result.fold(_.fold("<unfinished>")(_.exception), _.result)
+      (describe(start.msg, start.values, stackTrace) +: inners.map("  " + _) :+ s"-> $resultText").mkString("\n")
+    }
+  }
+}
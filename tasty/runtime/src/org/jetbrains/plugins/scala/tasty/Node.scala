@@ -3,7 +3,25 @@ package org.jetbrains.plugins.scala.tasty
 import dotty.tools.tasty.TastyFormat
 
 // TODO custom extractors
-case class Node(tag: Int, names: Seq[String], children: Seq[Node]) {
+// The names and children are read on the first access, so the subtrees that are never looked at (e.g. method bodies) are skipped
+class Node(val tag: Int, contents: () => (Seq[String], Seq[Node])) {
+  private var read: () => (Seq[String], Seq[Node]) = contents
+
+  private lazy val namesAndChildren: (Seq[String], Seq[Node]) = {
+    val result = read()
+    read = null
+    val children = result._2
+    children.zip(children.drop(1)).foreach { case (a, b) =>
+      a.nextSibling = Some(b)
+      b.previousSibling = Some(a)
+    }
+    result
+  }
+
+  def names: Seq[String] = namesAndChildren._1
+
+  def children: Seq[Node] = namesAndChildren._2
+
   override def toString: String = toString(0)
 
   protected def toString(indent: Int): String =
@@ -43,6 +61,10 @@ case class Node(tag: Int, names: Seq[String], children: Seq[Node]) {
 }
 
 private object Node {
+  def apply(tag: Int, names: Seq[String], children: Seq[Node]): Node = new Node(tag, () => (names, children))
+
+  def unapply(node: Node): Some[(Int, Seq[String], Seq[Node])] = Some((node.tag, node.names, node.children))
+
   // TODO Remove when SourceFile annotation reading is integrated
   import scala.collection.mutable
   class BreadthFirstIterator(element: Node) extends Iterator[Node] {
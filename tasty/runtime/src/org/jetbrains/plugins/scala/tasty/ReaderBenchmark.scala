@@ -0,0 +1,45 @@
+package org.jetbrains.plugins.scala.tasty
+
+import java.io.{BufferedInputStream, FileInputStream}
+import java.util.jar.JarInputStream
+import scala.util.chaining.scalaUtilChainingOps
+
+// Throughput of reading the TASTy files of the Scala 3 standard library:
+//   full - all the nodes (as if the tree was read eagerly)
+//   text - TastyImpl.read (source name + text), which is used for the stubs;
+//          the nodes are read lazily, so method bodies and inline RHS are skipped
+object ReaderBenchmark {
+  private val Repository = System.getProperty("user.home") + "/.cache/coursier/v1/https/repo1.maven.org/maven2/"
+
+  private val Library = "org/scala-lang/scala3-library_3/3.0.0/scala3-library_3-3.0.0.jar"
+
+  private val Warmup = 5
+
+  private val Iterations = 10
+
+  def main(args: Array[String]): Unit = {
+    val files = new JarInputStream(new BufferedInputStream(new FileInputStream(Repository + Library))).pipe { in =>
+      Iterator.continually(in.getNextEntry).takeWhile(_ != null).filter(_.getName.endsWith(".tasty")).map(_ => in.readAllBytes()).toVector
+    }
+    val megabytes = files.map(_.length).sum / 1024.0 / 1024.0
+    println(f"Files: ${files.length}, $megabytes%.1f MB")
+
+    val impl = new TastyImpl()
+
+    measure("full", files, megabytes)(bytes => all(TreeReader.treeFrom(bytes)))
+    measure("text", files, megabytes)(impl.read)
+  }
+
+  private def all(node: Node): Int = node.children.foldLeft(1)(_ + all(_))
+
+  private def measure(name: String, files: Seq[Array[Byte]], megabytes: Double)(read: Array[Byte] => Any): Unit = {
+    var result: Any = null
+    (1 to Warmup).foreach(_ => files.foreach(bytes => result = read(bytes)))
+
+    val start = System.nanoTime()
+    (1 to Iterations).foreach(_ => files.foreach(bytes => result = read(bytes)))
+    val seconds = (System.nanoTime() - start) / 1e9 / Iterations
+
+    println(f"$name:\t${files.length / seconds}%.0f files/s, ${megabytes / seconds}%.1f MB/s")
+  }
+}
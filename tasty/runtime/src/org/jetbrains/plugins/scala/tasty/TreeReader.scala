@@ -4,7 +4,6 @@ import dotty.tools.tasty.TastyBuffer.{Addr, NameRef}
 import dotty.tools.tasty.TastyFormat._
 import dotty.tools.tasty.{TastyReader, UnpickleException}
 
-// TODO read children lazily
 // TODO don't use classes from dotc (requires parsing the name section manually)
 private class TreeReader(nameAtRef: NameTable) {
   private def readNat(in: TastyReader): Int = in.readNat()
@@ -18,83 +17,88 @@ private class TreeReader(nameAtRef: NameTable) {
     nameRefToString(NameRef(idx))
   }
 
+  // Reads the tag and, for trees with a length, only skips the contents, which are read when the node is accessed
   private def readTree(in: TastyReader): Node = {
     val tag = in.readByte()
 
-    var nat = -1
-
-    var value = -1L
-
-    var names = Seq.empty[String]
-    var children = Seq.empty[Node]
-
     if (tag >= firstLengthTreeTag) {
       val len = in.readNat()
-      val end = in.currentAddr + len
-
-      def readTrees(): Seq[Node] = in.until(end)(readTree(in))
+      val start = in.currentAddr
+      val end = start + len
+      in.goto(end)
+      new Node(tag, () => readContents(tag, in.subReader(start, in.endAddr), end))
+    } else {
+      var nat = -1
+      var value = -1L
+      val names = Vector.newBuilder[String]
+      val children = Vector.newBuilder[Node]
+
+      if (tag >= firstNatASTTreeTag) {
+        tag match {
+          case IDENT | IDENTtpt | SELECT | SELECTtpt | TERMREF | TYPEREF | SELFDEF => names += readName(in)
+          case _ => nat = readNat(in)
+        }
+        children += readTree(in)
+      }
+      else if (tag >= firstASTTreeTag)
+        children += readTree(in)
+      else if (tag >= firstNatTreeTag)
+        tag match {
+          case TERMREFpkg | TYPEREFpkg | STRINGconst | IMPORTED => names += readName(in)
+          case CHARconst => value = in.readNat()
+          case BYTEconst | SHORTconst | INTconst | FLOATconst => value = in.readInt()
+          case LONGconst | DOUBLEconst => value = in.readLongInt()
+          case _ => nat = readNat(in)
+        }
 
       tag match {
-        case RENAMED =>
-          names :+= readName(in); names :+= readName(in)
-        case VALDEF | DEFDEF | TYPEDEF | TYPEPARAM | PARAM | NAMEDARG | BIND =>
-          names :+= readName(in); children :++= readTrees()
-        case REFINEDtype | TERMREFin | TYPEREFin | SELECTin =>
-          names :+= readName(in); children :+= readTree(in); children :++= readTrees()
-        case RETURN | HOLE =>
-          readNat(in); children :++= readTrees()
-        case METHODtype | POLYtype | TYPELAMBDAtype =>
-          children :+= readTree(in)
-          while (in.currentAddr.index < end.index && !isModifierTag(in.nextByte)) { children :+= readTree(in); names :+= readName(in); }
-          children :++= readTrees()
-        case PARAMtype =>
-          readNat(in); readNat(in)
+        case SHAREDtype => readTree(in.subReader(Addr(nat), in.endAddr)) // TODO cache (and resuse string presentation?)
+        case SHAREDterm => readTree(in.subReader(Addr(nat), in.endAddr)) // TODO cache
         case _ =>
-          children :++= readTrees()
-      }
-      if (in.currentAddr != end) {
-        println(s"incomplete read, current = ${in.currentAddr}, end = $end")
-        in.goto(end)
+          val node = Node(tag, names.result(), children.result())
+          tag match {
+            case TYPEREFsymbol | TYPEREFdirect | TERMREFsymbol | TERMREFdirect =>
+              val in0 = in.subReader(Addr(nat), in.endAddr)
+              in0.readByte() // Tag
+              in0.readNat() // Length
+              node.refName = Some(readName(in0)) // TODO use as node name?
+            case _ =>
+          }
+          node.value = value
+          node
       }
     }
-    else if (tag >= firstNatASTTreeTag) {
-      tag match {
-        case IDENT | IDENTtpt | SELECT | SELECTtpt | TERMREF | TYPEREF | SELFDEF => names :+= readName(in)
-        case _ => nat = readNat(in)
-      }
-      children :+= readTree(in)
-    }
-    else if (tag >= firstASTTreeTag)
-      children :+= readTree(in)
-    else if (tag >= firstNatTreeTag)
-      tag match {
-        case TERMREFpkg | TYPEREFpkg | STRINGconst | IMPORTED => names :+= readName(in)
-        case CHARconst => value = in.readNat()
-        case BYTEconst | SHORTconst | INTconst | FLOATconst => value = in.readInt()
-        case LONGconst | DOUBLEconst => value = in.readLongInt()
-        case _ => nat = readNat(in)
-      }
+  }
+
+  private def readContents(tag: Int, in: TastyReader, end: Addr): (Seq[String], Seq[Node]) = {
+    val names = Vector.newBuilder[String]
+    val children = Vector.newBuilder[Node]
+
+    def readTrees(): Unit = in.until(end)(children += readTree(in))
 
     tag match {
-      case SHAREDtype => readTree(in.subReader(Addr(nat), in.endAddr)) // TODO cache (and resuse string presentation?)
-      case SHAREDterm => readTree(in.subReader(Addr(nat), in.endAddr)) // TODO cache
+      case RENAMED =>
+        names += readName(in); names += readName(in)
+      case VALDEF | DEFDEF | TYPEDEF | TYPEPARAM | PARAM | NAMEDARG | BIND =>
+        names += readName(in); readTrees()
+      case REFINEDtype | TERMREFin | TYPEREFin | SELECTin =>
+        names += readName(in); children += readTree(in); readTrees()
+      case RETURN | HOLE =>
+        readNat(in); readTrees()
+      case METHODtype | POLYtype | TYPELAMBDAtype =>
+        children += readTree(in)
+        while (in.currentAddr.index < end.index && !isModifierTag(in.nextByte)) { children += readTree(in); names += readName(in); }
+        readTrees()
+      case PARAMtype =>
+        readNat(in); readNat(in)
       case _ =>
-        children.zip(children.drop(1)).foreach { case (a, b) =>
-          a.nextSibling = Some(b)
-          b.previousSibling = Some(a)
-        }
-        val node = Node(tag, names, children)
-        tag match {
-          case TYPEREFsymbol | TYPEREFdirect | TERMREFsymbol | TERMREFdirect =>
-            val in0 = in.subReader(Addr(nat), in.endAddr)
-            in0.readByte() // Tag
-            in0.readNat() // Length
-            node.refName = Some(readName(in0)) // TODO use as node name?
-          case _ =>
-        }
-        node.value = value
-        node
+        readTrees()
     }
+    if (in.currentAddr != end) {
+      println(s"incomplete read, current = ${in.currentAddr}, end = $end")
+    }
+
+    (names.result(), children.result())
   }
 }
 